@@ -0,0 +1,35 @@
+package com.recommendation.jmh;
+
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.store.RatingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine construction: from the rating list, as the original API does, and
+ * from a prebuilt {@link RatingStore}, which isolates the model wiring.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+
+    @Benchmark
+    public RecommendationEngine fromRatingList(Dataset data) throws Exception {
+        return new RecommendationEngine(data.userList, data.productList, data.ratings);
+    }
+
+    @Benchmark
+    public RatingStore ratingStore(Dataset data) {
+        return RatingStore.of(data.ratings);
+    }
+}
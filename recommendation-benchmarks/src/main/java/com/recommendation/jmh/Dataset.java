@@ -0,0 +1,52 @@
+package com.recommendation.jmh;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.model.Product;
+import com.recommendation.model.Rating;
+import com.recommendation.model.User;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Parameterized synthetic data set shared by the benchmarks, built with
+ * {@link RatingGenerator}: Zipf product popularity, seeded so every run sees
+ * the same data. {@code density} is the mean fraction of products a user rates.
+ */
+@State(Scope.Benchmark)
+public class Dataset {
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"500"})
+    public int products;
+
+    @Param({"0.02"})
+    public double density;
+
+    public List<User> userList;
+    public List<Product> productList;
+    public List<Rating> ratings;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        RatingGenerator generator = new RatingGenerator(users, products);
+        generator.setMeanRatingsPerUser(Math.max(2, density * products));
+        userList = generator.users();
+        productList = generator.products();
+        ratings = new ArrayList<>();
+        generator.iterator().forEachRemaining(ratings::add);
+    }
+
+    /** A user id that has ratings, spread evenly over the data set. */
+    public long userId(SplittableRandom random) {
+        return 1 + random.nextInt(users);
+    }
+}
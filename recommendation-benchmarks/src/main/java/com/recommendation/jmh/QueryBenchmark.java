@@ -0,0 +1,59 @@
+package com.recommendation.jmh;
+
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request paths of a constructed engine. Reports throughput and, through
+ * sample mode, latency percentiles; add {@code -prof gc} for allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    private RecommendationEngine engine;
+
+    @Setup(Level.Trial)
+    public void buildEngine(Dataset data) throws Exception {
+        engine = new RecommendationEngine(data.userList, data.productList, data.ratings);
+    }
+
+    /** Random users per benchmark thread, so threads do not share a generator. */
+    @State(Scope.Thread)
+    public static class Users {
+        final SplittableRandom random = new SplittableRandom(7);
+    }
+
+    @Benchmark
+    public List<ProductRecommendation> recommend(Dataset data, Users users) throws Exception {
+        return engine.getRecommendations(data.userId(users.random), 10);
+    }
+
+    @Benchmark
+    public double userSimilarity(Dataset data, Users users) throws Exception {
+        return engine.getUserSimilarity(data.userId(users.random), data.userId(users.random));
+    }
+
+    @Benchmark
+    public List<ProductRecommendation> fallback(Dataset data, Users users) {
+        return engine.getFallbackRecommendations(data.userId(users.random), 10);
+    }
+}
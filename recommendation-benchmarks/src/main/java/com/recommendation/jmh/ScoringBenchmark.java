@@ -0,0 +1,70 @@
+package com.recommendation.jmh;
+
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationBuffer;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-N scoring of the algorithms served from primitive models, through the
+ * list API and through {@code recommendInto} with a reused buffer. Run with
+ * {@code -prof gc}: {@code gc.alloc.rate.norm} of {@code recommendInto}
+ * should be about 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringBenchmark {
+
+    @Param({"ITEM_BASED", "USER_BASED", "MATRIX_FACTORIZATION"})
+    public Algorithm algorithm;
+
+    private RecommendationEngine engine;
+
+    @Setup(Level.Trial)
+    public void buildEngine(Dataset data) throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setAlgorithm(algorithm);
+        // User-based is only allocation-free when served from the precomputed neighbors
+        config.setUserNeighborIndexEnabled(true);
+        engine = new RecommendationEngine(data.userList, data.productList, data.ratings, config);
+    }
+
+    /** Random users and a result buffer per benchmark thread. */
+    @State(Scope.Thread)
+    public static class Requests {
+        final SplittableRandom random = new SplittableRandom(7);
+        final RecommendationBuffer buffer = new RecommendationBuffer(10);
+    }
+
+    @Benchmark
+    public List<ProductRecommendation> recommend(Dataset data, Requests requests) throws Exception {
+        return engine.getRecommendations(data.userId(requests.random), 10, algorithm);
+    }
+
+    @Benchmark
+    public RecommendationBuffer recommendInto(Dataset data, Requests requests) throws Exception {
+        engine.recommendInto(data.userId(requests.random), 10, algorithm, requests.buffer);
+        return requests.buffer;
+    }
+}
@@ -0,0 +1,241 @@
+package com.recommendation.content;
+
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.CandidateRescorer;
+import com.recommendation.util.TopKHeap;
+import com.recommendation.util.TopNScorer;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Content-based recommender over a {@link ProductTextIndex}.
+ *
+ * A user's profile is the sum of the term vectors of the products they rated
+ * at least {@code minRating}, each weighted by how far its rating is above
+ * {@code minRating - 1}. The profile is weighted by idf and candidates are
+ * scored by its cosine with their stored term vectors (lnc.ltc weighting),
+ * walking only the postings of the profile's terms; the top N are kept in a
+ * primitive heap. One rating is enough to build a profile, so this works
+ * for users collaborative filtering cannot place yet, and products nobody
+ * has rated can still be recommended.
+ */
+public class ContentBasedRecommender extends AbstractRecommender implements TopNScorer {
+    // One per thread for all instances, so engine swaps do not leave old accumulators pinned to pool threads
+    private static final ThreadLocal<Accumulator> ACCUMULATORS = new ThreadLocal<>();
+
+    private final RatingStore store;
+    private final ProductTextIndex index;
+    private final float minRating;
+    private final int[] itemDocs;
+
+    public ContentBasedRecommender(RatingStoreDataModel model, ProductTextIndex index, float minRating) {
+        super(model);
+        this.store = model.getStore();
+        this.index = index;
+        this.minRating = minRating;
+        // Document of each rated item, so scoring needs no boxed id lookups
+        this.itemDocs = new int[store.numItems()];
+        for (int item = 0; item < itemDocs.length; item++) {
+            itemDocs[item] = index.docIndex(store.itemId(item));
+        }
+    }
+
+    public ProductTextIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer, boolean includeKnownItems)
+            throws TasteException {
+        int u = requireUser(userID);
+        TopKHeap heap = new TopKHeap(howMany);
+        score(u, heap, CandidateRescorer.of(rescorer, this), includeKnownItems);
+
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        int count = heap.drainDescending(ids, scores);
+        List<RecommendedItem> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new GenericRecommendedItem(index.productId(ids[i]), scores[i]));
+        }
+        return result;
+    }
+
+    /** Candidates are document indexes of the text index. */
+    @Override
+    public int numCandidates() {
+        return index.numDocs();
+    }
+
+    @Override
+    public long candidateId(int candidate) {
+        return index.productId(candidate);
+    }
+
+    @Override
+    public int userIndex(long userId) {
+        return store.userIndex(userId);
+    }
+
+    @Override
+    public void topN(int userIndex, TopKHeap heap, CandidateRescorer rescorer) {
+        score(userIndex, heap, rescorer, false);
+    }
+
+    private void score(int u, TopKHeap heap, CandidateRescorer rescorer, boolean includeKnownItems) {
+        Accumulator acc = accumulator();
+        int stamp = acc.nextStamp();
+
+        // Profile: rating-weighted sum of the liked products' unit term vectors
+        int termCount = 0;
+        for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+            int doc = itemDocs[store.itemAt(p)];
+            if (doc < 0) {
+                continue;
+            }
+            acc.rated[doc] = stamp;
+            float rating = store.userRatingAt(p);
+            if (rating < minRating) {
+                continue;
+            }
+            float weight = rating - (minRating - 1);
+            for (int k = 0, n = index.docTermCount(doc); k < n; k++) {
+                int term = index.docTerm(doc, k);
+                if (acc.profile[term] == 0.0f) {
+                    acc.terms[termCount++] = term;
+                }
+                acc.profile[term] += weight * index.docWeight(doc, k);
+            }
+        }
+
+        // Score every document sharing a term with the profile
+        int docCount = 0;
+        double queryNorm = 0;
+        for (int t = 0; t < termCount; t++) {
+            int term = acc.terms[t];
+            float query = acc.profile[term] * index.idf(term);
+            acc.profile[term] = 0.0f;
+            queryNorm += query * query;
+            if (query == 0.0f) {
+                continue;
+            }
+            for (int p = 0, n = index.postingCount(term); p < n; p++) {
+                int doc = index.postingDoc(term, p);
+                if (acc.scores[doc] == 0.0f) {
+                    acc.docs[docCount++] = doc;
+                }
+                acc.scores[doc] += query * index.postingWeight(term, p);
+            }
+        }
+
+        float scale = queryNorm == 0 ? 0.0f : (float) (1 / Math.sqrt(queryNorm));
+        for (int d = 0; d < docCount; d++) {
+            int doc = acc.docs[d];
+            float score = acc.scores[doc] * scale;
+            acc.scores[doc] = 0.0f;
+            if (!includeKnownItems && acc.rated[doc] == stamp) {
+                continue;
+            }
+            if (rescorer != null) {
+                if (rescorer.isFiltered(doc)) {
+                    continue;
+                }
+                score = rescorer.rescore(doc, score);
+            }
+            if (score > 0.0f && score > heap.threshold()) {
+                heap.offer(doc, score);
+            }
+        }
+    }
+
+    /**
+     * The known rating, or the average of the user's ratings weighted by each
+     * rated product's text similarity to this one.
+     */
+    @Override
+    public float estimatePreference(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int item = store.itemIndex(itemID);
+        if (item >= 0) {
+            float known = store.rating(u, item);
+            if (!Float.isNaN(known)) {
+                return known;
+            }
+        }
+        int doc = index.docIndex(itemID);
+        if (doc < 0) {
+            return Float.NaN;
+        }
+        double sum = 0;
+        double weight = 0;
+        for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+            int rated = itemDocs[store.itemAt(p)];
+            if (rated >= 0) {
+                float similarity = index.similarity(rated, doc);
+                sum += similarity * store.userRatingAt(p);
+                weight += similarity;
+            }
+        }
+        return weight > 0 ? (float) (sum / weight) : Float.NaN;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // The index is immutable; new products mean a new recommender
+    }
+
+    private int requireUser(long userID) throws NoSuchUserException {
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        return u;
+    }
+
+    // This thread's accumulator, replaced only when an index with a different shape uses it
+    private Accumulator accumulator() {
+        Accumulator acc = ACCUMULATORS.get();
+        if (acc == null || acc.profile.length != index.numTerms() || acc.scores.length != index.numDocs()) {
+            acc = new Accumulator(index.numTerms(), index.numDocs());
+            ACCUMULATORS.set(acc);
+        }
+        return acc;
+    }
+
+    /** Per-thread profile and score buffers; left zeroed between requests. */
+    private static final class Accumulator {
+        final float[] profile;
+        final int[] terms;
+        final float[] scores;
+        final int[] docs;
+        final int[] rated;
+        int stamp;
+
+        Accumulator(int numTerms, int numDocs) {
+            this.profile = new float[numTerms];
+            this.terms = new int[numTerms];
+            this.scores = new float[numDocs];
+            this.docs = new int[numDocs];
+            this.rated = new int[numDocs];
+        }
+
+        int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(rated, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.recommendation.content;
+
+import java.util.Arrays;
+
+/**
+ * Product id to document index map of a {@link ProductTextIndex}: an open
+ * addressing table split into chunks of {@code 1 << CHUNK_SHIFT} slots. An
+ * {@link Editor} copies only the chunks it writes to, so the map it was
+ * started from stays valid and the two share every other chunk.
+ */
+final class ProductDocMap {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int EMPTY = -1;
+
+    private final long[][] keys;
+    private final int[][] docs;
+    private final int mask;
+    private final int size;
+
+    private ProductDocMap(long[][] keys, int[][] docs, int size) {
+        this.keys = keys;
+        this.docs = docs;
+        this.mask = (keys.length << CHUNK_SHIFT) - 1;
+        this.size = size;
+    }
+
+    static ProductDocMap empty() {
+        return new ProductDocMap(new long[][] {new long[CHUNK_SIZE]}, new int[][] {emptyChunk()}, 0);
+    }
+
+    /** Document of the product, or -1 if it is not mapped. */
+    int get(long productId) {
+        for (int slot = hash(productId) & mask; ; slot = (slot + 1) & mask) {
+            int doc = docs[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+            if (doc == EMPTY || keys[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] == productId) {
+                return doc;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int[] emptyChunk() {
+        int[] chunk = new int[CHUNK_SIZE];
+        Arrays.fill(chunk, EMPTY);
+        return chunk;
+    }
+
+    /** Copy-on-write changes to a map; not thread-safe. */
+    static final class Editor {
+        private long[][] keys;
+        private int[][] docs;
+        private boolean[] owned;
+        private int mask;
+        private int size;
+
+        private Editor(ProductDocMap map) {
+            this.keys = map.keys.clone();
+            this.docs = map.docs.clone();
+            this.owned = new boolean[keys.length];
+            this.mask = map.mask;
+            this.size = map.size;
+        }
+
+        /** Maps the product to a document and returns the document it was mapped to before, or -1. */
+        int put(long productId, int doc) {
+            // Keep the load factor at or below one half so probe runs stay short
+            if ((size + 1) * 2L > mask + 1L) {
+                grow();
+            }
+            for (int slot = hash(productId) & mask; ; slot = (slot + 1) & mask) {
+                int chunk = slot >>> CHUNK_SHIFT;
+                int offset = slot & CHUNK_MASK;
+                int previous = docs[chunk][offset];
+                if (previous == EMPTY || keys[chunk][offset] == productId) {
+                    own(chunk);
+                    keys[chunk][offset] = productId;
+                    docs[chunk][offset] = doc;
+                    if (previous == EMPTY) {
+                        size++;
+                    }
+                    return previous;
+                }
+            }
+        }
+
+        ProductDocMap build() {
+            ProductDocMap map = new ProductDocMap(keys, docs, size);
+            // Further puts must not write through to the built map
+            Arrays.fill(owned, false);
+            keys = keys.clone();
+            docs = docs.clone();
+            return map;
+        }
+
+        private void own(int chunk) {
+            if (!owned[chunk]) {
+                keys[chunk] = keys[chunk].clone();
+                docs[chunk] = docs[chunk].clone();
+                owned[chunk] = true;
+            }
+        }
+
+        private void grow() {
+            long[][] oldKeys = keys;
+            int[][] oldDocs = docs;
+            int chunks = oldKeys.length * 2;
+            keys = new long[chunks][];
+            docs = new int[chunks][];
+            for (int c = 0; c < chunks; c++) {
+                keys[c] = new long[CHUNK_SIZE];
+                docs[c] = emptyChunk();
+            }
+            owned = new boolean[chunks];
+            Arrays.fill(owned, true);
+            mask = (chunks << CHUNK_SHIFT) - 1;
+            for (int c = 0; c < oldKeys.length; c++) {
+                for (int o = 0; o < CHUNK_SIZE; o++) {
+                    if (oldDocs[c][o] != EMPTY) {
+                        insertFresh(oldKeys[c][o], oldDocs[c][o]);
+                    }
+                }
+            }
+        }
+
+        private void insertFresh(long productId, int doc) {
+            int slot = hash(productId) & mask;
+            while (docs[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = productId;
+            docs[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = doc;
+        }
+    }
+}
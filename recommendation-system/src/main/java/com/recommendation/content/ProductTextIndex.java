@@ -0,0 +1,452 @@
+package com.recommendation.content;
+
+import com.recommendation.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Inverted index over product name, category and description text.
+ *
+ * Documents are stored with log term frequencies normalized to unit length;
+ * inverse document frequencies are not baked into the stored weights but
+ * computed from posting lengths at query time and applied to the query side
+ * only (lnc.ltc in SMART notation), so adding a product never requires
+ * reweighting the documents already indexed.
+ *
+ * The index is immutable. {@link #withProducts} returns a new index that
+ * shares everything the new products do not touch. Term ids never change, so
+ * the term dictionary is append-only and shared by every index derived from
+ * the same build, each knowing only the ids below its own {@link #numTerms}.
+ * Posting lists, per-document term lists and the product id map are held in
+ * chunks of {@code 1 << CHUNK_SHIFT} entries, and an update copies only the
+ * chunks it writes plus the arrays of chunk pointers. Adding a few products
+ * therefore costs about the size of the postings of their terms, plus one
+ * pointer per 1024 terms and documents, rather than a rebuild. Every document
+ * also keeps its own sorted term list, which is what user profiles are built
+ * from.
+ *
+ * A replaced product leaves its old document slot behind as a tombstone.
+ * Once tombstones make up a quarter of the slots, the update compacts the
+ * index: live documents are renumbered in order and terms no live product
+ * uses are dropped. That costs about a rebuild but happens at most once per
+ * {@code numDocs / 4} replacements, so it amortizes to a constant per
+ * replacement.
+ */
+public final class ProductTextIndex {
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it", "its",
+        "of", "on", "or", "that", "the", "this", "to", "with"));
+    private static final int[] NO_INTS = new int[0];
+    private static final float[] NO_FLOATS = new float[0];
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /** Compact once more than this fraction of document slots are tombstones. */
+    private static final double MAX_TOMBSTONE_RATIO = 0.25;
+
+    private final TermDictionary dictionary;
+    private final int numTerms;
+    private final PostingChunk[] postings;
+    private final ProductDocMap docIndex;
+    private final DocChunk[] documents;
+    private final int numDocs;
+    private final int liveDocs;
+
+    private ProductTextIndex(TermDictionary dictionary, int numTerms, PostingChunk[] postings,
+                             ProductDocMap docIndex, DocChunk[] documents, int numDocs, int liveDocs) {
+        this.dictionary = dictionary;
+        this.numTerms = numTerms;
+        this.postings = postings;
+        this.docIndex = docIndex;
+        this.documents = documents;
+        this.numDocs = numDocs;
+        this.liveDocs = liveDocs;
+    }
+
+    public static ProductTextIndex build(Collection<Product> products) {
+        ProductTextIndex empty = new ProductTextIndex(new TermDictionary(), 0, new PostingChunk[0],
+            ProductDocMap.empty(), new DocChunk[0], 0, 0);
+        return empty.withProducts(products);
+    }
+
+    /**
+     * Returns an index that also covers the given products. A product whose id
+     * is already indexed replaces the old entry. This index is not modified.
+     */
+    public ProductTextIndex withProducts(Collection<Product> products) {
+        ProductDocMap.Editor docs = docIndex.edit();
+        int totalDocs = numDocs + products.size();
+        DocChunk[] forward = Arrays.copyOf(documents, chunks(totalDocs));
+        boolean[] ownedDocs = new boolean[forward.length];
+        int live = liveDocs;
+
+        // Postings gained and lost per term id, applied in one copy per touched list
+        Map<Integer, PostingChanges> changes = new HashMap<>();
+        int doc = numDocs;
+        for (Product product : products) {
+            int previous = docs.put(product.getProductId(), doc);
+            if (previous >= 0) {
+                DocChunk chunk = ownDocChunk(forward, ownedDocs, previous >>> CHUNK_SHIFT);
+                for (int term : chunk.terms[previous & CHUNK_MASK]) {
+                    changes.computeIfAbsent(term, t -> new PostingChanges()).removed.add(previous);
+                }
+                chunk.terms[previous & CHUNK_MASK] = NO_INTS;
+                chunk.weights[previous & CHUNK_MASK] = NO_FLOATS;
+                live--;
+            }
+
+            TreeMap<Integer, Integer> counts = new TreeMap<>();
+            for (String token : tokenize(product)) {
+                counts.merge(dictionary.idOf(token), 1, Integer::sum);
+            }
+            int[] termList = new int[counts.size()];
+            float[] weightList = new float[counts.size()];
+            double norm = 0;
+            int k = 0;
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                termList[k] = entry.getKey();
+                weightList[k] = (float) (1 + Math.log(entry.getValue()));
+                norm += weightList[k] * weightList[k];
+                k++;
+            }
+            float scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+            for (k = 0; k < termList.length; k++) {
+                weightList[k] *= scale;
+                PostingChanges change = changes.computeIfAbsent(termList[k], t -> new PostingChanges());
+                change.addedDocs.add(doc);
+                change.addedWeights.add(weightList[k]);
+            }
+            DocChunk chunk = ownDocChunk(forward, ownedDocs, doc >>> CHUNK_SHIFT);
+            chunk.ids[doc & CHUNK_MASK] = product.getProductId();
+            chunk.terms[doc & CHUNK_MASK] = termList;
+            chunk.weights[doc & CHUNK_MASK] = weightList;
+            live++;
+            doc++;
+        }
+
+        // Every id handed out so far, including any taken by other indexes sharing the dictionary
+        int terms = Math.max(numTerms, dictionary.size());
+        PostingChunk[] lists = Arrays.copyOf(postings, chunks(terms));
+        boolean[] ownedLists = new boolean[lists.length];
+        for (int c = postings.length; c < lists.length; c++) {
+            lists[c] = new PostingChunk();
+            ownedLists[c] = true;
+        }
+        for (Map.Entry<Integer, PostingChanges> entry : changes.entrySet()) {
+            int term = entry.getKey();
+            PostingChanges change = entry.getValue();
+            PostingChunk chunk = lists[term >>> CHUNK_SHIFT];
+            if (!ownedLists[term >>> CHUNK_SHIFT]) {
+                chunk = chunk.copy();
+                lists[term >>> CHUNK_SHIFT] = chunk;
+                ownedLists[term >>> CHUNK_SHIFT] = true;
+            }
+            int[] oldDocs = chunk.docs[term & CHUNK_MASK];
+            float[] oldWeights = chunk.weights[term & CHUNK_MASK];
+            int[] mergedDocs = new int[oldDocs.length + change.addedDocs.size()];
+            float[] mergedWeights = new float[mergedDocs.length];
+            int n = 0;
+            for (int p = 0; p < oldDocs.length; p++) {
+                if (!change.removed.contains(oldDocs[p])) {
+                    mergedDocs[n] = oldDocs[p];
+                    mergedWeights[n++] = oldWeights[p];
+                }
+            }
+            // New documents have the highest indexes, so postings stay sorted by document
+            for (int a = 0; a < change.addedDocs.size(); a++) {
+                if (change.removed.contains(change.addedDocs.get(a))) {
+                    continue;
+                }
+                mergedDocs[n] = change.addedDocs.get(a);
+                mergedWeights[n++] = change.addedWeights.get(a);
+            }
+            chunk.docs[term & CHUNK_MASK] = n == mergedDocs.length ? mergedDocs : Arrays.copyOf(mergedDocs, n);
+            chunk.weights[term & CHUNK_MASK] = n == mergedWeights.length
+                ? mergedWeights : Arrays.copyOf(mergedWeights, n);
+        }
+        ProductTextIndex updated = new ProductTextIndex(dictionary, terms, lists, docs.build(), forward,
+            totalDocs, live);
+        return totalDocs - live > totalDocs * MAX_TOMBSTONE_RATIO ? updated.compact() : updated;
+    }
+
+    /**
+     * Copy of this index without tombstones: live documents keep their order
+     * under new indexes, and terms keep their order under new ids with the
+     * unused ones left out, so posting and term lists stay sorted.
+     */
+    ProductTextIndex compact() {
+        int[] newTerm = new int[numTerms];
+        int terms = 0;
+        for (int term = 0; term < numTerms; term++) {
+            newTerm[term] = postingCount(term) > 0 ? terms++ : -1;
+        }
+        TermDictionary compacted = new TermDictionary();
+        dictionary.forEach((token, term) -> {
+            if (term < numTerms && newTerm[term] >= 0) {
+                compacted.put(token, newTerm[term]);
+            }
+        });
+
+        ProductDocMap.Editor docs = ProductDocMap.empty().edit();
+        DocChunk[] forward = new DocChunk[chunks(liveDocs)];
+        int[] postingCounts = new int[terms];
+        int doc = 0;
+        for (int old = 0; old < numDocs; old++) {
+            long productId = productId(old);
+            if (docIndex.get(productId) != old) {
+                continue;
+            }
+            if ((doc & CHUNK_MASK) == 0) {
+                forward[doc >>> CHUNK_SHIFT] = new DocChunk();
+            }
+            int[] oldTerms = documents[old >>> CHUNK_SHIFT].terms[old & CHUNK_MASK];
+            int[] termList = new int[oldTerms.length];
+            for (int k = 0; k < termList.length; k++) {
+                termList[k] = newTerm[oldTerms[k]];
+                postingCounts[termList[k]]++;
+            }
+            DocChunk chunk = forward[doc >>> CHUNK_SHIFT];
+            chunk.ids[doc & CHUNK_MASK] = productId;
+            chunk.terms[doc & CHUNK_MASK] = termList;
+            chunk.weights[doc & CHUNK_MASK] = documents[old >>> CHUNK_SHIFT].weights[old & CHUNK_MASK];
+            docs.put(productId, doc);
+            doc++;
+        }
+
+        PostingChunk[] lists = new PostingChunk[chunks(terms)];
+        for (int c = 0; c < lists.length; c++) {
+            lists[c] = new PostingChunk();
+        }
+        for (int term = 0; term < terms; term++) {
+            lists[term >>> CHUNK_SHIFT].docs[term & CHUNK_MASK] = new int[postingCounts[term]];
+            lists[term >>> CHUNK_SHIFT].weights[term & CHUNK_MASK] = new float[postingCounts[term]];
+        }
+        Arrays.fill(postingCounts, 0);
+        for (int d = 0; d < doc; d++) {
+            DocChunk chunk = forward[d >>> CHUNK_SHIFT];
+            int[] termList = chunk.terms[d & CHUNK_MASK];
+            float[] weightList = chunk.weights[d & CHUNK_MASK];
+            for (int k = 0; k < termList.length; k++) {
+                int term = termList[k];
+                int position = postingCounts[term]++;
+                lists[term >>> CHUNK_SHIFT].docs[term & CHUNK_MASK][position] = d;
+                lists[term >>> CHUNK_SHIFT].weights[term & CHUNK_MASK][position] = weightList[k];
+            }
+        }
+        return new ProductTextIndex(compacted, terms, lists, docs.build(), forward, doc, doc);
+    }
+
+    private static int chunks(int size) {
+        return (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+    private static DocChunk ownDocChunk(DocChunk[] chunks, boolean[] owned, int chunk) {
+        if (!owned[chunk]) {
+            chunks[chunk] = chunks[chunk] == null ? new DocChunk() : chunks[chunk].copy();
+            owned[chunk] = true;
+        }
+        return chunks[chunk];
+    }
+
+    /** Lower-cased alphanumeric tokens of the product's name, category and description, minus stop words. */
+    public static List<String> tokenize(Product product) {
+        String text = String.join(" ", String.valueOf(product.getName()), String.valueOf(product.getCategory()),
+            product.getDescription() == null ? "" : product.getDescription());
+        List<String> tokens = new ArrayList<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public int numTerms() {
+        return numTerms;
+    }
+
+    /**
+     * Number of document slots, including those of replaced products not yet
+     * compacted away; documents are indexed 0..numDocs-1.
+     */
+    public int numDocs() {
+        return numDocs;
+    }
+
+    /** Number of distinct products indexed. */
+    public int numProducts() {
+        return liveDocs;
+    }
+
+    /** Document index of a product, or -1 if it is not indexed. */
+    public int docIndex(long productId) {
+        return docIndex.get(productId);
+    }
+
+    public long productId(int doc) {
+        return documents[doc >>> CHUNK_SHIFT].ids[doc & CHUNK_MASK];
+    }
+
+    /** Term id of a token, or -1 if no indexed product contains it. */
+    public int termId(String token) {
+        // Ids at or past numTerms belong to indexes derived from this one
+        int term = dictionary.get(token);
+        return term < numTerms ? term : -1;
+    }
+
+    public float idf(int term) {
+        int df = postingCount(term);
+        return df == 0 ? 0.0f : (float) Math.log(1.0 + (double) liveDocs / df);
+    }
+
+    public int postingCount(int term) {
+        return postings[term >>> CHUNK_SHIFT].docs[term & CHUNK_MASK].length;
+    }
+
+    public int postingDoc(int term, int position) {
+        return postings[term >>> CHUNK_SHIFT].docs[term & CHUNK_MASK][position];
+    }
+
+    /** Unit-length log term frequency of the term in the posting's document. */
+    public float postingWeight(int term, int position) {
+        return postings[term >>> CHUNK_SHIFT].weights[term & CHUNK_MASK][position];
+    }
+
+    public int docTermCount(int doc) {
+        return documents[doc >>> CHUNK_SHIFT].terms[doc & CHUNK_MASK].length;
+    }
+
+    /** Term at a position of the document's term list, which is sorted by term id. */
+    public int docTerm(int doc, int position) {
+        return documents[doc >>> CHUNK_SHIFT].terms[doc & CHUNK_MASK][position];
+    }
+
+    public float docWeight(int doc, int position) {
+        return documents[doc >>> CHUNK_SHIFT].weights[doc & CHUNK_MASK][position];
+    }
+
+    /** tf-idf cosine similarity between two documents. */
+    public float similarity(int doc1, int doc2) {
+        int[] terms1 = documents[doc1 >>> CHUNK_SHIFT].terms[doc1 & CHUNK_MASK];
+        int[] terms2 = documents[doc2 >>> CHUNK_SHIFT].terms[doc2 & CHUNK_MASK];
+        float[] weights1 = documents[doc1 >>> CHUNK_SHIFT].weights[doc1 & CHUNK_MASK];
+        float[] weights2 = documents[doc2 >>> CHUNK_SHIFT].weights[doc2 & CHUNK_MASK];
+        double dot = 0;
+        double norm1 = 0;
+        double norm2 = 0;
+        int a = 0;
+        int b = 0;
+        while (a < terms1.length || b < terms2.length) {
+            int t1 = a < terms1.length ? terms1[a] : Integer.MAX_VALUE;
+            int t2 = b < terms2.length ? terms2[b] : Integer.MAX_VALUE;
+            if (t1 <= t2) {
+                double w1 = weights1[a] * idf(t1);
+                norm1 += w1 * w1;
+                if (t1 == t2) {
+                    double w2 = weights2[b] * idf(t2);
+                    norm2 += w2 * w2;
+                    dot += w1 * w2;
+                    b++;
+                }
+                a++;
+            } else {
+                double w2 = weights2[b] * idf(t2);
+                norm2 += w2 * w2;
+                b++;
+            }
+        }
+        return norm1 == 0 || norm2 == 0 ? 0.0f : (float) (dot / Math.sqrt(norm1 * norm2));
+    }
+
+    /**
+     * Append-only token to term id map, shared by an index and every index
+     * derived from it through {@link #withProducts}.
+     */
+    private static final class TermDictionary {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        int idOf(String token) {
+            return ids.computeIfAbsent(token, t -> next.getAndIncrement());
+        }
+
+        int get(String token) {
+            Integer term = ids.get(token);
+            return term == null ? -1 : term;
+        }
+
+        void put(String token, int term) {
+            ids.put(token, term);
+            next.accumulateAndGet(term + 1, Math::max);
+        }
+
+        int size() {
+            return next.get();
+        }
+
+        void forEach(BiConsumer<String, Integer> action) {
+            ids.forEach(action);
+        }
+    }
+
+    /** Posting lists of {@code CHUNK_SIZE} consecutive term ids. */
+    private static final class PostingChunk {
+        final int[][] docs;
+        final float[][] weights;
+
+        PostingChunk() {
+            this.docs = new int[CHUNK_SIZE][];
+            this.weights = new float[CHUNK_SIZE][];
+            Arrays.fill(docs, NO_INTS);
+            Arrays.fill(weights, NO_FLOATS);
+        }
+
+        private PostingChunk(int[][] docs, float[][] weights) {
+            this.docs = docs;
+            this.weights = weights;
+        }
+
+        PostingChunk copy() {
+            return new PostingChunk(docs.clone(), weights.clone());
+        }
+    }
+
+    /** Product ids and term lists of {@code CHUNK_SIZE} consecutive documents. */
+    private static final class DocChunk {
+        final long[] ids;
+        final int[][] terms;
+        final float[][] weights;
+
+        DocChunk() {
+            this(new long[CHUNK_SIZE], new int[CHUNK_SIZE][], new float[CHUNK_SIZE][]);
+        }
+
+        private DocChunk(long[] ids, int[][] terms, float[][] weights) {
+            this.ids = ids;
+            this.terms = terms;
+            this.weights = weights;
+        }
+
+        DocChunk copy() {
+            return new DocChunk(ids.clone(), terms.clone(), weights.clone());
+        }
+    }
+
+    private static final class PostingChanges {
+        final Set<Integer> removed = new HashSet<>();
+        final List<Integer> addedDocs = new ArrayList<>();
+        final List<Float> addedWeights = new ArrayList<>();
+    }
+}
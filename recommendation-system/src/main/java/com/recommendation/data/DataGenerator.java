@@ -63,8 +63,8 @@ public class DataGenerator {
         
         // Generate realistic ratings based on user preferences
         for (User user : users) {
-            // Each user rates 5-15 products
-            int numRatings = 5 + random.nextInt(11);
+            // Each user rates 5-15 products, or every product of a smaller catalog
+            int numRatings = Math.min(products.size(), 5 + random.nextInt(11));
             Set<Long> ratedProducts = new HashSet<>();
             
             for (int i = 0; i < numRatings; i++) {
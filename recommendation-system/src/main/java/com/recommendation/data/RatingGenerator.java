@@ -0,0 +1,327 @@
+package com.recommendation.data;
+
+import com.recommendation.model.Product;
+import com.recommendation.model.Rating;
+import com.recommendation.model.User;
+import com.recommendation.store.RatingSnapshot;
+import com.recommendation.store.RatingStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Seeded synthetic rating generator for load tests at production scale.
+ *
+ * Product popularity follows a Zipf distribution (product 1 is the most
+ * popular) and user activity is log-normal around a configurable mean, so the
+ * data is sparse and long-tailed like real rating logs. Each user's ratings
+ * come from a generator seeded with the seed and the user id alone, so the
+ * output is the same whether users are generated sequentially or by many
+ * threads. Items are drawn without replacement; if the Zipf head keeps
+ * repeating, the remaining picks fall back to a scan, so users can rate up to
+ * the whole catalog.
+ */
+public class RatingGenerator {
+    private static final String[] CATEGORIES = {"Electronics", "Books", "Clothing", "Home"};
+    private static final int BLOCK_SIZE = 4096;
+    // Fixed so generated files are byte-for-byte reproducible
+    private static final long START_TIME = 1_700_000_000_000L;
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private final int numUsers;
+    private final int numProducts;
+    private long seed = 42L;
+    private double meanRatingsPerUser = 20;
+    private double activitySpread = 1.0;
+    private double zipfExponent = 1.0;
+
+    public RatingGenerator(int numUsers, int numProducts) {
+        if (numUsers <= 0 || numProducts <= 0) {
+            throw new IllegalArgumentException("Need at least one user and one product");
+        }
+        this.numUsers = numUsers;
+        this.numProducts = numProducts;
+    }
+
+    // Getters and setters
+    public int getNumUsers() { return numUsers; }
+    public int getNumProducts() { return numProducts; }
+
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    /** Average number of ratings per user; sets the sparsity of the matrix. */
+    public double getMeanRatingsPerUser() { return meanRatingsPerUser; }
+    public void setMeanRatingsPerUser(double meanRatingsPerUser) { this.meanRatingsPerUser = meanRatingsPerUser; }
+
+    /** Standard deviation of log activity; 0 gives every user the same number of ratings. */
+    public double getActivitySpread() { return activitySpread; }
+    public void setActivitySpread(double activitySpread) { this.activitySpread = activitySpread; }
+
+    /** Zipf exponent of product popularity; 0 is uniform, around 1 is typical of real catalogs. */
+    public double getZipfExponent() { return zipfExponent; }
+    public void setZipfExponent(double zipfExponent) { this.zipfExponent = zipfExponent; }
+
+    public List<User> users() {
+        List<User> users = new ArrayList<>(numUsers);
+        for (int u = 1; u <= numUsers; u++) {
+            users.add(new User(u, "User " + u, "user" + u + "@email.com"));
+        }
+        return users;
+    }
+
+    public List<Product> products() {
+        List<Product> products = new ArrayList<>(numProducts);
+        for (int p = 1; p <= numProducts; p++) {
+            SplittableRandom random = new SplittableRandom(mix(seed ^ (p * 0xC2B2AE3D27D4EB4FL)));
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            double price = Math.round((5 + random.nextDouble() * 995) * 100) / 100.0;
+            products.add(new Product(p, category + " item " + p, category, price, "Synthetic " + category + " product"));
+        }
+        return products;
+    }
+
+    /** Streams the ratings user by user without holding them, e.g. into the engine's iterator constructor. */
+    public Iterator<Rating> iterator() {
+        Sampler sampler = new Sampler();
+        return new Iterator<Rating>() {
+            private final Block block = new Block(64);
+            private long nextUser = 1;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                while (position == block.size && nextUser <= numUsers) {
+                    block.size = 0;
+                    position = 0;
+                    generateUser(sampler, nextUser++, block);
+                }
+                return position < block.size;
+            }
+
+            @Override
+            public Rating next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int p = position++;
+                return new Rating(block.users[p], block.items[p], block.ratings[p], block.timestamps[p]);
+            }
+        };
+    }
+
+    /** Generates all ratings in parallel straight into a columnar store. */
+    public RatingStore toRatingStore() {
+        Sampler sampler = new Sampler();
+        RatingStore.Builder builder = RatingStore.builder();
+        IntStream.range(0, numBlocks()).parallel()
+            .mapToObj(b -> generateBlock(sampler, b))
+            .forEachOrdered(block -> {
+                for (int p = 0; p < block.size; p++) {
+                    builder.add(block.users[p], block.items[p], block.ratings[p], block.timestamps[p]);
+                }
+            });
+        return builder.build();
+    }
+
+    /**
+     * Writes {@code user,product,rating,timestamp} lines, readable by
+     * {@code FileDataModel} and {@link RatingSnapshot#convertCsv}. Blocks of
+     * users are generated and formatted in parallel and written in order.
+     */
+    public void writeCsv(Path file) throws IOException {
+        Sampler sampler = new Sampler();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            IntStream.range(0, numBlocks()).parallel()
+                .mapToObj(b -> format(generateBlock(sampler, b)))
+                .forEachOrdered(text -> {
+                    try {
+                        writer.write(text);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void writeSnapshot(Path file) throws IOException {
+        RatingSnapshot.write(toRatingStore(), file);
+    }
+
+    /** Usage: RatingGenerator users products ratingsPerUser output.(csv|snap) [seed] */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: RatingGenerator users products ratingsPerUser output.(csv|snap) [seed]");
+            System.exit(1);
+        }
+        RatingGenerator generator = new RatingGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        generator.setMeanRatingsPerUser(Double.parseDouble(args[2]));
+        if (args.length > 4) {
+            generator.setSeed(Long.parseLong(args[4]));
+        }
+        Path output = Paths.get(args[3]);
+        long start = System.nanoTime();
+        if (output.toString().endsWith(".csv")) {
+            generator.writeCsv(output);
+        } else {
+            generator.writeSnapshot(output);
+        }
+        System.out.printf("Wrote %s in %d ms%n", output, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int numBlocks() {
+        return (numUsers + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private Block generateBlock(Sampler sampler, int blockIndex) {
+        long first = 1 + (long) blockIndex * BLOCK_SIZE;
+        long last = Math.min(numUsers, first + BLOCK_SIZE - 1);
+        Block block = new Block((int) Math.min(Integer.MAX_VALUE - 8,
+            (last - first + 1) * Math.max(1, Math.round(meanRatingsPerUser))));
+        for (long user = first; user <= last; user++) {
+            generateUser(sampler, user, block);
+        }
+        return block;
+    }
+
+    private void generateUser(Sampler sampler, long userId, Block out) {
+        SplittableRandom random = new SplittableRandom(mix(seed + userId * 0x9E3779B97F4A7C15L));
+        double activity = meanRatingsPerUser
+            * Math.exp(activitySpread * gaussian(random) - activitySpread * activitySpread / 2);
+        int count = (int) Math.max(1, Math.min(numProducts, Math.round(activity)));
+        double bias = 0.5 * gaussian(random);
+
+        int[] seen = sampler.seen.get();
+        int stamp = sampler.nextStamp(seen);
+        int chosen = 0;
+        for (int attempt = 0; chosen < count && attempt < 4 * count; attempt++) {
+            int item = sampler.sample(random);
+            if (seen[item] != stamp) {
+                seen[item] = stamp;
+                addRating(out, userId, item, bias, random);
+                chosen++;
+            }
+        }
+        // Rejection stalls once the popular head is used up; take the rest in order from a random start
+        for (int item = random.nextInt(numProducts); chosen < count; ) {
+            if (seen[item] != stamp) {
+                seen[item] = stamp;
+                addRating(out, userId, item, bias, random);
+                chosen++;
+            }
+            item = item + 1 == numProducts ? 0 : item + 1;
+        }
+    }
+
+    private void addRating(Block out, long userId, int item, double bias, SplittableRandom random) {
+        double value = 3.0 + bias + quality(item) + 0.8 * gaussian(random);
+        float rating = (float) Math.max(1.0, Math.min(5.0, Math.round(value * 2) / 2.0));
+        out.add(userId, item + 1, rating, START_TIME - (long) (random.nextDouble() * YEAR_MILLIS));
+    }
+
+    /** Per-product offset in [-1, 1), derived from the seed so it needs no storage. */
+    private double quality(int item) {
+        return ((mix(seed ^ (item * 0xD6E8FEB86659FD93L)) >>> 11) * 0x1.0p-53 - 0.5) * 2;
+    }
+
+    private static String format(Block block) {
+        StringBuilder text = new StringBuilder(block.size * 28);
+        for (int p = 0; p < block.size; p++) {
+            text.append(block.users[p]).append(',')
+                .append(block.items[p]).append(',')
+                .append(block.ratings[p]).append(',')
+                .append(block.timestamps[p]).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian before Java 17
+    private static double gaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Inverse-CDF Zipf sampler over product ranks plus per-thread visited markers. */
+    private final class Sampler {
+        final double[] cdf = new double[numProducts];
+        final ThreadLocal<int[]> seen = ThreadLocal.withInitial(() -> new int[numProducts + 1]);
+
+        Sampler() {
+            double sum = 0;
+            for (int r = 0; r < numProducts; r++) {
+                sum += Math.pow(r + 1, -zipfExponent);
+                cdf[r] = sum;
+            }
+            for (int r = 0; r < numProducts; r++) {
+                cdf[r] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(numProducts - 1, index >= 0 ? index : -index - 1);
+        }
+
+        // The last slot holds the stamp counter of the owning thread
+        int nextStamp(int[] marks) {
+            int stamp = ++marks[numProducts];
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                stamp = marks[numProducts] = 1;
+            }
+            return stamp;
+        }
+    }
+
+    private static final class Block {
+        long[] users;
+        long[] items;
+        float[] ratings;
+        long[] timestamps;
+        int size;
+
+        Block(int capacity) {
+            capacity = Math.max(capacity, 16);
+            this.users = new long[capacity];
+            this.items = new long[capacity];
+            this.ratings = new float[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        void add(long user, long item, float rating, long timestamp) {
+            if (size == users.length) {
+                int capacity = size + (size >> 1);
+                users = Arrays.copyOf(users, capacity);
+                items = Arrays.copyOf(items, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            users[size] = user;
+            items[size] = item;
+            ratings[size] = rating;
+            timestamps[size] = timestamp;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.recommendation.engine;
+
+/**
+ * Recommendation algorithms the engine can serve. The label is what ends up
+ * in {@link RecommendationEngine.ProductRecommendation#getAlgorithm()}.
+ */
+public enum Algorithm {
+    USER_BASED("Collaborative Filtering"),
+    ITEM_BASED("Item-Based Collaborative Filtering"),
+    MATRIX_FACTORIZATION("Matrix Factorization"),
+    CONTENT_BASED("Content-Based");
+
+    private final String label;
+
+    Algorithm(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+}
@@ -0,0 +1,126 @@
+package com.recommendation.engine;
+
+import com.recommendation.metrics.EngineMetrics;
+import com.recommendation.metrics.HistogramMetrics;
+import com.recommendation.util.BuildProgress;
+
+/**
+ * Construction-time settings for {@link RecommendationEngine}. The defaults
+ * reproduce the original engine: user-based CF with a Pearson similarity
+ * threshold of 0.1.
+ */
+public class EngineConfig {
+    private Algorithm algorithm = Algorithm.USER_BASED;
+    private double userSimilarityThreshold = 0.1;
+    private int similarityCacheCapacity = 0;
+    private boolean userNeighborIndexEnabled = false;
+    private int userNeighbors = 50;
+    private BuildProgress buildProgress;
+    private boolean itemIndexEnabled = false;
+    private int itemNeighbors = 20;
+    private boolean approximateNeighborhood = false;
+    private int lshTables = 16;
+    private int lshBits = 10;
+    private boolean lshMultiProbe = true;
+    private int lshMaxCandidates = 2000;
+    private boolean factorizationEnabled = false;
+    private int factorRank = 20;
+    private int alsIterations = 10;
+    private double alsLambda = 0.05;
+    private boolean contentIndexEnabled = false;
+    private float contentMinRating = 4.0f;
+    private long seed = 42L;
+    private EngineMetrics metrics = new HistogramMetrics();
+    
+    // Getters and setters
+    public Algorithm getAlgorithm() { return algorithm; }
+    public void setAlgorithm(Algorithm algorithm) { this.algorithm = algorithm; }
+    
+    public double getUserSimilarityThreshold() { return userSimilarityThreshold; }
+    public void setUserSimilarityThreshold(double userSimilarityThreshold) { this.userSimilarityThreshold = userSimilarityThreshold; }
+    
+    /**
+     * Number of user-user similarities kept in a cache shared by snapshots
+     * derived with {@code withChanges}; 0 disables it.
+     */
+    public int getSimilarityCacheCapacity() { return similarityCacheCapacity; }
+    public void setSimilarityCacheCapacity(int similarityCacheCapacity) { this.similarityCacheCapacity = similarityCacheCapacity; }
+    
+    /**
+     * Precompute every user's top neighbors in parallel when the engine is
+     * built, so user-based requests only aggregate neighbor ratings. Takes
+     * precedence over the approximate neighborhood.
+     */
+    public boolean isUserNeighborIndexEnabled() { return userNeighborIndexEnabled; }
+    public void setUserNeighborIndexEnabled(boolean userNeighborIndexEnabled) { this.userNeighborIndexEnabled = userNeighborIndexEnabled; }
+    
+    /** Number of neighbors (K) kept per user in the user neighbor index. */
+    public int getUserNeighbors() { return userNeighbors; }
+    public void setUserNeighbors(int userNeighbors) { this.userNeighbors = userNeighbors; }
+    
+    /**
+     * Receives progress of the user neighbor index build and can cancel it,
+     * which makes engine construction throw a CancellationException; may be null.
+     */
+    public BuildProgress getBuildProgress() { return buildProgress; }
+    public void setBuildProgress(BuildProgress buildProgress) { this.buildProgress = buildProgress; }
+    
+    /** Whether the item-item similarity index is built; always true when the default algorithm is item-based. */
+    public boolean isItemIndexEnabled() { return itemIndexEnabled || algorithm == Algorithm.ITEM_BASED; }
+    public void setItemIndexEnabled(boolean itemIndexEnabled) { this.itemIndexEnabled = itemIndexEnabled; }
+    
+    /** Number of neighbors (K) kept per item in the item-item similarity index. */
+    public int getItemNeighbors() { return itemNeighbors; }
+    public void setItemNeighbors(int itemNeighbors) { this.itemNeighbors = itemNeighbors; }
+    
+    /** Use an LSH-backed approximate user neighborhood instead of scanning every user. */
+    public boolean isApproximateNeighborhood() { return approximateNeighborhood; }
+    public void setApproximateNeighborhood(boolean approximateNeighborhood) { this.approximateNeighborhood = approximateNeighborhood; }
+    
+    /** LSH hash tables; more tables raise recall and build time. */
+    public int getLshTables() { return lshTables; }
+    public void setLshTables(int lshTables) { this.lshTables = lshTables; }
+    
+    /** Signature bits per LSH table; more bits mean smaller buckets and lower latency. */
+    public int getLshBits() { return lshBits; }
+    public void setLshBits(int lshBits) { this.lshBits = lshBits; }
+    
+    /** Also probe buckets one bit flip away, raising recall at some latency cost. */
+    public boolean isLshMultiProbe() { return lshMultiProbe; }
+    public void setLshMultiProbe(boolean lshMultiProbe) { this.lshMultiProbe = lshMultiProbe; }
+    
+    /** Upper bound on candidates scored exactly per neighborhood query. */
+    public int getLshMaxCandidates() { return lshMaxCandidates; }
+    public void setLshMaxCandidates(int lshMaxCandidates) { this.lshMaxCandidates = lshMaxCandidates; }
+    
+    /** Whether ALS factors are trained; always true when the default algorithm is matrix factorization. */
+    public boolean isFactorizationEnabled() { return factorizationEnabled || algorithm == Algorithm.MATRIX_FACTORIZATION; }
+    public void setFactorizationEnabled(boolean factorizationEnabled) { this.factorizationEnabled = factorizationEnabled; }
+    
+    /** Number of latent factors per user and item. */
+    public int getFactorRank() { return factorRank; }
+    public void setFactorRank(int factorRank) { this.factorRank = factorRank; }
+    
+    public int getAlsIterations() { return alsIterations; }
+    public void setAlsIterations(int alsIterations) { this.alsIterations = alsIterations; }
+    
+    /** ALS regularization, scaled by each user's or item's rating count. */
+    public double getAlsLambda() { return alsLambda; }
+    public void setAlsLambda(double alsLambda) { this.alsLambda = alsLambda; }
+    
+    /** Whether the product text index is built; always true when the default algorithm is content-based. */
+    public boolean isContentIndexEnabled() { return contentIndexEnabled || algorithm == Algorithm.CONTENT_BASED; }
+    public void setContentIndexEnabled(boolean contentIndexEnabled) { this.contentIndexEnabled = contentIndexEnabled; }
+    
+    /** Lowest rating that adds a product to the user's content profile. */
+    public float getContentMinRating() { return contentMinRating; }
+    public void setContentMinRating(float contentMinRating) { this.contentMinRating = contentMinRating; }
+    
+    /** Seed for randomized components, so builds are reproducible. */
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+    
+    /** Receives stage latencies and counters; shared by every engine derived with this config. */
+    public EngineMetrics getMetrics() { return metrics; }
+    public void setMetrics(EngineMetrics metrics) { this.metrics = metrics; }
+}
@@ -0,0 +1,39 @@
+package com.recommendation.engine;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings for {@link RecommendationEngine#getHybridRecommendations}. Every
+ * algorithm enabled on the engine with a positive weight contributes
+ * candidates, plus the popularity ranking if its weight is positive.
+ */
+public class HybridConfig {
+    private final Map<Algorithm, Double> weights = new EnumMap<>(Algorithm.class);
+    private double popularityWeight = 0.2;
+    private long timeBudgetMillis = 50;
+    private int candidateMultiplier = 3;
+    
+    public HybridConfig() {
+        weights.put(Algorithm.USER_BASED, 1.0);
+        weights.put(Algorithm.ITEM_BASED, 1.0);
+        weights.put(Algorithm.MATRIX_FACTORIZATION, 1.0);
+        weights.put(Algorithm.CONTENT_BASED, 0.5);
+    }
+    
+    // Getters and setters
+    /** Blend weight of an algorithm's normalized scores; 0 leaves it out. */
+    public double getWeight(Algorithm algorithm) { return weights.getOrDefault(algorithm, 0.0); }
+    public void setWeight(Algorithm algorithm, double weight) { weights.put(algorithm, weight); }
+    
+    public double getPopularityWeight() { return popularityWeight; }
+    public void setPopularityWeight(double popularityWeight) { this.popularityWeight = popularityWeight; }
+    
+    /** Time all generators share; those still running when it ends are dropped. */
+    public long getTimeBudgetMillis() { return timeBudgetMillis; }
+    public void setTimeBudgetMillis(long timeBudgetMillis) { this.timeBudgetMillis = timeBudgetMillis; }
+    
+    /** Each generator is asked for this many times the requested number of candidates. */
+    public int getCandidateMultiplier() { return candidateMultiplier; }
+    public void setCandidateMultiplier(int candidateMultiplier) { this.candidateMultiplier = candidateMultiplier; }
+}
@@ -0,0 +1,145 @@
+package com.recommendation.engine;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.metrics.EngineMetrics;
+import com.recommendation.metrics.EngineMetrics.Counter;
+import com.recommendation.metrics.EngineMetrics.Stage;
+import com.recommendation.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hybrid recommendations: runs one candidate generator per source
+ * concurrently, drops those that miss the shared time budget or fail, and
+ * merges the rest.
+ *
+ * Sources score on different scales (predicted ratings, dot products,
+ * cosines), so each source's list is min-max normalized to [0, 1] first. A
+ * product's blended score is the weighted sum of its normalized scores
+ * divided by the total weight of the sources that answered, so a product
+ * only one source proposes is ranked below one that several agree on.
+ * A dropped generator is cancelled with interruption and stops at the next
+ * block boundary its scoring loop checks; see {@link com.recommendation.util.Interrupts}.
+ */
+final class HybridRecommender {
+    private static final Logger log = LoggerFactory.getLogger(HybridRecommender.class);
+    static final String POPULARITY_LABEL = "Popularity";
+    private static final String SEPARATOR = " + ";
+
+    private HybridRecommender() {
+    }
+
+    static List<ProductRecommendation> recommend(RecommendationEngine engine, long userId, int numRecommendations,
+                                                 HybridConfig config, ExecutorService executor) {
+        EngineMetrics metrics = engine.getMetrics();
+        long start = System.nanoTime();
+        metrics.increment(Counter.REQUESTS);
+        try {
+            return blend(engine, userId, numRecommendations, config, executor);
+        } finally {
+            metrics.recordLatency(Stage.HYBRID, System.nanoTime() - start);
+        }
+    }
+
+    private static List<ProductRecommendation> blend(RecommendationEngine engine, long userId,
+                                                     int numRecommendations, HybridConfig config,
+                                                     ExecutorService executor) {
+        int numCandidates = numRecommendations * Math.max(1, config.getCandidateMultiplier());
+        List<String> labels = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        List<Callable<List<ProductRecommendation>>> generators = new ArrayList<>();
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (config.getWeight(algorithm) > 0 && engine.isEnabled(algorithm)) {
+                labels.add(algorithm.getLabel());
+                weights.add(config.getWeight(algorithm));
+                generators.add(() -> engine.candidates(algorithm, userId, numCandidates));
+            }
+        }
+        if (config.getPopularityWeight() > 0) {
+            labels.add(POPULARITY_LABEL);
+            weights.add(config.getPopularityWeight());
+            generators.add(() -> engine.getPopularityIndex().recommend(userId, numCandidates));
+        }
+
+        List<Future<List<ProductRecommendation>>> futures;
+        try {
+            // Cancels whatever is still running when the budget ends
+            futures = executor.invokeAll(generators, config.getTimeBudgetMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return engine.getFallbackRecommendations(userId, numRecommendations);
+        }
+
+        Map<Long, Blend> blends = new LinkedHashMap<>();
+        double answeredWeight = 0;
+        for (int s = 0; s < futures.size(); s++) {
+            List<ProductRecommendation> candidates;
+            try {
+                candidates = futures.get(s).get();
+            } catch (CancellationException e) {
+                engine.getMetrics().increment(Counter.DROPPED_GENERATORS);
+                continue;
+            } catch (ExecutionException e) {
+                engine.getMetrics().increment(Counter.FAILURES);
+                log.warn("{} candidates for user {} failed", labels.get(s), userId, e.getCause());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            answeredWeight += weights.get(s);
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (ProductRecommendation candidate : candidates) {
+                min = Math.min(min, candidate.getScore());
+                max = Math.max(max, candidate.getScore());
+            }
+            float range = max - min;
+            for (ProductRecommendation candidate : candidates) {
+                double normalized = range > 0 ? (candidate.getScore() - min) / range : 1.0;
+                Blend blend = blends.computeIfAbsent(candidate.getProduct().getProductId(),
+                    id -> new Blend(candidate.getProduct()));
+                blend.score += weights.get(s) * normalized;
+                blend.sources.append(blend.sources.length() == 0 ? "" : SEPARATOR).append(labels.get(s));
+            }
+        }
+        if (blends.isEmpty()) {
+            return engine.getFallbackRecommendations(userId, numRecommendations);
+        }
+
+        List<Blend> ranked = new ArrayList<>(blends.values());
+        ranked.sort(Comparator.comparingDouble((Blend b) -> -b.score)
+            .thenComparingLong(b -> b.product.getProductId()));
+        List<ProductRecommendation> recommendations = new ArrayList<>(Math.min(numRecommendations, ranked.size()));
+        for (Blend blend : ranked.subList(0, Math.min(numRecommendations, ranked.size()))) {
+            recommendations.add(new ProductRecommendation(
+                blend.product, (float) (blend.score / answeredWeight), blend.sources.toString()));
+        }
+        return recommendations;
+    }
+
+    private static final class Blend {
+        final Product product;
+        final StringBuilder sources = new StringBuilder();
+        double score;
+
+        Blend(Product product) {
+            this.product = product;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.recommendation.engine;
+
+import com.recommendation.util.Interrupts;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.util.Collection;
+
+/**
+ * Checks for interruption before every similarity. Mahout's neighborhood and
+ * estimation loops compute one similarity per step, so this is where a
+ * cancelled user-based request stops.
+ */
+final class InterruptibleUserSimilarity implements UserSimilarity {
+    private final UserSimilarity delegate;
+
+    InterruptibleUserSimilarity(UserSimilarity delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public double userSimilarity(long userID1, long userID2) throws TasteException {
+        Interrupts.check();
+        return delegate.userSimilarity(userID1, userID2);
+    }
+
+    @Override
+    public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+        delegate.setPreferenceInferrer(inferrer);
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        delegate.refresh(alreadyRefreshed);
+    }
+}
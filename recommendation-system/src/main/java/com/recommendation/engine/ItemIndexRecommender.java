@@ -0,0 +1,193 @@
+package com.recommendation.engine;
+
+import com.recommendation.similarity.ItemSimilarityIndex;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.CandidateRescorer;
+import com.recommendation.util.Interrupts;
+import com.recommendation.util.TopKHeap;
+import com.recommendation.util.TopNScorer;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Item-based recommender that serves from a precomputed {@link ItemSimilarityIndex}.
+ *
+ * A request walks the neighbor list of every item the user rated and scores
+ * each neighbor with the similarity-weighted average of those ratings, so the
+ * cost is O(ratedItems x K) regardless of the number of users.
+ */
+public class ItemIndexRecommender extends AbstractRecommender implements TopNScorer {
+    // One per thread for all instances, so engine swaps do not leave old accumulators pinned to pool threads
+    private static final ThreadLocal<Accumulator> ACCUMULATORS = new ThreadLocal<>();
+
+    private final RatingStore store;
+    private final ItemSimilarityIndex index;
+
+    public ItemIndexRecommender(RatingStoreDataModel model, ItemSimilarityIndex index) {
+        super(model);
+        this.store = model.getStore();
+        this.index = index;
+    }
+
+    public ItemSimilarityIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer, boolean includeKnownItems)
+            throws TasteException {
+        int u = requireUser(userID);
+        TopKHeap heap = new TopKHeap(howMany);
+        score(u, heap, CandidateRescorer.of(rescorer, this), includeKnownItems);
+
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        int count = heap.drainDescending(ids, scores);
+        List<RecommendedItem> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new GenericRecommendedItem(store.itemId(ids[i]), scores[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public int numCandidates() {
+        return store.numItems();
+    }
+
+    @Override
+    public long candidateId(int candidate) {
+        return store.itemId(candidate);
+    }
+
+    @Override
+    public int userIndex(long userId) {
+        return store.userIndex(userId);
+    }
+
+    @Override
+    public void topN(int userIndex, TopKHeap heap, CandidateRescorer rescorer) {
+        score(userIndex, heap, rescorer, false);
+    }
+
+    private void score(int u, TopKHeap heap, CandidateRescorer rescorer, boolean includeKnownItems) {
+        Accumulator acc = accumulator();
+        int touchedCount = 0;
+        try {
+            for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+                Interrupts.check();
+                int rated = store.itemAt(p);
+                float rating = store.userRatingAt(p);
+                for (int n = 0, count = index.neighborCount(rated); n < count; n++) {
+                    int candidate = index.neighbor(rated, n);
+                    float similarity = index.similarity(rated, n);
+                    if (acc.weights[candidate] == 0.0f) {
+                        acc.touched[touchedCount++] = candidate;
+                    }
+                    acc.sums[candidate] += similarity * rating;
+                    acc.weights[candidate] += similarity;
+                }
+            }
+        } catch (CancellationException e) {
+            acc.clear(touchedCount);
+            throw e;
+        }
+
+        for (int t = 0; t < touchedCount; t++) {
+            int candidate = acc.touched[t];
+            float score = acc.sums[candidate] / acc.weights[candidate];
+            acc.sums[candidate] = 0.0f;
+            acc.weights[candidate] = 0.0f;
+            if (!includeKnownItems && store.find(u, candidate) >= 0) {
+                continue;
+            }
+            if (rescorer != null) {
+                if (rescorer.isFiltered(candidate)) {
+                    continue;
+                }
+                score = rescorer.rescore(candidate, score);
+            }
+            if (!Float.isNaN(score)) {
+                heap.offer(candidate, score);
+            }
+        }
+    }
+
+    @Override
+    public float estimatePreference(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int item = store.itemIndex(itemID);
+        if (item < 0) {
+            return Float.NaN;
+        }
+        float known = store.rating(u, item);
+        if (!Float.isNaN(known)) {
+            return known;
+        }
+        double sum = 0;
+        double weight = 0;
+        for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+            float similarity = index.similarityBetween(store.itemAt(p), item);
+            if (!Float.isNaN(similarity)) {
+                sum += similarity * store.userRatingAt(p);
+                weight += similarity;
+            }
+        }
+        return weight > 0 ? (float) (sum / weight) : Float.NaN;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // The index is immutable; a new snapshot means a new recommender
+    }
+
+    private int requireUser(long userID) throws NoSuchUserException {
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        return u;
+    }
+
+    // This thread's accumulator, replaced only when an engine over a different number of items uses it
+    private Accumulator accumulator() {
+        Accumulator acc = ACCUMULATORS.get();
+        if (acc == null || acc.touched.length != store.numItems()) {
+            acc = new Accumulator(store.numItems());
+            ACCUMULATORS.set(acc);
+        }
+        return acc;
+    }
+
+    /** Per-thread sparse score accumulator; left zeroed between requests. */
+    private static final class Accumulator {
+        final float[] sums;
+        final float[] weights;
+        final int[] touched;
+
+        Accumulator(int numItems) {
+            this.sums = new float[numItems];
+            this.weights = new float[numItems];
+            this.touched = new int[numItems];
+        }
+
+        // Zeroes what an abandoned request left behind
+        void clear(int touchedCount) {
+            for (int t = 0; t < touchedCount; t++) {
+                sums[touched[t]] = 0.0f;
+                weights[touched[t]] = 0.0f;
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.recommendation.engine;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+import com.recommendation.store.RatingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Products ranked by Bayesian-average rating, built once per rating snapshot
+ * and catalog. The per-item sums come from the {@link RatingStore}, so a
+ * build costs O(catalog log catalog) and does not scan the ratings.
+ *
+ * Each product's mean rating is shrunk towards the global mean as if it had
+ * {@code priorWeight} extra ratings at that mean, so a product with two
+ * five-star ratings does not outrank one with hundreds of near-five ratings.
+ * Ties go to the product with more ratings. There is one global ranking and
+ * one per category; serving walks a ranking and skips what the user already
+ * rated, so a request costs O(n) plus a lookup per skipped product.
+ */
+public final class PopularityIndex {
+    public static final String LABEL = "Popularity (Fallback)";
+
+    private final RatingStore store;
+    private final Product[] products;
+    private final float[] scores;
+    private final int[] itemIndexes;
+    private final int[] ranking;
+    private final Map<String, int[]> categoryRankings;
+
+    private PopularityIndex(RatingStore store, Product[] products, float[] scores, int[] itemIndexes,
+                            int[] ranking, Map<String, int[]> categoryRankings) {
+        this.store = store;
+        this.products = products;
+        this.scores = scores;
+        this.itemIndexes = itemIndexes;
+        this.ranking = ranking;
+        this.categoryRankings = categoryRankings;
+    }
+
+    /** Builds the index with the mean number of ratings per rated product as the prior weight. */
+    public static PopularityIndex build(RatingStore store, Collection<Product> catalog) {
+        double priorWeight = store.numItems() == 0 ? 0 : store.numRatings() / (double) store.numItems();
+        return build(store, catalog, priorWeight);
+    }
+
+    public static PopularityIndex build(RatingStore store, Collection<Product> catalog, double priorWeight) {
+        // The store keeps the rating sums, so rebuilding for a new catalog reads no ratings
+        double globalMean = store.globalMeanRating();
+
+        Product[] products = catalog.toArray(new Product[0]);
+        float[] scores = new float[products.length];
+        int[] counts = new int[products.length];
+        int[] itemIndexes = new int[products.length];
+        for (int k = 0; k < products.length; k++) {
+            int i = store.itemIndex(products[k].getProductId());
+            itemIndexes[k] = i;
+            double sum = 0;
+            if (i >= 0) {
+                sum = store.itemRatingSum(i);
+                counts[k] = store.itemRatingCount(i);
+            }
+            double weight = priorWeight + counts[k];
+            scores[k] = (float) (weight == 0 ? globalMean : (priorWeight * globalMean + sum) / weight);
+        }
+
+        Integer[] order = new Integer[products.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byScore = Float.compare(scores[b], scores[a]);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byCount = Integer.compare(counts[b], counts[a]);
+            return byCount != 0 ? byCount : Long.compare(products[a].getProductId(), products[b].getProductId());
+        });
+        int[] ranking = new int[order.length];
+        Map<String, Integer> categorySizes = new HashMap<>();
+        for (int r = 0; r < order.length; r++) {
+            ranking[r] = order[r];
+            categorySizes.merge(String.valueOf(products[order[r]].getCategory()), 1, Integer::sum);
+        }
+
+        // Category rankings are subsequences of the global one
+        Map<String, int[]> categoryRankings = new HashMap<>();
+        Map<String, Integer> filled = new HashMap<>();
+        for (int k : ranking) {
+            String category = String.valueOf(products[k].getCategory());
+            int[] ranked = categoryRankings.computeIfAbsent(category, c -> new int[categorySizes.get(c)]);
+            int position = filled.merge(category, 1, Integer::sum) - 1;
+            ranked[position] = k;
+        }
+        return new PopularityIndex(store, products, scores, itemIndexes, ranking, categoryRankings);
+    }
+
+    public int size() {
+        return ranking.length;
+    }
+
+    public Collection<String> categories() {
+        return Collections.unmodifiableSet(categoryRankings.keySet());
+    }
+
+    /** Product at a position of the global ranking, best first. */
+    public Product product(int rank) {
+        return products[ranking[rank]];
+    }
+
+    /** Bayesian-average rating of the product at a position of the global ranking. */
+    public float score(int rank) {
+        return scores[ranking[rank]];
+    }
+
+    /** Best products overall that the user has not rated. */
+    public List<ProductRecommendation> recommend(long userId, int numRecommendations) {
+        return recommend(userId, numRecommendations, ranking);
+    }
+
+    /** Best products of one category that the user has not rated; empty for an unknown category. */
+    public List<ProductRecommendation> recommend(long userId, int numRecommendations, String category) {
+        int[] ranked = categoryRankings.get(category);
+        return ranked == null ? new ArrayList<>() : recommend(userId, numRecommendations, ranked);
+    }
+
+    /** Best products overall that the user has not rated and the predicate accepts. */
+    public List<ProductRecommendation> recommend(long userId, int numRecommendations, Predicate<Product> accepts) {
+        return recommend(userId, numRecommendations, ranking, accepts);
+    }
+
+    private List<ProductRecommendation> recommend(long userId, int numRecommendations, int[] ranked) {
+        return recommend(userId, numRecommendations, ranked, null);
+    }
+
+    private List<ProductRecommendation> recommend(long userId, int numRecommendations, int[] ranked,
+                                                  Predicate<Product> accepts) {
+        int userIndex = store.userIndex(userId);
+        List<ProductRecommendation> recommendations =
+            new ArrayList<>(Math.max(0, Math.min(numRecommendations, ranked.length)));
+        for (int r = 0; r < ranked.length && recommendations.size() < numRecommendations; r++) {
+            int k = ranked[r];
+            int item = itemIndexes[k];
+            if (userIndex >= 0 && item >= 0 && store.find(userIndex, item) >= 0) {
+                continue;
+            }
+            if (accepts != null && !accepts.test(products[k])) {
+                continue;
+            }
+            recommendations.add(new ProductRecommendation(products[k], scores[k], LABEL));
+        }
+        return recommendations;
+    }
+}
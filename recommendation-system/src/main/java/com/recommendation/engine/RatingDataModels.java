@@ -0,0 +1,137 @@
+package com.recommendation.engine;
+
+import com.recommendation.model.Rating;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Factory methods for building Mahout data models from {@link Rating}s.
+ *
+ * The in-memory path groups ratings per user into primitive arrays and hands
+ * them straight to a {@link GenericDataModel}, so no temp file is written and
+ * the source ratings can be streamed instead of held in a list.
+ */
+public final class RatingDataModels {
+
+    private RatingDataModels() {
+    }
+
+    public static DataModel fromRatings(Iterable<Rating> ratings) {
+        return fromRatings(ratings.iterator());
+    }
+
+    public static DataModel fromRatings(Iterator<Rating> ratings) {
+        FastByIDMap<UserPreferences> byUser = new FastByIDMap<>();
+        while (ratings.hasNext()) {
+            Rating rating = ratings.next();
+            UserPreferences prefs = byUser.get(rating.getUserId());
+            if (prefs == null) {
+                prefs = new UserPreferences();
+                byUser.put(rating.getUserId(), prefs);
+            }
+            prefs.add(rating.getProductId(), rating.getRating());
+        }
+
+        FastByIDMap<PreferenceArray> userData = new FastByIDMap<>(byUser.size());
+        for (Map.Entry<Long, UserPreferences> entry : byUser.entrySet()) {
+            long userId = entry.getKey();
+            userData.put(userId, entry.getValue().toPreferenceArray(userId));
+        }
+        return new GenericDataModel(userData);
+    }
+
+    /** Copies any Mahout data model into a columnar {@link RatingStore}. */
+    public static RatingStore toRatingStore(DataModel model) throws TasteException {
+        if (model instanceof RatingStoreDataModel) {
+            return ((RatingStoreDataModel) model).getStore();
+        }
+        RatingStore.Builder builder = RatingStore.builder();
+        LongPrimitiveIterator userIds = model.getUserIDs();
+        while (userIds.hasNext()) {
+            long userId = userIds.nextLong();
+            PreferenceArray prefs = model.getPreferencesFromUser(userId);
+            for (int i = 0; i < prefs.length(); i++) {
+                long itemId = prefs.getItemID(i);
+                Long time = model.getPreferenceTime(userId, itemId);
+                builder.add(userId, itemId, prefs.getValue(i), time == null ? 0L : time);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Legacy path: writes the ratings as Mahout CSV and parses them back with a
+     * {@link FileDataModel}. Kept for comparison and for exporting data sets.
+     */
+    public static DataModel fromCsvFile(File dataFile) throws IOException {
+        return new FileDataModel(dataFile);
+    }
+
+    public static File writeCsv(Iterable<Rating> ratings) throws IOException {
+        File tempFile = File.createTempFile("ratings", ".csv");
+        tempFile.deleteOnExit();
+        writeCsv(ratings, tempFile);
+        return tempFile;
+    }
+
+    public static void writeCsv(Iterable<Rating> ratings, File file) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            for (Rating rating : ratings) {
+                writer.write(String.format("%d,%d,%.1f%n",
+                    rating.getUserId(), rating.getProductId(), rating.getRating()));
+            }
+        }
+    }
+
+    private static final class UserPreferences {
+        private long[] itemIds = new long[8];
+        private float[] values = new float[8];
+        private int size;
+
+        void add(long itemId, float value) {
+            if (size == itemIds.length) {
+                itemIds = Arrays.copyOf(itemIds, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            itemIds[size] = itemId;
+            values[size] = value;
+            size++;
+        }
+
+        PreferenceArray toPreferenceArray(long userId) {
+            // Walk backwards so that, as with FileDataModel, the last rating for an item wins
+            FastIDSet seen = new FastIDSet(size);
+            int[] keep = new int[size];
+            int count = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                if (seen.add(itemIds[i])) {
+                    keep[count++] = i;
+                }
+            }
+
+            PreferenceArray prefs = new GenericUserPreferenceArray(count);
+            prefs.setUserID(0, userId);
+            for (int i = 0; i < count; i++) {
+                prefs.setItemID(i, itemIds[keep[i]]);
+                prefs.setValue(i, values[keep[i]]);
+            }
+            return prefs;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.recommendation.engine;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+import com.recommendation.util.TopKHeap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reusable result holder for
+ * {@link RecommendationEngine#recommendInto(long, int, Algorithm, RecommendationBuffer)}.
+ *
+ * Holds the selection heap and the ranked products, scores and labels in
+ * arrays sized once, so refilling it allocates nothing. A buffer is
+ * overwritten by every call and must not be shared between threads.
+ */
+public final class RecommendationBuffer {
+    private final TopKHeap heap;
+    private final int[] ids;
+    private final float[] scores;
+    private final Product[] products;
+    private final String[] algorithms;
+    private int size;
+
+    public RecommendationBuffer(int capacity) {
+        this.heap = new TopKHeap(capacity);
+        this.ids = new int[capacity];
+        this.scores = new float[capacity];
+        this.products = new Product[capacity];
+        this.algorithms = new String[capacity];
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The {@code i}-th best product, best first. */
+    public Product getProduct(int i) {
+        return products[i];
+    }
+
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+    public String getAlgorithm(int i) {
+        return algorithms[i];
+    }
+
+    /** Copies the contents into a new list. */
+    public List<ProductRecommendation> toList() {
+        List<ProductRecommendation> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new ProductRecommendation(products[i], scores[i], algorithms[i]));
+        }
+        return list;
+    }
+
+    /** Clears the buffer and returns its heap, limited to {@code n} entries. */
+    TopKHeap heap(int n) {
+        size = 0;
+        heap.reset(n);
+        return heap;
+    }
+
+    /** Drains the heap, resolving candidates through the dense product array and skipping unknown products. */
+    void drain(Product[] candidates, String algorithm) {
+        int count = heap.drainDescending(ids, scores);
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            Product product = candidates[ids[i]];
+            if (product != null) {
+                scores[size] = scores[i];
+                products[size] = product;
+                algorithms[size++] = algorithm;
+            }
+        }
+        clearTail();
+    }
+
+    void fill(List<ProductRecommendation> recommendations) {
+        size = Math.min(recommendations.size(), capacity());
+        for (int i = 0; i < size; i++) {
+            ProductRecommendation recommendation = recommendations.get(i);
+            products[i] = recommendation.getProduct();
+            scores[i] = recommendation.getScore();
+            algorithms[i] = recommendation.getAlgorithm();
+        }
+        clearTail();
+    }
+
+    // Do not keep products of an earlier, longer result reachable
+    private void clearTail() {
+        for (int i = size; i < products.length && products[i] != null; i++) {
+            products[i] = null;
+            algorithms[i] = null;
+        }
+    }
+}
@@ -1,117 +1,805 @@
 package com.recommendation.engine;
 
+import com.recommendation.content.ContentBasedRecommender;
+import com.recommendation.content.ProductTextIndex;
+import com.recommendation.factorization.AlsTrainer;
+import com.recommendation.factorization.FactorModel;
+import com.recommendation.factorization.FactorizationRecommender;
+import com.recommendation.filter.CatalogBitsets;
+import com.recommendation.filter.DiversityReranker;
+import com.recommendation.filter.ProductFilter;
+import com.recommendation.metrics.EngineMetrics;
+import com.recommendation.metrics.EngineMetrics.Counter;
+import com.recommendation.metrics.EngineMetrics.Stage;
 import com.recommendation.model.Product;
 import com.recommendation.model.Rating;
 import com.recommendation.model.User;
+import com.recommendation.similarity.ApproximateUserNeighborhood;
+import com.recommendation.similarity.CachedUserSimilarity;
+import com.recommendation.similarity.ItemSimilarityIndex;
+import com.recommendation.similarity.RowCachingUserSimilarity;
+import com.recommendation.similarity.SimHashUserIndex;
+import com.recommendation.similarity.UserNeighborIndex;
+import com.recommendation.similarity.UserSimilarityCache;
+import com.recommendation.store.ModelFile;
+import com.recommendation.store.RatingDelta;
+import com.recommendation.store.RatingSnapshot;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.Interrupts;
+import com.recommendation.util.TopKHeap;
+import com.recommendation.util.TopNScorer;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
 import org.apache.mahout.cf.taste.common.TasteException;
-import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
 import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.apache.mahout.cf.taste.recommender.UserBasedRecommender;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToLongFunction;
 import java.util.stream.Collectors;
 
+/**
+ * Recommendation engine over one immutable snapshot of users, products and
+ * ratings. All models are built in the constructor and never mutated
+ * afterwards, so a constructed engine is safe to query from many threads.
+ */
 public class RecommendationEngine {
-    private UserBasedRecommender recommender;
-    private Map<Long, Product> productMap;
-    private Map<Long, User> userMap;
+    private static final Logger log = LoggerFactory.getLogger(RecommendationEngine.class);
+    // Sections of a saved model file
+    private static final int ID_MAP = 1;
+    private static final int USER_NEIGHBORS = 2;
+    private static final int ITEM_NEIGHBORS = 3;
+    private static final int FACTORS = 4;
+    private static final AtomicLong CATALOG_VERSIONS = new AtomicLong();
+    // Shared by all engines, so a thread keeps one buffer across engine swaps rather than one per engine
+    private static final ThreadLocal<RecommendationBuffer> BUFFERS = new ThreadLocal<>();
+    
+    private final EngineConfig config;
+    private final EngineMetrics metrics;
+    private final DataModel model;
+    private final RatingStoreDataModel storeModel;
+    private final Map<Algorithm, Recommender> recommenders = new EnumMap<>(Algorithm.class);
+    // Product of every candidate index, for the algorithms served by a TopNScorer
+    private final Map<Algorithm, Product[]> candidateProducts = new EnumMap<>(Algorithm.class);
+    // Category and price bitsets over the same candidate indexes, for filtered requests
+    private final Map<Algorithm, CatalogBitsets> candidateBitsets = new EnumMap<>(Algorithm.class);
+    private final UserBasedRecommender recommender;
+    private final UserSimilarity userSimilarity;
+    private final UserSimilarityCache similarityCache;
+    private final SimHashUserIndex userIndex;
+    private final UserNeighborIndex userNeighbors;
+    private final PopularityIndex popularity;
+    private final ProductTextIndex contentIndex;
+    private final Map<Long, Product> productMap;
+    private final long catalogVersion;
+    private final Map<Long, User> userMap;
     
     public RecommendationEngine(List<User> users, List<Product> products, List<Rating> ratings) 
             throws IOException, TasteException {
-        this.userMap = users.stream().collect(Collectors.toMap(User::getUserId, u -> u));
-        this.productMap = products.stream().collect(Collectors.toMap(Product::getProductId, p -> p));
+        this(users, products, ratings.iterator());
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, List<Rating> ratings, EngineConfig config) 
+            throws TasteException {
+        this(users, products, RatingStore.of(ratings), config);
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, Iterator<Rating> ratings) 
+            throws TasteException {
+        this(users, products, RatingStore.of(ratings));
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, Path ratingSnapshot) 
+            throws IOException, TasteException {
+        this(users, products, RatingSnapshot.open(ratingSnapshot));
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, RatingStore store) 
+            throws TasteException {
+        this(users, products, store, new EngineConfig());
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, RatingStore store, EngineConfig config) 
+            throws TasteException {
+        this(users, products, new RatingStoreDataModel(store), config);
+    }
+    
+    /**
+     * Builds an engine that reuses the models saved by {@link #saveModel}
+     * instead of recomputing them: neighbor lists, item similarities and
+     * factors are read from {@code modelFile} whenever they were built with
+     * the same settings as {@code config}, and built as usual otherwise.
+     *
+     * @throws IOException if the file is unreadable, corrupt, or was saved for different ratings
+     */
+    public RecommendationEngine(List<User> users, List<Product> products, RatingStore store, EngineConfig config, 
+            Path modelFile) throws IOException, TasteException {
+        this(users.stream().collect(Collectors.toMap(User::getUserId, u -> u)),
+            products.stream().collect(Collectors.toMap(Product::getProductId, p -> p)),
+            new RatingStoreDataModel(store), config, null, null, 0L, SavedModel.read(modelFile, store, config), 
+            CATALOG_VERSIONS.incrementAndGet());
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, DataModel model) 
+            throws TasteException {
+        this(users, products, model, new EngineConfig());
+    }
+    
+    public RecommendationEngine(List<User> users, List<Product> products, DataModel model, EngineConfig config) 
+            throws TasteException {
+        this(users.stream().collect(Collectors.toMap(User::getUserId, u -> u)),
+            products.stream().collect(Collectors.toMap(Product::getProductId, p -> p)),
+            model, config, null, null, 0L, null, CATALOG_VERSIONS.incrementAndGet());
+    }
+    
+    private RecommendationEngine(Map<Long, User> userMap, Map<Long, Product> productMap, DataModel model, 
+            EngineConfig config, ProductTextIndex contentIndex, UserSimilarityCache similarityCache, 
+            long similarityVersion, SavedModel saved, long catalogVersion) throws TasteException {
+        this.config = config;
+        this.metrics = config.getMetrics();
+        this.model = model;
+        this.userMap = userMap;
+        this.productMap = productMap;
+        this.catalogVersion = catalogVersion;
         
-        // Create temporary CSV file for Mahout
-        File dataFile = createDataFile(ratings);
+        long start = System.nanoTime();
+        long phase = start;
+        this.storeModel = asStoreModel(model);
+        phase = lap(Stage.BUILD_STORE, phase);
+        this.popularity = PopularityIndex.build(storeModel.getStore(), productMap.values());
+        phase = lap(Stage.BUILD_POPULARITY, phase);
         
         // Initialize Mahout components
-        DataModel model = new FileDataModel(dataFile);
-        UserSimilarity similarity = new PearsonCorrelationSimilarity(model);
-        UserNeighborhood neighborhood = new ThresholdUserNeighborhood(0.1, similarity, model);
-        this.recommender = new GenericUserBasedRecommender(model, neighborhood, similarity);
+        if (similarityCache == null && config.getSimilarityCacheCapacity() > 0) {
+            similarityCache = new UserSimilarityCache(config.getSimilarityCacheCapacity());
+            similarityVersion = similarityCache.version();
+        }
+        this.similarityCache = similarityCache;
+        this.userSimilarity = similarityCache == null 
+            ? new PearsonCorrelationSimilarity(model) 
+            : new CachedUserSimilarity(new PearsonCorrelationSimilarity(model), similarityCache, similarityVersion);
+        if (config.isUserNeighborIndexEnabled() && saved != null && saved.userNeighbors != null) {
+            this.userNeighbors = saved.userNeighbors;
+        } else if (config.isUserNeighborIndexEnabled()) {
+            this.userNeighbors = UserNeighborIndex.build(storeModel.getStore(), config.getUserNeighbors(),
+                config.getUserSimilarityThreshold(), ForkJoinPool.commonPool(), config.getBuildProgress());
+        } else {
+            this.userNeighbors = null;
+        }
+        if (config.isApproximateNeighborhood() && userNeighbors == null) {
+            this.userIndex = SimHashUserIndex.build(
+                storeModel.getStore(), config.getLshTables(), config.getLshBits(), config.getSeed());
+        } else {
+            this.userIndex = null;
+        }
+        this.recommender = newUserBasedRecommender(userSimilarity);
+        recommenders.put(Algorithm.USER_BASED, userNeighbors == null 
+            ? recommender : new UserNeighborRecommender(storeModel, userNeighbors));
+        phase = lap(Stage.BUILD_USER_INDEX, phase);
         
-        // Clean up temporary file
-        dataFile.deleteOnExit();
+        // Item-item neighbors are computed once here, in parallel, and only looked up per request
+        if (config.isItemIndexEnabled()) {
+            ItemSimilarityIndex index = saved != null && saved.itemNeighbors != null 
+                ? saved.itemNeighbors 
+                : ItemSimilarityIndex.build(storeModel.getStore(), config.getItemNeighbors());
+            recommenders.put(Algorithm.ITEM_BASED, new ItemIndexRecommender(storeModel, index));
+            phase = lap(Stage.BUILD_ITEM_INDEX, phase);
+        }
+        
+        if (config.isFactorizationEnabled()) {
+            FactorModel factors = saved != null && saved.factors != null 
+                ? saved.factors 
+                : new AlsTrainer(config.getFactorRank(), config.getAlsIterations(), config.getAlsLambda(), 
+                    config.getSeed()).train(storeModel.getStore());
+            recommenders.put(Algorithm.MATRIX_FACTORIZATION, new FactorizationRecommender(storeModel, factors));
+            phase = lap(Stage.BUILD_FACTORS, phase);
+        }
+        
+        if (config.isContentIndexEnabled()) {
+            this.contentIndex = contentIndex != null ? contentIndex : ProductTextIndex.build(productMap.values());
+            recommenders.put(Algorithm.CONTENT_BASED, 
+                new ContentBasedRecommender(storeModel, this.contentIndex, config.getContentMinRating()));
+            lap(Stage.BUILD_CONTENT_INDEX, phase);
+        } else {
+            this.contentIndex = null;
+        }
+        indexCandidates();
+        log.debug("Built engine over {} users and {} ratings in {} ms", storeModel.getStore().numUsers(), 
+            storeModel.getStore().numRatings(), (System.nanoTime() - start) / 1_000_000);
     }
     
-    private File createDataFile(List<Rating> ratings) throws IOException {
-        File tempFile = File.createTempFile("ratings", ".csv");
-        
-        try (FileWriter writer = new FileWriter(tempFile)) {
-            for (Rating rating : ratings) {
-                writer.write(String.format("%d,%d,%.1f%n", 
-                    rating.getUserId(), rating.getProductId(), rating.getRating()));
+    // Same ratings and collaborative models as base, with a different catalog
+    private RecommendationEngine(RecommendationEngine base, Map<Long, Product> productMap, 
+            ProductTextIndex contentIndex) {
+        this.config = base.config;
+        this.metrics = base.metrics;
+        this.model = base.model;
+        this.storeModel = base.storeModel;
+        this.userMap = base.userMap;
+        this.productMap = productMap;
+        this.catalogVersion = CATALOG_VERSIONS.incrementAndGet();
+        this.userSimilarity = base.userSimilarity;
+        this.similarityCache = base.similarityCache;
+        this.userIndex = base.userIndex;
+        this.userNeighbors = base.userNeighbors;
+        this.recommender = base.recommender;
+        this.recommenders.putAll(base.recommenders);
+        long start = System.nanoTime();
+        this.popularity = PopularityIndex.build(storeModel.getStore(), productMap.values());
+        lap(Stage.BUILD_POPULARITY, start);
+        this.contentIndex = contentIndex;
+        if (contentIndex != null) {
+            recommenders.put(Algorithm.CONTENT_BASED, 
+                new ContentBasedRecommender(storeModel, contentIndex, config.getContentMinRating()));
+        }
+        indexCandidates();
+    }
+    
+    private void indexCandidates() {
+        for (Map.Entry<Algorithm, Recommender> entry : recommenders.entrySet()) {
+            if (entry.getValue() instanceof TopNScorer) {
+                TopNScorer scorer = (TopNScorer) entry.getValue();
+                Product[] products = new Product[scorer.numCandidates()];
+                for (int c = 0; c < products.length; c++) {
+                    products[c] = productMap.get(scorer.candidateId(c));
+                }
+                candidateProducts.put(entry.getKey(), products);
+                candidateBitsets.put(entry.getKey(), new CatalogBitsets(products));
             }
         }
-        
-        return tempFile;
+    }
+    
+    private UserBasedRecommender newUserBasedRecommender(UserSimilarity similarity) throws TasteException {
+        // Stops a cancelled request between similarities
+        similarity = new InterruptibleUserSimilarity(similarity);
+        UserNeighborhood neighborhood;
+        if (userIndex != null) {
+            neighborhood = new ApproximateUserNeighborhood(userIndex, similarity,
+                config.getUserSimilarityThreshold(), config.isLshMultiProbe(), config.getLshMaxCandidates());
+        } else {
+            neighborhood = new ThresholdUserNeighborhood(config.getUserSimilarityThreshold(), similarity, model);
+        }
+        return new GenericUserBasedRecommender(model, new TimedUserNeighborhood(neighborhood, metrics), similarity);
+    }
+    
+    // Records the time since start for the stage and returns the current time
+    private long lap(Stage stage, long start) {
+        long now = System.nanoTime();
+        metrics.recordLatency(stage, now - start);
+        return now;
+    }
+    
+    /**
+     * Builds a new engine over this engine's ratings with the changes applied,
+     * sharing its users, products and configuration. The ratings are merged
+     * into a new {@link RatingStore} instead of being rebuilt from scratch;
+     * this engine is not modified and can keep serving in the meantime.
+     *
+     * Precomputed models that are enabled (user neighbor index, item index,
+     * ALS factors, LSH index) are rebuilt in full over the new ratings, so
+     * with those on, this costs about as much as building a new engine.
+     *
+     * A shared similarity cache keeps taking this engine's entries while the
+     * new one is built. Once the build has succeeded the cache drops the
+     * pairs of users whose ratings changed and from then on only stores the
+     * new engine's entries, so callers should swap the new engine in right
+     * away. A failed build leaves the cache as it was.
+     */
+    public RecommendationEngine withChanges(RatingDelta delta) throws TasteException {
+        RatingStore store = storeModel.getStore().withChanges(delta);
+        long nextVersion = similarityCache == null ? 0L : similarityCache.version() + 1;
+        RecommendationEngine next = new RecommendationEngine(userMap, productMap, new RatingStoreDataModel(store), 
+            config, contentIndex, similarityCache, nextVersion, null, catalogVersion);
+        if (similarityCache != null) {
+            // Only similarities involving users whose ratings changed are stale. If another
+            // withChanges bumped the cache meanwhile, next never matches and stores nothing.
+            similarityCache.nextVersion(delta.distinctUserIds());
+        }
+        return next;
+    }
+    
+    /**
+     * Builds a new engine whose catalog also contains the given products,
+     * replacing any with the same id. Ratings and collaborative models are
+     * shared with this engine; the product text index is extended
+     * incrementally rather than rebuilt.
+     */
+    public RecommendationEngine withProducts(Collection<Product> products) {
+        Map<Long, Product> catalog = new HashMap<>(productMap);
+        for (Product product : products) {
+            catalog.put(product.getProductId(), product);
+        }
+        return new RecommendationEngine(this, catalog, contentIndex == null ? null : contentIndex.withProducts(products));
+    }
+    
+    /**
+     * Saves the precomputed models (user neighbor lists, item similarities,
+     * factors) with the user and item id maps they are indexed by, so that
+     * another process serving the same ratings can load them with
+     * {@link #RecommendationEngine(List, List, RatingStore, EngineConfig, Path)}
+     * instead of rebuilding them. The file is replaced atomically.
+     */
+    public void saveModel(Path file) throws IOException {
+        RatingStore store = storeModel.getStore();
+        try (ModelFile.Writer out = new ModelFile.Writer(file)) {
+            long[] userIds = new long[store.numUsers()];
+            for (int u = 0; u < userIds.length; u++) {
+                userIds[u] = store.userId(u);
+            }
+            long[] itemIds = new long[store.numItems()];
+            for (int i = 0; i < itemIds.length; i++) {
+                itemIds[i] = store.itemId(i);
+            }
+            out.beginSection(ID_MAP);
+            out.putInt(userIds.length).putInt(itemIds.length).putLongs(userIds).putLongs(itemIds)
+                .putInt(store.numRatings()).putLong(store.fingerprint());
+            out.endSection();
+            
+            // Each model is preceded by the settings it was built with, checked when loading
+            if (userNeighbors != null) {
+                out.beginSection(USER_NEIGHBORS);
+                out.putDouble(config.getUserSimilarityThreshold());
+                userNeighbors.write(out);
+                out.endSection();
+            }
+            Recommender itemBased = recommenders.get(Algorithm.ITEM_BASED);
+            if (itemBased instanceof ItemIndexRecommender) {
+                out.beginSection(ITEM_NEIGHBORS);
+                ((ItemIndexRecommender) itemBased).getIndex().write(out);
+                out.endSection();
+            }
+            Recommender factorization = recommenders.get(Algorithm.MATRIX_FACTORIZATION);
+            if (factorization instanceof FactorizationRecommender) {
+                out.beginSection(FACTORS);
+                out.putInt(config.getAlsIterations()).putDouble(config.getAlsLambda()).putLong(config.getSeed());
+                ((FactorizationRecommender) factorization).getFactors().write(out);
+                out.endSection();
+            }
+            out.commit();
+        }
+    }
+    
+    public DataModel getDataModel() {
+        return model;
+    }
+    
+    private static RatingStoreDataModel asStoreModel(DataModel model) throws TasteException {
+        return model instanceof RatingStoreDataModel
+            ? (RatingStoreDataModel) model
+            : new RatingStoreDataModel(RatingDataModels.toRatingStore(model));
     }
     
     public List<ProductRecommendation> getRecommendations(long userId, int numRecommendations) 
             throws TasteException {
-        List<ProductRecommendation> recommendations = new ArrayList<>();
+        return getRecommendations(userId, numRecommendations, config.getAlgorithm());
+    }
+    
+    public List<ProductRecommendation> getRecommendations(long userId, int numRecommendations, Algorithm algorithm) 
+            throws TasteException {
+        Recommender algorithmRecommender = recommenders.get(algorithm);
+        if (algorithmRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        return recommend(algorithmRecommender, algorithm, userId, numRecommendations, null);
+    }
+    
+    /**
+     * Recommendations that pass the filter's category and price rules,
+     * re-ranked for category diversity if the filter asks for it. For
+     * algorithms served from primitive models the rules become one bitset
+     * over the candidates, checked inside scoring, so filtered products are
+     * never offered to the top-N heap and none of the result is wasted. The
+     * other algorithms get an equivalent Mahout {@link IDRescorer}. The
+     * popularity fallback honours the rules too.
+     */
+    public List<ProductRecommendation> getRecommendations(long userId, int numRecommendations, Algorithm algorithm, 
+            ProductFilter filter) throws TasteException {
+        Recommender algorithmRecommender = recommenders.get(algorithm);
+        if (algorithmRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        return recommend(algorithmRecommender, algorithm, userId, numRecommendations, filter);
+    }
+    
+    /**
+     * The rating {@code algorithm} predicts the user would give the product,
+     * or NaN when it cannot estimate one, e.g. for an unknown user or product.
+     */
+    public float estimatePreference(long userId, long productId, Algorithm algorithm) throws TasteException {
+        Recommender algorithmRecommender = recommenders.get(algorithm);
+        if (algorithmRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        try {
+            return algorithmRecommender.estimatePreference(userId, productId);
+        } catch (NoSuchUserException | NoSuchItemException e) {
+            return Float.NaN;
+        }
+    }
+    
+    /**
+     * Recommends for every user in the data model and hands each list to the
+     * sink; see {@link #recommendBatch(long[], int, Algorithm, RecommendationSink, ForkJoinPool)}.
+     */
+    public void recommendAll(int numRecommendations, RecommendationSink sink) throws TasteException {
+        long[] userIds = new long[model.getNumUsers()];
+        LongPrimitiveIterator ids = model.getUserIDs();
+        for (int i = 0; ids.hasNext(); i++) {
+            userIds[i] = ids.nextLong();
+        }
+        recommendBatch(userIds, numRecommendations, config.getAlgorithm(), sink, ForkJoinPool.commonPool());
+    }
+    
+    public void recommendBatch(long[] userIds, int numRecommendations, RecommendationSink sink) 
+            throws TasteException {
+        recommendBatch(userIds, numRecommendations, config.getAlgorithm(), sink, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Recommends for many users at once, split into blocks across the pool.
+     * Results are streamed to the sink as each user finishes, from the pool's
+     * threads and in no particular order. For user-based runs each worker
+     * memoizes the similarities of the user it is scoring, so the values found
+     * while building the neighborhood are reused when estimating every item.
+     */
+    public void recommendBatch(long[] userIds, int numRecommendations, Algorithm algorithm, 
+            RecommendationSink sink, ForkJoinPool pool) throws TasteException {
+        Recommender batchRecommender = recommenders.get(algorithm);
+        if (batchRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        if (algorithm == Algorithm.USER_BASED && userNeighbors == null) {
+            batchRecommender = newUserBasedRecommender(
+                new RowCachingUserSimilarity(userSimilarity, storeModel.getStore()));
+        }
+        pool.invoke(new BatchTask(batchRecommender, algorithm, userIds, numRecommendations, sink, 0, userIds.length));
+    }
+    
+    private List<ProductRecommendation> recommend(Recommender algorithmRecommender, Algorithm algorithm, 
+            long userId, int numRecommendations, ProductFilter filter) {
+        List<ProductRecommendation> recommendations;
+        metrics.increment(Counter.REQUESTS);
         
         try {
-            List<RecommendedItem> items = recommender.recommend(userId, numRecommendations);
-            
-            for (RecommendedItem item : items) {
-                Product product = productMap.get(item.getItemID());
-                if (product != null) {
-                    recommendations.add(new ProductRecommendation(
-                        product, 
-                        item.getValue(),
-                        "Collaborative Filtering"
-                    ));
-                }
-            }
+            recommendations = collect(algorithmRecommender, algorithm, userId, numRecommendations, filter);
+        } catch (NoSuchUserException e) {
+            // A user without ratings yet; expected, not an error
+            log.debug("No ratings for user {}", userId);
+            return fallback(userId, numRecommendations, filter);
         } catch (TasteException e) {
-            System.err.println("Error generating recommendations for user " + userId + ": " + e.getMessage());
-            // Return content-based recommendations as fallback
-            return getContentBasedRecommendations(userId, numRecommendations);
+            metrics.increment(Counter.FAILURES);
+            log.warn("Error generating recommendations for user {}", userId, e);
+            // Return popular products as fallback
+            return fallback(userId, numRecommendations, filter);
         }
         
-        return recommendations;
+        // Collaborative filtering found nothing, e.g. no neighbor rated anything new
+        return recommendations.isEmpty() ? fallback(userId, numRecommendations, filter) : recommendations;
     }
     
-    private List<ProductRecommendation> getContentBasedRecommendations(long userId, int numRecommendations) {
-        List<ProductRecommendation> recommendations = new ArrayList<>();
-        
-        // Simple content-based fallback - recommend popular products from different categories
-        List<Product> products = new ArrayList<>(productMap.values());
-        products.sort((p1, p2) -> p1.getName().compareTo(p2.getName()));
+    private List<ProductRecommendation> collect(Recommender algorithmRecommender, Algorithm algorithm, 
+            long userId, int numRecommendations, ProductFilter filter) throws TasteException {
+        Product[] products = candidateProducts.get(algorithm);
+        if (products != null) {
+            TopNScorer scorer = (TopNScorer) algorithmRecommender;
+            int u = scorer.userIndex(userId);
+            if (u < 0) {
+                throw new NoSuchUserException(userId);
+            }
+            if (filter != null) {
+                return scoreFiltered(scorer, products, algorithm, u, numRecommendations, filter);
+            }
+            RecommendationBuffer buffer = buffer(numRecommendations);
+            score(scorer, products, algorithm, u, numRecommendations, buffer);
+            return buffer.toList();
+        }
+        long start = System.nanoTime();
+        List<RecommendedItem> items = filter == null
+            ? algorithmRecommender.recommend(userId, numRecommendations)
+            : algorithmRecommender.recommend(userId, poolSize(numRecommendations, filter), rescorer(filter));
+        metrics.recordLatency(Stage.SCORING, System.nanoTime() - start);
+        List<ProductRecommendation> recommendations = new ArrayList<>(items.size());
+        for (RecommendedItem item : items) {
+            Product product = productMap.get(item.getItemID());
+            if (product != null) {
+                recommendations.add(new ProductRecommendation(product, item.getValue(), algorithm.getLabel()));
+            }
+        }
+        return filter == null ? recommendations : diversify(recommendations, numRecommendations, filter);
+    }
+    
+    private List<ProductRecommendation> scoreFiltered(TopNScorer scorer, Product[] products, Algorithm algorithm, 
+            int userIndex, int numRecommendations, ProductFilter filter) {
+        long start = System.nanoTime();
+        CatalogBitsets bitsets = candidateBitsets.get(algorithm);
+        TopKHeap heap = new TopKHeap(Math.min(poolSize(numRecommendations, filter), products.length));
+        scorer.topN(userIndex, heap, CatalogBitsets.rescorer(bitsets.allowed(filter)));
         
-        for (int i = 0; i < Math.min(numRecommendations, products.size()); i++) {
-            Product product = products.get(i);
-            recommendations.add(new ProductRecommendation(
-                product, 
-                3.5f + (float)(Math.random() * 1.5), // Random score between 3.5-5.0
-                "Content-Based (Fallback)"
-            ));
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        int count = heap.drainDescending(ids, scores);
+        int[] categories = new int[count];
+        for (int i = 0; i < count; i++) {
+            categories[i] = bitsets.category(ids[i]);
+        }
+        int picks = DiversityReranker.rerank(ids, scores, categories, count, numRecommendations, filter.getDiversity());
+        List<ProductRecommendation> recommendations = new ArrayList<>(picks);
+        for (int i = 0; i < picks; i++) {
+            // Allowed candidates always have a product
+            recommendations.add(new ProductRecommendation(products[ids[i]], scores[i], algorithm.getLabel()));
+        }
+        metrics.recordLatency(Stage.SCORING, System.nanoTime() - start);
+        return recommendations;
+    }
+    
+    // Diversity picks from a larger pool of top candidates
+    private static int poolSize(int numRecommendations, ProductFilter filter) {
+        return filter.getDiversity() > 0
+            ? (int) Math.min(Integer.MAX_VALUE, (long) numRecommendations * Math.max(1, filter.getCandidateMultiplier()))
+            : numRecommendations;
+    }
+    
+    private IDRescorer rescorer(ProductFilter filter) {
+        return new IDRescorer() {
+            @Override
+            public double rescore(long id, double originalScore) {
+                return originalScore;
+            }
+            
+            @Override
+            public boolean isFiltered(long id) {
+                return !filter.accepts(productMap.get(id));
+            }
+        };
+    }
+    
+    // MMR re-ranking of a list already in score order, for algorithms without candidate bitsets
+    private static List<ProductRecommendation> diversify(List<ProductRecommendation> recommendations, 
+            int numRecommendations, ProductFilter filter) {
+        int count = recommendations.size();
+        int[] ids = new int[count];
+        float[] scores = new float[count];
+        int[] categories = new int[count];
+        Map<String, Integer> categoryIds = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            ProductRecommendation recommendation = recommendations.get(i);
+            ids[i] = i;
+            scores[i] = recommendation.getScore();
+            categories[i] = categoryIds.computeIfAbsent(recommendation.getProduct().getCategory(), c -> categoryIds.size());
+        }
+        int picks = DiversityReranker.rerank(ids, scores, categories, count, numRecommendations, filter.getDiversity());
+        List<ProductRecommendation> reranked = new ArrayList<>(picks);
+        for (int i = 0; i < picks; i++) {
+            reranked.add(recommendations.get(ids[i]));
+        }
+        return reranked;
+    }
+    
+    private List<ProductRecommendation> fallback(long userId, int numRecommendations, ProductFilter filter) {
+        if (filter == null) {
+            return getFallbackRecommendations(userId, numRecommendations);
+        }
+        long start = System.nanoTime();
+        List<ProductRecommendation> recommendations = popularity.recommend(userId, numRecommendations, filter::accepts);
+        metrics.increment(Counter.FALLBACKS);
+        metrics.recordLatency(Stage.FALLBACK, System.nanoTime() - start);
+        return recommendations;
+    }
+    
+    /**
+     * Fills the buffer with the same recommendations as
+     * {@link #getRecommendations(long, int, Algorithm)} and returns how many
+     * there are. For algorithms served from primitive models (the item and
+     * user neighbor indexes, factorization and content-based) candidates are
+     * scored into reused per-thread arrays, selected with the buffer's heap
+     * and mapped to products through a dense array, so once warmed up a call
+     * allocates nothing. Other algorithms and the fallback are copied in
+     * from the list-based path.
+     *
+     * @throws IllegalArgumentException if the buffer holds fewer than {@code numRecommendations}
+     */
+    public int recommendInto(long userId, int numRecommendations, Algorithm algorithm, RecommendationBuffer buffer) 
+            throws TasteException {
+        if (numRecommendations > buffer.capacity()) {
+            throw new IllegalArgumentException(
+                "Buffer holds " + buffer.capacity() + " recommendations, " + numRecommendations + " requested");
+        }
+        Recommender algorithmRecommender = recommenders.get(algorithm);
+        if (algorithmRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        Product[] products = candidateProducts.get(algorithm);
+        if (products == null) {
+            buffer.fill(recommend(algorithmRecommender, algorithm, userId, numRecommendations, null));
+            return buffer.size();
         }
         
+        metrics.increment(Counter.REQUESTS);
+        TopNScorer scorer = (TopNScorer) algorithmRecommender;
+        int u = scorer.userIndex(userId);
+        if (u >= 0 && score(scorer, products, algorithm, u, numRecommendations, buffer) > 0) {
+            return buffer.size();
+        }
+        buffer.fill(getFallbackRecommendations(userId, numRecommendations));
+        return buffer.size();
+    }
+    
+    private int score(TopNScorer scorer, Product[] products, Algorithm algorithm, int userIndex, 
+            int numRecommendations, RecommendationBuffer buffer) {
+        long start = System.nanoTime();
+        scorer.topN(userIndex, buffer.heap(numRecommendations));
+        buffer.drain(products, algorithm.getLabel());
+        metrics.recordLatency(Stage.SCORING, System.nanoTime() - start);
+        return buffer.size();
+    }
+    
+    // This thread's buffer, replaced by a larger one when a request needs more room
+    private RecommendationBuffer buffer(int numRecommendations) {
+        RecommendationBuffer buffer = BUFFERS.get();
+        if (buffer == null || buffer.capacity() < numRecommendations) {
+            buffer = new RecommendationBuffer(Math.max(numRecommendations, 16));
+            BUFFERS.set(buffer);
+        }
+        return buffer;
+    }
+    
+    /**
+     * One algorithm's own results, without the popularity fallback that
+     * {@link #getRecommendations(long, int, Algorithm)} substitutes: empty for
+     * users the ratings do not know and for users the algorithm finds nothing
+     * for. This is what offline evaluation should score.
+     */
+    public List<ProductRecommendation> candidates(Algorithm algorithm, long userId, int numRecommendations) 
+            throws TasteException {
+        Recommender algorithmRecommender = recommenders.get(algorithm);
+        if (algorithmRecommender == null) {
+            throw new IllegalStateException(algorithm + " recommendations are not enabled for this engine");
+        }
+        try {
+            return collect(algorithmRecommender, algorithm, userId, numRecommendations, null);
+        } catch (NoSuchUserException e) {
+            return new ArrayList<>();
+        }
+    }
+    
+    public boolean isEnabled(Algorithm algorithm) {
+        return recommenders.containsKey(algorithm);
+    }
+    
+    /**
+     * Blends the candidates of every enabled algorithm and the popularity
+     * ranking, generated concurrently on the executor within the configured
+     * time budget. Each recommendation's algorithm lists the sources that
+     * proposed it; see {@link HybridRecommender}.
+     */
+    public List<ProductRecommendation> getHybridRecommendations(long userId, int numRecommendations, 
+            HybridConfig hybridConfig, ExecutorService executor) {
+        return HybridRecommender.recommend(this, userId, numRecommendations, hybridConfig, executor);
+    }
+    
+    /**
+     * Cheap recommendations that do not depend on the user's neighborhood; used
+     * when collaborative filtering fails or a caller runs out of time. Returns
+     * the best-rated products the user has not rated yet.
+     */
+    public List<ProductRecommendation> getFallbackRecommendations(long userId, int numRecommendations) {
+        long start = System.nanoTime();
+        List<ProductRecommendation> recommendations = popularity.recommend(userId, numRecommendations);
+        metrics.increment(Counter.FALLBACKS);
+        metrics.recordLatency(Stage.FALLBACK, System.nanoTime() - start);
         return recommendations;
     }
     
+    /** Best-rated products of one category that the user has not rated yet. */
+    public List<ProductRecommendation> getPopularRecommendations(long userId, int numRecommendations, String category) {
+        return popularity.recommend(userId, numRecommendations, category);
+    }
+    
+    /** The user similarity cache, or null if it is disabled. */
+    public UserSimilarityCache getSimilarityCache() {
+        return similarityCache;
+    }
+    
+    /** The precomputed user neighbors, or null if the index is disabled. */
+    public UserNeighborIndex getUserNeighborIndex() {
+        return userNeighbors;
+    }
+    
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PopularityIndex getPopularityIndex() {
+        return popularity;
+    }
+    
+    /**
+     * Identifies this engine's catalog: every engine built from a product list
+     * and every {@link #withProducts} result gets a new version, while
+     * {@link #withChanges} keeps its base's. Products are expected to change
+     * only through {@code withProducts}, so anything derived from a product
+     * can be cached under its id and this version.
+     */
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+    
+    /** The product text index, or null when content-based recommendations are not enabled. */
+    public ProductTextIndex getContentIndex() {
+        return contentIndex;
+    }
+    
     public double getUserSimilarity(long userId1, long userId2) throws TasteException {
         try {
-            UserSimilarity similarity = new PearsonCorrelationSimilarity(recommender.getDataModel());
-            return similarity.userSimilarity(userId1, userId2);
+            return userSimilarity.userSimilarity(userId1, userId2);
         } catch (TasteException e) {
             return 0.0; // Return 0 if similarity cannot be calculated
         }
     }
     
+    private final class BatchTask extends RecursiveAction {
+        private static final int BLOCK_SIZE = 64;
+        
+        private final Recommender batchRecommender;
+        private final Algorithm algorithm;
+        private final long[] userIds;
+        private final int numRecommendations;
+        private final RecommendationSink sink;
+        private final int from;
+        private final int to;
+        
+        BatchTask(Recommender batchRecommender, Algorithm algorithm, long[] userIds, int numRecommendations, 
+                  RecommendationSink sink, int from, int to) {
+            this.batchRecommender = batchRecommender;
+            this.algorithm = algorithm;
+            this.userIds = userIds;
+            this.numRecommendations = numRecommendations;
+            this.sink = sink;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > BLOCK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new BatchTask(batchRecommender, algorithm, userIds, numRecommendations, sink, from, mid),
+                    new BatchTask(batchRecommender, algorithm, userIds, numRecommendations, sink, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Interrupts.check();
+                long userId = userIds[i];
+                sink.accept(userId, recommend(batchRecommender, algorithm, userId, numRecommendations, null));
+            }
+        }
+    }
+    
     public static class ProductRecommendation {
         private Product product;
         private float score;
@@ -134,4 +822,64 @@ public class RecommendationEngine {
                 product.getName(), score, algorithm);
         }
     }
+    
+    /** Models read back from a saved model file; null where the file has none or its settings differ. */
+    private static final class SavedModel {
+        UserNeighborIndex userNeighbors;
+        ItemSimilarityIndex itemNeighbors;
+        FactorModel factors;
+        
+        static SavedModel read(Path file, RatingStore store, EngineConfig config) throws IOException {
+            ModelFile in = ModelFile.open(file);
+            ModelFile.Section ids = in.section(ID_MAP);
+            int numUsers = ids.getInt();
+            int numItems = ids.getInt();
+            if (numUsers != store.numUsers() || numItems != store.numItems() 
+                    || !matches(ids.getLongs(numUsers), store::userId) 
+                    || !matches(ids.getLongs(numItems), store::itemId)
+                    // Same users and items can still have changed ratings
+                    || ids.getInt() != store.numRatings() || ids.getLong() != store.fingerprint()) {
+                throw new IOException("Model file was saved for different ratings: " + file);
+            }
+            
+            SavedModel saved = new SavedModel();
+            if (in.has(USER_NEIGHBORS)) {
+                ModelFile.Section section = in.section(USER_NEIGHBORS);
+                double threshold = section.getDouble();
+                UserNeighborIndex index = UserNeighborIndex.read(section);
+                if (threshold == config.getUserSimilarityThreshold() && index.k() == config.getUserNeighbors()) {
+                    saved.userNeighbors = index;
+                }
+            }
+            if (in.has(ITEM_NEIGHBORS)) {
+                ItemSimilarityIndex index = ItemSimilarityIndex.read(in.section(ITEM_NEIGHBORS));
+                if (index.k() == config.getItemNeighbors()) {
+                    saved.itemNeighbors = index;
+                }
+            }
+            if (in.has(FACTORS)) {
+                ModelFile.Section section = in.section(FACTORS);
+                int iterations = section.getInt();
+                double lambda = section.getDouble();
+                long seed = section.getLong();
+                FactorModel factors = FactorModel.read(section);
+                if (factors.rank() == config.getFactorRank() && iterations == config.getAlsIterations() 
+                        && lambda == config.getAlsLambda() && seed == config.getSeed()) {
+                    saved.factors = factors;
+                }
+            }
+            log.debug("Loaded saved models from {}: user neighbors {}, item neighbors {}, factors {}", file, 
+                saved.userNeighbors != null, saved.itemNeighbors != null, saved.factors != null);
+            return saved;
+        }
+        
+        private static boolean matches(long[] ids, IntToLongFunction expected) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != expected.applyAsLong(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
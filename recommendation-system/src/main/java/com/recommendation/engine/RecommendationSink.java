@@ -0,0 +1,42 @@
+package com.recommendation.engine;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Receives the results of a batch run one user at a time. Batch runs call it
+ * from several threads at once, so implementations must be thread-safe.
+ */
+@FunctionalInterface
+public interface RecommendationSink {
+
+    void accept(long userId, List<ProductRecommendation> recommendations);
+
+    /**
+     * Writes one {@code userId,productId,score,rank} line per recommendation.
+     * Lines of one user are written together; the writer is not closed.
+     */
+    static RecommendationSink csv(Writer writer) {
+        return (userId, recommendations) -> {
+            StringBuilder lines = new StringBuilder(recommendations.size() * 32);
+            for (int rank = 0; rank < recommendations.size(); rank++) {
+                ProductRecommendation recommendation = recommendations.get(rank);
+                lines.append(userId).append(',')
+                    .append(recommendation.getProduct().getProductId()).append(',')
+                    .append(recommendation.getScore()).append(',')
+                    .append(rank + 1).append('\n');
+            }
+            synchronized (writer) {
+                try {
+                    writer.write(lines.toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
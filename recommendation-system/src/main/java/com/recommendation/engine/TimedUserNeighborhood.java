@@ -0,0 +1,37 @@
+package com.recommendation.engine;
+
+import com.recommendation.metrics.EngineMetrics;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+
+import java.util.Collection;
+
+/**
+ * Records the latency of every neighborhood lookup as the
+ * {@link EngineMetrics.Stage#NEIGHBORHOOD} stage.
+ */
+final class TimedUserNeighborhood implements UserNeighborhood {
+    private final UserNeighborhood delegate;
+    private final EngineMetrics metrics;
+
+    TimedUserNeighborhood(UserNeighborhood delegate, EngineMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long[] getUserNeighborhood(long userID) throws TasteException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUserNeighborhood(userID);
+        } finally {
+            metrics.recordLatency(EngineMetrics.Stage.NEIGHBORHOOD, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        delegate.refresh(alreadyRefreshed);
+    }
+}
@@ -0,0 +1,207 @@
+package com.recommendation.engine;
+
+import com.recommendation.similarity.UserNeighborIndex;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.CandidateRescorer;
+import com.recommendation.util.Interrupts;
+import com.recommendation.util.TopKHeap;
+import com.recommendation.util.TopNScorer;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * User-based recommender that serves from a precomputed {@link UserNeighborIndex}.
+ *
+ * A request only aggregates the ratings of the user's stored neighbors: each
+ * item's estimate is the similarity-weighted average of the neighbors'
+ * ratings, as in Mahout's {@code GenericUserBasedRecommender}, including its
+ * rule that an item needs at least two rating neighbors and its capping to
+ * the rating scale. The cost is O(K x neighborRatings), with no similarity
+ * computed at query time.
+ */
+public class UserNeighborRecommender extends AbstractRecommender implements TopNScorer {
+    // One per thread for all instances, so engine swaps do not leave old accumulators pinned to pool threads
+    private static final ThreadLocal<Accumulator> ACCUMULATORS = new ThreadLocal<>();
+
+    private final RatingStore store;
+    private final UserNeighborIndex index;
+
+    public UserNeighborRecommender(RatingStoreDataModel model, UserNeighborIndex index) {
+        super(model);
+        this.store = model.getStore();
+        this.index = index;
+    }
+
+    public UserNeighborIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer, boolean includeKnownItems)
+            throws TasteException {
+        int u = requireUser(userID);
+        TopKHeap heap = new TopKHeap(howMany);
+        score(u, heap, CandidateRescorer.of(rescorer, this), includeKnownItems);
+
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        int count = heap.drainDescending(ids, scores);
+        List<RecommendedItem> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new GenericRecommendedItem(store.itemId(ids[i]), scores[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public int numCandidates() {
+        return store.numItems();
+    }
+
+    @Override
+    public long candidateId(int candidate) {
+        return store.itemId(candidate);
+    }
+
+    @Override
+    public int userIndex(long userId) {
+        return store.userIndex(userId);
+    }
+
+    @Override
+    public void topN(int userIndex, TopKHeap heap, CandidateRescorer rescorer) {
+        score(userIndex, heap, rescorer, false);
+    }
+
+    private void score(int u, TopKHeap heap, CandidateRescorer rescorer, boolean includeKnownItems) {
+        Accumulator acc = accumulator();
+        int touchedCount = 0;
+        try {
+            for (int n = 0, neighbors = index.neighborCount(u); n < neighbors; n++) {
+                Interrupts.check();
+                int v = index.neighbor(u, n);
+                double similarity = index.similarity(u, n);
+                for (int p = store.userStart(v), end = store.userEnd(v); p < end; p++) {
+                    int item = store.itemAt(p);
+                    if (acc.counts[item]++ == 0) {
+                        acc.touched[touchedCount++] = item;
+                    }
+                    acc.sums[item] += similarity * store.userRatingAt(p);
+                    acc.weights[item] += similarity;
+                }
+            }
+        } catch (CancellationException e) {
+            acc.clear(touchedCount);
+            throw e;
+        }
+
+        for (int t = 0; t < touchedCount; t++) {
+            int item = acc.touched[t];
+            float score = acc.counts[item] > 1 ? cap((float) (acc.sums[item] / acc.weights[item])) : Float.NaN;
+            acc.sums[item] = 0.0;
+            acc.weights[item] = 0.0;
+            acc.counts[item] = 0;
+            if (Float.isNaN(score) || (!includeKnownItems && store.find(u, item) >= 0)) {
+                continue;
+            }
+            if (rescorer != null) {
+                if (rescorer.isFiltered(item)) {
+                    continue;
+                }
+                score = rescorer.rescore(item, score);
+            }
+            if (!Float.isNaN(score)) {
+                heap.offer(item, score);
+            }
+        }
+    }
+
+    @Override
+    public float estimatePreference(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int item = store.itemIndex(itemID);
+        if (item < 0) {
+            return Float.NaN;
+        }
+        float known = store.rating(u, item);
+        if (!Float.isNaN(known)) {
+            return known;
+        }
+        double sum = 0;
+        double weight = 0;
+        int count = 0;
+        for (int n = 0, neighbors = index.neighborCount(u); n < neighbors; n++) {
+            float rating = store.rating(index.neighbor(u, n), item);
+            if (!Float.isNaN(rating)) {
+                float similarity = index.similarity(u, n);
+                sum += similarity * rating;
+                weight += similarity;
+                count++;
+            }
+        }
+        return count > 1 ? cap((float) (sum / weight)) : Float.NaN;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // The index is immutable; a new snapshot means a new recommender
+    }
+
+    private float cap(float estimate) {
+        return Math.max(store.minRating(), Math.min(store.maxRating(), estimate));
+    }
+
+    private int requireUser(long userID) throws NoSuchUserException {
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        return u;
+    }
+
+    // This thread's accumulator, replaced only when an engine over a different number of items uses it
+    private Accumulator accumulator() {
+        Accumulator acc = ACCUMULATORS.get();
+        if (acc == null || acc.touched.length != store.numItems()) {
+            acc = new Accumulator(store.numItems());
+            ACCUMULATORS.set(acc);
+        }
+        return acc;
+    }
+
+    /** Per-thread sparse score accumulator; left zeroed between requests. */
+    private static final class Accumulator {
+        final double[] sums;
+        final double[] weights;
+        final int[] counts;
+        final int[] touched;
+
+        Accumulator(int numItems) {
+            this.sums = new double[numItems];
+            this.weights = new double[numItems];
+            this.counts = new int[numItems];
+            this.touched = new int[numItems];
+        }
+
+        // Zeroes what an abandoned request left behind
+        void clear(int touchedCount) {
+            for (int t = 0; t < touchedCount; t++) {
+                int item = touched[t];
+                sums[item] = 0.0;
+                weights[item] = 0.0;
+                counts[item] = 0;
+            }
+        }
+    }
+}
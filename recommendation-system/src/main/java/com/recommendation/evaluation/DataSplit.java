@@ -0,0 +1,91 @@
+package com.recommendation.evaluation;
+
+import com.recommendation.model.Rating;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Ratings divided into a training set the engine is built from and a test
+ * set it is scored against.
+ */
+public final class DataSplit {
+    private final List<Rating> training;
+    private final List<Rating> test;
+
+    public DataSplit(List<Rating> training, List<Rating> test) {
+        this.training = Collections.unmodifiableList(training);
+        this.test = Collections.unmodifiableList(test);
+    }
+
+    /**
+     * Holds out each user's most recent ratings by {@link Rating#getTimestamp()},
+     * about {@code testFraction} of them, so the engine is asked to predict
+     * what users rated after the data it was built from. Every user keeps at
+     * least one training rating; users with a single rating are not tested.
+     */
+    public static DataSplit temporal(List<Rating> ratings, double testFraction) {
+        checkFraction(testFraction);
+        List<Rating> training = new ArrayList<>();
+        List<Rating> test = new ArrayList<>();
+        Comparator<Rating> byTime = Comparator.comparingLong(Rating::getTimestamp);
+        for (List<Rating> userRatings : byUser(ratings).values()) {
+            userRatings.sort(byTime);
+            holdOutTail(userRatings, testFraction, training, test);
+        }
+        return new DataSplit(training, test);
+    }
+
+    /**
+     * Holds out a seeded random {@code testFraction} of each user's ratings.
+     * Every user keeps at least one training rating.
+     */
+    public static DataSplit random(List<Rating> ratings, double testFraction, long seed) {
+        checkFraction(testFraction);
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Rating> training = new ArrayList<>();
+        List<Rating> test = new ArrayList<>();
+        for (List<Rating> userRatings : byUser(ratings).values()) {
+            for (int i = userRatings.size() - 1; i > 0; i--) {
+                Collections.swap(userRatings, i, random.nextInt(i + 1));
+            }
+            holdOutTail(userRatings, testFraction, training, test);
+        }
+        return new DataSplit(training, test);
+    }
+
+    public List<Rating> getTraining() { return training; }
+    public List<Rating> getTest() { return test; }
+
+    private static Map<Long, List<Rating>> byUser(List<Rating> ratings) {
+        Map<Long, List<Rating>> byUser = new LinkedHashMap<>();
+        for (Rating rating : ratings) {
+            byUser.computeIfAbsent(rating.getUserId(), id -> new ArrayList<>()).add(rating);
+        }
+        return byUser;
+    }
+
+    private static void holdOutTail(List<Rating> userRatings, double testFraction, List<Rating> training,
+                                    List<Rating> test) {
+        int held = Math.min(userRatings.size() - 1, (int) Math.round(userRatings.size() * testFraction));
+        int cut = userRatings.size() - held;
+        training.addAll(userRatings.subList(0, cut));
+        test.addAll(userRatings.subList(cut, userRatings.size()));
+    }
+
+    private static void checkFraction(double testFraction) {
+        if (!(testFraction > 0 && testFraction < 1)) {
+            throw new IllegalArgumentException("Test fraction must be between 0 and 1: " + testFraction);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DataSplit{training=" + training.size() + ", test=" + test.size() + '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.recommendation.evaluation;
+
+import java.util.Locale;
+
+/**
+ * Quality and speed of one engine configuration on a {@link DataSplit}.
+ *
+ * Rating accuracy (RMSE, MAE) covers the test ratings the algorithm could
+ * estimate; {@link #getCoverage()} is their share. Ranking quality
+ * (precision, recall and NDCG at K) is averaged over test users with at
+ * least one relevant held-out rating, scoring the algorithm's own list
+ * without the popularity fallback; users it recommends nothing for score
+ * zero, and {@link #getFallbackRate()} is their share.
+ */
+public final class EvaluationResult {
+    private final String name;
+    private final double rmse;
+    private final double mae;
+    private final double coverage;
+    private final double precision;
+    private final double recall;
+    private final double ndcg;
+    private final double fallbackRate;
+    private final int k;
+    private final int users;
+    private final long buildMillis;
+    private final double meanLatencyMicros;
+    private final double p99LatencyMicros;
+
+    EvaluationResult(String name, double rmse, double mae, double coverage, double precision, double recall,
+                     double ndcg, double fallbackRate, int k, int users, long buildMillis, double meanLatencyMicros,
+                     double p99LatencyMicros) {
+        this.name = name;
+        this.rmse = rmse;
+        this.mae = mae;
+        this.coverage = coverage;
+        this.precision = precision;
+        this.recall = recall;
+        this.ndcg = ndcg;
+        this.fallbackRate = fallbackRate;
+        this.k = k;
+        this.users = users;
+        this.buildMillis = buildMillis;
+        this.meanLatencyMicros = meanLatencyMicros;
+        this.p99LatencyMicros = p99LatencyMicros;
+    }
+
+    public String getName() { return name; }
+
+    /** Root mean squared error of the estimated test ratings; NaN if none could be estimated. */
+    public double getRmse() { return rmse; }
+
+    /** Mean absolute error of the estimated test ratings; NaN if none could be estimated. */
+    public double getMae() { return mae; }
+
+    /** Fraction of test ratings the algorithm could estimate. */
+    public double getCoverage() { return coverage; }
+
+    public double getPrecision() { return precision; }
+    public double getRecall() { return recall; }
+    public double getNdcg() { return ndcg; }
+
+    /**
+     * Fraction of ranking users the algorithm recommended nothing for, who
+     * would be served the popularity fallback instead.
+     */
+    public double getFallbackRate() { return fallbackRate; }
+
+    /** Length of the recommendation lists the ranking metrics are taken at. */
+    public int getK() { return k; }
+
+    /** Number of users the ranking metrics are averaged over. */
+    public int getUsers() { return users; }
+
+    /** Wall-clock time to construct the engine from the training ratings. */
+    public long getBuildMillis() { return buildMillis; }
+
+    public double getMeanLatencyMicros() { return meanLatencyMicros; }
+    public double getP99LatencyMicros() { return p99LatencyMicros; }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "%-24s rmse %.4f  mae %.4f  coverage %.3f  P@%d %.4f  R@%d %.4f  NDCG@%d %.4f  fallback %.3f  "
+                + "users %d  build %d ms  query mean %.1f us  p99 %.1f us",
+            name, rmse, mae, coverage, k, precision, k, recall, k, ndcg, fallbackRate,
+            users, buildMillis, meanLatencyMicros, p99LatencyMicros);
+    }
+}
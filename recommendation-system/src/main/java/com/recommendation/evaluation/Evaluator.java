@@ -0,0 +1,203 @@
+package com.recommendation.evaluation;
+
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.metrics.LatencyHistogram;
+import com.recommendation.model.Product;
+import com.recommendation.model.Rating;
+import com.recommendation.model.User;
+import com.recommendation.store.RatingStore;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline evaluation of engine configurations on one {@link DataSplit}.
+ *
+ * The training ratings are loaded into a {@link RatingStore} once and shared
+ * by every engine built from it. Each configuration is built, asked to
+ * estimate every test rating and to recommend {@code k} products to every
+ * test user; see {@link EvaluationResult} for what is reported. A test
+ * rating at or above the relevance threshold marks the product as one the
+ * user should have been recommended. Ranking metrics score the algorithm's
+ * own list from {@link RecommendationEngine#candidates}, not the popularity
+ * fallback the engine serves when that list is empty, so a configuration
+ * cannot look better by finding nothing; how often it found nothing is
+ * reported next to them.
+ *
+ * {@link #evaluateAll(Map, ExecutorService)} evaluates configurations
+ * concurrently, one per task. Build times and latencies then include
+ * contention from the other evaluations; compare them between
+ * configurations of the same run, or pass a single-threaded executor for
+ * isolated timings.
+ */
+public class Evaluator {
+    private final List<User> users;
+    private final List<Product> products;
+    private final RatingStore training;
+    private final List<Rating> test;
+    private final Map<Long, Set<Long>> relevantByUser = new LinkedHashMap<>();
+    private final int k;
+
+    public Evaluator(List<User> users, List<Product> products, DataSplit split, int k, float relevantRating) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.users = users;
+        this.products = products;
+        this.training = RatingStore.of(split.getTraining());
+        this.test = split.getTest();
+        this.k = k;
+        for (Rating rating : test) {
+            if (rating.getRating() >= relevantRating) {
+                relevantByUser.computeIfAbsent(rating.getUserId(), id -> new HashSet<>()).add(rating.getProductId());
+            }
+        }
+    }
+
+    public int getK() { return k; }
+
+    /** Builds an engine with the configuration and scores its configured algorithm. */
+    public EvaluationResult evaluate(String name, EngineConfig config) throws TasteException {
+        Algorithm algorithm = config.getAlgorithm();
+        long start = System.nanoTime();
+        RecommendationEngine engine = new RecommendationEngine(users, products, training, config);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        double squaredError = 0;
+        double absoluteError = 0;
+        int estimated = 0;
+        for (Rating rating : test) {
+            float estimate = engine.estimatePreference(rating.getUserId(), rating.getProductId(), algorithm);
+            if (!Float.isNaN(estimate)) {
+                double error = estimate - rating.getRating();
+                squaredError += error * error;
+                absoluteError += Math.abs(error);
+                estimated++;
+            }
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        double precision = 0;
+        double recall = 0;
+        double ndcg = 0;
+        int empty = 0;
+        List<Long> ranked = new ArrayList<>(k);
+        for (Map.Entry<Long, Set<Long>> entry : relevantByUser.entrySet()) {
+            long queryStart = System.nanoTime();
+            List<ProductRecommendation> recommendations = engine.candidates(algorithm, entry.getKey(), k);
+            latency.record(System.nanoTime() - queryStart);
+            if (recommendations.isEmpty()) {
+                // The engine would serve the popularity fallback; that is not this algorithm's ranking
+                empty++;
+            }
+
+            ranked.clear();
+            for (ProductRecommendation recommendation : recommendations) {
+                ranked.add(recommendation.getProduct().getProductId());
+            }
+            Set<Long> relevant = entry.getValue();
+            int hits = hits(ranked, relevant, k);
+            precision += (double) hits / k;
+            recall += (double) hits / relevant.size();
+            ndcg += ndcg(ranked, relevant, k);
+        }
+        int queried = relevantByUser.size();
+        return new EvaluationResult(name,
+            estimated == 0 ? Double.NaN : Math.sqrt(squaredError / estimated),
+            estimated == 0 ? Double.NaN : absoluteError / estimated,
+            test.isEmpty() ? 0 : (double) estimated / test.size(),
+            queried == 0 ? 0 : precision / queried,
+            queried == 0 ? 0 : recall / queried,
+            queried == 0 ? 0 : ndcg / queried,
+            queried == 0 ? 0 : (double) empty / queried,
+            k, queried, buildMillis,
+            latency.mean() / 1_000.0, latency.percentile(99) / 1_000.0);
+    }
+
+    /** Evaluates the named configurations concurrently, one per processor; results keep the map's order. */
+    public List<EvaluationResult> evaluateAll(Map<String, EngineConfig> configs) throws TasteException {
+        int threads = Math.max(1, Math.min(configs.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return evaluateAll(configs, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Evaluates the named configurations as concurrent tasks on the executor; results keep the map's order. */
+    public List<EvaluationResult> evaluateAll(Map<String, EngineConfig> configs, ExecutorService executor)
+            throws TasteException {
+        List<Future<EvaluationResult>> futures = new ArrayList<>(configs.size());
+        for (Map.Entry<String, EngineConfig> entry : configs.entrySet()) {
+            futures.add(executor.submit(() -> evaluate(entry.getKey(), entry.getValue())));
+        }
+        List<EvaluationResult> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<EvaluationResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TasteException) {
+                throw (TasteException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new TasteException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TasteException(e);
+        } finally {
+            for (Future<EvaluationResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    static int hits(List<Long> ranked, Set<Long> relevant, int k) {
+        int hits = 0;
+        for (int i = 0; i < Math.min(k, ranked.size()); i++) {
+            if (relevant.contains(ranked.get(i))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /** Binary-relevance NDCG of the first {@code k} ranked products. */
+    static double ndcg(List<Long> ranked, Set<Long> relevant, int k) {
+        double dcg = 0;
+        for (int i = 0; i < Math.min(k, ranked.size()); i++) {
+            if (relevant.contains(ranked.get(i))) {
+                dcg += 1 / log2(i + 2);
+            }
+        }
+        double ideal = 0;
+        for (int i = 0; i < Math.min(k, relevant.size()); i++) {
+            ideal += 1 / log2(i + 2);
+        }
+        return ideal == 0 ? 0 : dcg / ideal;
+    }
+
+    private static double log2(int x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
@@ -0,0 +1,187 @@
+package com.recommendation.factorization;
+
+import com.recommendation.store.RatingStore;
+import com.recommendation.util.ScratchPool;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Alternating least squares for explicit ratings.
+ *
+ * Each half-iteration fixes one side's factors and solves an independent
+ * rank x rank ridge regression per user (or item), which parallelizes across
+ * cores without locking. Regularization is weighted by the number of ratings
+ * (ALS-WR), and ratings are modeled relative to the global mean.
+ */
+public final class AlsTrainer {
+    // Rows solved per task; each task borrows one solver for its whole block
+    private static final int BLOCK_SIZE = 64;
+
+    private final int rank;
+    private final int iterations;
+    private final double lambda;
+    private final long seed;
+
+    public AlsTrainer(int rank, int iterations, double lambda, long seed) {
+        if (rank <= 0) {
+            throw new IllegalArgumentException("rank must be positive: " + rank);
+        }
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+        this.rank = rank;
+        this.iterations = iterations;
+        this.lambda = lambda;
+        this.seed = seed;
+    }
+
+    public FactorModel train(RatingStore store) {
+        return train(store, ForkJoinPool.commonPool());
+    }
+
+    public FactorModel train(RatingStore store, ForkJoinPool pool) {
+        int numUsers = store.numUsers();
+        int numItems = store.numItems();
+        if ((long) Math.max(numUsers, numItems) * rank > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many factors for rank " + rank);
+        }
+
+        double sum = 0;
+        for (int p = 0, n = store.numRatings(); p < n; p++) {
+            sum += store.userRatingAt(p);
+        }
+        float mean = store.numRatings() == 0 ? 0.0f : (float) (sum / store.numRatings());
+
+        float[] userFactors = new float[numUsers * rank];
+        float[] itemFactors = new float[numItems * rank];
+        Random random = new Random(seed);
+        float scale = (float) (1.0 / Math.sqrt(rank));
+        for (int i = 0; i < itemFactors.length; i++) {
+            itemFactors[i] = (float) random.nextGaussian() * scale * 0.1f;
+        }
+
+        ScratchPool<Solver> solvers = new ScratchPool<>(() -> new Solver(rank));
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solveRows(pool, numUsers, solvers,
+                (solver, u) -> solver.solveUser(store, u, mean, itemFactors, userFactors, lambda));
+            solveRows(pool, numItems, solvers,
+                (solver, i) -> solver.solveItem(store, i, mean, userFactors, itemFactors, lambda));
+        }
+        return new FactorModel(rank, mean, userFactors, itemFactors);
+    }
+
+    private static void solveRows(ForkJoinPool pool, int rows, ScratchPool<Solver> solvers, RowSolve row) {
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(b -> {
+            Solver solver = solvers.acquire();
+            for (int r = b * BLOCK_SIZE, end = Math.min(rows, r + BLOCK_SIZE); r < end; r++) {
+                row.solve(solver, r);
+            }
+            solvers.release(solver);
+        })).join();
+    }
+
+    private interface RowSolve {
+        void solve(Solver solver, int row);
+    }
+
+    /** Normal-equation buffers, used by one task at a time. */
+    private static final class Solver {
+        private final int rank;
+        private final double[] matrix;
+        private final double[] vector;
+
+        Solver(int rank) {
+            this.rank = rank;
+            this.matrix = new double[rank * rank];
+            this.vector = new double[rank];
+        }
+
+        void solveUser(RatingStore store, int u, float mean, float[] fixed, float[] target, double lambda) {
+            reset();
+            int start = store.userStart(u);
+            int end = store.userEnd(u);
+            for (int p = start; p < end; p++) {
+                accumulate(fixed, store.itemAt(p) * rank, store.userRatingAt(p) - mean);
+            }
+            solve(end - start, lambda, target, u * rank);
+        }
+
+        void solveItem(RatingStore store, int i, float mean, float[] fixed, float[] target, double lambda) {
+            reset();
+            int start = store.itemStart(i);
+            int end = store.itemEnd(i);
+            for (int p = start; p < end; p++) {
+                accumulate(fixed, store.userAt(p) * rank, store.itemRatingAt(p) - mean);
+            }
+            solve(end - start, lambda, target, i * rank);
+        }
+
+        private void reset() {
+            Arrays.fill(matrix, 0.0);
+            Arrays.fill(vector, 0.0);
+        }
+
+        // Adds y * y^T to the lower triangle and residual * y to the right-hand side
+        private void accumulate(float[] factors, int offset, float residual) {
+            for (int a = 0; a < rank; a++) {
+                double ya = factors[offset + a];
+                vector[a] += ya * residual;
+                int row = a * rank;
+                for (int b = 0; b <= a; b++) {
+                    matrix[row + b] += ya * factors[offset + b];
+                }
+            }
+        }
+
+        private void solve(int count, double lambda, float[] target, int targetOffset) {
+            if (count == 0) {
+                for (int a = 0; a < rank; a++) {
+                    target[targetOffset + a] = 0.0f;
+                }
+                return;
+            }
+            double ridge = lambda * count;
+            for (int a = 0; a < rank; a++) {
+                matrix[a * rank + a] += ridge;
+            }
+            // In-place Cholesky factorization of the lower triangle: A = L * L^T
+            for (int j = 0; j < rank; j++) {
+                double diagonal = matrix[j * rank + j];
+                for (int k = 0; k < j; k++) {
+                    diagonal -= matrix[j * rank + k] * matrix[j * rank + k];
+                }
+                diagonal = Math.sqrt(Math.max(diagonal, 1e-12));
+                matrix[j * rank + j] = diagonal;
+                for (int i = j + 1; i < rank; i++) {
+                    double value = matrix[i * rank + j];
+                    for (int k = 0; k < j; k++) {
+                        value -= matrix[i * rank + k] * matrix[j * rank + k];
+                    }
+                    matrix[i * rank + j] = value / diagonal;
+                }
+            }
+            // Forward substitution L * z = b, then back substitution L^T * x = z
+            for (int i = 0; i < rank; i++) {
+                double value = vector[i];
+                for (int k = 0; k < i; k++) {
+                    value -= matrix[i * rank + k] * vector[k];
+                }
+                vector[i] = value / matrix[i * rank + i];
+            }
+            for (int i = rank - 1; i >= 0; i--) {
+                double value = vector[i];
+                for (int k = i + 1; k < rank; k++) {
+                    value -= matrix[k * rank + i] * vector[k];
+                }
+                vector[i] = value / matrix[i * rank + i];
+            }
+            for (int a = 0; a < rank; a++) {
+                target[targetOffset + a] = (float) vector[a];
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.recommendation.factorization;
+
+import com.recommendation.store.ModelFile;
+
+import java.io.IOException;
+
+/**
+ * Latent factors learned by {@link AlsTrainer}.
+ *
+ * User and item factors live in flat row-major arrays: the factors of user
+ * {@code u} are {@code userFactors[u * rank, (u + 1) * rank)}, indexed the same
+ * way as the {@code RatingStore} they were trained on. Predictions are
+ * {@code globalMean + dot(user, item)}.
+ */
+public final class FactorModel {
+    private final int rank;
+    private final float globalMean;
+    private final float[] userFactors;
+    private final float[] itemFactors;
+
+    public FactorModel(int rank, float globalMean, float[] userFactors, float[] itemFactors) {
+        this.rank = rank;
+        this.globalMean = globalMean;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+    }
+
+    public int rank() { return rank; }
+    public float globalMean() { return globalMean; }
+    public int numUsers() { return userFactors.length / rank; }
+    public int numItems() { return itemFactors.length / rank; }
+
+    /** Copies the factors of a user into {@code out}, starting at {@code offset}. */
+    public void copyUserFactors(int userIndex, float[] out, int offset) {
+        System.arraycopy(userFactors, userIndex * rank, out, offset, rank);
+    }
+
+    /** Copies the factors of an item into {@code out}, starting at {@code offset}. */
+    public void copyItemFactors(int itemIndex, float[] out, int offset) {
+        System.arraycopy(itemFactors, itemIndex * rank, out, offset, rank);
+    }
+
+    /** Writes the model into the open section of {@code out}. */
+    public void write(ModelFile.Writer out) throws IOException {
+        out.putInt(rank).putFloat(globalMean).putInt(numUsers()).putInt(numItems())
+            .putFloats(userFactors).putFloats(itemFactors);
+    }
+
+    /** Reads a model written by {@link #write}. */
+    public static FactorModel read(ModelFile.Section in) throws IOException {
+        int rank = in.getInt();
+        float globalMean = in.getFloat();
+        int numUsers = in.getInt();
+        int numItems = in.getInt();
+        if (rank <= 0 || numUsers < 0 || numItems < 0
+                || (long) numUsers * rank > Integer.MAX_VALUE || (long) numItems * rank > Integer.MAX_VALUE) {
+            throw new IOException("Invalid factor model dimensions: rank " + rank + ", " + numUsers
+                + " users, " + numItems + " items");
+        }
+        float[] userFactors = in.getFloats(numUsers * rank);
+        float[] itemFactors = in.getFloats(numItems * rank);
+        return new FactorModel(rank, globalMean, userFactors, itemFactors);
+    }
+
+    public float predict(int userIndex, int itemIndex) {
+        return globalMean + dot(userFactors, userIndex * rank, itemFactors, itemIndex * rank, rank);
+    }
+
+    /**
+     * Scores every item for a user into {@code scores}, which must hold
+     * {@link #numItems()} entries.
+     */
+    public void scoreAll(int userIndex, float[] scores) {
+        int userOffset = userIndex * rank;
+        for (int i = 0, n = numItems(); i < n; i++) {
+            scores[i] = globalMean + dot(userFactors, userOffset, itemFactors, i * rank, rank);
+        }
+    }
+
+    /**
+     * Dot product with four independent accumulators, which breaks the
+     * floating-point dependency chain so the JIT can pipeline the multiplies.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0.0f;
+        float s1 = 0.0f;
+        float s2 = 0.0f;
+        float s3 = 0.0f;
+        int k = 0;
+        for (; k + 3 < length; k += 4) {
+            s0 += a[aOffset + k] * b[bOffset + k];
+            s1 += a[aOffset + k + 1] * b[bOffset + k + 1];
+            s2 += a[aOffset + k + 2] * b[bOffset + k + 2];
+            s3 += a[aOffset + k + 3] * b[bOffset + k + 3];
+        }
+        for (; k < length; k++) {
+            s0 += a[aOffset + k] * b[bOffset + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
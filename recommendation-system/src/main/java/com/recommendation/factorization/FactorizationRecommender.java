@@ -0,0 +1,145 @@
+package com.recommendation.factorization;
+
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.CandidateRescorer;
+import com.recommendation.util.Interrupts;
+import com.recommendation.util.TopKHeap;
+import com.recommendation.util.TopNScorer;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Mahout recommender over a trained {@link FactorModel}: scores every item
+ * with one dot product each and keeps the top N in a primitive heap.
+ */
+public class FactorizationRecommender extends AbstractRecommender implements TopNScorer {
+    // Items between interruption checks
+    private static final int CHECK_INTERVAL = 1 << 14;
+    // One per thread for all instances, so retraining does not leave old buffers pinned to pool threads
+    private static final ThreadLocal<float[]> SCORE_BUFFERS = new ThreadLocal<>();
+
+    private final RatingStore store;
+    private final FactorModel factors;
+
+    public FactorizationRecommender(RatingStoreDataModel model, FactorModel factors) {
+        super(model);
+        this.store = model.getStore();
+        this.factors = factors;
+    }
+
+    public FactorModel getFactors() {
+        return factors;
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer, boolean includeKnownItems)
+            throws TasteException {
+        int u = requireUser(userID);
+        TopKHeap heap = new TopKHeap(howMany);
+        score(u, heap, CandidateRescorer.of(rescorer, this), includeKnownItems);
+
+        int[] ids = new int[heap.size()];
+        float[] top = new float[heap.size()];
+        int count = heap.drainDescending(ids, top);
+        List<RecommendedItem> result = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            result.add(new GenericRecommendedItem(store.itemId(ids[k]), top[k]));
+        }
+        return result;
+    }
+
+    @Override
+    public int numCandidates() {
+        return factors.numItems();
+    }
+
+    @Override
+    public long candidateId(int candidate) {
+        return store.itemId(candidate);
+    }
+
+    @Override
+    public int userIndex(long userId) {
+        return store.userIndex(userId);
+    }
+
+    @Override
+    public void topN(int userIndex, TopKHeap heap, CandidateRescorer rescorer) {
+        score(userIndex, heap, rescorer, false);
+    }
+
+    private void score(int u, TopKHeap heap, CandidateRescorer rescorer, boolean includeKnownItems) {
+        float[] scores = SCORE_BUFFERS.get();
+        if (scores == null || scores.length != factors.numItems()) {
+            scores = new float[factors.numItems()];
+            SCORE_BUFFERS.set(scores);
+        }
+        if (rescorer == null) {
+            factors.scoreAll(u, scores);
+        }
+
+        // The user's rated items are sorted by index, so skipping them is a merge walk
+        int ratedPosition = store.userStart(u);
+        int ratedEnd = store.userEnd(u);
+        for (int i = 0; i < scores.length; i++) {
+            if ((i & (CHECK_INTERVAL - 1)) == 0) {
+                Interrupts.check();
+            }
+            if (!includeKnownItems) {
+                while (ratedPosition < ratedEnd && store.itemAt(ratedPosition) < i) {
+                    ratedPosition++;
+                }
+                if (ratedPosition < ratedEnd && store.itemAt(ratedPosition) == i) {
+                    continue;
+                }
+            }
+            float score;
+            if (rescorer != null) {
+                // Filtered items are skipped before their dot product
+                if (rescorer.isFiltered(i)) {
+                    continue;
+                }
+                score = rescorer.rescore(i, factors.predict(u, i));
+            } else {
+                score = scores[i];
+            }
+            if (score > heap.threshold()) {
+                heap.offer(i, score);
+            }
+        }
+    }
+
+    @Override
+    public float estimatePreference(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int item = store.itemIndex(itemID);
+        if (item < 0) {
+            return Float.NaN;
+        }
+        float known = store.rating(u, item);
+        return Float.isNaN(known) ? factors.predict(u, item) : known;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // Factors are immutable; retraining produces a new recommender
+    }
+
+    private int requireUser(long userID) throws NoSuchUserException {
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        return u;
+    }
+}
@@ -0,0 +1,163 @@
+package com.recommendation.filter;
+
+import com.recommendation.model.Product;
+import com.recommendation.util.CandidateRescorer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed bitsets over a dense candidate space: one per product category
+ * and one per price bucket. A {@link ProductFilter} is turned into a single
+ * bitset of allowed candidates with a few word-wide ANDs and ORs, after
+ * which checking a candidate is one bit test.
+ *
+ * Price buckets hold about equal numbers of products. Buckets entirely
+ * inside the requested range are OR-ed in whole; only the products of the
+ * two buckets the bounds fall into are compared against the exact price.
+ */
+public final class CatalogBitsets {
+    private static final int PRICE_BUCKETS = 16;
+
+    private final int size;
+    private final BitSet present = new BitSet();
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final BitSet[] byCategory;
+    private final int[] categoryOf;
+    private final double[] prices;
+    // Lowest price of each bucket, ascending
+    private final double[] bucketFloors;
+    private final BitSet[] byPriceBucket;
+
+    public CatalogBitsets(Product[] candidates) {
+        this.size = candidates.length;
+        this.categoryOf = new int[size];
+        this.prices = new double[size];
+        Map<String, BitSet> categories = new HashMap<>();
+        int priced = 0;
+        for (int c = 0; c < size; c++) {
+            Product product = candidates[c];
+            if (product == null) {
+                categoryOf[c] = -1;
+                prices[c] = Double.NaN;
+                continue;
+            }
+            present.set(c);
+            Integer id = categoryIds.computeIfAbsent(product.getCategory(), k -> categoryIds.size());
+            categoryOf[c] = id;
+            categories.computeIfAbsent(product.getCategory(), k -> new BitSet(size)).set(c);
+            prices[c] = product.getPrice();
+            priced++;
+        }
+        this.byCategory = new BitSet[categoryIds.size()];
+        categories.forEach((category, bits) -> byCategory[categoryIds.get(category)] = bits);
+
+        double[] sorted = new double[priced];
+        for (int c = present.nextSetBit(0), i = 0; c >= 0; c = present.nextSetBit(c + 1)) {
+            sorted[i++] = prices[c];
+        }
+        Arrays.sort(sorted);
+        this.bucketFloors = bucketFloors(sorted);
+        this.byPriceBucket = new BitSet[bucketFloors.length];
+        for (int b = 0; b < byPriceBucket.length; b++) {
+            byPriceBucket[b] = new BitSet(size);
+        }
+        for (int c = present.nextSetBit(0); c >= 0; c = present.nextSetBit(c + 1)) {
+            byPriceBucket[bucket(prices[c])].set(c);
+        }
+    }
+
+    // Distinct quantile boundaries, so equal prices always share a bucket
+    private static double[] bucketFloors(double[] sorted) {
+        if (sorted.length == 0) {
+            return new double[0];
+        }
+        double[] floors = new double[PRICE_BUCKETS];
+        int count = 0;
+        for (int b = 0; b < PRICE_BUCKETS; b++) {
+            double floor = sorted[(int) ((long) b * sorted.length / PRICE_BUCKETS)];
+            if (count == 0 || floor > floors[count - 1]) {
+                floors[count++] = floor;
+            }
+        }
+        return Arrays.copyOf(floors, count);
+    }
+
+    private int bucket(double price) {
+        int b = Arrays.binarySearch(bucketFloors, price);
+        return b >= 0 ? b : Math.max(0, -b - 2);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Dense id of a candidate's category, or -1 if the candidate has no product. */
+    public int category(int candidate) {
+        return categoryOf[candidate];
+    }
+
+    public int numCategories() {
+        return byCategory.length;
+    }
+
+    /** Dense id of a category, or -1 if no candidate has it. */
+    public int categoryId(String category) {
+        Integer id = categoryIds.get(category);
+        return id == null ? -1 : id;
+    }
+
+    /** Candidates whose product passes the filter's category and price rules. */
+    public BitSet allowed(ProductFilter filter) {
+        BitSet allowed = (BitSet) present.clone();
+        if (!filter.getCategories().isEmpty()) {
+            BitSet included = new BitSet(size);
+            for (String category : filter.getCategories()) {
+                Integer id = categoryIds.get(category);
+                if (id != null) {
+                    included.or(byCategory[id]);
+                }
+            }
+            allowed.and(included);
+        }
+        for (String category : filter.getExcludedCategories()) {
+            Integer id = categoryIds.get(category);
+            if (id != null) {
+                allowed.andNot(byCategory[id]);
+            }
+        }
+        if (filter.hasPriceRange()) {
+            allowed.and(priceRange(filter.getMinPrice(), filter.getMaxPrice()));
+        }
+        return allowed;
+    }
+
+    private BitSet priceRange(double min, double max) {
+        BitSet range = new BitSet(size);
+        if (bucketFloors.length == 0 || min > max) {
+            return range;
+        }
+        int low = bucket(min);
+        int high = bucket(max);
+        for (int b = low + 1; b < high; b++) {
+            range.or(byPriceBucket[b]);
+        }
+        // The bounds' own buckets may be partly outside the range
+        for (int b : low == high ? new int[] {low} : new int[] {low, high}) {
+            BitSet bucket = byPriceBucket[b];
+            for (int c = bucket.nextSetBit(0); c >= 0; c = bucket.nextSetBit(c + 1)) {
+                if (prices[c] >= min && prices[c] <= max) {
+                    range.set(c);
+                }
+            }
+        }
+        return range;
+    }
+
+    /** Rescorer that filters every candidate not in {@code allowed}. */
+    public static CandidateRescorer rescorer(BitSet allowed) {
+        return candidate -> !allowed.get(candidate);
+    }
+}
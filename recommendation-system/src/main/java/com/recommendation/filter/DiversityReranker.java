@@ -0,0 +1,73 @@
+package com.recommendation.filter;
+
+import java.util.BitSet;
+
+/**
+ * Maximal marginal relevance (MMR) re-ranking across product categories.
+ *
+ * Works on the candidates drained from a top-N heap, best first. Each pick
+ * maximizes {@code (1 - diversity) * relevance - diversity * redundancy},
+ * where relevance is the score rescaled to [0, 1] over the candidates and
+ * redundancy is 1 if a product of the same category was already picked.
+ * With diversity 0 the order is unchanged; with 1 every category is shown
+ * once before any repeats. Picks cost O(n x candidates) and allocate only
+ * a small bitset.
+ */
+public final class DiversityReranker {
+
+    private DiversityReranker() {
+    }
+
+    /**
+     * Reorders the first {@code count} entries of the parallel arrays in
+     * place so the first {@code min(n, count)} are the MMR picks in order,
+     * and returns how many that is. Scores are kept as they were; categories
+     * are dense ids, negative for none, which is never redundant.
+     */
+    public static int rerank(int[] ids, float[] scores, int[] categories, int count, int n, double diversity) {
+        int picks = Math.min(n, count);
+        if (diversity <= 0 || picks <= 1) {
+            return picks;
+        }
+        float best = Float.NEGATIVE_INFINITY;
+        float worst = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            best = Math.max(best, scores[i]);
+            worst = Math.min(worst, scores[i]);
+        }
+        double range = best - worst;
+        BitSet picked = new BitSet();
+        for (int position = 0; position < picks; position++) {
+            int choice = position;
+            double choiceValue = Double.NEGATIVE_INFINITY;
+            for (int i = position; i < count; i++) {
+                double relevance = range > 0 ? (scores[i] - worst) / range : 1.0;
+                boolean redundant = categories[i] >= 0 && picked.get(categories[i]);
+                double value = (1 - diversity) * relevance - (redundant ? diversity : 0.0);
+                // Strictly greater, so ties keep the higher-scored, earlier candidate
+                if (value > choiceValue) {
+                    choice = i;
+                    choiceValue = value;
+                }
+            }
+            moveTo(ids, scores, categories, choice, position);
+            if (categories[position] >= 0) {
+                picked.set(categories[position]);
+            }
+        }
+        return picks;
+    }
+
+    // Shifts the entries in between down by one, so the remaining candidates stay in score order
+    private static void moveTo(int[] ids, float[] scores, int[] categories, int from, int to) {
+        int id = ids[from];
+        float score = scores[from];
+        int category = categories[from];
+        System.arraycopy(ids, to, ids, to + 1, from - to);
+        System.arraycopy(scores, to, scores, to + 1, from - to);
+        System.arraycopy(categories, to, categories, to + 1, from - to);
+        ids[to] = id;
+        scores[to] = score;
+        categories[to] = category;
+    }
+}
@@ -0,0 +1,71 @@
+package com.recommendation.filter;
+
+import com.recommendation.model.Product;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Business rules for one recommendation request: which categories and
+ * price range are allowed, and how strongly to diversify the result across
+ * categories. Passed to
+ * {@link com.recommendation.engine.RecommendationEngine#getRecommendations(long, int,
+ * com.recommendation.engine.Algorithm, ProductFilter)}, which applies the
+ * rules inside candidate scoring instead of filtering an over-fetched list.
+ */
+public class ProductFilter {
+    private Set<String> categories = Collections.emptySet();
+    private Set<String> excludedCategories = Collections.emptySet();
+    private double minPrice = Double.NEGATIVE_INFINITY;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private double diversity = 0.0;
+    private int candidateMultiplier = 3;
+
+    // Getters and setters
+    /** Only products of these categories are recommended; empty allows every category. */
+    public Set<String> getCategories() { return categories; }
+    public void setCategories(Set<String> categories) { this.categories = new HashSet<>(categories); }
+
+    /** Products of these categories are never recommended. */
+    public Set<String> getExcludedCategories() { return excludedCategories; }
+    public void setExcludedCategories(Set<String> excludedCategories) { this.excludedCategories = new HashSet<>(excludedCategories); }
+
+    /** Inclusive lower price bound. */
+    public double getMinPrice() { return minPrice; }
+    public void setMinPrice(double minPrice) { this.minPrice = minPrice; }
+
+    /** Inclusive upper price bound. */
+    public double getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(double maxPrice) { this.maxPrice = maxPrice; }
+
+    /**
+     * Weight of category diversity against relevance in the MMR re-ranking,
+     * from 0 (rank by score only) to 1 (a new category always wins).
+     */
+    public double getDiversity() { return diversity; }
+    public void setDiversity(double diversity) { this.diversity = diversity; }
+
+    /** With diversity, the re-ranker picks from this many times the requested number of top candidates. */
+    public int getCandidateMultiplier() { return candidateMultiplier; }
+    public void setCandidateMultiplier(int candidateMultiplier) { this.candidateMultiplier = candidateMultiplier; }
+
+    boolean hasPriceRange() {
+        return minPrice > Double.NEGATIVE_INFINITY || maxPrice < Double.POSITIVE_INFINITY;
+    }
+
+    /** Whether the product passes the category and price rules. */
+    public boolean accepts(Product product) {
+        if (product == null) {
+            return false;
+        }
+        String category = product.getCategory();
+        if (!categories.isEmpty() && !categories.contains(category)) {
+            return false;
+        }
+        if (excludedCategories.contains(category)) {
+            return false;
+        }
+        return product.getPrice() >= minPrice && product.getPrice() <= maxPrice;
+    }
+}
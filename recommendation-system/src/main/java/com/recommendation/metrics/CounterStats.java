@@ -0,0 +1,39 @@
+package com.recommendation.metrics;
+
+import com.recommendation.metrics.EngineMetrics.Counter;
+
+public class CounterStats implements CounterStatsMBean {
+    private final HistogramMetrics metrics;
+
+    public CounterStats(HistogramMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long getRequests() { return metrics.count(Counter.REQUESTS); }
+
+    @Override
+    public long getFallbacks() { return metrics.count(Counter.FALLBACKS); }
+
+    @Override
+    public double getFallbackRate() { return ratio(getFallbacks(), getRequests()); }
+
+    @Override
+    public long getFailures() { return metrics.count(Counter.FAILURES); }
+
+    @Override
+    public long getCacheHits() { return metrics.count(Counter.CACHE_HITS); }
+
+    @Override
+    public long getCacheMisses() { return metrics.count(Counter.CACHE_MISSES); }
+
+    @Override
+    public double getCacheHitRate() { return ratio(getCacheHits(), getCacheHits() + getCacheMisses()); }
+
+    @Override
+    public long getDroppedGenerators() { return metrics.count(Counter.DROPPED_GENERATORS); }
+
+    private static double ratio(long part, long whole) {
+        return whole == 0 ? 0.0 : (double) part / whole;
+    }
+}
@@ -0,0 +1,23 @@
+package com.recommendation.metrics;
+
+/**
+ * JMX view of the engine's event counters.
+ */
+public interface CounterStatsMBean {
+    long getRequests();
+
+    long getFallbacks();
+
+    /** Fallbacks per request. */
+    double getFallbackRate();
+
+    long getFailures();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    long getDroppedGenerators();
+}
@@ -0,0 +1,49 @@
+package com.recommendation.metrics;
+
+/**
+ * Metrics SPI of the engine and serving layer. Implementations are called on
+ * request threads and must be thread-safe and cheap; {@link HistogramMetrics}
+ * is the built-in one, and other implementations can forward to whatever
+ * metrics system a deployment already uses.
+ */
+public interface EngineMetrics {
+    /** Does nothing; for callers that want no instrumentation at all. */
+    EngineMetrics NOOP = new EngineMetrics() {
+        @Override
+        public void recordLatency(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void increment(Counter counter) {
+        }
+    };
+
+    void recordLatency(Stage stage, long nanos);
+
+    void increment(Counter counter);
+
+    /** Timed stages. Build stages run once per engine snapshot, the others per request. */
+    enum Stage {
+        BUILD_STORE,
+        BUILD_POPULARITY,
+        BUILD_USER_INDEX,
+        BUILD_ITEM_INDEX,
+        BUILD_FACTORS,
+        BUILD_CONTENT_INDEX,
+        /** User neighborhood lookup, for user-based recommendations. */
+        NEIGHBORHOOD,
+        /** One algorithm's candidate scoring, including the neighborhood for user-based. */
+        SCORING,
+        FALLBACK,
+        HYBRID
+    }
+
+    enum Counter {
+        REQUESTS,
+        FALLBACKS,
+        FAILURES,
+        CACHE_HITS,
+        CACHE_MISSES,
+        DROPPED_GENERATORS
+    }
+}
@@ -0,0 +1,101 @@
+package com.recommendation.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link EngineMetrics}: one {@link LatencyHistogram} per stage and
+ * one striped counter per event, cheap enough to leave on in production.
+ * {@link #registerMBeans} exposes them over JMX as
+ * {@code com.recommendation:type=Engine,name=<name>,stage=<stage>} plus one
+ * counters bean.
+ */
+public class HistogramMetrics implements EngineMetrics {
+    private static final String DOMAIN = "com.recommendation";
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final List<ObjectName> registered = new ArrayList<>();
+    private MBeanServer server;
+    private volatile long startNanos = System.nanoTime();
+
+    public HistogramMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    @Override
+    public void recordLatency(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    @Override
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    public long count(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /** Seconds since creation or the last reset, the window that rates are computed over. */
+    public double elapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+        startNanos = System.nanoTime();
+    }
+
+    public void registerMBeans(String name) throws JMException {
+        registerMBeans(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    /**
+     * Registers one bean per stage and one for the counters, replacing beans
+     * of the same name and any this instance registered before.
+     */
+    public synchronized void registerMBeans(MBeanServer server, String name) throws JMException {
+        unregisterMBeans();
+        this.server = server;
+        String prefix = DOMAIN + ":type=Engine,name=" + ObjectName.quote(name);
+        for (Stage stage : Stage.values()) {
+            register(new ObjectName(prefix + ",stage=" + stage.name()), new StageStats(this, stage));
+        }
+        register(new ObjectName(prefix + ",stage=COUNTERS"), new CounterStats(this));
+    }
+
+    public synchronized void unregisterMBeans() throws JMException {
+        for (ObjectName objectName : registered) {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(ObjectName objectName, Object bean) throws JMException {
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(bean, objectName);
+        registered.add(objectName);
+    }
+}
@@ -0,0 +1,40 @@
+package com.recommendation.metrics;
+
+import com.recommendation.metrics.EngineMetrics.Stage;
+
+public class StageStats implements StageStatsMBean {
+    private final HistogramMetrics metrics;
+    private final LatencyHistogram histogram;
+
+    public StageStats(HistogramMetrics metrics, Stage stage) {
+        this.metrics = metrics;
+        this.histogram = metrics.histogram(stage);
+    }
+
+    @Override
+    public long getCount() { return histogram.count(); }
+
+    @Override
+    public double getRatePerSecond() { return histogram.count() / Math.max(1e-9, metrics.elapsedSeconds()); }
+
+    @Override
+    public double getMeanMicros() { return histogram.mean() / 1e3; }
+
+    @Override
+    public double getP50Micros() { return histogram.percentile(50) / 1e3; }
+
+    @Override
+    public double getP90Micros() { return histogram.percentile(90) / 1e3; }
+
+    @Override
+    public double getP99Micros() { return histogram.percentile(99) / 1e3; }
+
+    @Override
+    public double getP999Micros() { return histogram.percentile(99.9) / 1e3; }
+
+    @Override
+    public double getMaxMicros() { return histogram.max() / 1e3; }
+
+    @Override
+    public void reset() { histogram.reset(); }
+}
@@ -0,0 +1,24 @@
+package com.recommendation.metrics;
+
+/**
+ * JMX view of one stage's latency histogram. Latencies are in microseconds.
+ */
+public interface StageStatsMBean {
+    long getCount();
+
+    double getRatePerSecond();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
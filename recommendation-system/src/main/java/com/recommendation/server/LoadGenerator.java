@@ -0,0 +1,183 @@
+package com.recommendation.server;
+
+import com.recommendation.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for {@link RecommendationServer}: client threads send
+ * {@code /recommend} requests for random users and record every round trip.
+ * Fewer distinct users make identical concurrent requests, and so
+ * coalescing, more likely.
+ *
+ * Without a rate the load is closed-loop: each thread sends its next request
+ * as soon as the previous one returns, so the report shows the throughput
+ * the server sustains at that concurrency. Closed-loop latencies understate
+ * the tail, though, because a stalled server also stalls the clients and the
+ * requests they would have sent meanwhile are never measured (coordinated
+ * omission). With a rate the load is open-loop: requests are scheduled at
+ * fixed intervals regardless of responses, and each latency is measured from
+ * the time the request was due to be sent, so time spent waiting behind a
+ * slow response counts against the server just as it would for independent
+ * users.
+ *
+ * Usage: {@code LoadGenerator baseUrl [threads] [seconds] [users] [n] [rate]},
+ * e.g. {@code LoadGenerator http://localhost:8080 32 20 10000 10 2000}.
+ */
+public final class LoadGenerator {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private LoadGenerator() {
+    }
+
+    /** Outcome of one run. */
+    public static final class Report {
+        private final long requests;
+        private final long errors;
+        private final double seconds;
+        private final double rate;
+        private final LatencyHistogram latencies;
+
+        Report(long requests, long errors, double seconds, double rate, LatencyHistogram latencies) {
+            this.requests = requests;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.rate = rate;
+            this.latencies = latencies;
+        }
+
+        public long getRequests() { return requests; }
+        public long getErrors() { return errors; }
+        public double getSeconds() { return seconds; }
+        public double getThroughput() { return requests / seconds; }
+        /** Requests per second scheduled in open-loop mode, or 0 for a closed-loop run. */
+        public double getRate() { return rate; }
+        /**
+         * Latency in nanoseconds at the given percentile: the round trip in a
+         * closed-loop run, and the time from when the request was due to be
+         * sent until its response in an open-loop run.
+         */
+        public long getLatencyPercentile(double percent) { return latencies.percentile(percent); }
+        public long getMaxLatency() { return latencies.max(); }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests in %.1f s: %.0f req/s%s, %d errors, latency p50 %.2f ms, p90 %.2f ms, "
+                    + "p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                requests, seconds, getThroughput(),
+                rate > 0 ? String.format(" (%.0f scheduled)", rate) : " (closed loop)", errors,
+                latencies.percentile(50) / 1e6, latencies.percentile(90) / 1e6, latencies.percentile(99) / 1e6,
+                latencies.percentile(99.9) / 1e6, latencies.max() / 1e6);
+        }
+    }
+
+    /**
+     * Sends requests for users {@code 1..users} from {@code threads} closed-loop
+     * clients for the given time and reports the results.
+     */
+    public static Report run(URI baseUri, int threads, long durationMillis, int users, int n)
+            throws InterruptedException {
+        return run(baseUri, threads, durationMillis, users, n, 0);
+    }
+
+    /**
+     * Sends requests for users {@code 1..users} at {@code rate} requests per
+     * second in total, spread over {@code threads} clients, for the given
+     * time and reports the results. Each client owns every
+     * {@code threads}-th slot of the schedule; a client still waiting on a
+     * response when its next slot comes sends as soon as it can, and that
+     * request's latency includes the delay. A rate of 0 or less runs closed-loop.
+     */
+    public static Report run(URI baseUri, int threads, long durationMillis, int users, int n, double rate)
+            throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        double interval = rate > 0 ? 1e9 / rate : 0;
+
+        List<Thread> clients = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int firstSlot = t;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (long slot = firstSlot; ; slot += threads) {
+                    long sent;
+                    if (interval > 0) {
+                        // Due time on the fixed schedule, however late the previous response was
+                        sent = start + (long) (slot * interval);
+                        if (sent >= deadline) {
+                            break;
+                        }
+                        for (long wait = sent - System.nanoTime(); wait > 0; wait = sent - System.nanoTime()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        sent = System.nanoTime();
+                        if (sent >= deadline) {
+                            break;
+                        }
+                    }
+                    long userId = 1 + random.nextInt(users);
+                    HttpRequest request = HttpRequest.newBuilder(
+                            baseUri.resolve("/recommend?user=" + userId + "&n=" + n))
+                        .timeout(REQUEST_TIMEOUT)
+                        .GET()
+                        .build();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.increment();
+                        }
+                    } catch (IOException e) {
+                        errors.increment();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    latencies.record(System.nanoTime() - sent);
+                }
+            }, "load-client-" + t);
+            thread.setDaemon(true);
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Report(latencies.count(), errors.sum(), seconds, Math.max(rate, 0), latencies);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadGenerator baseUrl [threads] [seconds] [users] [n] [rate]");
+            System.exit(1);
+        }
+        URI baseUri = URI.create(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        int n = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        double rate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+        // Warm up the server's JIT and connections before measuring
+        run(baseUri, threads, Math.min(5_000, seconds * 200L), users, n, rate);
+        System.out.println(run(baseUri, threads, seconds * 1000L, users, n, rate));
+    }
+}
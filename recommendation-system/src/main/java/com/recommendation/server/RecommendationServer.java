@@ -0,0 +1,345 @@
+package com.recommendation.server;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.metrics.EngineMetrics;
+import com.recommendation.metrics.HistogramMetrics;
+import com.recommendation.metrics.LatencyHistogram;
+import com.recommendation.serving.RecommendationService;
+import com.recommendation.serving.ServingConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP front end for a {@link RecommendationService}, on the JDK's
+ * built-in {@link HttpServer}. Endpoints, all GET, all answering JSON:
+ * <pre>
+ *   /recommend?user=ID[&amp;n=COUNT]      recommendations for a user
+ *   /similarity?user1=ID&amp;user2=ID      user-user similarity (null if undefined)
+ *   /metrics                              server, service and engine stage statistics
+ * </pre>
+ * Identical {@code /recommend} requests that arrive while one is being
+ * computed are coalesced: they wait for and share the first one's encoded
+ * response instead of each running the engine. Responses are encoded
+ * straight to bytes by {@link ResponseEncoder} and written with a known
+ * length in one write. Exchanges run on virtual threads when the JVM has
+ * them, otherwise on a fixed pool; deadlines, fallbacks and caching are the
+ * service's.
+ */
+public class RecommendationServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RecommendationServer.class);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    static {
+        // The JDK server writes headers and body separately, so with Nagle on
+        // every keep-alive response waits out the client's delayed ACK (~40 ms).
+        // It reads this once, when its classes load; an explicit setting wins.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final RecommendationService service;
+    private final ServerConfig config;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ResponseEncoder encoder;
+    private final SingleFlight<RecommendKey, byte[]> recommendations = new SingleFlight<>();
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder badRequests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /** Binds to the configured port and starts serving. */
+    public RecommendationServer(RecommendationService service, ServerConfig config) throws IOException {
+        this.service = service;
+        this.config = config;
+        this.encoder = new ResponseEncoder(config.getProductFragmentCacheCapacity());
+        this.server = HttpServer.create(new InetSocketAddress(config.getPort()), config.getBacklog());
+        ExecutorService virtual = config.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(config.getThreads(), daemonThreads());
+        server.setExecutor(executor);
+        route("/recommend", this::recommend);
+        route("/similarity", this::similarity);
+        route("/metrics", this::metrics);
+        server.start();
+        log.info("Serving recommendations on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Requests answered with another request's response. */
+    public long getCoalescedCount() {
+        return recommendations.coalescedCount();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void route(String path, Endpoint endpoint) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        latencies.put(path, histogram);
+        HttpHandler handler = exchange -> {
+            long start = System.nanoTime();
+            requests.increment();
+            try {
+                if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                    badRequests.increment();
+                    send(exchange, 405, encoder.error("Only GET is supported"));
+                    return;
+                }
+                // The context matches by prefix, so /recommendations would land here too
+                if (!path.equals(exchange.getRequestURI().getPath())) {
+                    badRequests.increment();
+                    send(exchange, 404, encoder.error("Not found"));
+                    return;
+                }
+                send(exchange, 200, endpoint.handle(Query.parse(exchange.getRequestURI().getRawQuery())));
+            } catch (BadRequestException e) {
+                badRequests.increment();
+                send(exchange, e.status, encoder.error(e.getMessage()));
+            } catch (IOException e) {
+                // The client went away; nothing left to answer
+                errors.increment();
+            } catch (RuntimeException e) {
+                errors.increment();
+                log.warn("Request {} failed", exchange.getRequestURI(), e);
+                send(exchange, 500, encoder.error("Internal error"));
+            } finally {
+                exchange.close();
+                histogram.record(System.nanoTime() - start);
+            }
+        };
+        server.createContext(path, handler);
+    }
+
+    private byte[] recommend(Query query) throws BadRequestException {
+        long userId = query.requireLong("user");
+        long count = query.getLong("n", config.getDefaultRecommendations());
+        if (count <= 0 || count > config.getMaxRecommendations()) {
+            throw new BadRequestException(400, "n must be between 1 and " + config.getMaxRecommendations());
+        }
+        int n = (int) count;
+        return recommendations.get(new RecommendKey(userId, n),
+            () -> {
+                List<ProductRecommendation> list = service.recommend(userId, n);
+                // Read after recommending: the products then come from this catalog or an earlier one
+                long catalogVersion = service.getEngine().getCatalogVersion();
+                return encoder.recommendations(userId, catalogVersion, list);
+            });
+    }
+
+    private byte[] similarity(Query query) throws BadRequestException {
+        long userId1 = query.requireLong("user1");
+        long userId2 = query.requireLong("user2");
+        try {
+            return encoder.similarity(userId1, userId2, service.similarity(userId1, userId2));
+        } catch (TasteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] metrics(Query query) {
+        ResponseEncoder.JsonBuffer json = encoder.buffer();
+        json.ascii("{\"server\":{\"requests\":").number(requests.sum())
+            .ascii(",\"badRequests\":").number(badRequests.sum())
+            .ascii(",\"errors\":").number(errors.sum())
+            .ascii(",\"coalesced\":").number(recommendations.coalescedCount())
+            .ascii(",\"inFlight\":").number(recommendations.inFlightCount())
+            .ascii(",\"latencyMicros\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            json.ascii(first ? "" : ",").string(entry.getKey()).ascii(":");
+            percentiles(json, entry.getValue());
+            first = false;
+        }
+        json.ascii("}},\"service\":{\"served\":").number(service.getServedCount())
+            .ascii(",\"timedOut\":").number(service.getTimedOutCount())
+            .ascii(",\"rejected\":").number(service.getRejectedCount())
+            .ascii(",\"failed\":").number(service.getFailedCount())
+            .ascii("}");
+        EngineMetrics engineMetrics = service.getEngine().getMetrics();
+        if (engineMetrics instanceof HistogramMetrics) {
+            HistogramMetrics histograms = (HistogramMetrics) engineMetrics;
+            json.ascii(",\"engine\":{\"counters\":{");
+            first = true;
+            for (EngineMetrics.Counter counter : EngineMetrics.Counter.values()) {
+                json.ascii(first ? "" : ",").string(counter.name()).ascii(":").number(histograms.count(counter));
+                first = false;
+            }
+            json.ascii("},\"latencyMicros\":{");
+            first = true;
+            for (EngineMetrics.Stage stage : EngineMetrics.Stage.values()) {
+                json.ascii(first ? "" : ",").string(stage.name()).ascii(":");
+                percentiles(json, histograms.histogram(stage));
+                first = false;
+            }
+            json.ascii("}}");
+        }
+        return json.ascii("}").toByteArray();
+    }
+
+    private static void percentiles(ResponseEncoder.JsonBuffer json, LatencyHistogram histogram) {
+        json.ascii("{\"count\":").number(histogram.count())
+            .ascii(",\"mean\":").number(histogram.mean() / 1e3);
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            json.ascii(",").string(PERCENTILE_NAMES[p]).ascii(":").number(histogram.percentile(PERCENTILES[p]) / 1e3);
+        }
+        json.ascii(",\"max\":").number(histogram.max() / 1e3).ascii("}");
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(status, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // Looked up reflectively so the project still compiles and runs on Java 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available on this JVM; using a platform thread pool");
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Serves an engine over generated ratings, for trying the endpoints and
+     * load testing: {@code RecommendationServer [port] [users] [products] [ratingsPerUser]}.
+     */
+    public static void main(String[] args) throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setPort(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        int numUsers = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int numProducts = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+        RatingGenerator generator = new RatingGenerator(numUsers, numProducts);
+        generator.setMeanRatingsPerUser(args.length > 3 ? Double.parseDouble(args[3]) : 20);
+
+        EngineConfig engineConfig = new EngineConfig();
+        engineConfig.setUserNeighborIndexEnabled(true);
+        RecommendationEngine engine = new RecommendationEngine(generator.users(), generator.products(),
+            generator.toRatingStore(), engineConfig);
+        ServingConfig servingConfig = new ServingConfig();
+        servingConfig.setVirtualThreads(true);
+        RecommendationService service = new RecommendationService(engine, servingConfig);
+        RecommendationServer server = new RecommendationServer(service, config);
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/recommend?user=1");
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        byte[] handle(Query query) throws BadRequestException;
+    }
+
+    /** Rejects a request with a client error status. */
+    private static final class BadRequestException extends Exception {
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /** Query parameters; the endpoints only take numbers, so values are not URL-decoded. */
+    private static final class Query {
+        private final Map<String, String> parameters = new HashMap<>();
+
+        static Query parse(String raw) {
+            Query query = new Query();
+            if (raw != null) {
+                for (String pair : raw.split("&")) {
+                    int equals = pair.indexOf('=');
+                    if (equals > 0) {
+                        query.parameters.put(pair.substring(0, equals), pair.substring(equals + 1));
+                    }
+                }
+            }
+            return query;
+        }
+
+        long requireLong(String name) throws BadRequestException {
+            if (!parameters.containsKey(name)) {
+                throw new BadRequestException(400, "Missing parameter: " + name);
+            }
+            return getLong(name, 0);
+        }
+
+        long getLong(String name, long defaultValue) throws BadRequestException {
+            String value = parameters.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException(400, "Not a number: " + name + "=" + value);
+            }
+        }
+    }
+
+    private static final class RecommendKey {
+        final long userId;
+        final int n;
+
+        RecommendKey(long userId, int n) {
+            this.userId = userId;
+            this.n = n;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RecommendKey)) {
+                return false;
+            }
+            RecommendKey key = (RecommendKey) other;
+            return userId == key.userId && n == key.n;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, n);
+        }
+    }
+}
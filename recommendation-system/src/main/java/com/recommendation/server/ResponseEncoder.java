@@ -0,0 +1,239 @@
+package com.recommendation.server;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes responses straight to UTF-8 JSON bytes, with no intermediate
+ * strings or object tree. Each product's fields are encoded once and the
+ * bytes reused for every list it appears in, so a recommendation list costs
+ * little more than copying those fragments and formatting the scores.
+ *
+ * Fragments are cached by product id and tagged with the engine's catalog
+ * version and the product instance they were encoded from; a fragment is
+ * reused only when both match, so a product changed and passed to
+ * {@code withProducts}, even as the same instance, is encoded afresh. The
+ * cache is a fixed number of least-recently-used segments, each an
+ * access-ordered {@link LinkedHashMap} behind its own lock, so a catalog
+ * larger than the capacity keeps its most requested products cached.
+ */
+final class ResponseEncoder {
+    private static final int SEGMENTS = 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final FragmentSegment[] fragments;
+    private final ThreadLocal<JsonBuffer> buffers = ThreadLocal.withInitial(JsonBuffer::new);
+
+    ResponseEncoder(int capacity) {
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        this.fragments = new FragmentSegment[SEGMENTS];
+        for (int s = 0; s < SEGMENTS; s++) {
+            fragments[s] = new FragmentSegment(perSegment);
+        }
+    }
+
+    /**
+     * Encodes a recommendation list whose products come from the catalog
+     * with the given version, or an earlier one. A product only reaches an
+     * older catalog's list as the instance that catalog holds, so it is
+     * either still current under this version or a different instance that
+     * misses the cache.
+     */
+    byte[] recommendations(long userId, long catalogVersion, List<ProductRecommendation> recommendations) {
+        JsonBuffer json = buffers.get().reset();
+        json.ascii("{\"user\":").number(userId).ascii(",\"items\":[");
+        for (int i = 0; i < recommendations.size(); i++) {
+            ProductRecommendation recommendation = recommendations.get(i);
+            if (i > 0) {
+                json.ascii(",");
+            }
+            json.bytes(fragment(recommendation.getProduct(), catalogVersion))
+                .ascii(",\"score\":").number(recommendation.getScore())
+                .ascii(",\"algorithm\":").string(recommendation.getAlgorithm())
+                .ascii("}");
+        }
+        return json.ascii("]}").toByteArray();
+    }
+
+    byte[] similarity(long userId1, long userId2, double similarity) {
+        return buffers.get().reset()
+            .ascii("{\"user1\":").number(userId1)
+            .ascii(",\"user2\":").number(userId2)
+            .ascii(",\"similarity\":").number(similarity)
+            .ascii("}").toByteArray();
+    }
+
+    byte[] error(String message) {
+        return buffers.get().reset().ascii("{\"error\":").string(message).ascii("}").toByteArray();
+    }
+
+    /** Buffer for callers that build their own document, such as the metrics endpoint. */
+    JsonBuffer buffer() {
+        return buffers.get().reset();
+    }
+
+    /** Number of cached product fragments. */
+    int cachedFragments() {
+        int size = 0;
+        for (FragmentSegment segment : fragments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    // Opening brace and the product's fields, without the closing brace
+    private byte[] fragment(Product product, long catalogVersion) {
+        long productId = product.getProductId();
+        FragmentSegment segment = fragments[(int) (productId * 0x9E3779B97F4A7C15L >>> 60) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            Fragment cached = segment.get(productId);
+            if (cached != null && cached.catalogVersion == catalogVersion && cached.product == product) {
+                return cached.bytes;
+            }
+        }
+        byte[] bytes = new JsonBuffer()
+            .ascii("{\"id\":").number(productId)
+            .ascii(",\"name\":").string(product.getName())
+            .ascii(",\"category\":").string(product.getCategory())
+            .ascii(",\"price\":").number(product.getPrice())
+            .toByteArray();
+        synchronized (segment) {
+            segment.put(productId, new Fragment(catalogVersion, product, bytes));
+        }
+        return bytes;
+    }
+
+    private static final class Fragment {
+        final long catalogVersion;
+        final Product product;
+        final byte[] bytes;
+
+        Fragment(long catalogVersion, Product product, byte[] bytes) {
+            this.catalogVersion = catalogVersion;
+            this.product = product;
+            this.bytes = bytes;
+        }
+    }
+
+    /** One lock's worth of fragments, evicting the least recently used past its capacity. */
+    private static final class FragmentSegment extends LinkedHashMap<Long, Fragment> {
+        private final int capacity;
+
+        FragmentSegment(int capacity) {
+            super(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Fragment> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /** Growable UTF-8 byte buffer with just enough JSON formatting for the responses above. */
+    static final class JsonBuffer {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        JsonBuffer reset() {
+            size = 0;
+            return this;
+        }
+
+        /** Appends text known to need no escaping, such as keys and punctuation. */
+        JsonBuffer ascii(String text) {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                bytes[size++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        JsonBuffer bytes(byte[] fragment) {
+            ensure(fragment.length);
+            System.arraycopy(fragment, 0, bytes, size, fragment.length);
+            size += fragment.length;
+            return this;
+        }
+
+        JsonBuffer number(long value) {
+            return ascii(Long.toString(value));
+        }
+
+        /** Non-finite values have no JSON form and are written as null. */
+        JsonBuffer number(double value) {
+            return Double.isFinite(value) ? ascii(Double.toString(value)) : ascii("null");
+        }
+
+        JsonBuffer number(float value) {
+            return Float.isFinite(value) ? ascii(Float.toString(value)) : ascii("null");
+        }
+
+        JsonBuffer string(String value) {
+            if (value == null) {
+                return ascii("null");
+            }
+            ensure(value.length() + 2);
+            bytes[size++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    ensure(2);
+                    bytes[size++] = '\\';
+                    bytes[size++] = (byte) c;
+                } else if (c < 0x20) {
+                    ensure(6);
+                    bytes[size++] = '\\';
+                    bytes[size++] = 'u';
+                    bytes[size++] = '0';
+                    bytes[size++] = '0';
+                    bytes[size++] = HEX[c >> 4];
+                    bytes[size++] = HEX[c & 0xF];
+                } else if (c < 0x80) {
+                    ensure(1);
+                    bytes[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    ensure(2);
+                    bytes[size++] = (byte) (0xC0 | c >> 6);
+                    bytes[size++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensure(4);
+                    bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    // Unpaired surrogates have no UTF-8 form
+                    char encoded = Character.isSurrogate(c) ? '\uFFFD' : c;
+                    ensure(3);
+                    bytes[size++] = (byte) (0xE0 | encoded >> 12);
+                    bytes[size++] = (byte) (0x80 | encoded >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | encoded & 0x3F);
+                }
+            }
+            ensure(1);
+            bytes[size++] = '"';
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.recommendation.server;
+
+/**
+ * Settings for {@link RecommendationServer}.
+ */
+public class ServerConfig {
+    private int port = 8080;
+    private int backlog = 1024;
+    private boolean virtualThreads = true;
+    private int threads = 4 * Runtime.getRuntime().availableProcessors();
+    private int defaultRecommendations = 10;
+    private int maxRecommendations = 100;
+    private int productFragmentCacheCapacity = 1 << 16;
+    
+    // Getters and setters
+    /** Port to listen on; 0 picks a free one. */
+    public int getPort() { return port; }
+    public void setPort(int port) { this.port = port; }
+    
+    /** Connections allowed to wait for the server to accept them. */
+    public int getBacklog() { return backlog; }
+    public void setBacklog(int backlog) { this.backlog = backlog; }
+    
+    /** Handle each exchange on a virtual thread when the JVM supports them (Java 21+). */
+    public boolean isVirtualThreads() { return virtualThreads; }
+    public void setVirtualThreads(boolean virtualThreads) { this.virtualThreads = virtualThreads; }
+    
+    /** Handler threads when not using virtual threads. */
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    
+    /** Recommendations returned when a request does not say how many. */
+    public int getDefaultRecommendations() { return defaultRecommendations; }
+    public void setDefaultRecommendations(int defaultRecommendations) { this.defaultRecommendations = defaultRecommendations; }
+    
+    /** Upper bound on the number of recommendations a request may ask for. */
+    public int getMaxRecommendations() { return maxRecommendations; }
+    public void setMaxRecommendations(int maxRecommendations) { this.maxRecommendations = maxRecommendations; }
+    
+    /** Products whose encoded JSON is kept for reuse, least recently used evicted first. */
+    public int getProductFragmentCacheCapacity() { return productFragmentCacheCapacity; }
+    public void setProductFragmentCacheCapacity(int productFragmentCacheCapacity) { 
+        this.productFragmentCacheCapacity = productFragmentCacheCapacity; 
+    }
+}
@@ -0,0 +1,249 @@
+package com.recommendation.serving;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of recommendation lists keyed by (user, count), with an
+ * optional time to live.
+ *
+ * Entries are spread over segments by user id, each an access-ordered
+ * {@link LinkedHashMap} behind its own lock. Within a segment the entries of
+ * a user are also chained together, so invalidating a user costs O(that
+ * user's entries) rather than a scan of the segment.
+ *
+ * Invalidating a user bumps the generation of the user's stripe, one of
+ * {@code STRIPES} per segment picked by user id; a result computed before an
+ * invalidation is discarded instead of being cached, which closes the race
+ * between a slow request and a new snapshot. Only in-flight results of users
+ * sharing the stripe are discarded with it, and those are merely recomputed
+ * on their next request.
+ */
+public class RecommendationCache {
+    private static final int SEGMENTS = 16;
+    private static final int STRIPES = 256;
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of cached lists
+     * @param ttlMillis time to live of an entry, or 0 for no expiry
+     */
+    public RecommendationCache(int capacity, long ttlMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int s = 0; s < SEGMENTS; s++) {
+            segments[s] = new Segment(perSegment);
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /** Returns the cached list or null on a miss. */
+    public List<ProductRecommendation> get(long userId, int numRecommendations) {
+        Segment segment = segmentFor(userId);
+        Key key = new Key(userId, numRecommendations);
+        synchronized (segment) {
+            CachedList entry = segment.entries.get(key);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdNanos > ttlNanos) {
+                segment.remove(entry);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.recommendations;
+        }
+    }
+
+    /** Generation to pass to {@link #put} for a result computed from now on. */
+    public long generation(long userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            return segment.generations[stripeFor(userId)];
+        }
+    }
+
+    /**
+     * Caches a list unless the user was invalidated since {@code generation}
+     * was read.
+     */
+    public void put(long userId, int numRecommendations, List<ProductRecommendation> recommendations,
+                    long generation) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            if (segment.generations[stripeFor(userId)] != generation) {
+                return;
+            }
+            Key key = new Key(userId, numRecommendations);
+            segment.add(new CachedList(key, Collections.unmodifiableList(recommendations), System.nanoTime()));
+        }
+    }
+
+    /** Drops every cached list of a user. */
+    public void invalidate(long userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.generations[stripeFor(userId)]++;
+            CachedList entry = segment.heads.remove(userId);
+            while (entry != null) {
+                segment.entries.remove(entry.key);
+                invalidations.incrementAndGet();
+                entry = entry.next;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < STRIPES; i++) {
+                    segment.generations[i]++;
+                }
+                invalidations.addAndGet(segment.entries.size());
+                segment.entries.clear();
+                segment.heads.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    public long getExpirationCount() { return expirations.get(); }
+    public long getInvalidationCount() { return invalidations.get(); }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : hits.get() / (double) total;
+    }
+
+    private Segment segmentFor(long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    // Bits below the segment's, so the stripes of a segment split its users evenly
+    private static int stripeFor(long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 52) & (STRIPES - 1);
+    }
+
+    private final class Segment {
+        final LinkedHashMap<Key, CachedList> entries;
+        // First entry of each user's chain
+        final Map<Long, CachedList> heads = new HashMap<>();
+        final long[] generations = new long[STRIPES];
+
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<Key, CachedList>(capacity * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, CachedList> eldest) {
+                    if (size() > capacity) {
+                        evictions.incrementAndGet();
+                        unlink(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        void add(CachedList entry) {
+            CachedList head = heads.put(entry.key.userId, entry);
+            entry.next = head;
+            if (head != null) {
+                head.previous = entry;
+            }
+            CachedList replaced = entries.put(entry.key, entry);
+            if (replaced != null) {
+                unlink(replaced);
+            }
+        }
+
+        void remove(CachedList entry) {
+            entries.remove(entry.key);
+            unlink(entry);
+        }
+
+        private void unlink(CachedList entry) {
+            if (entry.previous != null) {
+                entry.previous.next = entry.next;
+            } else if (entry.next != null) {
+                heads.put(entry.key.userId, entry.next);
+            } else {
+                heads.remove(entry.key.userId);
+            }
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            }
+        }
+    }
+
+    private static final class Key {
+        final long userId;
+        final int numRecommendations;
+
+        Key(long userId, int numRecommendations) {
+            this.userId = userId;
+            this.numRecommendations = numRecommendations;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userId == other.userId && numRecommendations == other.numRecommendations;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(userId) * 31 + numRecommendations;
+        }
+    }
+
+    private static final class CachedList {
+        final Key key;
+        final List<ProductRecommendation> recommendations;
+        final long createdNanos;
+        // Neighbours in the chain of the user's entries
+        CachedList previous;
+        CachedList next;
+
+        CachedList(Key key, List<ProductRecommendation> recommendations, long createdNanos) {
+            this.key = key;
+            this.recommendations = recommendations;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.recommendation.serving;
+
+import com.recommendation.engine.PopularityIndex;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.metrics.EngineMetrics;
+import com.recommendation.metrics.EngineMetrics.Counter;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Concurrency-safe serving facade over an immutable {@link RecommendationEngine}.
+ *
+ * Requests run on a bounded executor and every call has a deadline. When the
+ * deadline passes, the queue is full or the engine fails unexpectedly, the
+ * caller gets the engine's cheap fallback recommendations instead of waiting.
+ *
+ * The engine can be replaced at any time with {@link #swapEngine}; each
+ * request reads the current engine once and runs to completion on it, so
+ * readers never block on a swap.
+ *
+ * With a cache configured, served lists are kept in a
+ * {@link RecommendationCache}. Fallback answers are never cached, whether the
+ * service fell back or the engine did (e.g. for a user without ratings yet),
+ * so a user's first ratings are not hidden behind a cached popularity list.
+ */
+public class RecommendationService implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RecommendationService.class);
+
+    private final AtomicReference<RecommendationEngine> engine;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final RecommendationCache cache;
+    private final long defaultTimeoutNanos;
+
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public RecommendationService(RecommendationEngine engine) {
+        this(engine, new ServingConfig());
+    }
+
+    public RecommendationService(RecommendationEngine engine, ServingConfig config) {
+        this.engine = new AtomicReference<>(engine);
+        this.defaultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getTimeoutMillis());
+        this.cache = config.getCacheCapacity() > 0
+            ? new RecommendationCache(config.getCacheCapacity(), config.getCacheTtlMillis())
+            : null;
+        ExecutorService virtual = config.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.permits = new Semaphore(config.getThreads() + config.getQueueCapacity());
+        } else {
+            this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                new ServingThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            this.permits = null;
+        }
+    }
+
+    public RecommendationEngine getEngine() {
+        return engine.get();
+    }
+
+    /** Atomically replaces the engine for new requests and returns the previous one. */
+    public RecommendationEngine swapEngine(RecommendationEngine next) {
+        return engine.getAndSet(next);
+    }
+
+    /** The result cache, or null if caching is disabled. */
+    public RecommendationCache getCache() {
+        return cache;
+    }
+
+    /** Drops cached lists of users whose ratings changed. */
+    public void invalidate(long... userIds) {
+        if (cache != null) {
+            for (long userId : userIds) {
+                cache.invalidate(userId);
+            }
+        }
+    }
+
+    public List<ProductRecommendation> recommend(long userId, int numRecommendations) {
+        return recommend(userId, numRecommendations, defaultTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public List<ProductRecommendation> recommend(long userId, int numRecommendations, long timeout, TimeUnit unit) {
+        long generation = 0;
+        if (cache != null) {
+            List<ProductRecommendation> cached = cache.get(userId, numRecommendations);
+            EngineMetrics metrics = engine.get().getMetrics();
+            if (cached != null) {
+                metrics.increment(Counter.CACHE_HITS);
+                return cached;
+            }
+            metrics.increment(Counter.CACHE_MISSES);
+            // Read before the engine, so a swap plus invalidation in between discards this result
+            generation = cache.generation(userId);
+        }
+        RecommendationEngine current = engine.get();
+        Future<List<ProductRecommendation>> future;
+        try {
+            future = submit(() -> current.getRecommendations(userId, numRecommendations));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            // Never reached the engine, so count the request here
+            current.getMetrics().increment(Counter.REQUESTS);
+            return current.getFallbackRecommendations(userId, numRecommendations);
+        }
+        try {
+            List<ProductRecommendation> result = future.get(timeout, unit);
+            served.incrementAndGet();
+            if (cache != null && !isFallback(result)) {
+                cache.put(userId, numRecommendations, result, generation);
+            }
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            current.getMetrics().increment(Counter.FAILURES);
+            log.warn("Recommendation for user {} failed", userId, e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return current.getFallbackRecommendations(userId, numRecommendations);
+    }
+
+    /** User similarity; cheap enough to run on the caller's thread. */
+    public double similarity(long userId1, long userId2) throws TasteException {
+        return engine.get().getUserSimilarity(userId1, userId2);
+    }
+
+    public long getServedCount() { return served.get(); }
+    public long getTimedOutCount() { return timedOut.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+    public long getFailedCount() { return failed.get(); }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        if (permits == null) {
+            return executor.submit(task);
+        }
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many requests in flight");
+        }
+        try {
+            return executor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // The engine answers with popular products when collaborative filtering has nothing for the user
+    private static boolean isFallback(List<ProductRecommendation> result) {
+        return result.isEmpty() || PopularityIndex.LABEL.equals(result.get(0).getAlgorithm());
+    }
+
+    // Looked up reflectively so the project still compiles and runs on Java 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available on this JVM; using a platform thread pool");
+            return null;
+        }
+    }
+
+    private static final class ServingThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "recommendation-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.recommendation.serving;
+
+/**
+ * Settings for {@link RecommendationService}.
+ */
+public class ServingConfig {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private long timeoutMillis = 100;
+    private boolean virtualThreads = false;
+    private int cacheCapacity = 0;
+    private long cacheTtlMillis = 60_000;
+    
+    // Getters and setters
+    /** Worker threads, or the maximum number of in-flight requests when using virtual threads. */
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    
+    /** Requests allowed to wait for a worker before new ones are answered with the fallback. */
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    
+    /** Default per-call deadline. */
+    public long getTimeoutMillis() { return timeoutMillis; }
+    public void setTimeoutMillis(long timeoutMillis) { this.timeoutMillis = timeoutMillis; }
+    
+    /** Run requests on virtual threads when the JVM supports them (Java 21+). */
+    public boolean isVirtualThreads() { return virtualThreads; }
+    public void setVirtualThreads(boolean virtualThreads) { this.virtualThreads = virtualThreads; }
+    
+    /** Maximum number of cached recommendation lists; 0 disables the cache. */
+    public int getCacheCapacity() { return cacheCapacity; }
+    public void setCacheCapacity(int cacheCapacity) { this.cacheCapacity = cacheCapacity; }
+    
+    /** How long a cached list may be served, or 0 to keep it until evicted or invalidated. */
+    public long getCacheTtlMillis() { return cacheTtlMillis; }
+    public void setCacheTtlMillis(long cacheTtlMillis) { this.cacheTtlMillis = cacheTtlMillis; }
+}
@@ -0,0 +1,131 @@
+package com.recommendation.serving;
+
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.model.Rating;
+import com.recommendation.store.RatingDelta;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incremental rating ingestion for a {@link RecommendationService}.
+ *
+ * Changes are buffered as they arrive. {@link #flush()}, called directly or
+ * on a fixed delay, merges the buffered batch into a new engine built off the
+ * request path and swaps it into the service; requests keep running on the
+ * previous engine until the swap. Cached lists of the users in the batch are
+ * invalidated right after the swap.
+ *
+ * Only the rating store is merged incrementally. Every precomputed model the
+ * engine has enabled (user neighbor index, item index, ALS factors, LSH
+ * index) is rebuilt over all ratings on each flush, so with those on a flush
+ * costs about as much as a full engine build; choose the interval to match.
+ */
+public class SnapshotUpdater implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotUpdater.class);
+
+    private final RecommendationService service;
+    private final ScheduledExecutorService scheduler;
+    private final Object flushLock = new Object();
+    private RatingDelta pending = new RatingDelta();
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+
+    /** Creates an updater that only publishes on explicit {@link #flush()} calls. */
+    public SnapshotUpdater(RecommendationService service) {
+        this.service = service;
+        this.scheduler = null;
+    }
+
+    /** Creates an updater that also publishes pending changes on a fixed delay. */
+    public SnapshotUpdater(RecommendationService service, long interval, TimeUnit unit) {
+        this.service = service;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-updater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, unit);
+    }
+
+    public synchronized void put(long userId, long itemId, float rating, long timestamp) {
+        pending.put(userId, itemId, rating, timestamp);
+    }
+
+    public synchronized void put(Rating rating) {
+        pending.put(rating);
+    }
+
+    public synchronized void remove(long userId, long itemId) {
+        pending.remove(userId, itemId);
+    }
+
+    public synchronized void submit(RatingDelta delta) {
+        pending.addAll(delta);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Number of engines published so far. */
+    public long getVersion() { return version.get(); }
+    public long getAppliedCount() { return applied.get(); }
+
+    /**
+     * Applies the pending changes and publishes the new engine. Returns false
+     * if there was nothing to apply. If building the engine fails the changes
+     * are put back in front of anything that arrived in the meantime.
+     */
+    public boolean flush() throws TasteException {
+        synchronized (flushLock) {
+            RatingDelta batch = drain();
+            if (batch.isEmpty()) {
+                return false;
+            }
+            RecommendationEngine next;
+            try {
+                next = service.getEngine().withChanges(batch);
+            } catch (TasteException | RuntimeException e) {
+                requeue(batch);
+                throw e;
+            }
+            service.swapEngine(next);
+            service.invalidate(batch.distinctUserIds());
+            version.incrementAndGet();
+            applied.addAndGet(batch.size());
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private synchronized RatingDelta drain() {
+        RatingDelta batch = pending;
+        pending = new RatingDelta();
+        return batch;
+    }
+
+    private synchronized void requeue(RatingDelta batch) {
+        pending = batch.addAll(pending);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (TasteException | RuntimeException e) {
+            log.warn("Applying {} rating changes failed; will retry", getPendingCount(), e);
+        }
+    }
+}
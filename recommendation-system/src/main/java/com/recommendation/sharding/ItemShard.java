@@ -0,0 +1,295 @@
+package com.recommendation.sharding;
+
+import com.recommendation.factorization.FactorModel;
+import com.recommendation.store.RatingSnapshot;
+import com.recommendation.store.RatingStore;
+import com.recommendation.util.TopKHeap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One partition of an item-sharded factorization model.
+ *
+ * Items are assigned to shards by a hash of their id. A shard holds the
+ * factors and the ratings of its own items only, plus the factors of every
+ * user, which are small next to the rating matrix. Every shard scores with
+ * the same global mean and user vectors, so the top N of each shard can be
+ * merged by score into exactly the top N of the whole model; see
+ * {@link ShardCoordinator}.
+ *
+ * On disk a shard is a directory holding {@code ratings.snap}, a
+ * {@link RatingSnapshot} of its ratings, and {@code factors.bin}:
+ * <pre>
+ *   header   magic "ISHD", version, shardIndex, numShards, rank, numUsers, numItems, globalMean
+ *   long[numUsers]          user ids (sorted)
+ *   float[numUsers * rank]  user factors
+ *   long[numItems]          this shard's item ids (sorted)
+ *   float[numItems * rank]  item factors
+ * </pre>
+ * all little-endian.
+ */
+public final class ItemShard {
+    static final int MAGIC = 0x44485349; // "ISHD" read little-endian
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final String RATINGS_FILE = "ratings.snap";
+    private static final String FACTORS_FILE = "factors.bin";
+    // One per thread for all shards, so reloading shards does not leave old buffers pinned to pool threads
+    private static final ThreadLocal<float[]> SCORE_BUFFERS = new ThreadLocal<>();
+
+    private final int shardIndex;
+    private final int numShards;
+    private final long[] userIds;
+    private final long[] itemIds;
+    private final FactorModel factors;
+    private final RatingStore ratings;
+
+    ItemShard(int shardIndex, int numShards, long[] userIds, long[] itemIds, FactorModel factors,
+              RatingStore ratings) {
+        if (ratings.numItems() != itemIds.length || factors.numItems() != itemIds.length
+                || factors.numUsers() != userIds.length) {
+            throw new IllegalArgumentException("Shard ratings, ids and factors do not line up");
+        }
+        this.shardIndex = shardIndex;
+        this.numShards = numShards;
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.factors = factors;
+        this.ratings = ratings;
+    }
+
+    /** Shard an item belongs to; consecutive ids are spread over all shards. */
+    public static int shardOf(long itemId, int numShards) {
+        return Math.floorMod(Long.hashCode(itemId * 0x9E3779B97F4A7C15L), numShards);
+    }
+
+    /**
+     * Partitions a model trained on {@code store} into {@code numShards}
+     * shards. Every shard needs at least one item.
+     *
+     * This is an offline step on a single node: it needs the whole rating
+     * store and the fully trained model in memory, and only spreads serving
+     * across machines, not training or rating storage.
+     */
+    public static ItemShard[] split(RatingStore store, FactorModel factors, int numShards) {
+        if (factors.numUsers() != store.numUsers() || factors.numItems() != store.numItems()) {
+            throw new IllegalArgumentException("Factors were not trained on this store");
+        }
+        int rank = factors.rank();
+        long[] userIds = new long[store.numUsers()];
+        float[] userFactors = new float[store.numUsers() * rank];
+        for (int u = 0; u < userIds.length; u++) {
+            userIds[u] = store.userId(u);
+            factors.copyUserFactors(u, userFactors, u * rank);
+        }
+
+        int[] shardOfItem = new int[store.numItems()];
+        int[] sizes = new int[numShards];
+        for (int i = 0; i < shardOfItem.length; i++) {
+            shardOfItem[i] = shardOf(store.itemId(i), numShards);
+            sizes[shardOfItem[i]]++;
+        }
+        long[][] itemIds = new long[numShards][];
+        float[][] itemFactors = new float[numShards][];
+        RatingStore.Builder[] builders = new RatingStore.Builder[numShards];
+        for (int s = 0; s < numShards; s++) {
+            if (sizes[s] == 0) {
+                throw new IllegalArgumentException("Shard " + s + " of " + numShards + " would have no items");
+            }
+            itemIds[s] = new long[sizes[s]];
+            itemFactors[s] = new float[sizes[s] * rank];
+            builders[s] = RatingStore.builder();
+        }
+        // Item ids ascend, so each shard's items stay sorted and line up with its rating store
+        int[] filled = new int[numShards];
+        for (int i = 0; i < shardOfItem.length; i++) {
+            int s = shardOfItem[i];
+            int local = filled[s]++;
+            itemIds[s][local] = store.itemId(i);
+            factors.copyItemFactors(i, itemFactors[s], local * rank);
+        }
+        store.forEach((u, i, rating, timestamp) ->
+            builders[shardOfItem[i]].add(store.userId(u), store.itemId(i), rating, timestamp));
+
+        ItemShard[] shards = new ItemShard[numShards];
+        for (int s = 0; s < numShards; s++) {
+            FactorModel shardFactors = new FactorModel(rank, factors.globalMean(), userFactors, itemFactors[s]);
+            shards[s] = new ItemShard(s, numShards, userIds, itemIds[s], shardFactors, builders[s].build());
+        }
+        return shards;
+    }
+
+    public int shardIndex() { return shardIndex; }
+    public int numShards() { return numShards; }
+    public int numItems() { return itemIds.length; }
+    public RatingStore ratings() { return ratings; }
+
+    /**
+     * Writes the best {@code n} of this shard's items the user has not rated
+     * into the arrays, best first, and returns how many there are; 0 for a
+     * user the model does not know.
+     */
+    public int topN(long userId, int n, long[] idsOut, float[] scoresOut) {
+        int u = Arrays.binarySearch(userIds, userId);
+        if (u < 0 || n <= 0) {
+            return 0;
+        }
+        // Shards differ in size by an item or so, so a buffer is only replaced when it is too small
+        float[] scores = SCORE_BUFFERS.get();
+        if (scores == null || scores.length < itemIds.length) {
+            scores = new float[itemIds.length];
+            SCORE_BUFFERS.set(scores);
+        }
+        factors.scoreAll(u, scores);
+        TopKHeap heap = new TopKHeap(Math.min(n, itemIds.length));
+
+        // Rated items are sorted by index, so skipping them is a merge walk
+        int rated = ratings.userIndex(userId);
+        int ratedPosition = rated < 0 ? 0 : ratings.userStart(rated);
+        int ratedEnd = rated < 0 ? 0 : ratings.userEnd(rated);
+        for (int i = 0; i < itemIds.length; i++) {
+            while (ratedPosition < ratedEnd && ratings.itemAt(ratedPosition) < i) {
+                ratedPosition++;
+            }
+            if (ratedPosition < ratedEnd && ratings.itemAt(ratedPosition) == i) {
+                continue;
+            }
+            if (scores[i] > heap.threshold()) {
+                heap.offer(i, scores[i]);
+            }
+        }
+
+        int[] local = new int[heap.size()];
+        int count = heap.drainDescending(local, scoresOut);
+        for (int k = 0; k < count; k++) {
+            idsOut[k] = itemIds[local[k]];
+        }
+        return count;
+    }
+
+    /** Writes the shard into {@code directory}, creating it if needed. */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        RatingSnapshot.write(ratings, directory.resolve(RATINGS_FILE));
+
+        Path file = directory.resolve(FACTORS_FILE);
+        Path temp = Files.createTempFile(directory, FACTORS_FILE, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                int rank = factors.rank();
+                ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                chunk.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(shardIndex)
+                    .putInt(numShards)
+                    .putInt(rank)
+                    .putInt(userIds.length)
+                    .putInt(itemIds.length)
+                    .putFloat(factors.globalMean());
+                putLongs(channel, chunk, userIds);
+                float[] row = new float[rank];
+                for (int u = 0; u < userIds.length; u++) {
+                    factors.copyUserFactors(u, row, 0);
+                    putFloats(channel, chunk, row);
+                }
+                putLongs(channel, chunk, itemIds);
+                for (int i = 0; i < itemIds.length; i++) {
+                    factors.copyItemFactors(i, row, 0);
+                    putFloats(channel, chunk, row);
+                }
+                flush(channel, chunk);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Opens a shard written by {@link #write}; the ratings are memory-mapped, the factors read into memory. */
+    public static ItemShard open(Path directory) throws IOException {
+        RatingStore ratings = RatingSnapshot.open(directory.resolve(RATINGS_FILE));
+        Path file = directory.resolve(FACTORS_FILE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an item shard (too short): " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an item shard (bad magic): " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported item shard version " + version + ": " + file);
+            }
+            int shardIndex = buffer.getInt();
+            int numShards = buffer.getInt();
+            int rank = buffer.getInt();
+            int numUsers = buffer.getInt();
+            int numItems = buffer.getInt();
+            float globalMean = buffer.getFloat();
+            long expected = HEADER_BYTES + (long) numUsers * (Long.BYTES + rank * Float.BYTES)
+                + (long) numItems * (Long.BYTES + rank * Float.BYTES);
+            if (channel.size() != expected) {
+                throw new IOException("Item shard is truncated or corrupt: " + file);
+            }
+
+            long[] userIds = new long[numUsers];
+            float[] userFactors = new float[numUsers * rank];
+            long[] itemIds = new long[numItems];
+            float[] itemFactors = new float[numItems * rank];
+            buffer.asLongBuffer().get(userIds);
+            buffer.position(buffer.position() + numUsers * Long.BYTES);
+            buffer.asFloatBuffer().get(userFactors);
+            buffer.position(buffer.position() + userFactors.length * Float.BYTES);
+            buffer.asLongBuffer().get(itemIds);
+            buffer.position(buffer.position() + numItems * Long.BYTES);
+            buffer.asFloatBuffer().get(itemFactors);
+            return new ItemShard(shardIndex, numShards, userIds, itemIds,
+                new FactorModel(rank, globalMean, userFactors, itemFactors), ratings);
+        }
+    }
+
+    private static void putLongs(FileChannel channel, ByteBuffer chunk, long[] values) throws IOException {
+        for (long value : values) {
+            if (chunk.remaining() < Long.BYTES) {
+                flush(channel, chunk);
+            }
+            chunk.putLong(value);
+        }
+    }
+
+    private static void putFloats(FileChannel channel, ByteBuffer chunk, float[] values) throws IOException {
+        for (float value : values) {
+            if (chunk.remaining() < Float.BYTES) {
+                flush(channel, chunk);
+            }
+            chunk.putFloat(value);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ItemShard{" + shardIndex + "/" + numShards + ", users=" + userIds.length
+            + ", items=" + itemIds.length + ", ratings=" + ratings.numRatings() + '}';
+    }
+}
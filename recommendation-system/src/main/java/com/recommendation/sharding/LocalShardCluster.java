@@ -0,0 +1,112 @@
+package com.recommendation.sharding;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one {@link ShardWorker} process per shard directory on this machine,
+ * with the current classpath, for trying out and benchmarking sharded
+ * serving without a real cluster. Workers listen on the loopback address
+ * and exit on their own if this JVM dies, since their standard input closes.
+ */
+public final class LocalShardCluster implements Closeable {
+    private static final long STOP_WAIT_MILLIS = 5_000;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    private LocalShardCluster() {
+    }
+
+    /** Starts the workers and waits until all of them are listening. */
+    public static LocalShardCluster start(List<Path> shardDirectories, String... jvmArgs) throws IOException {
+        LocalShardCluster cluster = new LocalShardCluster();
+        try {
+            for (Path directory : shardDirectories) {
+                cluster.launch(directory, jvmArgs);
+            }
+            for (Process process : cluster.processes) {
+                cluster.addresses.add(awaitListening(process));
+            }
+            return cluster;
+        } catch (IOException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+    }
+
+    private void launch(Path directory, String[] jvmArgs) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(jvmArgs));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(directory.toAbsolutePath().toString());
+        command.add("0");
+        processes.add(new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .redirectOutput(ProcessBuilder.Redirect.PIPE)
+            .start());
+    }
+
+    // Log lines may come first on stdout, so look for the ready line
+    private static InetSocketAddress awaitListening(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(ShardWorker.READY + " ")) {
+                int port = Integer.parseInt(line.substring(ShardWorker.READY.length() + 1).trim());
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            }
+        }
+        throw new IOException("Shard worker exited before listening"
+            + (process.isAlive() ? "" : " (exit code " + process.exitValue() + ")"));
+    }
+
+    public List<InetSocketAddress> addresses() {
+        return new ArrayList<>(addresses);
+    }
+
+    /** Closes every worker's standard input and waits for it to exit, killing it if it does not. */
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException e) {
+                process.destroy();
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_WAIT_MILLIS);
+        for (Process process : processes) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!process.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+        processes.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "LocalShardCluster" + addresses;
+    }
+}
@@ -0,0 +1,321 @@
+package com.recommendation.sharding;
+
+import com.recommendation.util.TopKHeap;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scatter-gather client for a set of {@link ShardWorker}s.
+ *
+ * Each request goes to every shard at once and the shards' top N lists are
+ * merged by score. A shard that has not answered within the timeout, or
+ * that fails, is left out of that response and counted, so one slow shard
+ * bounds tail latency instead of stalling it. Connections are kept open
+ * and reused; one that failed or timed out mid-response is closed rather
+ * than returned, so a late answer can never be read by the next request.
+ * Closing the connection of a timed-out call also breaks the client thread
+ * out of its blocking read right away.
+ *
+ * Shard calls run on a bounded pool: at most {@code maxCalls} at once, with
+ * as many more queued. A call that finds the queue full is not made, and
+ * the shard is left out of that response and counted as rejected, so a
+ * stalled shard cannot grow the client's threads without limit.
+ *
+ * The coordinator serves a factorization model split offline by
+ * {@link ItemShard#split}; it is a standalone client for the shard workers
+ * and not a {@code RecommendationEngine} algorithm.
+ */
+public final class ShardCoordinator implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    private final List<InetSocketAddress> shards;
+    private final List<ConcurrentLinkedQueue<Connection>> idle;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Allows 4 concurrent calls per shard and processor. */
+    public ShardCoordinator(List<InetSocketAddress> shards, long timeoutMillis) {
+        this(shards, timeoutMillis, 4 * shards.size() * Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardCoordinator(List<InetSocketAddress> shards, long timeoutMillis, int maxCalls) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards to coordinate");
+        }
+        if (maxCalls <= 0) {
+            throw new IllegalArgumentException("maxCalls must be positive: " + maxCalls);
+        }
+        this.shards = new ArrayList<>(shards);
+        this.idle = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxCalls, maxCalls, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(maxCalls), runnable -> {
+                Thread thread = new Thread(runnable, "shard-client-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        // Idle threads go away, so the bound costs nothing between bursts
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public int numShards() {
+        return shards.size();
+    }
+
+    /** Shard answers dropped because they missed the timeout. */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /** Shard answers dropped because the request failed. */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** Shard calls not made because the client pool and its queue were full. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Best {@code n} items for the user across all shards that answered in
+     * time, best first; empty if the user is unknown or no shard answered.
+     */
+    public List<RecommendedItem> recommend(long userId, int n) {
+        int requestId = requestIds.incrementAndGet();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        ShardCall[] calls = new ShardCall[shards.size()];
+        List<Future<ShardResult>> futures = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            calls[s] = new ShardCall(s, requestId, userId, n);
+            try {
+                futures.add(executor.submit(calls[s]));
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                futures.add(null);
+            }
+        }
+
+        List<ShardResult> answered = new ArrayList<>(futures.size());
+        int total = 0;
+        boolean interrupted = false;
+        for (int s = 0; s < futures.size(); s++) {
+            Future<ShardResult> future = futures.get(s);
+            if (future == null) {
+                continue;
+            }
+            if (interrupted) {
+                future.cancel(true);
+                calls[s].abort();
+                continue;
+            }
+            try {
+                ShardResult result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                answered.add(result);
+                total += result.count;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                calls[s].abort();
+                timedOut.incrementAndGet();
+            } catch (ExecutionException e) {
+                failed.incrementAndGet();
+                log.warn("Shard {} at {} failed for user {}", s, shards.get(s), userId, e.getCause());
+            } catch (InterruptedException e) {
+                // Stop waiting, but still abort the remaining calls
+                interrupted = true;
+                future.cancel(true);
+                calls[s].abort();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return merge(answered, total, n);
+    }
+
+    // Every shard scores with the same user vector, so merging by score gives the global top N
+    private static List<RecommendedItem> merge(List<ShardResult> answered, int total, int n) {
+        long[] ids = new long[total];
+        float[] scores = new float[total];
+        int filled = 0;
+        for (ShardResult result : answered) {
+            System.arraycopy(result.ids, 0, ids, filled, result.count);
+            System.arraycopy(result.scores, 0, scores, filled, result.count);
+            filled += result.count;
+        }
+        TopKHeap heap = new TopKHeap(Math.max(1, Math.min(n, total)));
+        for (int i = 0; i < total; i++) {
+            if (scores[i] > heap.threshold()) {
+                heap.offer(i, scores[i]);
+            }
+        }
+        int[] positions = new int[heap.size()];
+        float[] top = new float[heap.size()];
+        int count = heap.drainDescending(positions, top);
+        List<RecommendedItem> merged = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            merged.add(new GenericRecommendedItem(ids[positions[k]], top[k]));
+        }
+        return merged;
+    }
+
+    /** One request to one shard; {@link #abort} closes its connection from another thread. */
+    private final class ShardCall implements Callable<ShardResult> {
+        private final int shard;
+        private final int requestId;
+        private final long userId;
+        private final int n;
+        private Connection connection;
+        private boolean aborted;
+
+        ShardCall(int shard, int requestId, long userId, int n) {
+            this.shard = shard;
+            this.requestId = requestId;
+            this.userId = userId;
+            this.n = n;
+        }
+
+        @Override
+        public ShardResult call() throws IOException {
+            Connection connection = idle.get(shard).poll();
+            if (connection == null) {
+                connection = new Connection(shards.get(shard), (int) Math.max(1, timeoutMillis));
+            }
+            if (!attach(connection)) {
+                connection.close();
+                throw new IOException("Shard " + shard + " call aborted");
+            }
+            try {
+                connection.out.writeInt(requestId);
+                connection.out.writeLong(userId);
+                connection.out.writeInt(n);
+                connection.out.flush();
+                int answeredId = connection.in.readInt();
+                if (answeredId != requestId) {
+                    throw new IOException("Shard " + shard + " answered request " + answeredId
+                        + " instead of " + requestId);
+                }
+                int count = connection.in.readInt();
+                ShardResult result = new ShardResult(count);
+                for (int i = 0; i < count; i++) {
+                    result.ids[i] = connection.in.readLong();
+                    result.scores[i] = connection.in.readFloat();
+                }
+                if (detach()) {
+                    idle.get(shard).offer(connection);
+                }
+                return result;
+            } catch (IOException | RuntimeException e) {
+                detach();
+                connection.close();
+                throw e;
+            }
+        }
+
+        synchronized void abort() {
+            aborted = true;
+            if (connection != null) {
+                // Fails the blocked read at once rather than when the socket timeout fires
+                connection.close();
+                connection = null;
+            }
+        }
+
+        private synchronized boolean attach(Connection connection) {
+            this.connection = connection;
+            return !aborted;
+        }
+
+        // False if the call was aborted, in which case the connection is already closed
+        private synchronized boolean detach() {
+            connection = null;
+            return !aborted;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (ConcurrentLinkedQueue<Connection> connections : idle) {
+            Connection connection;
+            while ((connection = connections.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class ShardResult {
+        final int count;
+        final long[] ids;
+        final float[] scores;
+
+        ShardResult(int count) {
+            this.count = count;
+            this.ids = new long[count];
+            this.scores = new float[count];
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address, int timeoutMillis) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(address, timeoutMillis);
+                // A cancelled call is not interrupted out of a blocking read, so reads time out on their own
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.recommendation.sharding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves one {@link ItemShard} over TCP, one thread per connection.
+ *
+ * A connection carries any number of requests, each answered in order:
+ * <pre>
+ *   request    int requestId, long userId, int n
+ *   response   int requestId, int count, then count x (long itemId, float score), best first
+ * </pre>
+ * An unknown user gets zero items. {@link #main} runs a worker as its own
+ * process for {@link LocalShardCluster}.
+ */
+public final class ShardWorker implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ShardWorker.class);
+    /** Largest number of items a request may ask for. */
+    static final int MAX_RESULTS = 10_000;
+    /** First line a worker process prints to stdout, followed by its port. */
+    static final String READY = "LISTENING";
+
+    private final ItemShard shard;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private volatile boolean closed;
+
+    /** Binds to the loopback address; port 0 picks a free port. */
+    public ShardWorker(ItemShard shard, int port) throws IOException {
+        this.shard = shard;
+        this.server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        AtomicInteger count = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-" + shard.shardIndex() + "-connection-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(this::accept, "shard-" + shard.shardIndex() + "-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Shard {} stopped accepting connections", shard.shardIndex(), e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            long[] ids = new long[16];
+            float[] scores = new float[16];
+            while (true) {
+                int requestId;
+                try {
+                    requestId = in.readInt();
+                } catch (EOFException e) {
+                    // The coordinator closed the connection
+                    return;
+                }
+                long userId = in.readLong();
+                int n = Math.max(0, Math.min(in.readInt(), MAX_RESULTS));
+                if (ids.length < n) {
+                    ids = new long[n];
+                    scores = new float[n];
+                }
+                int count = shard.topN(userId, n, ids, scores);
+                out.writeInt(requestId);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(ids[i]);
+                    out.writeFloat(scores[i]);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.debug("Shard {} connection failed", shard.shardIndex(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdownNow();
+    }
+
+    /**
+     * Runs a worker process: {@code ShardWorker <shard directory> [port]}.
+     * Prints {@code LISTENING <port>} once ready and exits when its standard
+     * input is closed, i.e. when the parent process goes away.
+     */
+    public static void main(String[] args) throws IOException {
+        ItemShard shard = ItemShard.open(Paths.get(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        try (ShardWorker worker = new ShardWorker(shard, port)) {
+            System.out.println(READY + " " + worker.getPort());
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // Wait for the parent to close the pipe
+            }
+        }
+    }
+}
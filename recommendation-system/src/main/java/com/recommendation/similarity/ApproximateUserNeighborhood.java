@@ -0,0 +1,81 @@
+package com.recommendation.similarity;
+
+import com.recommendation.store.RatingStore;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Drop-in replacement for Mahout's {@code ThresholdUserNeighborhood} that only
+ * evaluates the similarity against candidates returned by a
+ * {@link SimHashUserIndex} instead of against every user.
+ *
+ * Candidates are re-ranked with the exact {@link UserSimilarity} and kept when
+ * they reach the threshold, so results are a subset of the exact threshold
+ * neighborhood. {@code maxCandidates} bounds the work per query; when more
+ * users collide, the index keeps those that collided in the most tables.
+ */
+public class ApproximateUserNeighborhood implements UserNeighborhood {
+    private final SimHashUserIndex index;
+    private final UserSimilarity similarity;
+    private final double threshold;
+    private final boolean multiProbe;
+    private final int maxCandidates;
+    private final ThreadLocal<Scratch> scratch;
+
+    public ApproximateUserNeighborhood(SimHashUserIndex index, UserSimilarity similarity, double threshold,
+                                       boolean multiProbe, int maxCandidates) {
+        if (maxCandidates <= 0) {
+            throw new IllegalArgumentException("maxCandidates must be positive: " + maxCandidates);
+        }
+        this.index = index;
+        this.similarity = similarity;
+        this.threshold = threshold;
+        this.multiProbe = multiProbe;
+        this.maxCandidates = maxCandidates;
+        int numUsers = index.getStore().numUsers();
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(index, Math.min(numUsers, maxCandidates)));
+    }
+
+    @Override
+    public long[] getUserNeighborhood(long userID) throws TasteException {
+        RatingStore store = index.getStore();
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        Scratch buffers = scratch.get();
+        int count = index.candidates(u, multiProbe, buffers.candidates, buffers.index);
+
+        long[] neighbors = new long[count];
+        int kept = 0;
+        for (int c = 0; c < count; c++) {
+            long candidateID = store.userId(buffers.candidates[c]);
+            double value = similarity.userSimilarity(userID, candidateID);
+            if (!Double.isNaN(value) && value >= threshold) {
+                neighbors[kept++] = candidateID;
+            }
+        }
+        return kept == count ? neighbors : Arrays.copyOf(neighbors, kept);
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // The index is immutable; a new snapshot means a new neighborhood
+    }
+
+    private static final class Scratch {
+        final SimHashUserIndex.Scratch index;
+        final int[] candidates;
+
+        Scratch(SimHashUserIndex index, int maxCandidates) {
+            this.index = index.newScratch();
+            this.candidates = new int[maxCandidates];
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.recommendation.similarity;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.util.Collection;
+
+/**
+ * Looks similarities up in a shared {@link UserSimilarityCache} before
+ * computing them with the delegate. Each engine snapshot has its own
+ * instance, bound to the cache version that was current when it was built.
+ */
+public class CachedUserSimilarity implements UserSimilarity {
+    private final UserSimilarity delegate;
+    private final UserSimilarityCache cache;
+    private final long version;
+    private final UserSimilarityCache.Loader loader;
+
+    public CachedUserSimilarity(UserSimilarity delegate, UserSimilarityCache cache) {
+        this(delegate, cache, cache.version());
+    }
+
+    /**
+     * Binds to a version that may not be current yet, for a snapshot built
+     * before the cache moves on to its ratings; it stores nothing until then.
+     */
+    public CachedUserSimilarity(UserSimilarity delegate, UserSimilarityCache cache, long version) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.version = version;
+        this.loader = delegate::userSimilarity;
+    }
+
+    public UserSimilarityCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public double userSimilarity(long userID1, long userID2) throws TasteException {
+        return cache.get(userID1, userID2, version, loader);
+    }
+
+    @Override
+    public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // Snapshots are immutable; rating changes go through UserSimilarityCache.nextVersion
+    }
+}
@@ -0,0 +1,237 @@
+package com.recommendation.similarity;
+
+import com.recommendation.store.ModelFile;
+import com.recommendation.store.RatingStore;
+import com.recommendation.util.ScratchPool;
+import com.recommendation.util.TopKHeap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Precomputed top-K item neighbors by adjusted cosine similarity.
+ *
+ * Ratings are centered on each user's mean before comparing items, which
+ * cancels out users who rate everything high or low. Only positive
+ * similarities are kept. Neighbor lists are stored flat: item {@code i} owns
+ * slots {@code [i * k, i * k + neighborCount(i))}, sorted by descending
+ * similarity, with item indexes referring to the {@link RatingStore} the index
+ * was built from.
+ */
+public final class ItemSimilarityIndex {
+    private static final int BLOCK_SIZE = 256;
+
+    private final int numItems;
+    private final int k;
+    private final int[] counts;
+    private final int[] neighbors;
+    private final float[] similarities;
+
+    ItemSimilarityIndex(int numItems, int k, int[] counts, int[] neighbors, float[] similarities) {
+        this.numItems = numItems;
+        this.k = k;
+        this.counts = counts;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+
+    public static ItemSimilarityIndex build(RatingStore store, int k) {
+        return build(store, k, ForkJoinPool.commonPool());
+    }
+
+    public static ItemSimilarityIndex build(RatingStore store, int k, ForkJoinPool pool) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        int numItems = store.numItems();
+        if ((long) numItems * k > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many neighbor slots: " + numItems + " items x " + k);
+        }
+
+        float[] userMeans = new float[store.numUsers()];
+        for (int u = 0; u < userMeans.length; u++) {
+            userMeans[u] = store.meanRating(u);
+        }
+        float[] itemNorms = new float[numItems];
+        for (int i = 0; i < numItems; i++) {
+            double sum = 0;
+            for (int p = store.itemStart(i), end = store.itemEnd(i); p < end; p++) {
+                double centered = store.itemRatingAt(p) - userMeans[store.userAt(p)];
+                sum += centered * centered;
+            }
+            itemNorms[i] = (float) Math.sqrt(sum);
+        }
+
+        int[] counts = new int[numItems];
+        int[] neighbors = new int[numItems * k];
+        float[] similarities = new float[numItems * k];
+        Arrays.fill(neighbors, -1);
+
+        // Scratch per running leaf rather than per thread, so it is all released with the build
+        ScratchPool<Scratch> scratch = new ScratchPool<>(() -> new Scratch(numItems, k));
+        pool.invoke(new BuildTask(store, k, userMeans, itemNorms, scratch,
+            counts, neighbors, similarities, 0, numItems));
+        return new ItemSimilarityIndex(numItems, k, counts, neighbors, similarities);
+    }
+
+    /** Writes the index into the open section of {@code out}. */
+    public void write(ModelFile.Writer out) throws IOException {
+        out.putInt(numItems).putInt(k).putInts(counts).putInts(neighbors).putFloats(similarities);
+    }
+
+    /** Reads an index written by {@link #write}. */
+    public static ItemSimilarityIndex read(ModelFile.Section in) throws IOException {
+        int numItems = in.getInt();
+        int k = in.getInt();
+        if (numItems < 0 || k <= 0 || (long) numItems * k > Integer.MAX_VALUE) {
+            throw new IOException("Invalid neighbor index dimensions: " + numItems + " items x " + k);
+        }
+        int[] counts = in.getInts(numItems);
+        int[] neighbors = in.getInts(numItems * k);
+        float[] similarities = in.getFloats(numItems * k);
+        return new ItemSimilarityIndex(numItems, k, counts, neighbors, similarities);
+    }
+
+    public int numItems() {
+        return numItems;
+    }
+
+    /** Maximum number of neighbors kept per item. */
+    public int k() {
+        return k;
+    }
+
+    public int neighborCount(int itemIndex) {
+        return counts[itemIndex];
+    }
+
+    /** Item index of the {@code n}-th most similar neighbor of an item. */
+    public int neighbor(int itemIndex, int n) {
+        return neighbors[itemIndex * k + n];
+    }
+
+    public float similarity(int itemIndex, int n) {
+        return similarities[itemIndex * k + n];
+    }
+
+    /** Similarity between two items if one is in the other's top-K, otherwise NaN. */
+    public float similarityBetween(int itemIndex, int otherIndex) {
+        int base = itemIndex * k;
+        for (int n = 0; n < counts[itemIndex]; n++) {
+            if (neighbors[base + n] == otherIndex) {
+                return similarities[base + n];
+            }
+        }
+        return Float.NaN;
+    }
+
+    /** Accumulators reused across blocks; dots is left zeroed after each item. */
+    private static final class Scratch {
+        final float[] dots;
+        final int[] touched;
+        final TopKHeap heap;
+        final int[] topIds;
+        final float[] topScores;
+
+        Scratch(int numItems, int k) {
+            this.dots = new float[numItems];
+            this.touched = new int[numItems];
+            this.heap = new TopKHeap(k);
+            this.topIds = new int[k];
+            this.topScores = new float[k];
+        }
+    }
+
+    private static final class BuildTask extends RecursiveAction {
+        private final RatingStore store;
+        private final int k;
+        private final float[] userMeans;
+        private final float[] itemNorms;
+        private final ScratchPool<Scratch> scratch;
+        private final int[] counts;
+        private final int[] neighbors;
+        private final float[] similarities;
+        private final int from;
+        private final int to;
+
+        BuildTask(RatingStore store, int k, float[] userMeans, float[] itemNorms, ScratchPool<Scratch> scratch,
+                  int[] counts, int[] neighbors, float[] similarities, int from, int to) {
+            this.store = store;
+            this.k = k;
+            this.userMeans = userMeans;
+            this.itemNorms = itemNorms;
+            this.scratch = scratch;
+            this.counts = counts;
+            this.neighbors = neighbors;
+            this.similarities = similarities;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BLOCK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new BuildTask(store, k, userMeans, itemNorms, scratch, counts, neighbors, similarities, from, mid),
+                    new BuildTask(store, k, userMeans, itemNorms, scratch, counts, neighbors, similarities, mid, to));
+                return;
+            }
+
+            Scratch buffers = scratch.acquire();
+            float[] dots = buffers.dots;
+            int[] touched = buffers.touched;
+            TopKHeap heap = buffers.heap;
+            int[] topIds = buffers.topIds;
+            float[] topScores = buffers.topScores;
+
+            for (int i = from; i < to; i++) {
+                // Sparse accumulation of dot products with every co-rated item
+                int touchedCount = 0;
+                for (int p = store.itemStart(i), end = store.itemEnd(i); p < end; p++) {
+                    int u = store.userAt(p);
+                    float centered = store.itemRatingAt(p) - userMeans[u];
+                    if (centered == 0.0f) {
+                        continue;
+                    }
+                    for (int q = store.userStart(u), userEnd = store.userEnd(u); q < userEnd; q++) {
+                        int j = store.itemAt(q);
+                        if (j == i) {
+                            continue;
+                        }
+                        if (dots[j] == 0.0f) {
+                            touched[touchedCount++] = j;
+                        }
+                        dots[j] += centered * (store.userRatingAt(q) - userMeans[u]);
+                        if (dots[j] == 0.0f) {
+                            // keep the slot marked so it is not recorded twice
+                            dots[j] = Float.MIN_VALUE;
+                        }
+                    }
+                }
+
+                heap.clear();
+                float normI = itemNorms[i];
+                for (int t = 0; t < touchedCount; t++) {
+                    int j = touched[t];
+                    float denominator = normI * itemNorms[j];
+                    if (denominator > 0.0f) {
+                        float similarity = dots[j] / denominator;
+                        if (similarity > 0.0f) {
+                            heap.offer(j, similarity);
+                        }
+                    }
+                    dots[j] = 0.0f;
+                }
+
+                int count = heap.drainDescending(topIds, topScores);
+                System.arraycopy(topIds, 0, neighbors, i * k, count);
+                System.arraycopy(topScores, 0, similarities, i * k, count);
+                counts[i] = count;
+            }
+            scratch.release(buffers);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.recommendation.similarity;
+
+import com.recommendation.store.RatingStore;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.similarity.PreferenceInferrer;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Memoizes one similarity row per thread: the values of
+ * {@code userSimilarity(a, b)} for the current {@code a}.
+ *
+ * Mahout's user-based recommender asks for the similarity between the query
+ * user and each neighbor once while building the neighborhood and again for
+ * every candidate item the neighbor rated. With this wrapper each pair is
+ * computed once per query user, without locks or boxed keys. The row is
+ * reset when a thread moves on to another first argument, so memory stays at
+ * one dense row per thread.
+ */
+public class RowCachingUserSimilarity implements UserSimilarity {
+    private final UserSimilarity delegate;
+    private final RatingStore store;
+    private final ThreadLocal<Row> rows;
+
+    public RowCachingUserSimilarity(UserSimilarity delegate, RatingStore store) {
+        this.delegate = delegate;
+        this.store = store;
+        int numUsers = store.numUsers();
+        this.rows = ThreadLocal.withInitial(() -> new Row(numUsers));
+    }
+
+    @Override
+    public double userSimilarity(long userID1, long userID2) throws TasteException {
+        int other = store.userIndex(userID2);
+        if (other < 0) {
+            return delegate.userSimilarity(userID1, userID2);
+        }
+        Row row = rows.get();
+        if (row.owner != userID1 || row.stamp == 0) {
+            row.reset(userID1);
+        }
+        if (row.stamps[other] == row.stamp) {
+            return row.values[other];
+        }
+        double value = delegate.userSimilarity(userID1, userID2);
+        row.values[other] = value;
+        row.stamps[other] = row.stamp;
+        return value;
+    }
+
+    @Override
+    public void setPreferenceInferrer(PreferenceInferrer inferrer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // The store is immutable
+    }
+
+    private static final class Row {
+        final double[] values;
+        final int[] stamps;
+        long owner;
+        int stamp;
+
+        Row(int numUsers) {
+            this.values = new double[numUsers];
+            this.stamps = new int[numUsers];
+        }
+
+        void reset(long userID) {
+            owner = userID;
+            if (++stamp == 0) {
+                // Wrapped around: old marks could collide, so start over
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.recommendation.similarity;
+
+import com.recommendation.store.RatingStore;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Locality-sensitive hash index over mean-centered user rating vectors.
+ *
+ * Each of the {@code tables} hash tables signs the projection of a user's
+ * centered ratings onto {@code bits} random hyperplanes (SimHash), so users
+ * with a small angle between their vectors tend to share a bucket. The
+ * hyperplane components are derived from a hash of (seed, table, item id)
+ * instead of being stored. Lookups can also probe every bucket one bit flip
+ * away, which trades latency for recall without rebuilding.
+ *
+ * More tables and multi-probing raise recall; more bits shrink buckets and
+ * lower latency.
+ */
+public final class SimHashUserIndex {
+    private static final int EXACT_HIT = 2;
+    private static final int PROBE_HIT = 1;
+
+    private final RatingStore store;
+    private final int tables;
+    private final int bits;
+    private final int[] signatures;
+    private final long[][] buckets;
+
+    private SimHashUserIndex(RatingStore store, int tables, int bits, int[] signatures, long[][] buckets) {
+        this.store = store;
+        this.tables = tables;
+        this.bits = bits;
+        this.signatures = signatures;
+        this.buckets = buckets;
+    }
+
+    public static SimHashUserIndex build(RatingStore store, int tables, int bits, long seed) {
+        if (tables <= 0) {
+            throw new IllegalArgumentException("tables must be positive: " + tables);
+        }
+        if (bits <= 0 || bits > 31) {
+            throw new IllegalArgumentException("bits must be between 1 and 31: " + bits);
+        }
+        int numUsers = store.numUsers();
+        int[] signatures = new int[numUsers * tables];
+
+        IntStream.range(0, numUsers).parallel().forEach(u -> {
+            float mean = store.meanRating(u);
+            float[] projection = new float[bits];
+            for (int t = 0; t < tables; t++) {
+                Arrays.fill(projection, 0.0f);
+                for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+                    float centered = store.userRatingAt(p) - mean;
+                    long plane = mix(seed + t * 0x9E3779B97F4A7C15L + store.itemId(store.itemAt(p)));
+                    for (int b = 0; b < bits; b++) {
+                        projection[b] += ((plane >>> b) & 1L) != 0 ? centered : -centered;
+                    }
+                }
+                int signature = 0;
+                for (int b = 0; b < bits; b++) {
+                    if (projection[b] > 0.0f) {
+                        signature |= 1 << b;
+                    }
+                }
+                signatures[u * tables + t] = signature;
+            }
+        });
+
+        // Each table is a sorted array of (signature << 32 | user) so a bucket is one contiguous run
+        long[][] buckets = new long[tables][];
+        IntStream.range(0, tables).parallel().forEach(t -> {
+            long[] keys = new long[numUsers];
+            for (int u = 0; u < numUsers; u++) {
+                keys[u] = ((long) signatures[u * tables + t] << 32) | u;
+            }
+            Arrays.sort(keys);
+            buckets[t] = keys;
+        });
+        return new SimHashUserIndex(store, tables, bits, signatures, buckets);
+    }
+
+    public RatingStore getStore() {
+        return store;
+    }
+
+    public int tables() {
+        return tables;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * Collects candidate neighbors of a user into {@code out} and returns how
+     * many were written, never more than {@code out.length}. Every table (and
+     * with {@code multiProbe}, every bucket one bit flip away) is scanned;
+     * when more users collide than fit, the ones that collided most often
+     * are kept, an exact bucket counting twice as much as a probed one.
+     * Scanning buckets is cheap next to scoring a candidate exactly, so this
+     * spends the candidate budget on the likeliest neighbors.
+     */
+    public int candidates(int userIndex, boolean multiProbe, int[] out, Scratch scratch) {
+        int stamp = scratch.nextStamp();
+        scratch.seen[userIndex] = stamp;
+        scratch.hits[userIndex] = -1;
+        int touched = 0;
+        for (int t = 0; t < tables; t++) {
+            int signature = signatures[userIndex * tables + t];
+            touched = collect(buckets[t], signature, EXACT_HIT, scratch, stamp, touched);
+            if (multiProbe) {
+                for (int b = 0; b < bits; b++) {
+                    touched = collect(buckets[t], signature ^ (1 << b), PROBE_HIT, scratch, stamp, touched);
+                }
+            }
+        }
+        int[] users = scratch.touched;
+        int[] hits = scratch.hits;
+        if (touched <= out.length) {
+            System.arraycopy(users, 0, out, 0, touched);
+            return touched;
+        }
+
+        // Counting sort on hits: find the lowest count that still fits, fill ties in scan order
+        int[] histogram = new int[EXACT_HIT * tables + 1];
+        for (int c = 0; c < touched; c++) {
+            histogram[hits[users[c]]]++;
+        }
+        int cutoff = histogram.length - 1;
+        int above = 0;
+        while (above + histogram[cutoff] <= out.length) {
+            above += histogram[cutoff--];
+        }
+        int count = 0;
+        int ties = out.length - above;
+        for (int c = 0; c < touched; c++) {
+            int user = users[c];
+            if (hits[user] > cutoff) {
+                out[count++] = user;
+            } else if (hits[user] == cutoff && ties > 0) {
+                out[count++] = user;
+                ties--;
+            }
+        }
+        return count;
+    }
+
+    /** Per-thread buffers for {@link #candidates}, sized for the index's users. */
+    public Scratch newScratch() {
+        return new Scratch(store.numUsers());
+    }
+
+    private static int collect(long[] keys, int signature, int weight, Scratch scratch, int stamp, int touched) {
+        long first = (long) signature << 32;
+        int position = Arrays.binarySearch(keys, first);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        int[] seen = scratch.seen;
+        int[] hits = scratch.hits;
+        while (position < keys.length && (int) (keys[position] >>> 32) == signature) {
+            int user = (int) keys[position++];
+            if (seen[user] != stamp) {
+                seen[user] = stamp;
+                hits[user] = weight;
+                scratch.touched[touched++] = user;
+            } else if (hits[user] >= 0) {
+                hits[user] += weight;
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Collision counts for one query at a time. {@code seen} marks users with
+     * the current stamp, so the arrays are reused without clearing.
+     */
+    public static final class Scratch {
+        private final int[] seen;
+        private final int[] hits;
+        private final int[] touched;
+        private int stamp;
+
+        private Scratch(int numUsers) {
+            this.seen = new int[numUsers];
+            this.hits = new int[numUsers];
+            this.touched = new int[numUsers];
+        }
+
+        private int nextStamp() {
+            if (++stamp == 0) {
+                // Wrapped around: old marks could collide, so start over
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
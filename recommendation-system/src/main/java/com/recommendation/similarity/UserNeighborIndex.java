@@ -0,0 +1,257 @@
+package com.recommendation.similarity;
+
+import com.recommendation.store.ModelFile;
+import com.recommendation.store.RatingStore;
+import com.recommendation.util.BuildProgress;
+import com.recommendation.util.ScratchPool;
+import com.recommendation.util.TopKHeap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Precomputed top-K user neighbors by Pearson correlation.
+ *
+ * Similarities are computed the way Mahout's
+ * {@code PearsonCorrelationSimilarity} computes them (centered over co-rated
+ * items, unweighted), and only those at or above the threshold are kept, as
+ * {@code ThresholdUserNeighborhood} would. Each user's row is found by
+ * walking the raters of every item the user rated, so all of a user's
+ * co-rating sums are accumulated in one pass instead of one merge per pair.
+ * Users are split into blocks and scored in parallel on a fork/join pool,
+ * whose work stealing evens out blocks of heavy raters.
+ *
+ * Neighbor lists are stored flat: user {@code u} owns slots
+ * {@code [u * k, u * k + neighborCount(u))}, sorted by descending similarity,
+ * with user indexes referring to the {@link RatingStore} the index was built
+ * from. Memory is about {@code 8 * k} bytes per user.
+ */
+public final class UserNeighborIndex {
+    // Smaller than the item index's blocks: user rows vary more in cost, and progress is reported per block
+    private static final int BLOCK_SIZE = 64;
+
+    private final int numUsers;
+    private final int k;
+    private final int[] counts;
+    private final int[] neighbors;
+    private final float[] similarities;
+
+    UserNeighborIndex(int numUsers, int k, int[] counts, int[] neighbors, float[] similarities) {
+        this.numUsers = numUsers;
+        this.k = k;
+        this.counts = counts;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+
+    public static UserNeighborIndex build(RatingStore store, int k, double threshold) {
+        return build(store, k, threshold, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Builds the index on the given pool, reporting each finished block of
+     * users to {@code progress} if it is not null.
+     *
+     * @throws CancellationException if {@code progress} was cancelled before the build finished
+     */
+    public static UserNeighborIndex build(RatingStore store, int k, double threshold, ForkJoinPool pool,
+                                          BuildProgress progress) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        int numUsers = store.numUsers();
+        if ((long) numUsers * k > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many neighbor slots: " + numUsers + " users x " + k);
+        }
+        BuildProgress tracker = progress != null ? progress : new BuildProgress();
+        tracker.start(numUsers);
+
+        int[] counts = new int[numUsers];
+        int[] neighbors = new int[numUsers * k];
+        float[] similarities = new float[numUsers * k];
+        Arrays.fill(neighbors, -1);
+
+        // Scratch per running leaf rather than per thread, so it is all released with the build
+        ScratchPool<Scratch> scratch = new ScratchPool<>(() -> new Scratch(numUsers, k));
+        pool.invoke(new BuildTask(store, k, threshold, tracker, scratch, counts, neighbors, similarities,
+            0, numUsers));
+        return new UserNeighborIndex(numUsers, k, counts, neighbors, similarities);
+    }
+
+    /** Pearson correlation from co-rating sums, or NaN if undefined, clamped to [-1, 1]. */
+    static double pearson(int n, double sumX, double sumY, double sumXY, double sumX2, double sumY2) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double centeredXY = sumXY - meanY * sumX;
+        double centeredX2 = sumX2 - meanX * sumX;
+        double centeredY2 = sumY2 - meanY * sumY;
+        double denominator = Math.sqrt(centeredX2) * Math.sqrt(centeredY2);
+        if (denominator == 0.0) {
+            return Double.NaN;
+        }
+        double result = centeredXY / denominator;
+        return result < -1.0 ? -1.0 : result > 1.0 ? 1.0 : result;
+    }
+
+    /** Writes the index into the open section of {@code out}. */
+    public void write(ModelFile.Writer out) throws IOException {
+        out.putInt(numUsers).putInt(k).putInts(counts).putInts(neighbors).putFloats(similarities);
+    }
+
+    /** Reads an index written by {@link #write}. */
+    public static UserNeighborIndex read(ModelFile.Section in) throws IOException {
+        int numUsers = in.getInt();
+        int k = in.getInt();
+        if (numUsers < 0 || k <= 0 || (long) numUsers * k > Integer.MAX_VALUE) {
+            throw new IOException("Invalid neighbor index dimensions: " + numUsers + " users x " + k);
+        }
+        int[] counts = in.getInts(numUsers);
+        int[] neighbors = in.getInts(numUsers * k);
+        float[] similarities = in.getFloats(numUsers * k);
+        return new UserNeighborIndex(numUsers, k, counts, neighbors, similarities);
+    }
+
+    public int numUsers() {
+        return numUsers;
+    }
+
+    /** Maximum number of neighbors kept per user. */
+    public int k() {
+        return k;
+    }
+
+    public int neighborCount(int userIndex) {
+        return counts[userIndex];
+    }
+
+    /** User index of the {@code n}-th most similar neighbor of a user. */
+    public int neighbor(int userIndex, int n) {
+        return neighbors[userIndex * k + n];
+    }
+
+    public float similarity(int userIndex, int n) {
+        return similarities[userIndex * k + n];
+    }
+
+    /** Co-rating sums over all users, reused across blocks; n is left zeroed after each user. */
+    private static final class Scratch {
+        final int[] n;
+        final double[] sumX;
+        final double[] sumY;
+        final double[] sumXY;
+        final double[] sumX2;
+        final double[] sumY2;
+        final int[] touched;
+        final TopKHeap heap;
+        final int[] topIds;
+        final float[] topScores;
+
+        Scratch(int numUsers, int k) {
+            this.n = new int[numUsers];
+            this.sumX = new double[numUsers];
+            this.sumY = new double[numUsers];
+            this.sumXY = new double[numUsers];
+            this.sumX2 = new double[numUsers];
+            this.sumY2 = new double[numUsers];
+            this.touched = new int[numUsers];
+            this.heap = new TopKHeap(k);
+            this.topIds = new int[k];
+            this.topScores = new float[k];
+        }
+    }
+
+    private static final class BuildTask extends RecursiveAction {
+        private final RatingStore store;
+        private final int k;
+        private final double threshold;
+        private final BuildProgress progress;
+        private final ScratchPool<Scratch> scratch;
+        private final int[] counts;
+        private final int[] neighbors;
+        private final float[] similarities;
+        private final int from;
+        private final int to;
+
+        BuildTask(RatingStore store, int k, double threshold, BuildProgress progress, ScratchPool<Scratch> scratch,
+                  int[] counts, int[] neighbors, float[] similarities, int from, int to) {
+            this.store = store;
+            this.k = k;
+            this.threshold = threshold;
+            this.progress = progress;
+            this.scratch = scratch;
+            this.counts = counts;
+            this.neighbors = neighbors;
+            this.similarities = similarities;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BLOCK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new BuildTask(store, k, threshold, progress, scratch, counts, neighbors, similarities, from, mid),
+                    new BuildTask(store, k, threshold, progress, scratch, counts, neighbors, similarities, mid, to));
+                return;
+            }
+            if (progress.isCancelled()) {
+                throw new CancellationException("User neighbor index build cancelled");
+            }
+
+            Scratch s = scratch.acquire();
+            for (int u = from; u < to; u++) {
+                // Co-rating sums with every user sharing an item, in one pass over u's items
+                int touchedCount = 0;
+                for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+                    int item = store.itemAt(p);
+                    double x = store.userRatingAt(p);
+                    for (int q = store.itemStart(item), itemEnd = store.itemEnd(item); q < itemEnd; q++) {
+                        int v = store.userAt(q);
+                        if (v == u) {
+                            continue;
+                        }
+                        double y = store.itemRatingAt(q);
+                        if (s.n[v]++ == 0) {
+                            s.touched[touchedCount++] = v;
+                            s.sumX[v] = x;
+                            s.sumY[v] = y;
+                            s.sumXY[v] = x * y;
+                            s.sumX2[v] = x * x;
+                            s.sumY2[v] = y * y;
+                        } else {
+                            s.sumX[v] += x;
+                            s.sumY[v] += y;
+                            s.sumXY[v] += x * y;
+                            s.sumX2[v] += x * x;
+                            s.sumY2[v] += y * y;
+                        }
+                    }
+                }
+
+                s.heap.clear();
+                for (int t = 0; t < touchedCount; t++) {
+                    int v = s.touched[t];
+                    double similarity = pearson(s.n[v], s.sumX[v], s.sumY[v], s.sumXY[v], s.sumX2[v], s.sumY2[v]);
+                    s.n[v] = 0;
+                    if (similarity >= threshold) {
+                        s.heap.offer(v, (float) similarity);
+                    }
+                }
+
+                int count = s.heap.drainDescending(s.topIds, s.topScores);
+                System.arraycopy(s.topIds, 0, neighbors, u * k, count);
+                System.arraycopy(s.topScores, 0, similarities, u * k, count);
+                counts[u] = count;
+            }
+            scratch.release(s);
+            progress.advance(to - from);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.recommendation.similarity;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Bounded cache of user-user similarities shared by successive engine
+ * snapshots.
+ *
+ * A pair is keyed by one primitive long, {@code min(u1, u2) << 32 | max(u1, u2)},
+ * so user ids must fit in 32 unsigned bits; other pairs are not cached.
+ * Entries live in a fixed number of 4-way sets spread over lock stripes.
+ * Readers use optimistic stamped reads and take no lock unless a writer
+ * raced them. A full set overwrites its entries round-robin, so memory is
+ * fixed at construction (about 24 bytes per entry).
+ *
+ * Invalidating a user is O(1). Every entry records the epochs of both its
+ * users, and {@link #nextVersion} bumps the epochs of the users whose
+ * ratings changed. Epochs live in a hashed table, so a collision only
+ * invalidates a few extra entries. Values are only stored by the newest
+ * version, so an old snapshot that is still serving cannot write back a
+ * similarity computed from old ratings.
+ */
+public final class UserSimilarityCache {
+    private static final int WAYS = 4;
+    private static final long EMPTY = -1L;
+    // A NaN that doubleToLongBits never produces, so a cached NaN similarity is still a hit
+    private static final long MISS = 0x7FF0000000000001L;
+    private static final int EPOCH_BITS = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int setMask;
+    private final AtomicIntegerArray epochs = new AtomicIntegerArray(1 << EPOCH_BITS);
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** Creates a cache holding at least {@code capacity} pairs, rounded up to a power of two. */
+    public UserSimilarityCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int numStripes = Math.min(64, Integer.highestOneBit(Math.max(1, capacity / 1024)));
+        int setsPerStripe = Math.max(1, Integer.highestOneBit((capacity - 1) / (numStripes * WAYS)) << 1);
+        this.stripes = new Stripe[numStripes];
+        for (int s = 0; s < numStripes; s++) {
+            stripes[s] = new Stripe(setsPerStripe * WAYS);
+        }
+        this.stripeMask = numStripes - 1;
+        this.setMask = setsPerStripe - 1;
+    }
+
+    public int capacity() {
+        return stripes.length * stripes[0].keys.length;
+    }
+
+    /** The version new snapshots should use; values are only stored under the current version. */
+    public long version() {
+        return version.get();
+    }
+
+    /** Invalidates every pair involving the given users and returns the new version. */
+    public long nextVersion(long... changedUserIds) {
+        // Version first, epochs second; lookups read them in the opposite order
+        long next = version.incrementAndGet();
+        for (long userId : changedUserIds) {
+            epochs.incrementAndGet(epochSlot(userId));
+        }
+        return next;
+    }
+
+    /**
+     * Returns the cached similarity of the pair or computes and, if
+     * {@code snapshotVersion} is current, stores it.
+     */
+    public double get(long userId1, long userId2, long snapshotVersion, Loader loader) throws TasteException {
+        long low = Math.min(userId1, userId2);
+        long high = Math.max(userId1, userId2);
+        if (low == high || low < 0 || (high >>> 32) != 0) {
+            return loader.load(userId1, userId2);
+        }
+        long key = low << 32 | high;
+        long epochPair = (long) epochs.get(epochSlot(low)) << 32 | (epochs.get(epochSlot(high)) & 0xFFFFFFFFL);
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 58) & stripeMask];
+        int base = ((int) hash & setMask) * WAYS;
+
+        long cached = stripe.find(key, epochPair, base);
+        if (cached != MISS) {
+            hits.increment();
+            return Double.longBitsToDouble(cached);
+        }
+        misses.increment();
+        double value = loader.load(userId1, userId2);
+        if (snapshotVersion == version.get()) {
+            stripe.store(key, epochPair, value, base);
+        }
+        return value;
+    }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private static int epochSlot(long userId) {
+        return (int) (mix(userId) >>> (64 - EPOCH_BITS));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Computes a similarity on a cache miss. */
+    @FunctionalInterface
+    public interface Loader {
+        double load(long userId1, long userId2) throws TasteException;
+    }
+
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        final long[] keys;
+        final long[] epochPairs;
+        final long[] values;
+        final byte[] next;
+
+        Stripe(int slots) {
+            this.keys = new long[slots];
+            this.epochPairs = new long[slots];
+            this.values = new long[slots];
+            this.next = new byte[slots / WAYS];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /** The value's bits, or MISS. */
+        long find(long key, long epochPair, int base) {
+            long stamp = lock.tryOptimisticRead();
+            int slot = scan(key, epochPair, base);
+            long value = slot >= 0 ? values[slot] : MISS;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    slot = scan(key, epochPair, base);
+                    value = slot >= 0 ? values[slot] : MISS;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        private int scan(long key, long epochPair, int base) {
+            for (int w = 0; w < WAYS; w++) {
+                if (keys[base + w] == key && epochPairs[base + w] == epochPair) {
+                    return base + w;
+                }
+            }
+            return -1;
+        }
+
+        void store(long key, long epochPair, double value, int base) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = -1;
+                for (int w = 0; w < WAYS && slot < 0; w++) {
+                    if (keys[base + w] == key || keys[base + w] == EMPTY) {
+                        slot = base + w;
+                    }
+                }
+                if (slot < 0) {
+                    int set = base / WAYS;
+                    slot = base + next[set];
+                    next[set] = (byte) ((next[set] + 1) % WAYS);
+                }
+                keys[slot] = key;
+                epochPairs[slot] = epochPair;
+                values[slot] = Double.doubleToLongBits(value);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                Arrays.fill(keys, EMPTY);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
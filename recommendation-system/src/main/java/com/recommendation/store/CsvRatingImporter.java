@@ -0,0 +1,319 @@
+package com.recommendation.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel importer for ratings exported as {@code userId,itemId,rating[,timestamp]}
+ * lines, comma or tab separated.
+ *
+ * The file is split into chunks that are memory-mapped and parsed on a
+ * fork/join pool. A chunk owns the lines that start inside it, so a line
+ * crossing a chunk boundary is parsed once, by the chunk it starts in.
+ * Numbers are parsed straight from the bytes; no String is created per
+ * line. Each chunk fills its own {@link RatingStore.Builder}, and the
+ * builders are concatenated in file order, so a (user, item) pair that
+ * appears more than once keeps the rating with the latest timestamp, or the
+ * later line on a tie. Lines without a timestamp use their byte offset in
+ * the file instead, so the later of two such lines wins.
+ *
+ * Blank lines and lines starting with {@code #} are skipped, as is a first
+ * line starting with a letter (a header). Extra fields after the timestamp
+ * are ignored. A malformed line fails the import with its byte offset.
+ */
+public final class CsvRatingImporter {
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 16 << 20;
+    // A line may extend this far past the end of the chunk it starts in
+    private static final int MAX_LINE_BYTES = 64 << 10;
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private CsvRatingImporter() {
+    }
+
+    public static RatingStore read(Path file) throws IOException {
+        return read(file, ForkJoinPool.commonPool());
+    }
+
+    public static RatingStore read(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long target = size / (pool.getParallelism() * 4L);
+            long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, target));
+            int numChunks = (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes);
+
+            RatingStore.Builder[] parsed = new RatingStore.Builder[numChunks];
+            try {
+                pool.invoke(new ParseTask(file, channel, size, chunkBytes, parsed, 0, numChunks));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int total = 0;
+            for (RatingStore.Builder chunk : parsed) {
+                total = Math.addExact(total, chunk.size());
+            }
+            RatingStore.Builder builder = RatingStore.builder(total);
+            for (int c = 0; c < numChunks; c++) {
+                builder.addAll(parsed[c]);
+                parsed[c] = null;
+            }
+            return builder.build();
+        }
+    }
+
+    private static RatingStore.Builder parseChunk(Path file, FileChannel channel, long fileSize, long start, long end)
+            throws IOException {
+        // Map from the byte before the chunk, to tell whether its first line starts exactly at the boundary
+        long mapStart = start == 0 ? 0 : start - 1;
+        long mapEnd = Math.min(fileSize, end + MAX_LINE_BYTES);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = (int) (mapEnd - mapStart);
+        int stop = (int) (end - mapStart);
+        // One bulk copy out of the mapping; per-byte reads from a MappedByteBuffer are several times slower
+        byte[] buffer = new byte[limit];
+        mapped.get(buffer);
+
+        int pos = 0;
+        if (start > 0) {
+            while (pos < limit && buffer[pos] != '\n') {
+                pos++;
+            }
+            pos++;
+        } else if (limit >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF) {
+            // UTF-8 byte order mark
+            pos = 3;
+        }
+        int firstLine = start == 0 ? pos : -1;
+        RatingStore.Builder builder = RatingStore.builder((int) ((end - start) / 32));
+        Line line = new Line(buffer);
+        while (pos < stop) {
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == limit && mapEnd < fileSize) {
+                throw new IOException("Line longer than " + MAX_LINE_BYTES + " bytes at " + file + ":" + (mapStart + pos));
+            }
+            long offset = mapStart + pos;
+            line.reset(pos, lineEnd);
+            if (!line.parse(builder, offset, pos == firstLine)) {
+                throw new IOException("Malformed rating at " + file + ":" + offset + ": " + line);
+            }
+            pos = lineEnd + 1;
+        }
+        return builder;
+    }
+
+    /** Cursor over one line of the chunk; reused for every line of the chunk. */
+    private static final class Line {
+        private final byte[] buffer;
+        private int start;
+        private int pos;
+        private int end;
+        private long longValue;
+        private float floatValue;
+
+        Line(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void reset(int from, int to) {
+            this.start = from;
+            this.pos = from;
+            this.end = to;
+        }
+
+        /** Parses the line into the builder; false if it is malformed. */
+        boolean parse(RatingStore.Builder builder, long offset, boolean firstLine) {
+            skipSpaces();
+            int c = peek();
+            if (c < 0 || c == '#' || (firstLine && Character.isLetter(c))) {
+                return true;
+            }
+            if (!parseLong()) {
+                return false;
+            }
+            long userId = longValue;
+            if (!separator() || !parseLong()) {
+                return false;
+            }
+            long itemId = longValue;
+            if (!separator() || !parseFloat()) {
+                return false;
+            }
+            float rating = floatValue;
+            long timestamp = offset;
+            if (separator()) {
+                if (!parseLong()) {
+                    return false;
+                }
+                timestamp = longValue;
+                // Anything after a further separator is ignored
+                if (separator()) {
+                    pos = end;
+                }
+            }
+            skipSpaces();
+            if (peek() >= 0) {
+                return false;
+            }
+            builder.add(userId, itemId, rating, timestamp);
+            return true;
+        }
+
+        // Next byte, or -1 at the end of the line; a trailing carriage return counts as the end
+        private int peek() {
+            if (pos >= end) {
+                return -1;
+            }
+            int c = buffer[pos] & 0xFF;
+            return c == '\r' && pos == end - 1 ? -1 : c;
+        }
+
+        private void skipSpaces() {
+            while (peek() == ' ') {
+                pos++;
+            }
+        }
+
+        private boolean separator() {
+            skipSpaces();
+            int c = peek();
+            if (c != ',' && c != '\t') {
+                return false;
+            }
+            pos++;
+            skipSpaces();
+            return true;
+        }
+
+        private boolean parseLong() {
+            int from = pos;
+            boolean negative = peek() == '-';
+            if (negative || peek() == '+') {
+                pos++;
+            }
+            long value = 0;
+            int digits = 0;
+            for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+                value = value * 10 + (c - '0');
+                digits++;
+                pos++;
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (digits > 18) {
+                // Could overflow; let the JDK check it
+                try {
+                    longValue = Long.parseLong(text(from, pos));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            longValue = negative ? -value : value;
+            return true;
+        }
+
+        private boolean parseFloat() {
+            int from = pos;
+            boolean negative = peek() == '-';
+            if (negative || peek() == '+') {
+                pos++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                pos++;
+            }
+            if (peek() == '.') {
+                pos++;
+                for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    fractionDigits++;
+                    pos++;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+            int c = peek();
+            // Exact when both operands are exact floats; otherwise, e.g. exponents, fall back to the JDK
+            if (c == 'e' || c == 'E' || digits > 18 || mantissa >= (1 << 24) || fractionDigits >= POWERS_OF_TEN.length) {
+                while (peek() > ' ' && peek() != ',' && peek() != '\t') {
+                    pos++;
+                }
+                try {
+                    floatValue = Float.parseFloat(text(from, pos));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            float value = mantissa / POWERS_OF_TEN[fractionDigits];
+            floatValue = negative ? -value : value;
+            return true;
+        }
+
+        private String text(int from, int to) {
+            return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return text(start, end).trim();
+        }
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private final Path file;
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long chunkBytes;
+        private final RatingStore.Builder[] parsed;
+        private final int from;
+        private final int to;
+
+        ParseTask(Path file, FileChannel channel, long fileSize, long chunkBytes, RatingStore.Builder[] parsed,
+                  int from, int to) {
+            this.file = file;
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.chunkBytes = chunkBytes;
+            this.parsed = parsed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                    new ParseTask(file, channel, fileSize, chunkBytes, parsed, from, mid),
+                    new ParseTask(file, channel, fileSize, chunkBytes, parsed, mid, to));
+                return;
+            }
+            long start = from * chunkBytes;
+            long end = Math.min(fileSize, start + chunkBytes);
+            try {
+                parsed[from] = parseChunk(file, channel, fileSize, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
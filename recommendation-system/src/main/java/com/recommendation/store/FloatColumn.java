@@ -0,0 +1,50 @@
+package com.recommendation.store;
+
+import java.nio.FloatBuffer;
+
+/** Read-only float column of a {@link RatingStore}, chunked like {@link LongColumn}. */
+final class FloatColumn {
+    // Heap columns keep their array, so the common case skips the buffer entirely
+    private final float[] values;
+    private final FloatBuffer[] chunks;
+    private final int shift;
+    private final int mask;
+    private final int size;
+
+    /** Chunk {@code c} holds elements {@code [c << shift, (c + 1) << shift)}. */
+    FloatColumn(FloatBuffer[] chunks, int shift, int size) {
+        this(null, chunks, shift, size);
+    }
+
+    private FloatColumn(float[] values, FloatBuffer[] chunks, int shift, int size) {
+        this.values = values;
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (int) ((1L << shift) - 1);
+        this.size = size;
+    }
+
+    static FloatColumn wrap(float[] values) {
+        return new FloatColumn(values, new FloatBuffer[] {FloatBuffer.wrap(values)}, 31, values.length);
+    }
+
+    float get(int index) {
+        if (values != null) {
+            return values[index];
+        }
+        return chunks[index >>> shift].get(index & mask);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int chunks() {
+        return chunks.length;
+    }
+
+    /** A private view of one chunk, positioned at its start. */
+    FloatBuffer chunk(int c) {
+        return chunks[c].duplicate();
+    }
+}
@@ -0,0 +1,50 @@
+package com.recommendation.store;
+
+import java.nio.IntBuffer;
+
+/** Read-only int column of a {@link RatingStore}, chunked like {@link LongColumn}. */
+final class IntColumn {
+    // Heap columns keep their array, so the common case skips the buffer entirely
+    private final int[] values;
+    private final IntBuffer[] chunks;
+    private final int shift;
+    private final int mask;
+    private final int size;
+
+    /** Chunk {@code c} holds elements {@code [c << shift, (c + 1) << shift)}. */
+    IntColumn(IntBuffer[] chunks, int shift, int size) {
+        this(null, chunks, shift, size);
+    }
+
+    private IntColumn(int[] values, IntBuffer[] chunks, int shift, int size) {
+        this.values = values;
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (int) ((1L << shift) - 1);
+        this.size = size;
+    }
+
+    static IntColumn wrap(int[] values) {
+        return new IntColumn(values, new IntBuffer[] {IntBuffer.wrap(values)}, 31, values.length);
+    }
+
+    int get(int index) {
+        if (values != null) {
+            return values[index];
+        }
+        return chunks[index >>> shift].get(index & mask);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int chunks() {
+        return chunks.length;
+    }
+
+    /** A private view of one chunk, positioned at its start. */
+    IntBuffer chunk(int c) {
+        return chunks[c].duplicate();
+    }
+}
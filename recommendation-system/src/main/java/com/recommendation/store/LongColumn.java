@@ -0,0 +1,55 @@
+package com.recommendation.store;
+
+import java.nio.LongBuffer;
+
+/**
+ * Read-only long column of a {@link RatingStore}, split into chunks of a
+ * power-of-two length. A single buffer can address at most 2 GB once it is
+ * mapped, so large snapshot sections span several mappings; heap columns are
+ * one chunk holding the whole array.
+ */
+final class LongColumn {
+    // Heap columns keep their array, so the common case skips the buffer entirely
+    private final long[] values;
+    private final LongBuffer[] chunks;
+    private final int shift;
+    private final int mask;
+    private final int size;
+
+    /** Chunk {@code c} holds elements {@code [c << shift, (c + 1) << shift)}. */
+    LongColumn(LongBuffer[] chunks, int shift, int size) {
+        this(null, chunks, shift, size);
+    }
+
+    private LongColumn(long[] values, LongBuffer[] chunks, int shift, int size) {
+        this.values = values;
+        this.chunks = chunks;
+        this.shift = shift;
+        this.mask = (int) ((1L << shift) - 1);
+        this.size = size;
+    }
+
+    static LongColumn wrap(long[] values) {
+        return new LongColumn(values, new LongBuffer[] {LongBuffer.wrap(values)}, 31, values.length);
+    }
+
+    long get(int index) {
+        if (values != null) {
+            return values[index];
+        }
+        return chunks[index >>> shift].get(index & mask);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int chunks() {
+        return chunks.length;
+    }
+
+    /** A private view of one chunk, positioned at its start. */
+    LongBuffer chunk(int c) {
+        return chunks[c].duplicate();
+    }
+}
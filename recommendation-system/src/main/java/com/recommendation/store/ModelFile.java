@@ -0,0 +1,386 @@
+package com.recommendation.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned, checksummed container for trained model artifacts such as
+ * neighbor lists, similarity tables, factors and id maps, so a process can
+ * start serving from a file instead of retraining.
+ *
+ * A file is a sequence of tagged sections, each written and read with bulk
+ * primitive-array copies through little-endian {@link ByteBuffer}s; nothing
+ * goes through Java serialization. Layout:
+ * <pre>
+ *   header   magic "RMDL", version, numSections, CRC32C of the table, table offset, file length
+ *   sections each 8-byte aligned, contents defined by whoever writes the tag
+ *   table    numSections x (int tag, int CRC32C, long offset, long length)
+ * </pre>
+ * {@link #open} checks the header, the table and every section's checksum
+ * before anything is read, so a truncated or corrupted copy fails with an
+ * {@link IOException} instead of loading wrong numbers.
+ */
+public final class ModelFile {
+    static final int MAGIC = 0x4C444D52; // "RMDL" read little-endian
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 24;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private final Path file;
+    private final Map<Integer, ByteBuffer> sections;
+
+    private ModelFile(Path file, Map<Integer, ByteBuffer> sections) {
+        this.file = file;
+        this.sections = sections;
+    }
+
+    /** Maps a model file and verifies it; sections are copied out when read. */
+    public static ModelFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Not a model file (too short): " + file);
+            }
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a model file (bad magic): " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported model file version " + version + ": " + file);
+            }
+            int numSections = header.getInt();
+            int tableCrc = header.getInt();
+            long tableOffset = header.getLong();
+            long length = header.getLong();
+            if (length != size || numSections < 0 || tableOffset < HEADER_BYTES
+                    || tableOffset + (long) numSections * ENTRY_BYTES != size) {
+                throw new IOException("Model file is truncated or corrupt: " + file);
+            }
+
+            ByteBuffer table = read(channel, tableOffset, numSections * ENTRY_BYTES);
+            if (crc(table.duplicate()) != tableCrc) {
+                throw new IOException("Model file section table fails its checksum: " + file);
+            }
+            Map<Integer, ByteBuffer> sections = new HashMap<>();
+            for (int s = 0; s < numSections; s++) {
+                int tag = table.getInt();
+                int sectionCrc = table.getInt();
+                long offset = table.getLong();
+                long bytes = table.getLong();
+                if (offset < HEADER_BYTES || bytes < 0 || offset + bytes > tableOffset || bytes > Integer.MAX_VALUE) {
+                    throw new IOException("Model file section " + tag + " is out of bounds: " + file);
+                }
+                ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                if (crc(section.duplicate()) != sectionCrc) {
+                    throw new IOException("Model file section " + tag + " fails its checksum: " + file);
+                }
+                sections.put(tag, section);
+            }
+            return new ModelFile(file, sections);
+        }
+    }
+
+    public boolean has(int tag) {
+        return sections.containsKey(tag);
+    }
+
+    /** A fresh reader over a section; every call starts at the section's beginning. */
+    public Section section(int tag) throws IOException {
+        ByteBuffer section = sections.get(tag);
+        if (section == null) {
+            throw new IOException("Model file has no section " + tag + ": " + file);
+        }
+        return new Section(tag, section.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of model file");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /** Sequential reader over one section's contents. */
+    public static final class Section {
+        private final int tag;
+        private final ByteBuffer buffer;
+
+        Section(int tag, ByteBuffer buffer) {
+            this.tag = tag;
+            this.buffer = buffer;
+        }
+
+        public int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        public long getLong() throws IOException {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        public float getFloat() throws IOException {
+            require(Float.BYTES);
+            return buffer.getFloat();
+        }
+
+        public double getDouble() throws IOException {
+            require(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        public int[] getInts(int count) throws IOException {
+            require((long) count * Integer.BYTES);
+            int[] values = new int[count];
+            buffer.asIntBuffer().get(values);
+            skip(count * Integer.BYTES);
+            return values;
+        }
+
+        public long[] getLongs(int count) throws IOException {
+            require((long) count * Long.BYTES);
+            long[] values = new long[count];
+            buffer.asLongBuffer().get(values);
+            skip(count * Long.BYTES);
+            return values;
+        }
+
+        public float[] getFloats(int count) throws IOException {
+            require((long) count * Float.BYTES);
+            float[] values = new float[count];
+            buffer.asFloatBuffer().get(values);
+            skip(count * Float.BYTES);
+            return values;
+        }
+
+        private void require(long bytes) throws IOException {
+            if (bytes < 0 || bytes > buffer.remaining()) {
+                throw new IOException("Model file section " + tag + " is shorter than its contents");
+            }
+        }
+
+        private void skip(int bytes) {
+            ((Buffer) buffer).position(buffer.position() + bytes);
+        }
+    }
+
+    /**
+     * Writes a model file section by section. Nothing is visible at the
+     * target path until {@link #commit}, which replaces it atomically;
+     * closing an uncommitted writer discards what was written.
+     */
+    public static final class Writer implements Closeable {
+        private final Path file;
+        private final Path temp;
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer entries = ByteBuffer.allocate(ENTRY_BYTES * 16).order(ByteOrder.LITTLE_ENDIAN);
+        private int numSections;
+        private int tag = -1;
+        private long sectionStart;
+        private boolean committed;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            Path parent = file.toAbsolutePath().getParent();
+            this.temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            channel.position(HEADER_BYTES);
+        }
+
+        public void beginSection(int tag) throws IOException {
+            if (this.tag >= 0) {
+                throw new IllegalStateException("Section " + this.tag + " is still open");
+            }
+            // Pad with zeros so every section starts 8-byte aligned
+            while ((position() & 7) != 0) {
+                chunk.put((byte) 0);
+            }
+            flush();
+            this.tag = tag;
+            this.sectionStart = channel.position();
+            crc.reset();
+        }
+
+        public void endSection() throws IOException {
+            requireSection();
+            flush();
+            if (entries.remaining() < ENTRY_BYTES) {
+                ByteBuffer grown = ByteBuffer.allocate(entries.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                ((Buffer) entries).flip();
+                entries = grown.put(entries);
+            }
+            entries.putInt(tag)
+                .putInt((int) crc.getValue())
+                .putLong(sectionStart)
+                .putLong(channel.position() - sectionStart);
+            numSections++;
+            tag = -1;
+        }
+
+        public Writer putInt(int value) throws IOException {
+            reserve(Integer.BYTES);
+            chunk.putInt(value);
+            return this;
+        }
+
+        public Writer putLong(long value) throws IOException {
+            reserve(Long.BYTES);
+            chunk.putLong(value);
+            return this;
+        }
+
+        public Writer putFloat(float value) throws IOException {
+            reserve(Float.BYTES);
+            chunk.putFloat(value);
+            return this;
+        }
+
+        public Writer putDouble(double value) throws IOException {
+            reserve(Double.BYTES);
+            chunk.putDouble(value);
+            return this;
+        }
+
+        public Writer putInts(int[] values) throws IOException {
+            requireSection();
+            for (int done = 0; done < values.length; ) {
+                reserve(Integer.BYTES);
+                IntBuffer view = chunk.asIntBuffer();
+                int n = Math.min(view.remaining(), values.length - done);
+                view.put(values, done, n);
+                advance(n * Integer.BYTES);
+                done += n;
+            }
+            return this;
+        }
+
+        public Writer putLongs(long[] values) throws IOException {
+            requireSection();
+            for (int done = 0; done < values.length; ) {
+                reserve(Long.BYTES);
+                LongBuffer view = chunk.asLongBuffer();
+                int n = Math.min(view.remaining(), values.length - done);
+                view.put(values, done, n);
+                advance(n * Long.BYTES);
+                done += n;
+            }
+            return this;
+        }
+
+        public Writer putFloats(float[] values) throws IOException {
+            requireSection();
+            for (int done = 0; done < values.length; ) {
+                reserve(Float.BYTES);
+                FloatBuffer view = chunk.asFloatBuffer();
+                int n = Math.min(view.remaining(), values.length - done);
+                view.put(values, done, n);
+                advance(n * Float.BYTES);
+                done += n;
+            }
+            return this;
+        }
+
+        /** Writes the section table and header, syncs, and moves the file into place. */
+        public void commit() throws IOException {
+            if (tag >= 0) {
+                throw new IllegalStateException("Section " + tag + " is still open");
+            }
+            flush();
+            long tableOffset = channel.position();
+            ((Buffer) entries).flip();
+            int tableCrc = crc(entries.duplicate());
+            drain(entries);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(numSections)
+                .putInt(tableCrc)
+                .putLong(tableOffset)
+                .putLong(channel.position());
+            ((Buffer) header).flip();
+            channel.position(0);
+            drain(header);
+            channel.force(true);
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private long position() throws IOException {
+            return channel.position() + chunk.position();
+        }
+
+        private void reserve(int bytes) throws IOException {
+            requireSection();
+            if (chunk.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void advance(int bytes) {
+            ((Buffer) chunk).position(chunk.position() + bytes);
+        }
+
+        private void requireSection() {
+            if (tag < 0) {
+                throw new IllegalStateException("No section is open");
+            }
+        }
+
+        // Writes out the buffered bytes, adding them to the open section's checksum
+        private void flush() throws IOException {
+            ((Buffer) chunk).flip();
+            if (tag >= 0) {
+                crc.update(chunk.duplicate());
+            }
+            drain(chunk);
+            chunk.clear();
+        }
+
+        private void drain(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
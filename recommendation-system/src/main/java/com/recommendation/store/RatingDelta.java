@@ -0,0 +1,142 @@
+package com.recommendation.store;
+
+import com.recommendation.model.Rating;
+
+import java.util.Arrays;
+
+/**
+ * Batch of rating changes to apply to a {@link RatingStore} with
+ * {@link RatingStore#withChanges(RatingDelta)}.
+ *
+ * A put adds or replaces the rating of a (user, item) pair and a removal
+ * deletes it. Changes override the store they are applied to, and when a batch
+ * touches the same pair more than once the change added last wins. Not
+ * thread-safe.
+ */
+public final class RatingDelta {
+    private long[] users;
+    private long[] items;
+    // NaN marks a removal
+    private float[] ratings;
+    private long[] timestamps;
+    private int size;
+
+    public RatingDelta() {
+        this(64);
+    }
+
+    private RatingDelta(int capacity) {
+        this.users = new long[capacity];
+        this.items = new long[capacity];
+        this.ratings = new float[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    public RatingDelta put(long userId, long itemId, float rating, long timestamp) {
+        if (Float.isNaN(rating)) {
+            throw new IllegalArgumentException("Rating must be a number for user " + userId + ", item " + itemId);
+        }
+        append(userId, itemId, rating, timestamp);
+        return this;
+    }
+
+    public RatingDelta put(Rating rating) {
+        return put(rating.getUserId(), rating.getProductId(), rating.getRating(), rating.getTimestamp());
+    }
+
+    public RatingDelta remove(long userId, long itemId) {
+        append(userId, itemId, Float.NaN, 0L);
+        return this;
+    }
+
+    /** Appends every change of another batch after the changes of this one. */
+    public RatingDelta addAll(RatingDelta other) {
+        for (int i = 0; i < other.size; i++) {
+            append(other.users[i], other.items[i], other.ratings[i], other.timestamps[i]);
+        }
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Distinct user ids touched by the changes, sorted. */
+    public long[] distinctUserIds() {
+        return RatingStore.distinctSorted(users, size);
+    }
+
+    // Accessors for the merge in RatingStore
+    long userId(int change) { return users[change]; }
+    long itemId(int change) { return items[change]; }
+    float rating(int change) { return ratings[change]; }
+    long timestamp(int change) { return timestamps[change]; }
+    boolean isRemoval(int change) { return Float.isNaN(ratings[change]); }
+
+    /** Distinct item ids mentioned by the changes, sorted. */
+    long[] distinctItemIds() {
+        return RatingStore.distinctSorted(items, size);
+    }
+
+    /**
+     * Returns a copy with one change per (user, item) pair, sorted by user id
+     * and then item id, so it can be merged with the rows of a store.
+     */
+    RatingDelta sorted() {
+        long[] userIds = RatingStore.distinctSorted(users, size);
+        long[] itemIds = RatingStore.distinctSorted(items, size);
+
+        // Same scheme as RatingStore.Builder: counting sort by user, then (item << 32 | position) per row
+        int[] rowOffsets = new int[userIds.length + 1];
+        int[] userIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            int u = Arrays.binarySearch(userIds, users[i]);
+            userIndexes[i] = u;
+            rowOffsets[u + 1]++;
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            rowOffsets[u + 1] += rowOffsets[u];
+        }
+        int[] cursor = Arrays.copyOf(rowOffsets, userIds.length);
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            int item = Arrays.binarySearch(itemIds, items[i]);
+            keys[cursor[userIndexes[i]]++] = ((long) item << 32) | i;
+        }
+
+        RatingDelta sorted = new RatingDelta(Math.max(size, 1));
+        for (int u = 0; u < userIds.length; u++) {
+            int start = rowOffsets[u];
+            int end = rowOffsets[u + 1];
+            Arrays.sort(keys, start, end);
+            for (int k = start; k < end; k++) {
+                // Positions ascend within an item, so the last key of a run is the latest change
+                if (k + 1 < end && (keys[k + 1] >>> 32) == (keys[k] >>> 32)) {
+                    continue;
+                }
+                int source = (int) keys[k];
+                sorted.append(users[source], items[source], ratings[source], timestamps[source]);
+            }
+        }
+        return sorted;
+    }
+
+    private void append(long userId, long itemId, float rating, long timestamp) {
+        if (size == users.length) {
+            int capacity = size + (size >> 1) + 1;
+            users = Arrays.copyOf(users, capacity);
+            items = Arrays.copyOf(items, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        users[size] = userId;
+        items[size] = itemId;
+        ratings[size] = rating;
+        timestamps[size] = timestamp;
+        size++;
+    }
+}
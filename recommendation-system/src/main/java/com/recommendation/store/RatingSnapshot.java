@@ -0,0 +1,348 @@
+package com.recommendation.store;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary on-disk format for a {@link RatingStore}, opened through memory mapping.
+ *
+ * Layout (little-endian, every section 8-byte aligned):
+ * <pre>
+ *   header   magic "RSNP", version, numUsers, numItems, numRatings, reserved,
+ *            minRating, maxRating, then the file offset of each section below
+ *   long[numUsers]      user id dictionary (sorted)
+ *   long[numItems]      item id dictionary (sorted)
+ *   int[numUsers + 1]   by-user row offsets
+ *   int[numRatings]     by-user item indexes
+ *   float[numRatings]   by-user ratings
+ *   long[numRatings]    by-user timestamps
+ *   int[numItems + 1]   by-item row offsets
+ *   int[numRatings]     by-item user indexes
+ *   float[numRatings]   by-item ratings
+ *   double[numItems]    sum of each item's ratings (since version 2)
+ * </pre>
+ *
+ * {@link #open(Path)} checks that every section lies within the file, maps
+ * each one read-only (sections over 1 GB as several mappings) and returns a
+ * store backed by the mappings, so nothing is read until a query touches it
+ * and the OS page cache is shared between processes serving the same file.
+ * The per-item sums are the one section read up front: they are small, and
+ * they let popularity rankings be built without touching the ratings. A
+ * version 1 file has no sums; its store computes them on first use.
+ */
+public final class RatingSnapshot {
+    static final int MAGIC = 0x504E5352; // "RSNP" read little-endian
+    static final int VERSION = 2;
+
+    private static final int SECTIONS = 10;
+    private static final int HEADER_BYTES = 32 + SECTIONS * 8;
+    // Version 1 files lack the last section
+    private static final int V1_SECTIONS = 9;
+    private static final int CHUNK_BYTES = 1 << 20;
+    // Element width of each section, in layout order
+    private static final int[] WIDTHS = {
+        Long.BYTES, Long.BYTES, Integer.BYTES, Integer.BYTES, Float.BYTES, Long.BYTES,
+        Integer.BYTES, Integer.BYTES, Float.BYTES, Double.BYTES
+    };
+    // Largest single mapping; longer sections are split across several
+    private static final int MAPPING_BYTES = 1 << 30;
+
+    private RatingSnapshot() {
+    }
+
+    public static RatingStore open(Path file) throws IOException {
+        return open(file, MAPPING_BYTES);
+    }
+
+    /** Opens a snapshot mapping sections in pieces of at most {@code mappingBytes}, a power of two of 8 or more. */
+    static RatingStore open(Path file, int mappingBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 32 + V1_SECTIONS * 8) {
+                throw new IOException("Not a rating snapshot (too short): " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a rating snapshot (bad magic): " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported rating snapshot version " + version + ": " + file);
+            }
+            int numUsers = header.getInt();
+            int numItems = header.getInt();
+            int numRatings = header.getInt();
+            header.getInt(); // reserved
+            float minRating = header.getFloat();
+            float maxRating = header.getFloat();
+            if (numUsers < 0 || numItems < 0 || numRatings < 0
+                    || numUsers == Integer.MAX_VALUE || numItems == Integer.MAX_VALUE) {
+                throw new IOException("Corrupt rating snapshot (bad dimensions): " + file);
+            }
+            int[] counts = {
+                numUsers, numItems, numUsers + 1, numRatings, numRatings, numRatings, numItems + 1, numRatings, numRatings,
+                numItems
+            };
+            int sections = version == 1 ? V1_SECTIONS : SECTIONS;
+            int headerBytes = 32 + sections * 8;
+            long[] offsets = new long[sections];
+            for (int i = 0; i < sections; i++) {
+                offsets[i] = header.getLong();
+                long end = offsets[i] + (long) counts[i] * WIDTHS[i];
+                if (offsets[i] < headerBytes || (offsets[i] & 7) != 0 || end < offsets[i] || end > size) {
+                    throw new IOException("Corrupt rating snapshot (section " + i + " at offset " + offsets[i]
+                        + " does not fit in " + size + " bytes): " + file);
+                }
+            }
+
+            int shift = Integer.numberOfTrailingZeros(mappingBytes);
+            double[] itemRatingSums = null;
+            if (sections > V1_SECTIONS) {
+                itemRatingSums = new double[numItems];
+                ByteBuffer[] mappings = map(channel, offsets[9], (long) numItems * Double.BYTES, shift);
+                for (int c = 0, from = 0; c < mappings.length; c++) {
+                    int n = mappings[c].remaining() / Double.BYTES;
+                    mappings[c].asDoubleBuffer().get(itemRatingSums, from, n);
+                    from += n;
+                }
+            }
+            return new RatingStore(
+                new LongColumn(mapLongs(channel, offsets[0], counts[0], shift), shift - 3, counts[0]),
+                new LongColumn(mapLongs(channel, offsets[1], counts[1], shift), shift - 3, counts[1]),
+                new IntColumn(mapInts(channel, offsets[2], counts[2], shift), shift - 2, counts[2]),
+                new IntColumn(mapInts(channel, offsets[3], counts[3], shift), shift - 2, counts[3]),
+                new FloatColumn(mapFloats(channel, offsets[4], counts[4], shift), shift - 2, counts[4]),
+                new LongColumn(mapLongs(channel, offsets[5], counts[5], shift), shift - 3, counts[5]),
+                new IntColumn(mapInts(channel, offsets[6], counts[6], shift), shift - 2, counts[6]),
+                new IntColumn(mapInts(channel, offsets[7], counts[7], shift), shift - 2, counts[7]),
+                new FloatColumn(mapFloats(channel, offsets[8], counts[8], shift), shift - 2, counts[8]),
+                minRating, maxRating, itemRatingSums);
+        }
+    }
+
+    /** Writes the store to {@code file}, replacing it atomically once complete. */
+    public static void write(RatingStore store, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                long[] offsets = new long[SECTIONS];
+                channel.position(HEADER_BYTES);
+
+                offsets[0] = writeLongs(channel, chunk, store.userIds());
+                offsets[1] = writeLongs(channel, chunk, store.itemIds());
+                offsets[2] = writeInts(channel, chunk, store.userOffsets());
+                offsets[3] = writeInts(channel, chunk, store.userItems());
+                offsets[4] = writeFloats(channel, chunk, store.userRatings());
+                offsets[5] = writeLongs(channel, chunk, store.userTimestamps());
+                offsets[6] = writeInts(channel, chunk, store.itemOffsets());
+                offsets[7] = writeInts(channel, chunk, store.itemUsers());
+                offsets[8] = writeFloats(channel, chunk, store.itemRatings());
+                offsets[9] = writeDoubles(channel, chunk, DoubleBuffer.wrap(store.itemRatingSums()));
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(store.numUsers())
+                    .putInt(store.numItems())
+                    .putInt(store.numRatings())
+                    .putInt(0)
+                    .putFloat(store.minRating())
+                    .putFloat(store.maxRating());
+                for (long offset : offsets) {
+                    header.putLong(offset);
+                }
+                header.flip();
+                channel.position(0);
+                drain(channel, header);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Converts a Mahout-style ratings CSV ({@code userId,itemId,rating[,timestamp]},
+     * comma or tab separated, as written by {@code RatingDataModels.writeCsv})
+     * into a snapshot. The file is parsed in parallel by {@link CsvRatingImporter}.
+     */
+    public static RatingStore convertCsv(Path csv, Path snapshot) throws IOException {
+        RatingStore store = CsvRatingImporter.read(csv);
+        write(store, snapshot);
+        return store;
+    }
+
+    private static LongBuffer[] mapLongs(FileChannel channel, long offset, int count, int shift)
+            throws IOException {
+        ByteBuffer[] mappings = map(channel, offset, (long) count * Long.BYTES, shift);
+        LongBuffer[] chunks = new LongBuffer[mappings.length];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = mappings[c].asLongBuffer();
+        }
+        return chunks;
+    }
+
+    private static IntBuffer[] mapInts(FileChannel channel, long offset, int count, int shift)
+            throws IOException {
+        ByteBuffer[] mappings = map(channel, offset, (long) count * Integer.BYTES, shift);
+        IntBuffer[] chunks = new IntBuffer[mappings.length];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = mappings[c].asIntBuffer();
+        }
+        return chunks;
+    }
+
+    private static FloatBuffer[] mapFloats(FileChannel channel, long offset, int count, int shift)
+            throws IOException {
+        ByteBuffer[] mappings = map(channel, offset, (long) count * Float.BYTES, shift);
+        FloatBuffer[] chunks = new FloatBuffer[mappings.length];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = mappings[c].asFloatBuffer();
+        }
+        return chunks;
+    }
+
+    // Maps [offset, offset + bytes) as consecutive pieces of 1 << shift bytes, the last one shorter
+    private static ByteBuffer[] map(FileChannel channel, long offset, long bytes, int shift) throws IOException {
+        long piece = 1L << shift;
+        ByteBuffer[] mappings = new ByteBuffer[(int) Math.max(1, (bytes + piece - 1) >>> shift)];
+        for (int c = 0; c < mappings.length; c++) {
+            long start = (long) c << shift;
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, offset + start,
+                Math.min(piece, bytes - start));
+            mappings[c] = mapping.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return mappings;
+    }
+
+    private static long writeLongs(FileChannel channel, ByteBuffer chunk, LongColumn column) throws IOException {
+        long start = align(channel);
+        for (int c = 0; c < column.chunks(); c++) {
+            write(channel, chunk, column.chunk(c));
+        }
+        return start;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer chunk, LongBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            LongBuffer view = chunk.asLongBuffer();
+            int n = Math.min(view.remaining(), source.remaining());
+            view.put(slice(source, n));
+            flush(channel, chunk, n * Long.BYTES);
+        }
+    }
+
+    private static long writeInts(FileChannel channel, ByteBuffer chunk, IntColumn column) throws IOException {
+        long start = align(channel);
+        for (int c = 0; c < column.chunks(); c++) {
+            write(channel, chunk, column.chunk(c));
+        }
+        return start;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer chunk, IntBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            IntBuffer view = chunk.asIntBuffer();
+            int n = Math.min(view.remaining(), source.remaining());
+            view.put(slice(source, n));
+            flush(channel, chunk, n * Integer.BYTES);
+        }
+    }
+
+    private static long writeFloats(FileChannel channel, ByteBuffer chunk, FloatColumn column) throws IOException {
+        long start = align(channel);
+        for (int c = 0; c < column.chunks(); c++) {
+            write(channel, chunk, column.chunk(c));
+        }
+        return start;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer chunk, FloatBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            FloatBuffer view = chunk.asFloatBuffer();
+            int n = Math.min(view.remaining(), source.remaining());
+            view.put(slice(source, n));
+            flush(channel, chunk, n * Float.BYTES);
+        }
+    }
+
+    private static long writeDoubles(FileChannel channel, ByteBuffer chunk, DoubleBuffer source) throws IOException {
+        long start = align(channel);
+        while (source.hasRemaining()) {
+            DoubleBuffer view = chunk.asDoubleBuffer();
+            int n = Math.min(view.remaining(), source.remaining());
+            view.put(slice(source, n));
+            flush(channel, chunk, n * Double.BYTES);
+        }
+        return start;
+    }
+
+    // Returns a view of the next n elements and advances the source past them
+    private static LongBuffer slice(LongBuffer source, int n) {
+        LongBuffer part = source.duplicate();
+        ((Buffer) part).limit(part.position() + n);
+        ((Buffer) source).position(source.position() + n);
+        return part;
+    }
+
+    private static IntBuffer slice(IntBuffer source, int n) {
+        IntBuffer part = source.duplicate();
+        ((Buffer) part).limit(part.position() + n);
+        ((Buffer) source).position(source.position() + n);
+        return part;
+    }
+
+    private static FloatBuffer slice(FloatBuffer source, int n) {
+        FloatBuffer part = source.duplicate();
+        ((Buffer) part).limit(part.position() + n);
+        ((Buffer) source).position(source.position() + n);
+        return part;
+    }
+
+    private static DoubleBuffer slice(DoubleBuffer source, int n) {
+        DoubleBuffer part = source.duplicate();
+        ((Buffer) part).limit(part.position() + n);
+        ((Buffer) source).position(source.position() + n);
+        return part;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk, int bytes) throws IOException {
+        ((Buffer) chunk).position(0).limit(bytes);
+        drain(channel, chunk);
+        chunk.clear();
+    }
+
+    private static long align(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long aligned = (position + 7) & ~7L;
+        if (aligned != position) {
+            drain(channel, ByteBuffer.allocate((int) (aligned - position)));
+        }
+        return aligned;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package com.recommendation.store;
+
+import com.recommendation.model.Rating;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.CRC32C;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar, read-only rating matrix.
+ *
+ * External user and item ids are remapped to dense indexes through sorted id
+ * dictionaries. Ratings are stored twice in CSR layout: grouped by user (with
+ * item index, rating and timestamp columns) and grouped by item (with user
+ * index and rating columns). Within a row the entries are sorted by index, so
+ * lookups and intersections can use binary search and merge joins.
+ *
+ * Columns are held as chunked NIO buffers: the {@link Builder} wraps heap
+ * arrays, while {@link RatingSnapshot} maps them straight from a file.
+ */
+public final class RatingStore {
+    private final LongColumn userIds;
+    private final LongColumn itemIds;
+
+    private final IntColumn userOffsets;
+    private final IntColumn userItems;
+    private final FloatColumn userRatings;
+    private final LongColumn userTimestamps;
+
+    private final IntColumn itemOffsets;
+    private final IntColumn itemUsers;
+    private final FloatColumn itemRatings;
+
+    private final float minRating;
+    private final float maxRating;
+
+    // Per-item rating sums, from assemble or the snapshot; a store opened without them computes them on first use
+    private volatile RatingSums sums;
+
+    RatingStore(LongColumn userIds, LongColumn itemIds,
+                IntColumn userOffsets, IntColumn userItems, FloatColumn userRatings, LongColumn userTimestamps,
+                IntColumn itemOffsets, IntColumn itemUsers, FloatColumn itemRatings,
+                float minRating, float maxRating, double[] itemRatingSums) {
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.userOffsets = userOffsets;
+        this.userItems = userItems;
+        this.userRatings = userRatings;
+        this.userTimestamps = userTimestamps;
+        this.itemOffsets = itemOffsets;
+        this.itemUsers = itemUsers;
+        this.itemRatings = itemRatings;
+        this.minRating = minRating;
+        this.maxRating = maxRating;
+        this.sums = itemRatingSums == null ? null : new RatingSums(itemRatingSums);
+    }
+
+    public static Builder builder() {
+        return new Builder(1024);
+    }
+
+    static Builder builder(int expectedSize) {
+        return new Builder(Math.max(16, expectedSize));
+    }
+
+    public static RatingStore of(Iterable<Rating> ratings) {
+        return builder().addAll(ratings.iterator()).build();
+    }
+
+    public static RatingStore of(Iterator<Rating> ratings) {
+        return builder().addAll(ratings).build();
+    }
+
+    // Dimensions
+    public int numUsers() { return userIds.size(); }
+    public int numItems() { return itemIds.size(); }
+    public int numRatings() { return userItems.size(); }
+
+    // Id dictionaries
+    public long userId(int userIndex) { return userIds.get(userIndex); }
+    public long itemId(int itemIndex) { return itemIds.get(itemIndex); }
+
+    /** Returns the dense index of a user, or -1 if the user has no ratings. */
+    public int userIndex(long userId) {
+        return indexOf(userIds, userId);
+    }
+
+    /** Returns the dense index of an item, or -1 if the item has no ratings. */
+    public int itemIndex(long itemId) {
+        return indexOf(itemIds, itemId);
+    }
+
+    // By-user CSR: entries [userStart(u), userEnd(u)) belong to user u
+    public int userStart(int userIndex) { return userOffsets.get(userIndex); }
+    public int userEnd(int userIndex) { return userOffsets.get(userIndex + 1); }
+    public int itemAt(int position) { return userItems.get(position); }
+    public float userRatingAt(int position) { return userRatings.get(position); }
+    public long timestampAt(int position) { return userTimestamps.get(position); }
+
+    // By-item CSR: entries [itemStart(i), itemEnd(i)) belong to item i
+    public int itemStart(int itemIndex) { return itemOffsets.get(itemIndex); }
+    public int itemEnd(int itemIndex) { return itemOffsets.get(itemIndex + 1); }
+    public int userAt(int position) { return itemUsers.get(position); }
+    public float itemRatingAt(int position) { return itemRatings.get(position); }
+
+    public int userRatingCount(int userIndex) {
+        return userOffsets.get(userIndex + 1) - userOffsets.get(userIndex);
+    }
+
+    public int itemRatingCount(int itemIndex) {
+        return itemOffsets.get(itemIndex + 1) - itemOffsets.get(itemIndex);
+    }
+
+    /** Returns the by-user position of the (user, item) rating, or -1 if absent. */
+    public int find(int userIndex, int itemIndex) {
+        int low = userOffsets.get(userIndex);
+        int high = userOffsets.get(userIndex + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = userItems.get(mid);
+            if (value < itemIndex) {
+                low = mid + 1;
+            } else if (value > itemIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the rating the user gave the item, or {@code Float.NaN} if there is none. */
+    public float rating(int userIndex, int itemIndex) {
+        int position = find(userIndex, itemIndex);
+        return position >= 0 ? userRatings.get(position) : Float.NaN;
+    }
+
+    public float meanRating(int userIndex) {
+        int start = userOffsets.get(userIndex);
+        int end = userOffsets.get(userIndex + 1);
+        if (start == end) {
+            return Float.NaN;
+        }
+        double sum = 0;
+        for (int p = start; p < end; p++) {
+            sum += userRatings.get(p);
+        }
+        return (float) (sum / (end - start));
+    }
+
+    /** Sum of the item's ratings, kept with the store so rankings over it need no pass over the ratings. */
+    public double itemRatingSum(int itemIndex) {
+        return ratingSums().items[itemIndex];
+    }
+
+    /** Mean of all ratings, or 0 if there are none. */
+    public double globalMeanRating() {
+        return numRatings() == 0 ? 0 : ratingSums().total / numRatings();
+    }
+
+    private RatingSums ratingSums() {
+        RatingSums current = sums;
+        if (current == null) {
+            double[] items = new double[numItems()];
+            for (int i = 0; i < items.length; i++) {
+                double sum = 0;
+                for (int p = itemOffsets.get(i), end = itemOffsets.get(i + 1); p < end; p++) {
+                    sum += itemRatings.get(p);
+                }
+                items[i] = sum;
+            }
+            current = new RatingSums(items);
+            sums = current;
+        }
+        return current;
+    }
+
+    public float minRating() {
+        return minRating;
+    }
+
+    public float maxRating() {
+        return maxRating;
+    }
+
+    public void forEach(RatingVisitor visitor) {
+        for (int u = 0, n = numUsers(); u < n; u++) {
+            forEachOfUser(u, visitor);
+        }
+    }
+
+    public void forEachOfUser(int userIndex, RatingVisitor visitor) {
+        for (int p = userOffsets.get(userIndex), end = userOffsets.get(userIndex + 1); p < end; p++) {
+            visitor.visit(userIndex, userItems.get(p), userRatings.get(p), userTimestamps.get(p));
+        }
+    }
+
+    public void forEachOfItem(int itemIndex, RatingVisitor visitor) {
+        for (int p = itemOffsets.get(itemIndex), end = itemOffsets.get(itemIndex + 1); p < end; p++) {
+            int user = itemUsers.get(p);
+            visitor.visit(user, itemIndex, itemRatings.get(p), userTimestamps.get(find(user, itemIndex)));
+        }
+    }
+
+    /**
+     * CRC32C over the user-major columns (offsets, items, ratings and
+     * timestamps), which together with the id dictionaries determine every
+     * rating. Models saved for one store are checked against this before
+     * they are reused with another. Reads every rating.
+     */
+    public long fingerprint() {
+        CRC32C crc = new CRC32C();
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0, n = userOffsets.size(); i < n; i++) {
+            flushIfFull(crc, chunk).putInt(userOffsets.get(i));
+        }
+        for (int p = 0, n = numRatings(); p < n; p++) {
+            flushIfFull(crc, chunk).putInt(userItems.get(p)).putFloat(userRatings.get(p))
+                .putLong(userTimestamps.get(p));
+        }
+        crc.update(chunk.flip());
+        return crc.getValue();
+    }
+
+    // Room for one rating's columns
+    private static ByteBuffer flushIfFull(CRC32C crc, ByteBuffer chunk) {
+        if (chunk.remaining() < 16) {
+            crc.update(chunk.flip());
+            chunk.clear();
+        }
+        return chunk;
+    }
+
+    // Raw columns, for the snapshot writer
+    LongColumn userIds() { return userIds; }
+    LongColumn itemIds() { return itemIds; }
+    IntColumn userOffsets() { return userOffsets; }
+    IntColumn userItems() { return userItems; }
+    FloatColumn userRatings() { return userRatings; }
+    LongColumn userTimestamps() { return userTimestamps; }
+    IntColumn itemOffsets() { return itemOffsets; }
+    IntColumn itemUsers() { return itemUsers; }
+    FloatColumn itemRatings() { return itemRatings; }
+    double[] itemRatingSums() { return ratingSums().items; }
+
+    /**
+     * Returns a new store with the changes applied; this store is not touched.
+     *
+     * The changes are sorted once and merged with the existing rows in a
+     * single pass, so the cost is linear in the size of the store rather than
+     * a full rebuild. Users and items left without ratings are dropped.
+     */
+    public RatingStore withChanges(RatingDelta delta) {
+        RatingDelta changes = delta.sorted();
+        int numChanges = changes.size();
+        if (numChanges == 0) {
+            return this;
+        }
+
+        // Candidate dictionaries: existing ids plus ids mentioned by the changes
+        long[] itemCandidates = union(itemIds, changes.distinctItemIds());
+        int[] itemToCandidate = new int[numItems()];
+        for (int i = 0, c = 0; i < itemToCandidate.length; i++) {
+            long id = itemIds.get(i);
+            while (itemCandidates[c] != id) {
+                c++;
+            }
+            itemToCandidate[i] = c;
+        }
+        int[] changeToCandidate = new int[numChanges];
+        for (int c = 0; c < numChanges; c++) {
+            changeToCandidate[c] = Arrays.binarySearch(itemCandidates, changes.itemId(c));
+        }
+        long[] changedUsers = new long[numChanges];
+        int numChangedUsers = 0;
+        for (int c = 0; c < numChanges; c++) {
+            if (c == 0 || changes.userId(c) != changes.userId(c - 1)) {
+                changedUsers[numChangedUsers++] = changes.userId(c);
+            }
+        }
+        long[] userCandidates = union(userIds, Arrays.copyOf(changedUsers, numChangedUsers));
+
+        int capacity = numRatings() + numChanges;
+        long[] newUserIds = new long[userCandidates.length];
+        int[] newUserOffsets = new int[userCandidates.length + 1];
+        int[] newUserItems = new int[capacity];
+        float[] newUserRatings = new float[capacity];
+        long[] newUserTimestamps = new long[capacity];
+        int[] itemCounts = new int[itemCandidates.length];
+        int users = 0;
+        int out = 0;
+        int base = 0;
+        int change = 0;
+        for (long userId : userCandidates) {
+            int p = 0;
+            int end = 0;
+            if (base < numUsers() && userIds.get(base) == userId) {
+                p = userStart(base);
+                end = userEnd(base);
+                base++;
+            }
+            int changeEnd = change;
+            while (changeEnd < numChanges && changes.userId(changeEnd) == userId) {
+                changeEnd++;
+            }
+            int rowStart = out;
+            while (p < end || change < changeEnd) {
+                int baseItem = p < end ? itemToCandidate[userItems.get(p)] : Integer.MAX_VALUE;
+                int changeItem = change < changeEnd ? changeToCandidate[change] : Integer.MAX_VALUE;
+                if (baseItem < changeItem) {
+                    newUserItems[out] = baseItem;
+                    newUserRatings[out] = userRatings.get(p);
+                    newUserTimestamps[out] = userTimestamps.get(p);
+                    itemCounts[baseItem]++;
+                    out++;
+                    p++;
+                    continue;
+                }
+                if (!changes.isRemoval(change)) {
+                    newUserItems[out] = changeItem;
+                    newUserRatings[out] = changes.rating(change);
+                    newUserTimestamps[out] = changes.timestamp(change);
+                    itemCounts[changeItem]++;
+                    out++;
+                }
+                if (baseItem == changeItem) {
+                    p++;
+                }
+                change++;
+            }
+            if (out > rowStart) {
+                newUserIds[users++] = userId;
+                newUserOffsets[users] = out;
+            }
+        }
+
+        // Drop items that lost all their ratings; the remap is monotonic, so rows stay sorted
+        int[] candidateToItem = new int[itemCandidates.length];
+        int numItems = 0;
+        for (int c = 0; c < itemCandidates.length; c++) {
+            if (itemCounts[c] > 0) {
+                itemCandidates[numItems] = itemCandidates[c];
+                candidateToItem[c] = numItems++;
+            }
+        }
+        for (int p = 0; p < out; p++) {
+            newUserItems[p] = candidateToItem[newUserItems[p]];
+        }
+        return assemble(Arrays.copyOf(newUserIds, users), Arrays.copyOf(itemCandidates, numItems),
+            Arrays.copyOf(newUserOffsets, users + 1), newUserItems, newUserRatings, newUserTimestamps, out);
+    }
+
+    /**
+     * Finishes a store from its by-user columns: trims them to {@code size},
+     * transposes them into the by-item CSR and records the rating range.
+     */
+    static RatingStore assemble(long[] userIds, long[] itemIds, int[] userOffsets,
+                                int[] userItems, float[] userRatings, long[] userTimestamps, int size) {
+        if (size < userItems.length) {
+            userItems = Arrays.copyOf(userItems, size);
+            userRatings = Arrays.copyOf(userRatings, size);
+            userTimestamps = Arrays.copyOf(userTimestamps, size);
+        }
+        int numUsers = userIds.length;
+
+        // Transpose into the by-item CSR; rows come out sorted by user
+        int[] itemOffsets = new int[itemIds.length + 1];
+        for (int p = 0; p < size; p++) {
+            itemOffsets[userItems[p] + 1]++;
+        }
+        for (int i = 0; i < itemIds.length; i++) {
+            itemOffsets[i + 1] += itemOffsets[i];
+        }
+        int[] itemCursor = Arrays.copyOf(itemOffsets, itemIds.length);
+        int[] itemUsers = new int[size];
+        float[] itemRatings = new float[size];
+        double[] itemRatingSums = new double[itemIds.length];
+        for (int u = 0; u < numUsers; u++) {
+            for (int p = userOffsets[u]; p < userOffsets[u + 1]; p++) {
+                int item = userItems[p];
+                int slot = itemCursor[item]++;
+                itemUsers[slot] = u;
+                itemRatings[slot] = userRatings[p];
+                itemRatingSums[item] += userRatings[p];
+            }
+        }
+
+        float minRating = Float.NaN;
+        float maxRating = Float.NaN;
+        for (int p = 0; p < size; p++) {
+            float value = userRatings[p];
+            if (p == 0 || value < minRating) {
+                minRating = value;
+            }
+            if (p == 0 || value > maxRating) {
+                maxRating = value;
+            }
+        }
+
+        return new RatingStore(LongColumn.wrap(userIds), LongColumn.wrap(itemIds),
+            IntColumn.wrap(userOffsets), IntColumn.wrap(userItems),
+            FloatColumn.wrap(userRatings), LongColumn.wrap(userTimestamps),
+            IntColumn.wrap(itemOffsets), IntColumn.wrap(itemUsers), FloatColumn.wrap(itemRatings),
+            minRating, maxRating, itemRatingSums);
+    }
+
+    static long[] distinctSorted(long[] values, int length) {
+        long[] sorted = Arrays.copyOf(values, length);
+        Arrays.parallelSort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /** Sorted union of a sorted id column and a sorted array of distinct ids. */
+    private static long[] union(LongColumn sorted, long[] ids) {
+        int n = sorted.size();
+        long[] merged = new long[n + ids.length];
+        int a = 0;
+        int b = 0;
+        int out = 0;
+        while (a < n || b < ids.length) {
+            long next;
+            if (b == ids.length || (a < n && sorted.get(a) < ids[b])) {
+                next = sorted.get(a++);
+            } else {
+                if (a < n && sorted.get(a) == ids[b]) {
+                    a++;
+                }
+                next = ids[b++];
+            }
+            merged[out++] = next;
+        }
+        return Arrays.copyOf(merged, out);
+    }
+
+    /**
+     * Index of an id in a sorted dictionary of distinct ids. Ids are usually
+     * dense or close to uniform, so one interpolated probe lands on or near
+     * the key; since the ids are distinct, the key can be no further from the
+     * probe than the difference of the two ids, which bounds the binary search.
+     */
+    private static int indexOf(LongColumn sorted, long key) {
+        int last = sorted.size() - 1;
+        if (last < 0) {
+            return -1;
+        }
+        long low = sorted.get(0);
+        long high = sorted.get(last);
+        if (key < low || key > high) {
+            return -1;
+        }
+        if (low == high) {
+            return 0;
+        }
+        int guess = (int) Math.min(last, ((double) key - low) / ((double) high - low) * last);
+        long value = sorted.get(guess);
+        if (value == key) {
+            return guess;
+        }
+        // A negative gap means the subtraction overflowed; search the whole side then
+        if (value < key) {
+            long gap = key - value;
+            int to = gap < 0 || gap > last ? last + 1 : (int) Math.min(last + 1L, guess + 1L + gap);
+            return binarySearch(sorted, guess + 1, to, key);
+        }
+        long gap = value - key;
+        int from = gap < 0 || gap > last ? 0 : (int) Math.max(0L, guess - gap);
+        return binarySearch(sorted, from, guess, key);
+    }
+
+    private static int binarySearch(LongColumn sorted, int from, int to, long key) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = sorted.get(mid);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "RatingStore{" +
+                "users=" + numUsers() +
+                ", items=" + numItems() +
+                ", ratings=" + numRatings() +
+                '}';
+    }
+
+    private static final class RatingSums {
+        final double[] items;
+        final double total;
+
+        RatingSums(double[] items) {
+            double total = 0;
+            for (double sum : items) {
+                total += sum;
+            }
+            this.items = items;
+            this.total = total;
+        }
+    }
+
+    /** Receives one rating at a time as primitives. */
+    @FunctionalInterface
+    public interface RatingVisitor {
+        void visit(int userIndex, int itemIndex, float rating, long timestamp);
+    }
+
+    /**
+     * Accumulates ratings in growable primitive columns. When the same
+     * (user, item) pair is added more than once, the rating with the latest
+     * timestamp wins; ties go to the one added last.
+     */
+    public static final class Builder {
+        // Below this many entries the parallel lookups and sorts cost more than they save
+        private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+        private long[] users;
+        private long[] items;
+        private float[] ratings;
+        private long[] timestamps;
+        private int size;
+
+        private Builder(int capacity) {
+            this.users = new long[capacity];
+            this.items = new long[capacity];
+            this.ratings = new float[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        public Builder add(long userId, long itemId, float rating, long timestamp) {
+            if (size == users.length) {
+                grow(size + 1);
+            }
+            users[size] = userId;
+            items[size] = itemId;
+            ratings[size] = rating;
+            timestamps[size] = timestamp;
+            size++;
+            return this;
+        }
+
+        public Builder add(Rating rating) {
+            return add(rating.getUserId(), rating.getProductId(), rating.getRating(), rating.getTimestamp());
+        }
+
+        public Builder addAll(Iterator<Rating> ratings) {
+            while (ratings.hasNext()) {
+                add(ratings.next());
+            }
+            return this;
+        }
+
+        /** Appends everything added to {@code other}, as if it had been added here in the same order. */
+        Builder addAll(Builder other) {
+            if (size + other.size > users.length) {
+                grow(size + other.size);
+            }
+            System.arraycopy(other.users, 0, users, size, other.size);
+            System.arraycopy(other.items, 0, items, size, other.size);
+            System.arraycopy(other.ratings, 0, ratings, size, other.size);
+            System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void grow(int minCapacity) {
+            int capacity = Math.max(minCapacity, size + (size >> 1));
+            users = Arrays.copyOf(users, capacity);
+            items = Arrays.copyOf(items, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+
+        public RatingStore build() {
+            long[] userIds = distinctSorted(users, size);
+            long[] itemIds = distinctSorted(items, size);
+            int numUsers = userIds.length;
+
+            // Id lookups are independent per entry; on large imports they dominate, so spread them over cores
+            int[] userIndexes = new int[size];
+            int[] itemIndexes = new int[size];
+            range(size).forEach(i -> {
+                userIndexes[i] = Arrays.binarySearch(userIds, users[i]);
+                itemIndexes[i] = Arrays.binarySearch(itemIds, items[i]);
+            });
+
+            // Counting sort by user, remembering the input position of each entry
+            int[] rowOffsets = new int[numUsers + 1];
+            for (int i = 0; i < size; i++) {
+                rowOffsets[userIndexes[i] + 1]++;
+            }
+            for (int u = 0; u < numUsers; u++) {
+                rowOffsets[u + 1] += rowOffsets[u];
+            }
+            int[] cursor = Arrays.copyOf(rowOffsets, numUsers);
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                // item index in the high word, input position in the low word
+                keys[cursor[userIndexes[i]]++] = ((long) itemIndexes[i] << 32) | i;
+            }
+
+            // Sort each row by item, then collapse duplicates in place
+            range(numUsers).forEach(u -> Arrays.sort(keys, rowOffsets[u], rowOffsets[u + 1]));
+            int[] userOffsets = new int[numUsers + 1];
+            int[] userItems = new int[size];
+            float[] userRatings = new float[size];
+            long[] userTimestamps = new long[size];
+            int out = 0;
+            for (int u = 0; u < numUsers; u++) {
+                int start = rowOffsets[u];
+                int end = rowOffsets[u + 1];
+                int previousItem = -1;
+                for (int k = start; k < end; k++) {
+                    int item = (int) (keys[k] >>> 32);
+                    int source = (int) keys[k];
+                    if (item == previousItem) {
+                        if (timestamps[source] >= userTimestamps[out - 1]) {
+                            userRatings[out - 1] = ratings[source];
+                            userTimestamps[out - 1] = timestamps[source];
+                        }
+                        continue;
+                    }
+                    userItems[out] = item;
+                    userRatings[out] = ratings[source];
+                    userTimestamps[out] = timestamps[source];
+                    previousItem = item;
+                    out++;
+                }
+                userOffsets[u + 1] = out;
+            }
+            return assemble(userIds, itemIds, userOffsets, userItems, userRatings, userTimestamps, out);
+        }
+
+        private static IntStream range(int n) {
+            IntStream range = IntStream.range(0, n);
+            return n >= PARALLEL_THRESHOLD ? range.parallel() : range;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.recommendation.store;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only Mahout {@code DataModel} view over a {@link RatingStore}.
+ *
+ * Preference arrays are read-only views over the CSR rows, so the store
+ * stays the only copy of the ratings and a query that compares a user with
+ * every other user (Pearson through a {@code ThresholdUserNeighborhood})
+ * allocates one small object per row instead of copying it. Rows are sorted
+ * by id, as Mahout expects; {@code clone()} gives a mutable copy. Nothing is
+ * scanned up front, which keeps a memory-mapped store lazily paged in.
+ */
+public class RatingStoreDataModel extends AbstractDataModel {
+    private final RatingStore store;
+
+    public RatingStoreDataModel(RatingStore store) {
+        this.store = store;
+        if (store.numRatings() > 0) {
+            setMinPreference(store.minRating());
+            setMaxPreference(store.maxRating());
+        }
+    }
+
+    public RatingStore getStore() {
+        return store;
+    }
+
+    @Override
+    public LongPrimitiveIterator getUserIDs() {
+        return new IdIterator(store.numUsers(), true);
+    }
+
+    @Override
+    public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+        int u = requireUser(userID);
+        return new RowView(userID, store.userStart(u), store.userEnd(u), true);
+    }
+
+    @Override
+    public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+        int u = requireUser(userID);
+        FastIDSet result = new FastIDSet(store.userRatingCount(u));
+        for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+            result.add(store.itemId(store.itemAt(p)));
+        }
+        return result;
+    }
+
+    @Override
+    public LongPrimitiveIterator getItemIDs() {
+        return new IdIterator(store.numItems(), false);
+    }
+
+    @Override
+    public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+        int i = requireItem(itemID);
+        return new RowView(itemID, store.itemStart(i), store.itemEnd(i), false);
+    }
+
+    @Override
+    public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int i = store.itemIndex(itemID);
+        if (i < 0) {
+            return null;
+        }
+        int position = store.find(u, i);
+        return position >= 0 ? store.userRatingAt(position) : null;
+    }
+
+    @Override
+    public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+        int u = requireUser(userID);
+        int i = store.itemIndex(itemID);
+        if (i < 0) {
+            return null;
+        }
+        int position = store.find(u, i);
+        return position >= 0 ? store.timestampAt(position) : null;
+    }
+
+    @Override
+    public int getNumItems() {
+        return store.numItems();
+    }
+
+    @Override
+    public int getNumUsers() {
+        return store.numUsers();
+    }
+
+    @Override
+    public int getNumUsersWithPreferenceFor(long itemID) {
+        int i = store.itemIndex(itemID);
+        return i < 0 ? 0 : store.itemRatingCount(i);
+    }
+
+    @Override
+    public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) {
+        int i1 = store.itemIndex(itemID1);
+        int i2 = store.itemIndex(itemID2);
+        if (i1 < 0 || i2 < 0) {
+            return 0;
+        }
+        // Both rows are sorted by user index, so a merge join counts the overlap
+        int p1 = store.itemStart(i1);
+        int end1 = store.itemEnd(i1);
+        int p2 = store.itemStart(i2);
+        int end2 = store.itemEnd(i2);
+        int count = 0;
+        while (p1 < end1 && p2 < end2) {
+            int user1 = store.userAt(p1);
+            int user2 = store.userAt(p2);
+            if (user1 == user2) {
+                count++;
+                p1++;
+                p2++;
+            } else if (user1 < user2) {
+                p1++;
+            } else {
+                p2++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void setPreference(long userID, long itemID, float value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removePreference(long userID, long itemID) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean hasPreferenceValues() {
+        return true;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // Immutable
+    }
+
+    private int requireUser(long userID) throws NoSuchUserException {
+        int u = store.userIndex(userID);
+        if (u < 0) {
+            throw new NoSuchUserException(userID);
+        }
+        return u;
+    }
+
+    private int requireItem(long itemID) throws NoSuchItemException {
+        int i = store.itemIndex(itemID);
+        if (i < 0) {
+            throw new NoSuchItemException(itemID);
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "RatingStoreDataModel[" + store + ']';
+    }
+
+    /**
+     * One user's (or item's) CSR row seen as a Mahout preference array.
+     * Setters and value sorts throw; the row is already sorted by id.
+     */
+    private final class RowView implements PreferenceArray {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final int start;
+        private final int length;
+        private final boolean byUser;
+
+        RowView(long id, int start, int end, boolean byUser) {
+            this.id = id;
+            this.start = start;
+            this.length = end - start;
+            this.byUser = byUser;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public Preference get(int i) {
+            return new GenericPreference(getUserID(i), getItemID(i), getValue(i));
+        }
+
+        @Override
+        public long getUserID(int i) {
+            return byUser ? id : store.userId(store.userAt(position(i)));
+        }
+
+        @Override
+        public long getItemID(int i) {
+            return byUser ? store.itemId(store.itemAt(position(i))) : id;
+        }
+
+        @Override
+        public float getValue(int i) {
+            return byUser ? store.userRatingAt(position(i)) : store.itemRatingAt(position(i));
+        }
+
+        @Override
+        public long[] getIDs() {
+            long[] ids = new long[length];
+            for (int k = 0; k < length; k++) {
+                ids[k] = byUser ? getItemID(k) : getUserID(k);
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean hasPrefWithUserID(long userID) {
+            return byUser ? userID == id : contains(store.userIndex(userID), store.itemIndex(id));
+        }
+
+        @Override
+        public boolean hasPrefWithItemID(long itemID) {
+            return byUser ? contains(store.userIndex(id), store.itemIndex(itemID)) : itemID == id;
+        }
+
+        @Override
+        public PreferenceArray clone() {
+            PreferenceArray copy = byUser ? new GenericUserPreferenceArray(length) 
+                : new GenericItemPreferenceArray(length);
+            for (int k = 0; k < length; k++) {
+                copy.setUserID(k, getUserID(k));
+                copy.setItemID(k, getItemID(k));
+                copy.setValue(k, getValue(k));
+            }
+            return copy;
+        }
+
+        @Override
+        public void sortByUser() {
+            // Sorted already: one user, or users in id order
+        }
+
+        @Override
+        public void sortByItem() {
+            // Sorted already: one item, or items in id order
+        }
+
+        @Override
+        public void sortByValue() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sortByValueReversed() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(int i, Preference pref) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setUserID(int i, long userID) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setItemID(int i, long itemID) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setValue(int i, float value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Preference> iterator() {
+            return new Iterator<Preference>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < length;
+                }
+
+                @Override
+                public Preference next() {
+                    if (next >= length) {
+                        throw new NoSuchElementException();
+                    }
+                    return get(next++);
+                }
+            };
+        }
+
+        private int position(int i) {
+            if (i < 0 || i >= length) {
+                throw new ArrayIndexOutOfBoundsException(i);
+            }
+            return start + i;
+        }
+
+        private boolean contains(int userIndex, int itemIndex) {
+            return userIndex >= 0 && itemIndex >= 0 && store.find(userIndex, itemIndex) >= 0;
+        }
+
+        // The store is not serializable; serialize a plain copy instead
+        private Object writeReplace() {
+            return clone();
+        }
+
+        @Override
+        public String toString() {
+            return (byUser ? "UserRow[" : "ItemRow[") + id + ", " + length + " preferences]";
+        }
+    }
+
+    /** Iterates one of the store's id dictionaries without copying it. */
+    private final class IdIterator implements LongPrimitiveIterator {
+        private final int length;
+        private final boolean users;
+        private int position;
+
+        IdIterator(int length, boolean users) {
+            this.length = length;
+            this.users = users;
+        }
+
+        @Override
+        public long nextLong() {
+            if (position >= length) {
+                throw new NoSuchElementException();
+            }
+            return peekAt(position++);
+        }
+
+        @Override
+        public long peek() {
+            if (position >= length) {
+                throw new NoSuchElementException();
+            }
+            return peekAt(position);
+        }
+
+        @Override
+        public void skip(int n) {
+            if (n > 0) {
+                position = (int) Math.min(length, (long) position + n);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < length;
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private long peekAt(int index) {
+            return users ? store.userId(index) : store.itemId(index);
+        }
+    }
+}
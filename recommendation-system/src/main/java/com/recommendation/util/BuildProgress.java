@@ -0,0 +1,72 @@
+package com.recommendation.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and cancellation handle for a long-running parallel build.
+ *
+ * The build calls {@link #start} once with the amount of work and
+ * {@link #advance} from its worker threads as blocks finish. Any thread may
+ * call {@link #cancel}; workers check {@link #isCancelled} between blocks
+ * and the build then fails with a
+ * {@link java.util.concurrent.CancellationException}. An optional listener
+ * is notified from the worker thread that completed each block, so it should
+ * return quickly.
+ */
+public final class BuildProgress {
+    private final AtomicLong completed = new AtomicLong();
+    private final Listener listener;
+    private volatile long total;
+    private volatile boolean cancelled;
+
+    public BuildProgress() {
+        this(null);
+    }
+
+    public BuildProgress(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void start(long total) {
+        this.total = total;
+        completed.set(0);
+        if (listener != null) {
+            listener.progress(0, total);
+        }
+    }
+
+    public void advance(long amount) {
+        long done = completed.addAndGet(amount);
+        if (listener != null) {
+            listener.progress(done, total);
+        }
+    }
+
+    public long completed() {
+        return completed.get();
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /** Completed fraction in [0, 1]; 0 before the build starts. */
+    public double fraction() {
+        long t = total;
+        return t == 0 ? 0.0 : Math.min(1.0, (double) completed.get() / t);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Receives the completed and total amount of work after each step. */
+    @FunctionalInterface
+    public interface Listener {
+        void progress(long completed, long total);
+    }
+}
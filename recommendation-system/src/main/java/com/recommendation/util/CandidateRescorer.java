@@ -0,0 +1,38 @@
+package com.recommendation.util;
+
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+
+/**
+ * Counterpart of Mahout's {@code IDRescorer} over the dense candidate
+ * indexes of a {@link TopNScorer}. The scorer consults it inside candidate
+ * scoring, so filtered candidates never reach the heap and, where the
+ * scorer can tell early, are not scored at all.
+ */
+public interface CandidateRescorer {
+
+    /** True if the candidate must not be recommended. */
+    boolean isFiltered(int candidate);
+
+    /** Adjusted score of a candidate that passed the filter; NaN drops it. */
+    default float rescore(int candidate, float score) {
+        return score;
+    }
+
+    /** Adapts a Mahout rescorer, resolving candidates through the scorer's ids; null for a null rescorer. */
+    static CandidateRescorer of(IDRescorer rescorer, TopNScorer scorer) {
+        if (rescorer == null) {
+            return null;
+        }
+        return new CandidateRescorer() {
+            @Override
+            public boolean isFiltered(int candidate) {
+                return rescorer.isFiltered(scorer.candidateId(candidate));
+            }
+
+            @Override
+            public float rescore(int candidate, float score) {
+                return (float) rescorer.rescore(scorer.candidateId(candidate), score);
+            }
+        };
+    }
+}
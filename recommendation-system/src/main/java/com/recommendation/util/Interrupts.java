@@ -0,0 +1,24 @@
+package com.recommendation.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation for request-time scoring. A serving call that
+ * misses its deadline cancels its task with interruption; scoring loops call
+ * {@link #check} between blocks of work, so the worker stops and is free for
+ * the next request instead of finishing a result nobody will read.
+ */
+public final class Interrupts {
+    private Interrupts() {
+    }
+
+    /**
+     * @throws CancellationException if the current thread has been
+     *         interrupted; the interrupt status is left set
+     */
+    public static void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Scoring interrupted");
+        }
+    }
+}
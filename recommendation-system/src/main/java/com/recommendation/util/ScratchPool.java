@@ -0,0 +1,31 @@
+package com.recommendation.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Scratch buffers for one parallel job. Each leaf task takes a buffer and
+ * returns it when done, so the job never creates more buffers than it runs
+ * tasks at once, and they all become garbage with the pool when the job
+ * finishes. A {@link ThreadLocal} would instead leave them attached to the
+ * pool's worker threads long after the job.
+ */
+public final class ScratchPool<T> {
+    private final ConcurrentLinkedQueue<T> free = new ConcurrentLinkedQueue<>();
+    private final Supplier<T> factory;
+
+    public ScratchPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /** A free buffer, or a new one if all are in use. */
+    public T acquire() {
+        T scratch = free.poll();
+        return scratch != null ? scratch : factory.get();
+    }
+
+    /** Returns a buffer taken with {@link #acquire}; it must be left ready for the next task. */
+    public void release(T scratch) {
+        free.offer(scratch);
+    }
+}
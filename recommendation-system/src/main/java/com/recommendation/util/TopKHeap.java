@@ -0,0 +1,116 @@
+package com.recommendation.util;
+
+/**
+ * Fixed-capacity min-heap over (int id, float score) pairs that keeps the
+ * {@code k} highest scores seen. Backed by two primitive arrays and reusable
+ * through {@link #clear()}, so selecting a top-K allocates nothing.
+ */
+public final class TopKHeap {
+    private final int[] ids;
+    private final float[] scores;
+    private int limit;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        this.ids = new int[capacity];
+        this.scores = new float[capacity];
+        this.limit = capacity;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Empties the heap and keeps at most {@code k} entries from now on, so one heap serves any N up to its capacity. */
+    public void reset(int k) {
+        if (k < 0 || k > ids.length) {
+            throw new IllegalArgumentException("k must be between 0 and " + ids.length + ": " + k);
+        }
+        limit = k;
+        size = 0;
+    }
+
+    /** Lowest score currently kept, or negative infinity while the heap is not full. */
+    public float threshold() {
+        return size < limit ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /** Offers a candidate; returns true if it was kept. */
+    public boolean offer(int id, float score) {
+        if (size < limit) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (limit == 0 || score <= scores[0]) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Empties the heap into the given arrays, highest score first, and returns
+     * the number of entries written.
+     */
+    public int drainDescending(int[] idsOut, float[] scoresOut) {
+        int count = size;
+        while (size > 0) {
+            int last = --size;
+            idsOut[last] = ids[0];
+            scoresOut[last] = scores[0];
+            ids[0] = ids[last];
+            scores[0] = scores[last];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int index) {
+        int id = ids[index];
+        float score = scores[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            ids[index] = ids[parent];
+            scores[index] = scores[parent];
+            index = parent;
+        }
+        ids[index] = id;
+        scores[index] = score;
+    }
+
+    private void siftDown(int index) {
+        int id = ids[index];
+        float score = scores[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && scores[right] < scores[child]) {
+                child = right;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            ids[index] = ids[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+        ids[index] = id;
+        scores[index] = score;
+    }
+}
@@ -0,0 +1,35 @@
+package com.recommendation.util;
+
+/**
+ * Allocation-free top-N selection over a dense candidate space, for
+ * recommenders backed by primitive models.
+ *
+ * Candidates are numbered {@code 0..numCandidates()-1} and map to product
+ * ids through {@link #candidateId}, so a caller can resolve results with a
+ * dense array built once per model instead of a map lookup per result.
+ * Implementations score into reusable per-thread buffers and offer to the
+ * caller's heap, allocating nothing per call.
+ */
+public interface TopNScorer {
+
+    /** Number of candidate indexes. */
+    int numCandidates();
+
+    /** Product id of a candidate index. */
+    long candidateId(int candidate);
+
+    /** Row of a user in the model, or -1 if the model has no ratings for the user. */
+    int userIndex(long userId);
+
+    /** Offers the scores of every candidate the user has not rated to the heap. */
+    default void topN(int userIndex, TopKHeap heap) {
+        topN(userIndex, heap, null);
+    }
+
+    /**
+     * Offers the scores of every candidate the user has not rated and the
+     * rescorer does not filter, as rescored, to the heap. A null rescorer
+     * accepts everything.
+     */
+    void topN(int userIndex, TopKHeap heap, CandidateRescorer rescorer);
+}
@@ -1,20 +1,49 @@
 package com.recommendation;
 
 import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.HybridConfig;
+import com.recommendation.engine.RecommendationBuffer;
 import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.filter.ProductFilter;
 import com.recommendation.model.Product;
 import com.recommendation.model.Rating;
 import com.recommendation.model.User;
+import com.recommendation.similarity.UserSimilarityCache;
+import com.recommendation.store.RatingDelta;
+import com.recommendation.store.RatingStore;
+import com.recommendation.util.BuildProgress;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
 public class RecommendationEngineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     private RecommendationEngine engine;
     private List<User> users;
     private List<Product> products;
@@ -45,6 +74,285 @@ public class RecommendationEngineTest {
         }
     }
     
+    @Test
+    public void testItemBasedRecommendations() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setAlgorithm(Algorithm.ITEM_BASED);
+        RecommendationEngine itemEngine = new RecommendationEngine(users, products, ratings, config);
+        
+        List<RecommendationEngine.ProductRecommendation> recommendations = 
+            itemEngine.getRecommendations(1L, 5);
+        
+        assertTrue("Should not exceed requested number", recommendations.size() <= 5);
+        for (RecommendationEngine.ProductRecommendation rec : recommendations) {
+            assertEquals(Algorithm.ITEM_BASED.getLabel(), rec.getAlgorithm());
+            assertTrue("Score should be a rating", rec.getScore() >= 1.0f && rec.getScore() <= 5.0f);
+            for (Rating rating : ratings) {
+                assertFalse("Should not recommend rated products", 
+                    rating.getUserId() == 1L && rating.getProductId() == rec.getProduct().getProductId());
+            }
+        }
+    }
+    
+    @Test
+    public void testUserNeighborIndexMatchesOnDemandNeighborhood() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setUserNeighborIndexEnabled(true);
+        config.setUserNeighbors(users.size());
+        RecommendationEngine indexed = new RecommendationEngine(users, products, ratings, config);
+        assertNotNull(indexed.getUserNeighborIndex());
+        
+        for (User user : users) {
+            List<RecommendationEngine.ProductRecommendation> expected = engine.getRecommendations(user.getUserId(), 5);
+            List<RecommendationEngine.ProductRecommendation> actual = indexed.getRecommendations(user.getUserId(), 5);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getAlgorithm(), actual.get(i).getAlgorithm());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-4);
+            }
+        }
+    }
+    
+    @Test
+    public void testRecommendIntoMatchesGetRecommendations() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+        config.setContentIndexEnabled(true);
+        RecommendationEngine primitive = new RecommendationEngine(users, products, ratings, config);
+        RecommendationBuffer buffer = new RecommendationBuffer(10);
+        
+        for (Algorithm algorithm : Algorithm.values()) {
+            for (long userId : new long[] {1L, 5L, 999L}) {
+                List<RecommendationEngine.ProductRecommendation> expected =
+                    primitive.getRecommendations(userId, 5, algorithm);
+                int count = primitive.recommendInto(userId, 5, algorithm, buffer);
+                assertEquals(expected.size(), count);
+                for (int i = 0; i < count; i++) {
+                    assertSame(expected.get(i).getProduct(), buffer.getProduct(i));
+                    assertEquals(expected.get(i).getScore(), buffer.getScore(i), 0.0f);
+                    assertEquals(expected.get(i).getAlgorithm(), buffer.getAlgorithm(i));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testRecommendIntoDoesNotAllocate() throws TasteException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        EngineConfig config = new EngineConfig();
+        config.setAlgorithm(Algorithm.MATRIX_FACTORIZATION);
+        RecommendationEngine factorEngine = new RecommendationEngine(users, products, ratings, config);
+        RecommendationBuffer buffer = new RecommendationBuffer(10);
+        for (int i = 0; i < 1000; i++) {
+            factorEngine.recommendInto(1 + i % users.size(), 5, Algorithm.MATRIX_FACTORIZATION, buffer);
+        }
+        
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            factorEngine.recommendInto(1 + i % users.size(), 5, Algorithm.MATRIX_FACTORIZATION, buffer);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        // A single list-based request allocates more than this
+        assertTrue("Allocated " + allocated + " bytes in 1000 requests", allocated < 8 * 1024);
+    }
+    
+    @Test
+    public void testFilteredRecommendationsMatchFilteringFullRanking() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+        config.setContentIndexEnabled(true);
+        RecommendationEngine filtered = new RecommendationEngine(users, products, ratings, config);
+        ProductFilter filter = new ProductFilter();
+        filter.setExcludedCategories(Collections.singleton("Electronics"));
+        filter.setMaxPrice(500);
+        
+        for (Algorithm algorithm : Algorithm.values()) {
+            for (long userId : new long[] {1L, 5L, 999L}) {
+                List<RecommendationEngine.ProductRecommendation> result =
+                    filtered.getRecommendations(userId, 5, algorithm, filter);
+                assertFalse(result.isEmpty());
+                for (RecommendationEngine.ProductRecommendation recommendation : result) {
+                    assertTrue(recommendation.getProduct().toString(), filter.accepts(recommendation.getProduct()));
+                }
+            }
+        }
+        
+        // Filtering inside scoring gives the same top 5 as filtering the whole ranking afterwards
+        List<RecommendationEngine.ProductRecommendation> all =
+            filtered.getRecommendations(1L, products.size(), Algorithm.MATRIX_FACTORIZATION);
+        List<RecommendationEngine.ProductRecommendation> expected = new ArrayList<>();
+        for (RecommendationEngine.ProductRecommendation recommendation : all) {
+            if (expected.size() < 5 && filter.accepts(recommendation.getProduct())) {
+                expected.add(recommendation);
+            }
+        }
+        List<RecommendationEngine.ProductRecommendation> actual =
+            filtered.getRecommendations(1L, 5, Algorithm.MATRIX_FACTORIZATION, filter);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertSame(expected.get(i).getProduct(), actual.get(i).getProduct());
+        }
+        
+        // Full diversity spreads the first picks over distinct categories
+        ProductFilter diverse = new ProductFilter();
+        diverse.setDiversity(1.0);
+        List<RecommendationEngine.ProductRecommendation> spread =
+            filtered.getRecommendations(1L, 3, Algorithm.MATRIX_FACTORIZATION, diverse);
+        Set<String> poolCategories = new HashSet<>();
+        for (RecommendationEngine.ProductRecommendation recommendation : all.subList(0, Math.min(9, all.size()))) {
+            poolCategories.add(recommendation.getProduct().getCategory());
+        }
+        Set<String> categories = new HashSet<>();
+        for (RecommendationEngine.ProductRecommendation recommendation : spread) {
+            categories.add(recommendation.getProduct().getCategory());
+        }
+        assertEquals(Math.min(spread.size(), poolCategories.size()), categories.size());
+    }
+    
+    @Test
+    public void testMatrixFactorizationRecommendations() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setAlgorithm(Algorithm.MATRIX_FACTORIZATION);
+        RecommendationEngine factorEngine = new RecommendationEngine(users, products, ratings, config);
+        
+        List<RecommendationEngine.ProductRecommendation> recommendations = 
+            factorEngine.getRecommendations(1L, 5);
+        
+        assertFalse("Factorization should score every unrated product", recommendations.isEmpty());
+        assertTrue("Should not exceed requested number", recommendations.size() <= 5);
+        for (int i = 0; i < recommendations.size(); i++) {
+            assertEquals(Algorithm.MATRIX_FACTORIZATION.getLabel(), recommendations.get(i).getAlgorithm());
+            if (i > 0) {
+                assertTrue("Should be sorted by score", 
+                    recommendations.get(i).getScore() <= recommendations.get(i - 1).getScore());
+            }
+        }
+    }
+    
+    @Test
+    public void testContentBasedRecommendations() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setAlgorithm(Algorithm.CONTENT_BASED);
+        config.setContentMinRating(1.0f);
+        RecommendationEngine contentEngine = new RecommendationEngine(users, products, ratings, config);
+        
+        List<RecommendationEngine.ProductRecommendation> recommendations = 
+            contentEngine.getRecommendations(1L, 5);
+        
+        assertFalse("Every product shares its category with another", recommendations.isEmpty());
+        for (RecommendationEngine.ProductRecommendation rec : recommendations) {
+            assertEquals(Algorithm.CONTENT_BASED.getLabel(), rec.getAlgorithm());
+            for (Rating rating : ratings) {
+                assertFalse("Should not recommend rated products", 
+                    rating.getUserId() == 1L && rating.getProductId() == rec.getProduct().getProductId());
+            }
+        }
+        
+        // A new product is indexed without rebuilding the engine and can be recommended right away
+        long ratedId = ratings.stream().filter(r -> r.getUserId() == 1L).findFirst().get().getProductId();
+        String category = products.stream().filter(p -> p.getProductId() == ratedId).findFirst().get().getCategory();
+        Product added = new Product(100, "Unrated gadget", category, 10, "Gadget nobody has rated yet");
+        RecommendationEngine extended = contentEngine.withProducts(Collections.singletonList(added));
+        assertEquals(products.size() + 1, extended.getContentIndex().numProducts());
+        assertTrue(extended.getRecommendations(1L, products.size() + 1).stream()
+            .anyMatch(rec -> rec.getProduct() == added));
+        
+        // A new catalog gets a new version; new ratings keep the catalog's
+        assertNotEquals(contentEngine.getCatalogVersion(), extended.getCatalogVersion());
+        assertNotEquals(contentEngine.getCatalogVersion(), 
+            new RecommendationEngine(users, products, ratings, config).getCatalogVersion());
+        assertEquals(extended.getCatalogVersion(), 
+            extended.withChanges(new RatingDelta().put(1L, 100L, 5.0f, 0L)).getCatalogVersion());
+    }
+    
+    @Test
+    public void testHybridRecommendations() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+        config.setContentIndexEnabled(true);
+        RecommendationEngine hybridEngine = new RecommendationEngine(users, products, ratings, config);
+        HybridConfig hybrid = new HybridConfig();
+        hybrid.setTimeBudgetMillis(10_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<RecommendationEngine.ProductRecommendation> recommendations = 
+                hybridEngine.getHybridRecommendations(1L, 5, hybrid, executor);
+            
+            assertEquals(5, recommendations.size());
+            Set<String> sources = new HashSet<>(Arrays.asList("Popularity", Algorithm.USER_BASED.getLabel(), 
+                Algorithm.ITEM_BASED.getLabel(), Algorithm.MATRIX_FACTORIZATION.getLabel(), 
+                Algorithm.CONTENT_BASED.getLabel()));
+            for (int i = 0; i < recommendations.size(); i++) {
+                RecommendationEngine.ProductRecommendation rec = recommendations.get(i);
+                assertTrue(sources.containsAll(Arrays.asList(rec.getAlgorithm().split(" \\+ "))));
+                assertTrue(rec.getScore() >= 0.0f && rec.getScore() <= 1.0f);
+                if (i > 0) {
+                    assertTrue(rec.getScore() <= recommendations.get(i - 1).getScore());
+                }
+                for (Rating rating : ratings) {
+                    assertFalse("Should not recommend rated products", 
+                        rating.getUserId() == 1L && rating.getProductId() == rec.getProduct().getProductId());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testHybridDropsGeneratorsPastBudget() throws Exception {
+        HybridConfig hybrid = new HybridConfig();
+        hybrid.setTimeBudgetMillis(50);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Every generator queues behind a task that never finishes within the budget
+            executor.submit(() -> {
+                release.await();
+                return null;
+            });
+            long start = System.nanoTime();
+            List<RecommendationEngine.ProductRecommendation> recommendations = 
+                engine.getHybridRecommendations(1L, 5, hybrid, executor);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            assertTrue("Should not wait for late generators: " + elapsedMillis + " ms", elapsedMillis < 2_000);
+            assertEquals(engine.getFallbackRecommendations(1L, 5).size(), recommendations.size());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testRecommendAllMatchesSingleUserCalls() throws TasteException {
+        Map<Long, List<RecommendationEngine.ProductRecommendation>> batch = new ConcurrentHashMap<>();
+        engine.recommendAll(5, batch::put);
+        
+        assertEquals(users.size(), batch.size());
+        for (User user : users) {
+            List<RecommendationEngine.ProductRecommendation> expected = 
+                engine.getRecommendations(user.getUserId(), 5);
+            List<RecommendationEngine.ProductRecommendation> actual = batch.get(user.getUserId());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getProduct(), actual.get(i).getProduct());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-6f);
+            }
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testDisabledAlgorithm() throws TasteException {
+        engine.getRecommendations(1L, 5, Algorithm.ITEM_BASED);
+    }
+    
     @Test
     public void testUserSimilarity() throws TasteException {
         double similarity = engine.getUserSimilarity(1L, 2L);
@@ -53,6 +361,180 @@ public class RecommendationEngineTest {
             similarity >= -1.0 && similarity <= 1.0);
     }
     
+    @Test
+    public void testSimilarityCacheInvalidatedByChanges() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setSimilarityCacheCapacity(1024);
+        RecommendationEngine cached = new RecommendationEngine(users, products, ratings, config);
+        for (long other = 2; other <= users.size(); other++) {
+            assertEquals(engine.getUserSimilarity(1L, other), cached.getUserSimilarity(other, 1L), 1e-9);
+        }
+        
+        RatingDelta delta = new RatingDelta();
+        for (Product product : products) {
+            delta.put(1L, product.getProductId(), product.getProductId() % 5 + 1, 0L);
+        }
+        RecommendationEngine next = cached.withChanges(delta);
+        RecommendationEngine rebuilt = engine.withChanges(delta);
+        for (long other = 2; other <= users.size(); other++) {
+            double expected = rebuilt.getUserSimilarity(1L, other);
+            assertEquals(expected, next.getUserSimilarity(1L, other), 1e-9);
+            assertEquals(expected, next.getUserSimilarity(other, 1L), 1e-9);
+        }
+        assertSame(cached.getSimilarityCache(), next.getSimilarityCache());
+    }
+    
+    @Test
+    public void testSimilarityCacheStillFilledWhileNextEngineBuilds() throws TasteException {
+        EngineConfig config = new EngineConfig();
+        config.setSimilarityCacheCapacity(1024);
+        RecommendationEngine cached = new RecommendationEngine(users, products, ratings, config);
+        UserSimilarityCache cache = cached.getSimilarityCache();
+        long version = cache.version();
+        
+        // The serving engine keeps caching while the next one builds, here until the build is cancelled
+        long[] hitsDuringBuild = new long[1];
+        BuildProgress[] progress = new BuildProgress[1];
+        progress[0] = new BuildProgress((completed, total) -> {
+            if (completed == 0) {
+                try {
+                    for (int pass = 0; pass < 2; pass++) {
+                        for (long other = 2; other <= users.size(); other++) {
+                            cached.getUserSimilarity(1L, other);
+                        }
+                    }
+                } catch (TasteException e) {
+                    throw new IllegalStateException(e);
+                }
+                hitsDuringBuild[0] = cache.getHitCount();
+                progress[0].cancel();
+            }
+        });
+        config.setUserNeighborIndexEnabled(true);
+        config.setBuildProgress(progress[0]);
+        try {
+            cached.withChanges(new RatingDelta().put(1L, products.get(0).getProductId(), 5.0f, 0L));
+            fail("Cancelled build should fail");
+        } catch (CancellationException expected) {
+            // expected
+        }
+        assertEquals(users.size() - 1, hitsDuringBuild[0]);
+        
+        // A failed build leaves the cache current for the serving engine
+        assertEquals(version, cache.version());
+        long hits = cache.getHitCount();
+        cached.getUserSimilarity(1L, 2L);
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+    
+    @Test
+    public void testInterruptedRequestStopsScoring() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setUserNeighborIndexEnabled(true);
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+        RecommendationEngine indexed = new RecommendationEngine(users, products, ratings, config);
+        for (RecommendationEngine target : new RecommendationEngine[] {engine, indexed}) {
+            for (Algorithm algorithm : new Algorithm[] {Algorithm.USER_BASED, Algorithm.ITEM_BASED, 
+                    Algorithm.MATRIX_FACTORIZATION}) {
+                if (!target.isEnabled(algorithm)) {
+                    continue;
+                }
+                List<RecommendationEngine.ProductRecommendation> expected = target.getRecommendations(1L, 10, algorithm);
+                // A timed-out serving call interrupts its worker this way
+                Thread.currentThread().interrupt();
+                try {
+                    target.getRecommendations(1L, 10, algorithm);
+                    fail(algorithm + " scoring ignored the interrupt");
+                } catch (CancellationException e) {
+                    // expected
+                } finally {
+                    Thread.interrupted();
+                }
+                // Per-thread scratch is left clean for the next request
+                assertSameRecommendations(expected, target.getRecommendations(1L, 10, algorithm));
+            }
+        }
+    }
+    
+    @Test
+    public void testSavedModelWarmStart() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setUserNeighborIndexEnabled(true);
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+        RecommendationEngine trained = new RecommendationEngine(users, products, ratings, config);
+        Path file = folder.getRoot().toPath().resolve("engine.model");
+        trained.saveModel(file);
+        
+        // Loaded neighbor lists are not rebuilt, so the build never reports progress
+        BuildProgress progress = new BuildProgress();
+        config.setBuildProgress(progress);
+        RecommendationEngine loaded = new RecommendationEngine(users, products, RatingStore.of(ratings), config, file);
+        assertEquals(0, progress.total());
+        for (Algorithm algorithm : new Algorithm[] {Algorithm.USER_BASED, Algorithm.ITEM_BASED, 
+                Algorithm.MATRIX_FACTORIZATION}) {
+            for (long userId : new long[] {1L, 5L, 9L}) {
+                assertSameRecommendations(trained.getRecommendations(userId, 10, algorithm), 
+                    loaded.getRecommendations(userId, 10, algorithm));
+            }
+        }
+        
+        // Models saved with other settings are rebuilt instead of reused
+        config.setUserNeighbors(10);
+        RecommendationEngine rebuilt = new RecommendationEngine(users, products, RatingStore.of(ratings), config, file);
+        assertEquals(10, rebuilt.getUserNeighborIndex().k());
+        assertEquals(users.size(), progress.total());
+        
+        // A model saved for other ratings is refused
+        List<Rating> fewer = new ArrayList<>();
+        for (Rating rating : ratings) {
+            if (rating.getUserId() != 3L) {
+                fewer.add(rating);
+            }
+        }
+        try {
+            new RecommendationEngine(users, products, RatingStore.of(fewer), config, file);
+            fail("Model for different ratings should not load");
+        } catch (IOException expected) {
+            // expected
+        }
+        
+        // So is one saved before a delta that only changes existing ratings
+        Rating changed = ratings.get(0);
+        RatingStore updated = RatingStore.of(ratings).withChanges(new RatingDelta()
+            .put(changed.getUserId(), changed.getProductId(), changed.getRating() == 1.0f ? 2.0f : 1.0f, 
+                changed.getTimestamp()));
+        assertEquals(ratings.size(), updated.numRatings());
+        try {
+            new RecommendationEngine(users, products, updated, config, file);
+            fail("Model saved before changed ratings should not load");
+        } catch (IOException expected) {
+            // expected
+        }
+        
+        // A corrupted copy fails its checksum; byte 40 is inside the id map
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[40] ^= 0x10;
+        Path corrupt = folder.getRoot().toPath().resolve("corrupt.model");
+        Files.write(corrupt, bytes);
+        try {
+            new RecommendationEngine(users, products, RatingStore.of(ratings), config, corrupt);
+            fail("Corrupted model should not load");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("checksum"));
+        }
+    }
+    
+    private static void assertSameRecommendations(List<RecommendationEngine.ProductRecommendation> expected, 
+            List<RecommendationEngine.ProductRecommendation> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getProduct(), actual.get(i).getProduct());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0);
+        }
+    }
+    
     @Test
     public void testDataGeneration() {
         assertNotNull("Users should not be null", users);
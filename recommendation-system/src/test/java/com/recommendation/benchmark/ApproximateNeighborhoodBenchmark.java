@@ -0,0 +1,142 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.similarity.ApproximateUserNeighborhood;
+import com.recommendation.similarity.SimHashUserIndex;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.util.Random;
+
+/**
+ * Sweeps LSH settings for {@link ApproximateUserNeighborhood} against the
+ * exact threshold neighborhood and reports recall, candidates scored per
+ * query and latency. Ratings follow latent user and item tastes, so there
+ * are real neighborhoods to find.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.ApproximateNeighborhoodBenchmark -Dexec.args="20000 500 30 200 0.5"
+ */
+public class ApproximateNeighborhoodBenchmark {
+    private static final int DIMENSIONS = 4;
+    private static final int[][] SETTINGS = {
+        // tables, bits, multi-probe
+        {4, 8, 1}, {8, 8, 0}, {8, 8, 1}, {8, 10, 1}, {8, 12, 1}, {16, 8, 1}, {16, 10, 1}, {16, 12, 1}, {16, 6, 1},
+        {32, 12, 1}, {32, 14, 1}
+    };
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int numItems = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        double threshold = args.length > 4 ? Double.parseDouble(args[4]) : 0.5;
+
+        RatingStore store = latentTasteRatings(numUsers, numItems, ratingsPerUser, new Random(7));
+        DataModel model = new RatingStoreDataModel(store);
+        UserSimilarity similarity = new PearsonCorrelationSimilarity(model);
+        long[] users = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            users[q] = store.userId(q * (numUsers / queries));
+        }
+
+        // Twice, so the first pass warms up the similarity code
+        long[][] exact = new long[queries][];
+        double exactMicros = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            UserNeighborhood neighborhood = new ThresholdUserNeighborhood(threshold, similarity, model);
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                exact[q] = neighborhood.getUserNeighborhood(users[q]);
+            }
+            exactMicros = (System.nanoTime() - start) / 1000.0 / queries;
+        }
+        System.out.printf("Dataset: %s, threshold %.2f%n", store, threshold);
+        long neighbors = 0;
+        for (long[] row : exact) {
+            neighbors += row.length;
+        }
+        System.out.printf("Exact threshold neighborhood: %.0f neighbors, %.0f us/query%n", 
+            (double) neighbors / queries, exactMicros);
+
+        int maxCandidates = args.length > 5 ? Integer.parseInt(args[5]) : numUsers / 10;
+        int[] out = new int[maxCandidates];
+        for (int[] setting : SETTINGS) {
+            int tables = setting[0];
+            int bits = setting[1];
+            boolean multiProbe = setting[2] != 0;
+            SimHashUserIndex index = SimHashUserIndex.build(store, tables, bits, 1L);
+            SimHashUserIndex.Scratch scratch = index.newScratch();
+            long candidates = 0;
+            for (int q = 0; q < queries; q++) {
+                candidates += index.candidates(store.userIndex(users[q]), multiProbe, out, scratch);
+            }
+
+            UserNeighborhood approximate = new ApproximateUserNeighborhood(
+                index, similarity, threshold, multiProbe, maxCandidates);
+            long found = 0;
+            long total = 0;
+            double micros = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                found = 0;
+                total = 0;
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    FastIDSet expected = new FastIDSet(exact[q]);
+                    for (long neighbor : approximate.getUserNeighborhood(users[q])) {
+                        if (expected.contains(neighbor)) {
+                            found++;
+                        }
+                    }
+                    total += exact[q].length;
+                }
+                micros = (System.nanoTime() - start) / 1000.0 / queries;
+            }
+            System.out.printf("tables=%2d bits=%2d multiProbe=%-5s recall %.3f  candidates %6.0f/query (%4.1f%%)"
+                    + "  %6.0f us/query  %4.1fx faster%n",
+                tables, bits, multiProbe, total == 0 ? 1.0 : (double) found / total,
+                (double) candidates / queries, 100.0 * candidates / queries / numUsers, micros, exactMicros / micros);
+        }
+    }
+
+    /** Users and items get random taste vectors; ratings follow their agreement. */
+    static RatingStore latentTasteRatings(int numUsers, int numItems, int ratingsPerUser, Random random) {
+        double[][] itemTastes = new double[numItems][];
+        for (int i = 0; i < numItems; i++) {
+            itemTastes[i] = unitVector(random);
+        }
+        RatingStore.Builder builder = RatingStore.builder();
+        for (int u = 0; u < numUsers; u++) {
+            double[] taste = unitVector(random);
+            for (int r = 0; r < ratingsPerUser; r++) {
+                int item = random.nextInt(numItems);
+                double agreement = 0;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    agreement += taste[d] * itemTastes[item][d];
+                }
+                double rating = 3.0 + 2.0 * agreement + random.nextGaussian() * 0.3;
+                builder.add(u, item, (float) Math.max(1.0, Math.min(5.0, rating)), 0L);
+            }
+        }
+        return builder.build();
+    }
+
+    private static double[] unitVector(Random random) {
+        double[] vector = new double[DIMENSIONS];
+        double norm = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = random.nextGaussian();
+            norm += vector[d] * vector[d];
+        }
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] /= Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
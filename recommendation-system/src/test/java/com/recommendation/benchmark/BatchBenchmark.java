@@ -0,0 +1,49 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.store.RatingStore;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares precomputing recommendations for a block of users one call at a
+ * time with the parallel batch API.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.BatchBenchmark -Dexec.args="5000 500 20 1000"
+ */
+public class BatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int batchUsers = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+
+        RatingStore store = RatingStore.of(new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+        RecommendationEngine engine = new RecommendationEngine(
+            Collections.emptyList(), Collections.emptyList(), store);
+        long[] userIds = new long[Math.min(batchUsers, store.numUsers())];
+        for (int u = 0; u < userIds.length; u++) {
+            userIds[u] = store.userId(u);
+        }
+        System.out.println("Dataset: " + store + ", batch of " + userIds.length + " users");
+
+        long start = System.nanoTime();
+        for (long userId : userIds) {
+            engine.getRecommendations(userId, 10);
+        }
+        long loopMs = (System.nanoTime() - start) / 1_000_000;
+
+        AtomicLong delivered = new AtomicLong();
+        start = System.nanoTime();
+        engine.recommendBatch(userIds, 10, (userId, recommendations) -> delivered.incrementAndGet());
+        long batchMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("Loop:  %6d ms (%.2f ms/user)%n", loopMs, loopMs / (double) userIds.length);
+        System.out.printf("Batch: %6d ms (%.2f ms/user), %d users delivered%n",
+            batchMs, batchMs / (double) userIds.length, delivered.get());
+    }
+}
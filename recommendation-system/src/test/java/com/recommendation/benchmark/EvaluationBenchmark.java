@@ -0,0 +1,65 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.evaluation.DataSplit;
+import com.recommendation.evaluation.EvaluationResult;
+import com.recommendation.evaluation.Evaluator;
+import com.recommendation.model.Rating;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sweeps the user-based similarity threshold, neighbor count and the other
+ * algorithms over a temporal split of generated ratings, printing quality
+ * next to build time and query latency for each configuration.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.EvaluationBenchmark -Dexec.args="5000 1000 10"
+ */
+public class EvaluationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        RatingGenerator generator = new RatingGenerator(numUsers, numProducts);
+        List<Rating> ratings = new ArrayList<>();
+        generator.iterator().forEachRemaining(ratings::add);
+        DataSplit split = DataSplit.temporal(ratings, 0.2);
+        System.out.println("Split: " + split);
+        Evaluator evaluator = new Evaluator(generator.users(), generator.products(), split, k, 4.0f);
+
+        Map<String, EngineConfig> configs = new LinkedHashMap<>();
+        for (double threshold : new double[] {0.0, 0.1, 0.3, 0.5}) {
+            for (int neighbors : new int[] {20, 50}) {
+                EngineConfig config = new EngineConfig();
+                config.setUserNeighborIndexEnabled(true);
+                config.setUserSimilarityThreshold(threshold);
+                config.setUserNeighbors(neighbors);
+                configs.put("user t=" + threshold + " n=" + neighbors, config);
+            }
+        }
+        EngineConfig itemBased = new EngineConfig();
+        itemBased.setAlgorithm(Algorithm.ITEM_BASED);
+        configs.put("item-based", itemBased);
+        for (int rank : new int[] {10, 40}) {
+            EngineConfig factorization = new EngineConfig();
+            factorization.setAlgorithm(Algorithm.MATRIX_FACTORIZATION);
+            factorization.setFactorRank(rank);
+            configs.put("factorization rank=" + rank, factorization);
+        }
+
+        long start = System.nanoTime();
+        for (EvaluationResult result : evaluator.evaluateAll(configs)) {
+            System.out.println(result);
+        }
+        System.out.printf("Evaluated %d configurations in %.1f s%n", configs.size(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,56 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.store.RatingStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares matrix factorization with the Pearson user-based path: model build
+ * (training) time and per-query latency for the same random users.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.FactorizationBenchmark -Dexec.args="20000 2000 20"
+ */
+public class FactorizationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        RatingStore store = RatingStore.of(new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+        System.out.println("Dataset: " + store);
+
+        for (Algorithm algorithm : new Algorithm[] {Algorithm.USER_BASED, Algorithm.MATRIX_FACTORIZATION}) {
+            EngineConfig config = new EngineConfig();
+            config.setAlgorithm(algorithm);
+
+            long start = System.nanoTime();
+            RecommendationEngine engine = new RecommendationEngine(
+                Collections.emptyList(), Collections.emptyList(), store, config);
+            long buildMs = (System.nanoTime() - start) / 1_000_000;
+
+            Random random = new Random(1);
+            for (int i = 0; i < Math.min(queries, 20); i++) {
+                engine.getRecommendations(1 + random.nextInt(numUsers), 10);
+            }
+            long[] latencies = new long[queries];
+            for (int i = 0; i < queries; i++) {
+                long queryStart = System.nanoTime();
+                engine.getRecommendations(1 + random.nextInt(numUsers), 10);
+                latencies[i] = System.nanoTime() - queryStart;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("%-22s build %6d ms  query p50 %8.2f ms  p99 %8.2f ms%n",
+                algorithm, buildMs,
+                latencies[queries / 2] / 1e6, latencies[(int) (queries * 0.99)] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.serving.RecommendationCache;
+import com.recommendation.serving.RecommendationService;
+import com.recommendation.serving.ServingConfig;
+import com.recommendation.store.RatingStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded load test for {@link RecommendationService}: client threads
+ * issue requests for random users for a fixed duration, then p50/p99 latency,
+ * throughput and fallback counts are reported.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.ServingLoadTest -Dexec.args="5000 500 20 16 10"
+ */
+public class ServingLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        boolean virtualThreads = args.length > 5 && Boolean.parseBoolean(args[5]);
+        int cacheCapacity = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+
+        RatingStore store = RatingStore.of(new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+        RecommendationEngine engine = new RecommendationEngine(
+            Collections.emptyList(), Collections.emptyList(), store);
+        ServingConfig config = new ServingConfig();
+        config.setVirtualThreads(virtualThreads);
+        config.setCacheCapacity(cacheCapacity);
+        System.out.printf("Dataset: %s, %d clients, %d s, timeout %d ms%n",
+            store, clients, seconds, config.getTimeoutMillis());
+
+        try (RecommendationService service = new RecommendationService(engine, config)) {
+            long[][] latencies = new long[clients][];
+            int[] counts = new int[clients];
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            CountDownLatch done = new CountDownLatch(clients);
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                Thread thread = new Thread(() -> {
+                    Random random = new Random(client);
+                    long[] samples = new long[1 << 16];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        service.recommend(1 + random.nextInt(numUsers), 10);
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                    latencies[client] = samples;
+                    counts[client] = count;
+                    done.countDown();
+                }, "load-client-" + c);
+                thread.start();
+            }
+            done.await();
+
+            int total = Arrays.stream(counts).sum();
+            long[] all = new long[total];
+            int offset = 0;
+            for (int c = 0; c < clients; c++) {
+                System.arraycopy(latencies[c], 0, all, offset, counts[c]);
+                offset += counts[c];
+            }
+            Arrays.sort(all);
+            System.out.printf("Requests: %d (%.0f/s)%n", total, total / (double) seconds);
+            System.out.printf("Latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0.0 : all[all.length - 1] / 1e6);
+            System.out.printf("Served %d, timed out %d, rejected %d, failed %d%n",
+                service.getServedCount(), service.getTimedOutCount(),
+                service.getRejectedCount(), service.getFailedCount());
+            RecommendationCache cache = service.getCache();
+            if (cache != null) {
+                System.out.printf("Cache hit rate %.1f%% (%d hits, %d misses, %d evictions)%n",
+                    cache.getHitRate() * 100, cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+}
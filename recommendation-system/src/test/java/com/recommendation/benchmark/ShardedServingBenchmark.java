@@ -0,0 +1,94 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.factorization.AlsTrainer;
+import com.recommendation.factorization.FactorModel;
+import com.recommendation.sharding.ItemShard;
+import com.recommendation.sharding.LocalShardCluster;
+import com.recommendation.sharding.ShardCoordinator;
+import com.recommendation.store.RatingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput and latency of item-sharded factorization serving against the
+ * number of shards, each shard a separate worker process on this machine.
+ * Scaling flattens once shards outnumber the cores, since the workers then
+ * compete for the same CPUs.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.ShardedServingBenchmark -Dexec.args="50000 20000 20 1,2,4"
+ */
+public class ShardedServingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int[] shardCounts = Arrays.stream((args.length > 3 ? args[3] : "1,2,4").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+        int clients = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        int queries = args.length > 5 ? Integer.parseInt(args[5]) : 4_000;
+
+        RatingStore store = RatingStore.of(new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+        System.out.println("Dataset: " + store);
+        FactorModel factors = new AlsTrainer(32, 5, 0.1, 1L).train(store);
+
+        Path root = Files.createTempDirectory("shards");
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            for (int numShards : shardCounts) {
+                List<Path> directories = new ArrayList<>();
+                for (ItemShard shard : ItemShard.split(store, factors, numShards)) {
+                    Path directory = root.resolve(numShards + "-" + shard.shardIndex());
+                    shard.write(directory);
+                    directories.add(directory);
+                }
+                try (LocalShardCluster cluster = LocalShardCluster.start(directories);
+                     ShardCoordinator coordinator = new ShardCoordinator(cluster.addresses(), 1_000)) {
+                    run(coordinator, store, executor, clients, queries / 4);
+                    long start = System.nanoTime();
+                    long[] latencies = run(coordinator, store, executor, clients, queries);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    Arrays.sort(latencies);
+                    System.out.printf("%d shards  %8.0f req/s  p50 %7.2f ms  p99 %7.2f ms  timeouts %d%n",
+                        numShards, queries / seconds,
+                        latencies[queries / 2] / 1e6, latencies[(int) (queries * 0.99)] / 1e6,
+                        coordinator.getTimedOutCount());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long[] run(ShardCoordinator coordinator, RatingStore store, ExecutorService executor,
+                              int clients, int queries) throws Exception {
+        long[] latencies = new long[queries];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(client);
+                for (int q = client; q < queries; q += clients) {
+                    long userId = store.userId(random.nextInt(store.numUsers()));
+                    long start = System.nanoTime();
+                    coordinator.recommend(userId, 10);
+                    latencies[q] = System.nanoTime() - start;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return latencies;
+    }
+}
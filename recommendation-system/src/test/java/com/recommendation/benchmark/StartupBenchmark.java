@@ -0,0 +1,91 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.RatingDataModels;
+import com.recommendation.model.Rating;
+import com.recommendation.store.RatingSnapshot;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares model construction through the legacy temp CSV + FileDataModel path
+ * with the direct in-memory paths (GenericDataModel and the columnar RatingStore)
+ * and with opening a memory-mapped rating snapshot.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.StartupBenchmark -Dexec.args="100000 5000 20 3"
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        List<Rating> ratings = generate(numUsers, numProducts, ratingsPerUser);
+        System.out.printf("Dataset: %d users, %d products, %d ratings%n",
+            numUsers, numProducts, ratings.size());
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("--- Round " + round + " ---");
+
+            long start = System.nanoTime();
+            File dataFile = RatingDataModels.writeCsv(ratings);
+            DataModel fileModel = RatingDataModels.fromCsvFile(dataFile);
+            fileModel.getNumUsers();
+            report("File (CSV round-trip)", start, fileModel);
+            fileModel = null;
+            dataFile.delete();
+
+            start = System.nanoTime();
+            DataModel listModel = RatingDataModels.fromRatings(ratings);
+            report("In-memory (list)", start, listModel);
+            listModel = null;
+
+            start = System.nanoTime();
+            DataModel streamedModel = RatingDataModels.fromRatings(
+                new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+            report("In-memory (streamed)", start, streamedModel);
+            streamedModel = null;
+
+            start = System.nanoTime();
+            DataModel storeModel = new RatingStoreDataModel(RatingStore.of(
+                new SyntheticRatings(numUsers, numProducts, ratingsPerUser)));
+            report("RatingStore (streamed)", start, storeModel);
+            RatingStore store = ((RatingStoreDataModel) storeModel).getStore();
+            storeModel = null;
+
+            Path snapshot = Files.createTempFile("ratings", ".snapshot");
+            RatingSnapshot.write(store, snapshot);
+            store = null;
+            start = System.nanoTime();
+            DataModel mappedModel = new RatingStoreDataModel(RatingSnapshot.open(snapshot));
+            report("Snapshot (mmap open)", start, mappedModel);
+            mappedModel = null;
+            Files.delete(snapshot);
+        }
+    }
+
+    private static void report(String label, long startNanos, DataModel model) throws Exception {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        System.out.printf("%-24s %6d ms  users=%d items=%d  heap used=%d MB%n",
+            label, elapsedMs, model.getNumUsers(), model.getNumItems(), usedMb);
+        System.gc();
+    }
+
+    private static List<Rating> generate(int numUsers, int numProducts, int ratingsPerUser) {
+        List<Rating> ratings = new ArrayList<>(numUsers * ratingsPerUser);
+        new SyntheticRatings(numUsers, numProducts, ratingsPerUser).forEachRemaining(ratings::add);
+        return ratings;
+    }
+}
@@ -0,0 +1,43 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.model.Rating;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Seeded stream of uniformly random ratings, {@code ratingsPerUser} for each
+ * of {@code numUsers} users, generated on the fly.
+ */
+public final class SyntheticRatings implements Iterator<Rating> {
+    private final Random random = new Random(42);
+    private final long now = System.currentTimeMillis();
+    private final int numProducts;
+    private final int ratingsPerUser;
+    private final long total;
+    private long produced;
+
+    public SyntheticRatings(int numUsers, int numProducts, int ratingsPerUser) {
+        this.numProducts = numProducts;
+        this.ratingsPerUser = ratingsPerUser;
+        this.total = (long) numUsers * ratingsPerUser;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return produced < total;
+    }
+
+    @Override
+    public Rating next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long user = 1 + produced / ratingsPerUser;
+        produced++;
+        long product = 1 + random.nextInt(numProducts);
+        float value = 1.0f + random.nextInt(9) * 0.5f;
+        return new Rating(user, product, value, now);
+    }
+}
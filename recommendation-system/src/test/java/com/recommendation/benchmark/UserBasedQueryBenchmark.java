@@ -0,0 +1,77 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RatingDataModels;
+import com.recommendation.model.Rating;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the engine's default user-based query path (Pearson similarity
+ * against every user through a {@code ThresholdUserNeighborhood}) over the
+ * Mahout {@code GenericDataModel} and over {@link RatingStoreDataModel},
+ * reporting query latency and bytes allocated per query. Both models in
+ * one JVM make Mahout's call sites megamorphic, so for a fair comparison run
+ * each on its own by passing {@code generic} or {@code store} last.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.UserBasedQueryBenchmark -Dexec.args="5000 2000 20 200"
+ */
+public class UserBasedQueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        String models = args.length > 4 ? args[4] : "both";
+
+        List<Rating> ratings = new ArrayList<>();
+        new SyntheticRatings(numUsers, numProducts, ratingsPerUser).forEachRemaining(ratings::add);
+        DataModel generic = RatingDataModels.fromRatings(ratings);
+        DataModel store = new RatingStoreDataModel(RatingStore.of(ratings));
+        double threshold = new EngineConfig().getUserSimilarityThreshold();
+
+        for (int round = 1; round <= 3; round++) {
+            if (!models.equals("store")) {
+                run("GenericDataModel", generic, threshold, numUsers, queries);
+            }
+            if (!models.equals("generic")) {
+                run("RatingStoreDataModel", store, threshold, numUsers, queries);
+            }
+        }
+    }
+
+    private static void run(String name, DataModel model, double threshold, int numUsers, int queries) 
+            throws Exception {
+        UserSimilarity similarity = new PearsonCorrelationSimilarity(model);
+        Recommender recommender = new GenericUserBasedRecommender(model,
+            new ThresholdUserNeighborhood(threshold, similarity, model), similarity);
+        com.sun.management.ThreadMXBean threads = 
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Random random = new Random(7);
+
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            recommender.recommend(1 + random.nextInt(numUsers), 10);
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("%-22s %8.2f ms/query  %10d KB allocated/query%n",
+            name, elapsed / 1e6 / queries, allocated / queries / 1024);
+    }
+}
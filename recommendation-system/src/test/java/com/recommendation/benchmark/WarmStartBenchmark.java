@@ -0,0 +1,58 @@
+package com.recommendation.benchmark;
+
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.store.RatingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Compares building an engine's models from the ratings (user neighbor
+ * index, item similarities, factors) with loading the same models from a
+ * file saved by {@link RecommendationEngine#saveModel}.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.recommendation.benchmark.WarmStartBenchmark -Dexec.args="50000 5000 20"
+ */
+public class WarmStartBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numUsers = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int numProducts = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int ratingsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        RatingStore store = RatingStore.of(new SyntheticRatings(numUsers, numProducts, ratingsPerUser));
+        System.out.println("Dataset: " + store);
+        EngineConfig config = new EngineConfig();
+        config.setUserNeighborIndexEnabled(true);
+        config.setItemIndexEnabled(true);
+        config.setFactorizationEnabled(true);
+
+        Path file = Files.createTempFile("engine", ".model");
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                long start = System.nanoTime();
+                RecommendationEngine built = new RecommendationEngine(
+                    Collections.emptyList(), Collections.emptyList(), store, config);
+                long buildMs = (System.nanoTime() - start) / 1_000_000;
+
+                start = System.nanoTime();
+                built.saveModel(file);
+                long saveMs = (System.nanoTime() - start) / 1_000_000;
+                built = null;
+
+                start = System.nanoTime();
+                new RecommendationEngine(Collections.emptyList(), Collections.emptyList(), store, config, file);
+                long loadMs = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("Round %d: build %6d ms  save %5d ms  warm start %5d ms  (%d MB)%n",
+                    round, buildMs, saveMs, loadMs, Files.size(file) >> 20);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.recommendation.content;
+
+import com.recommendation.model.Product;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ProductTextIndexTest {
+    private static final List<Product> CATALOG = Arrays.asList(
+        new Product(1, "Wireless Earbuds", "Electronics", 99, "Noise cancelling wireless earbuds"),
+        new Product(2, "Wireless Headphones", "Electronics", 199, "Over-ear wireless headphones with noise cancelling"),
+        new Product(3, "Pasta Cookbook", "Books", 25, "Italian recipes for fresh pasta"),
+        new Product(4, "Baking Cookbook", "Books", 30, "Recipes for bread and cakes"),
+        new Product(5, "Desk Lamp", "Home", 40, "LED lamp for the desk"));
+
+    @Test
+    public void testWithProductsMatchesRebuild() {
+        Random random = new Random(7);
+        String[] words = {"red", "blue", "wooden", "metal", "chair", "table", "lamp", "soft", "large", "small"};
+        List<Product> products = new ArrayList<>();
+        for (int p = 1; p <= 60; p++) {
+            StringBuilder description = new StringBuilder();
+            for (int w = 0; w < 6; w++) {
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            products.add(new Product(p, "Item " + p, p % 2 == 0 ? "Home" : "Garden", 10, description.toString()));
+        }
+
+        ProductTextIndex full = ProductTextIndex.build(products);
+        ProductTextIndex incremental = ProductTextIndex.build(products.subList(0, 25))
+            .withProducts(products.subList(25, 40))
+            .withProducts(products.subList(40, 60));
+
+        assertEquals(full.numProducts(), incremental.numProducts());
+        for (String word : words) {
+            int term = full.termId(word);
+            assertEquals(full.idf(term), incremental.idf(incremental.termId(word)), 1e-6f);
+        }
+        for (int a = 1; a <= 60; a += 7) {
+            for (int b = 1; b <= 60; b += 5) {
+                assertEquals(full.similarity(full.docIndex(a), full.docIndex(b)),
+                    incremental.similarity(incremental.docIndex(a), incremental.docIndex(b)), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void testReplacedProductLeavesPostings() {
+        ProductTextIndex index = ProductTextIndex.build(CATALOG);
+        int lamp = index.termId("lamp");
+        assertEquals(1, index.postingCount(lamp));
+
+        ProductTextIndex replaced = index.withProducts(Collections.singletonList(
+            new Product(5, "Desk Organizer", "Home", 20, "Bamboo organizer for the desk")));
+        assertEquals(5, replaced.numProducts());
+        assertEquals(0, replaced.postingCount(replaced.termId("lamp")));
+        assertEquals(1, replaced.postingCount(replaced.termId("bamboo")));
+        // The original index is untouched
+        assertEquals(1, index.postingCount(lamp));
+        assertEquals(-1, index.termId("bamboo"));
+    }
+
+    @Test
+    public void testCompactsTombstonesOfReplacedProducts() {
+        List<Product> products = new ArrayList<>();
+        for (int p = 1; p <= 2000; p++) {
+            products.add(new Product(p, "Item " + p, "Home", 10, "model" + p + " chair"));
+        }
+        ProductTextIndex original = ProductTextIndex.build(products);
+        ProductTextIndex index = original;
+        List<Product> latest = new ArrayList<>(products);
+        for (int round = 0; round < 20; round++) {
+            List<Product> replacements = new ArrayList<>();
+            for (int p = 1 + round * 50; p <= 50 + round * 50; p++) {
+                Product product = new Product(p, "Item " + p, "Garden", 10, "version" + round + " table");
+                replacements.add(product);
+                latest.set(p - 1, product);
+            }
+            index = index.withProducts(replacements);
+            assertTrue(index.numDocs() - index.numProducts() <= index.numDocs() / 4);
+        }
+        // 1000 replacements of 2000 products: compacted at least once, and the dropped terms are gone
+        assertTrue(index.numDocs() < 3000);
+        assertEquals(2000, index.numProducts());
+        assertEquals(-1, index.termId("model1"));
+        assertEquals(1, index.postingCount(index.termId("model2000")));
+
+        ProductTextIndex rebuilt = ProductTextIndex.build(latest);
+        for (String word : Arrays.asList("chair", "table", "home", "garden", "version3")) {
+            assertEquals(rebuilt.idf(rebuilt.termId(word)), index.idf(index.termId(word)), 1e-6f);
+        }
+        for (int a = 1; a <= 2000; a += 97) {
+            for (int b = 1; b <= 2000; b += 131) {
+                assertEquals(rebuilt.similarity(rebuilt.docIndex(a), rebuilt.docIndex(b)),
+                    index.similarity(index.docIndex(a), index.docIndex(b)), 1e-5f);
+            }
+        }
+        for (int p = 1; p <= 2000; p += 37) {
+            assertEquals(p, index.productId(index.docIndex(p)));
+        }
+
+        // The original shares chunks and the term dictionary with the first updates but is unchanged
+        assertEquals(2000, original.numDocs());
+        assertEquals(1, original.postingCount(original.termId("model1")));
+        assertEquals(-1, original.termId("table"));
+        assertEquals(0, original.docIndex(1));
+    }
+
+    @Test
+    public void testRecommendsSimilarText() throws Exception {
+        RatingStore store = RatingStore.builder()
+            .add(1, 1, 5.0f, 0)
+            .add(1, 3, 2.0f, 0)
+            .add(2, 3, 3.0f, 0)
+            .build();
+        ContentBasedRecommender recommender =
+            new ContentBasedRecommender(new RatingStoreDataModel(store), ProductTextIndex.build(CATALOG), 4.0f);
+
+        List<RecommendedItem> items = recommender.recommend(1L, 3);
+        assertFalse(items.isEmpty());
+        assertEquals(2L, items.get(0).getItemID());
+        for (RecommendedItem item : items) {
+            assertNotEquals(1L, item.getItemID());
+            assertNotEquals(3L, item.getItemID());
+            assertTrue(item.getValue() > 0 && item.getValue() <= 1.0f + 1e-6f);
+        }
+
+        // Nothing rated highly, so no profile
+        assertTrue(recommender.recommend(2L, 3).isEmpty());
+        assertEquals(5.0f, recommender.estimatePreference(1L, 2L), 1.0f);
+    }
+}
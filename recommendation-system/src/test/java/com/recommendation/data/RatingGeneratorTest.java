@@ -0,0 +1,57 @@
+package com.recommendation.data;
+
+import com.recommendation.model.Rating;
+import com.recommendation.store.RatingStore;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class RatingGeneratorTest {
+
+    @Test
+    public void testParallelAndStreamedOutputMatch() {
+        RatingGenerator generator = new RatingGenerator(10_000, 2_000);
+        generator.setSeed(7);
+        RatingStore store = generator.toRatingStore();
+
+        int count = 0;
+        Iterator<Rating> ratings = generator.iterator();
+        while (ratings.hasNext()) {
+            Rating rating = ratings.next();
+            int u = store.userIndex(rating.getUserId());
+            int i = store.itemIndex(rating.getProductId());
+            assertEquals(rating.getRating(), store.rating(u, i), 0.0f);
+            count++;
+        }
+        assertEquals(store.numRatings(), count);
+        assertEquals(10_000, store.numUsers());
+        // Same seed, same data
+        assertEquals(store.numRatings(), generator.toRatingStore().numRatings());
+    }
+
+    @Test
+    public void testPopularityIsSkewed() {
+        RatingGenerator generator = new RatingGenerator(5_000, 1_000);
+        RatingStore store = generator.toRatingStore();
+        int head = store.itemRatingCount(store.itemIndex(1));
+        int middle = store.itemRatingCount(store.itemIndex(500));
+        assertTrue("head " + head + " vs middle " + middle, head > 20 * middle);
+    }
+
+    @Test
+    public void testUsersCanRateWholeCatalog() {
+        RatingGenerator generator = new RatingGenerator(50, 30);
+        generator.setMeanRatingsPerUser(30);
+        generator.setActivitySpread(0);
+        RatingStore store = generator.toRatingStore();
+        assertEquals(50 * 30, store.numRatings());
+        for (int u = 0; u < store.numUsers(); u++) {
+            for (int p = store.userStart(u); p < store.userEnd(u); p++) {
+                float rating = store.userRatingAt(p);
+                assertTrue(rating >= 1.0f && rating <= 5.0f);
+            }
+        }
+    }
+}
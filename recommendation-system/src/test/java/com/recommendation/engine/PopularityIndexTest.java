@@ -0,0 +1,69 @@
+package com.recommendation.engine;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+import com.recommendation.store.RatingStore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PopularityIndexTest {
+    private static final List<Product> CATALOG = Arrays.asList(
+        new Product(1, "Few perfect", "Books", 10, ""),
+        new Product(2, "Many great", "Books", 10, ""),
+        new Product(3, "Many poor", "Home", 10, ""),
+        new Product(4, "Unrated", "Home", 10, ""));
+
+    private static RatingStore ratings() {
+        RatingStore.Builder builder = RatingStore.builder();
+        builder.add(1, 1, 5.0f, 0).add(2, 1, 5.0f, 0);
+        for (int user = 1; user <= 100; user++) {
+            builder.add(user, 2, user % 5 == 0 ? 4.0f : 5.0f, 0);
+            builder.add(user, 3, 2.0f, 0);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testBayesianAverageFavorsWellSupportedProducts() {
+        PopularityIndex index = PopularityIndex.build(ratings(), CATALOG);
+
+        assertEquals(4, index.size());
+        assertEquals(2L, index.product(0).getProductId());
+        assertEquals(1L, index.product(1).getProductId());
+        // The unrated product sits at the global mean, above the poorly rated one
+        assertEquals(4L, index.product(2).getProductId());
+        assertEquals(3L, index.product(3).getProductId());
+        for (int r = 1; r < index.size(); r++) {
+            assertTrue(index.score(r) <= index.score(r - 1));
+        }
+    }
+
+    @Test
+    public void testRecommendSkipsRatedProducts() {
+        PopularityIndex index = PopularityIndex.build(ratings(), CATALOG);
+
+        List<ProductRecommendation> forRater = index.recommend(1L, 10);
+        assertEquals(1, forRater.size());
+        assertEquals(4L, forRater.get(0).getProduct().getProductId());
+        assertEquals(PopularityIndex.LABEL, forRater.get(0).getAlgorithm());
+
+        List<ProductRecommendation> forNewUser = index.recommend(999L, 2);
+        assertEquals(2, forNewUser.size());
+        assertEquals(2L, forNewUser.get(0).getProduct().getProductId());
+    }
+
+    @Test
+    public void testCategoryRankings() {
+        PopularityIndex index = PopularityIndex.build(ratings(), CATALOG);
+
+        List<ProductRecommendation> home = index.recommend(999L, 10, "Home");
+        assertEquals(2, home.size());
+        assertEquals(4L, home.get(0).getProduct().getProductId());
+        assertEquals(3L, home.get(1).getProduct().getProductId());
+        assertTrue(index.recommend(999L, 10, "Garden").isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package com.recommendation.evaluation;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.engine.Algorithm;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.model.Rating;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class EvaluatorTest {
+    private static RatingGenerator generator;
+    private static List<Rating> ratings;
+
+    @BeforeClass
+    public static void setUp() {
+        generator = new RatingGenerator(300, 150);
+        ratings = new ArrayList<>();
+        generator.iterator().forEachRemaining(ratings::add);
+    }
+
+    @Test
+    public void testTemporalSplitHoldsOutLatestRatings() {
+        DataSplit split = DataSplit.temporal(ratings, 0.2);
+        assertEquals(ratings.size(), split.getTraining().size() + split.getTest().size());
+        assertFalse(split.getTest().isEmpty());
+
+        Map<Long, Long> lastTraining = new HashMap<>();
+        for (Rating rating : split.getTraining()) {
+            lastTraining.merge(rating.getUserId(), rating.getTimestamp(), Math::max);
+        }
+        for (Rating rating : split.getTest()) {
+            Long last = lastTraining.get(rating.getUserId());
+            assertNotNull("Every tested user keeps training ratings", last);
+            assertTrue(rating.getTimestamp() >= last);
+        }
+    }
+
+    @Test
+    public void testRandomSplitIsSeeded() {
+        DataSplit first = DataSplit.random(ratings, 0.2, 7);
+        DataSplit second = DataSplit.random(ratings, 0.2, 7);
+        assertEquals(ratings.size(), first.getTraining().size() + first.getTest().size());
+        assertEquals(first.getTest(), second.getTest());
+        Set<Long> trainingUsers = new HashSet<>();
+        first.getTraining().forEach(rating -> trainingUsers.add(rating.getUserId()));
+        first.getTest().forEach(rating -> assertTrue(trainingUsers.contains(rating.getUserId())));
+    }
+
+    @Test
+    public void testRankingMetrics() {
+        List<Long> ranked = Arrays.asList(1L, 2L, 3L, 4L);
+        Set<Long> relevant = new HashSet<>(Arrays.asList(2L, 4L, 9L));
+
+        assertEquals(2, Evaluator.hits(ranked, relevant, 4));
+        assertEquals(1, Evaluator.hits(ranked, relevant, 2));
+        double dcg = 1 / log2(3) + 1 / log2(5);
+        double ideal = 1 + 1 / log2(3) + 1 / log2(4);
+        assertEquals(dcg / ideal, Evaluator.ndcg(ranked, relevant, 4), 1e-12);
+        assertEquals(1.0, Evaluator.ndcg(Arrays.asList(2L, 4L), relevant, 2), 1e-12);
+        assertEquals(0.0, Evaluator.ndcg(ranked, new HashSet<>(), 4), 0.0);
+    }
+
+    @Test
+    public void testEvaluatesConfigurationsConcurrently() throws Exception {
+        Evaluator evaluator = new Evaluator(generator.users(), generator.products(),
+            DataSplit.temporal(ratings, 0.2), 10, 4.0f);
+
+        Map<String, EngineConfig> configs = new LinkedHashMap<>();
+        for (double threshold : new double[] {0.1, 0.5}) {
+            EngineConfig config = new EngineConfig();
+            config.setUserNeighborIndexEnabled(true);
+            config.setUserSimilarityThreshold(threshold);
+            configs.put("user-based " + threshold, config);
+        }
+        EngineConfig factorization = new EngineConfig();
+        factorization.setAlgorithm(Algorithm.MATRIX_FACTORIZATION);
+        configs.put("factorization", factorization);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<EvaluationResult> results;
+        try {
+            results = evaluator.evaluateAll(configs, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(3, results.size());
+        int i = 0;
+        for (String name : configs.keySet()) {
+            EvaluationResult result = results.get(i++);
+            assertEquals(name, result.getName());
+            assertEquals(10, result.getK());
+            assertTrue(result.getUsers() > 0);
+            assertTrue(result.getCoverage() >= 0 && result.getCoverage() <= 1);
+            assertTrue(result.getPrecision() >= 0 && result.getPrecision() <= 1);
+            assertTrue(result.getRecall() >= 0 && result.getRecall() <= 1);
+            assertTrue(result.getNdcg() >= 0 && result.getNdcg() <= 1);
+            assertTrue(result.getFallbackRate() >= 0 && result.getFallbackRate() <= 1);
+            assertTrue(result.getMeanLatencyMicros() > 0);
+            assertTrue(result.getBuildMillis() >= 0);
+        }
+        // A stricter threshold keeps a subset of the neighbors, so it finds nothing at least as often
+        assertTrue(results.get(1).getFallbackRate() >= results.get(0).getFallbackRate());
+        EvaluationResult mf = results.get(2);
+        assertTrue(mf.getCoverage() > 0.9);
+        assertTrue("Factorization should estimate ratings within the scale", mf.getRmse() < 4.0);
+        assertTrue(mf.getMae() <= mf.getRmse());
+    }
+
+    private static double log2(int x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
@@ -0,0 +1,51 @@
+package com.recommendation.factorization;
+
+import com.recommendation.store.RatingStore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AlsTrainerTest {
+
+    @Test
+    public void testRecoversLowRankRatings() {
+        // Ratings generated from rank-2 tastes should be fit almost exactly at rank 4
+        Random random = new Random(3);
+        int users = 300;
+        int items = 60;
+        double[][] userTastes = new double[users][2];
+        double[][] itemTastes = new double[items][2];
+        for (double[] taste : userTastes) {
+            taste[0] = random.nextGaussian();
+            taste[1] = random.nextGaussian();
+        }
+        for (double[] taste : itemTastes) {
+            taste[0] = random.nextGaussian() * 0.5;
+            taste[1] = random.nextGaussian() * 0.5;
+        }
+        RatingStore.Builder builder = RatingStore.builder();
+        for (int u = 0; u < users; u++) {
+            for (int i = 0; i < items; i++) {
+                if (random.nextInt(3) == 0) {
+                    double value = 3.0 + userTastes[u][0] * itemTastes[i][0] + userTastes[u][1] * itemTastes[i][1];
+                    builder.add(u, i, (float) value, 0L);
+                }
+            }
+        }
+        RatingStore store = builder.build();
+
+        FactorModel model = new AlsTrainer(4, 15, 0.01, 1L).train(store);
+
+        double squaredError = 0;
+        for (int u = 0; u < store.numUsers(); u++) {
+            for (int p = store.userStart(u); p < store.userEnd(u); p++) {
+                double error = model.predict(u, store.itemAt(p)) - store.userRatingAt(p);
+                squaredError += error * error;
+            }
+        }
+        double rmse = Math.sqrt(squaredError / store.numRatings());
+        assertTrue("Training RMSE should be small, got " + rmse, rmse < 0.1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.recommendation.filter;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.model.Product;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CatalogBitsetsTest {
+
+    @Test
+    public void testAllowedMatchesAccepts() {
+        List<Product> catalog = new RatingGenerator(1, 500).products();
+        Product[] candidates = catalog.toArray(new Product[0]);
+        // Gaps in the candidate space, as for items nobody has a product for
+        candidates[3] = null;
+        candidates[77] = null;
+        CatalogBitsets bitsets = new CatalogBitsets(candidates);
+
+        Random random = new Random(5);
+        String[] categories = {"Electronics", "Books", "Clothing", "Home", "Toys"};
+        for (int round = 0; round < 200; round++) {
+            ProductFilter filter = new ProductFilter();
+            if (random.nextBoolean()) {
+                filter.setCategories(new HashSet<>(Arrays.asList(categories[random.nextInt(5)], categories[random.nextInt(5)])));
+            }
+            if (random.nextBoolean()) {
+                filter.setExcludedCategories(Collections.singleton(categories[random.nextInt(5)]));
+            }
+            if (random.nextBoolean()) {
+                filter.setMinPrice(random.nextInt(1000));
+            }
+            if (random.nextBoolean()) {
+                filter.setMaxPrice(random.nextInt(1000));
+            }
+            // Exact prices land on bucket boundaries
+            if (random.nextInt(4) == 0) {
+                filter.setMinPrice(catalog.get(random.nextInt(catalog.size())).getPrice());
+            }
+
+            BitSet allowed = bitsets.allowed(filter);
+            for (int c = 0; c < candidates.length; c++) {
+                assertEquals("candidate " + c, filter.accepts(candidates[c]), allowed.get(c));
+            }
+        }
+    }
+
+    @Test
+    public void testCategoryIds() {
+        Product[] candidates = {
+            new Product(1, "a", "Books", 10, ""), null, new Product(2, "b", "Home", 20, ""),
+            new Product(3, "c", "Books", 30, "")
+        };
+        CatalogBitsets bitsets = new CatalogBitsets(candidates);
+        assertEquals(2, bitsets.numCategories());
+        assertEquals(bitsets.category(0), bitsets.category(3));
+        assertEquals(bitsets.categoryId("Home"), bitsets.category(2));
+        assertEquals(-1, bitsets.category(1));
+        assertEquals(-1, bitsets.categoryId("Toys"));
+        assertFalse(bitsets.allowed(new ProductFilter()).get(1));
+    }
+
+    @Test
+    public void testDiversityReranking() {
+        int[] ids = {0, 1, 2, 3, 4, 5};
+        float[] scores = {1.0f, 0.95f, 0.9f, 0.5f, 0.4f, 0.1f};
+        int[] categories = {0, 0, 0, 1, 2, 1};
+
+        int[] unchanged = ids.clone();
+        assertEquals(3, DiversityReranker.rerank(unchanged, scores.clone(), categories.clone(), 6, 3, 0.0));
+        assertArrayEquals(ids, unchanged);
+
+        // Strong diversity shows each category before repeating one
+        int[] diverse = ids.clone();
+        float[] diverseScores = scores.clone();
+        assertEquals(3, DiversityReranker.rerank(diverse, diverseScores, categories.clone(), 6, 3, 0.9));
+        assertArrayEquals(new int[] {0, 3, 4}, Arrays.copyOf(diverse, 3));
+        assertEquals(0.5f, diverseScores[1], 0.0f);
+
+        // Mild diversity only breaks up near ties
+        int[] mild = ids.clone();
+        DiversityReranker.rerank(mild, scores.clone(), categories.clone(), 6, 3, 0.2);
+        assertArrayEquals(new int[] {0, 1, 2}, Arrays.copyOf(mild, 3));
+    }
+}
@@ -0,0 +1,63 @@
+package com.recommendation.metrics;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.metrics.EngineMetrics.Counter;
+import com.recommendation.metrics.EngineMetrics.Stage;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistogramMetricsTest {
+
+    @Test
+    public void testEngineRecordsStages() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        EngineConfig config = new EngineConfig();
+        config.setMetrics(metrics);
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine engine = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products), config);
+
+        assertEquals(1, metrics.histogram(Stage.BUILD_STORE).count());
+        assertEquals(1, metrics.histogram(Stage.BUILD_POPULARITY).count());
+        assertEquals(0, metrics.histogram(Stage.BUILD_FACTORS).count());
+
+        engine.getRecommendations(1L, 5);
+        engine.getRecommendations(999L, 5);
+        assertEquals(2, metrics.count(Counter.REQUESTS));
+        assertTrue(metrics.histogram(Stage.NEIGHBORHOOD).count() >= 1);
+        assertTrue(metrics.count(Counter.FALLBACKS) >= 1);
+        assertEquals(metrics.count(Counter.FALLBACKS), metrics.histogram(Stage.FALLBACK).count());
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.recordLatency(Stage.SCORING, 2_000_000);
+        metrics.increment(Counter.REQUESTS);
+        metrics.increment(Counter.REQUESTS);
+        metrics.increment(Counter.FALLBACKS);
+        metrics.registerMBeans("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName scoring = new ObjectName("com.recommendation:type=Engine,name=\"test\",stage=SCORING");
+            assertEquals(1L, server.getAttribute(scoring, "Count"));
+            assertEquals(2000.0, (Double) server.getAttribute(scoring, "P99Micros"), 2000.0 * 0.02);
+            ObjectName counters = new ObjectName("com.recommendation:type=Engine,name=\"test\",stage=COUNTERS");
+            assertEquals(0.5, (Double) server.getAttribute(counters, "FallbackRate"), 1e-9);
+        } finally {
+            metrics.unregisterMBeans();
+        }
+        assertTrue(server.queryNames(new ObjectName("com.recommendation:name=\"test\",*"), null).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.recommendation.server;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import com.recommendation.serving.RecommendationService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecommendationServerTest {
+    private static RecommendationService service;
+    private static RecommendationServer server;
+    private static URI baseUri;
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeClass
+    public static void start() throws Exception {
+        List<User> users = DataGenerator.generateUsers(20);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine engine = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products));
+        service = new RecommendationService(engine);
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setMaxRecommendations(20);
+        server = new RecommendationServer(service, config);
+        baseUri = URI.create("http://localhost:" + server.getPort());
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.close();
+        service.close();
+    }
+
+    @Test
+    public void testRecommend() throws Exception {
+        HttpResponse<String> response = get("/recommend?user=1&n=5");
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(response.body(), response.body().startsWith("{\"user\":1,\"items\":[{\"id\":"));
+        assertEquals(5, response.body().split("\"score\":", -1).length - 1);
+
+        response = get("/recommend?user=1&n=2");
+        assertEquals(200, response.statusCode());
+        assertEquals(2, response.body().split("\"score\":", -1).length - 1);
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        assertEquals(400, get("/recommend").statusCode());
+        assertEquals(400, get("/recommend?user=abc").statusCode());
+        assertEquals(400, get("/recommend?user=1&n=0").statusCode());
+        assertEquals(400, get("/recommend?user=1&n=21").statusCode());
+        assertEquals(400, get("/similarity?user1=1").statusCode());
+        assertEquals(404, get("/recommendations?user=1").statusCode());
+        assertEquals(404, get("/").statusCode());
+        assertTrue(get("/recommend").body().startsWith("{\"error\":"));
+
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(baseUri.resolve("/recommend?user=1"))
+            .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+    }
+
+    @Test
+    public void testSimilarity() throws Exception {
+        HttpResponse<String> response = get("/similarity?user1=1&user2=2");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().startsWith("{\"user1\":1,\"user2\":2,\"similarity\":"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        get("/recommend?user=2&n=3");
+        HttpResponse<String> response = get("/metrics");
+        assertEquals(200, response.statusCode());
+        String body = response.body();
+        assertTrue(body, body.startsWith("{\"server\":{\"requests\":"));
+        assertTrue(body, body.contains("\"/recommend\":{\"count\":"));
+        assertTrue(body, body.contains("\"service\":{\"served\":"));
+        assertTrue(body, body.contains("\"engine\":{\"counters\":{\"REQUESTS\":"));
+    }
+
+    @Test
+    public void testLoadGenerator() throws Exception {
+        LoadGenerator.Report report = LoadGenerator.run(baseUri, 4, 500, 20, 5);
+        assertTrue(report.getRequests() > 0);
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getLatencyPercentile(50) <= report.getMaxLatency());
+    }
+
+    @Test
+    public void testOpenLoopLoadGenerator() throws Exception {
+        // 200 requests per second for half a second is 100 slots, whatever the server's pace
+        LoadGenerator.Report report = LoadGenerator.run(baseUri, 4, 500, 20, 5, 200);
+        assertEquals(100, report.getRequests());
+        assertEquals(0, report.getErrors());
+        assertEquals(200, report.getRate(), 0.0);
+        assertTrue(report.toString(), report.toString().contains("200 scheduled"));
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(baseUri.resolve(path)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+}
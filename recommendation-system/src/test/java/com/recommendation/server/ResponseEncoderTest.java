@@ -0,0 +1,53 @@
+package com.recommendation.server;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResponseEncoderTest {
+    @Test
+    public void testEncodesRecommendations() {
+        ResponseEncoder encoder = new ResponseEncoder(16);
+        Product product = new Product(7, "Lamp \"LED\"", "Home", 12.5, "Desk lamp");
+        String json = encode(encoder, 1, product);
+        assertEquals("{\"user\":3,\"items\":[{\"id\":7,\"name\":\"Lamp \\\"LED\\\"\",\"category\":\"Home\","
+            + "\"price\":12.5,\"score\":0.5,\"algorithm\":\"test\"}]}", json);
+    }
+
+    @Test
+    public void testProductChangedInPlaceIsEncodedForTheNewCatalog() {
+        ResponseEncoder encoder = new ResponseEncoder(16);
+        Product product = new Product(7, "Lamp", "Home", 12.5, "Desk lamp");
+        assertTrue(encode(encoder, 1, product).contains("\"price\":12.5"));
+
+        // Same instance, changed and passed to withProducts, which bumps the catalog version
+        product.setPrice(9.0);
+        assertTrue(encode(encoder, 2, product).contains("\"price\":9.0"));
+
+        // A replacement instance under the same version is not confused with the cached one
+        Product replacement = new Product(7, "Lamp", "Garden", 9.0, "Desk lamp");
+        assertTrue(encode(encoder, 2, replacement).contains("\"category\":\"Garden\""));
+    }
+
+    @Test
+    public void testFragmentCacheIsBounded() {
+        ResponseEncoder encoder = new ResponseEncoder(64);
+        for (int p = 1; p <= 10_000; p++) {
+            encode(encoder, 1, new Product(p, "Item " + p, "Home", p, ""));
+        }
+        assertTrue(encoder.cachedFragments() <= 64);
+        assertTrue(encoder.cachedFragments() > 0);
+    }
+
+    private static String encode(ResponseEncoder encoder, long catalogVersion, Product product) {
+        List<ProductRecommendation> recommendations =
+            Collections.singletonList(new ProductRecommendation(product, 0.5f, "test"));
+        return new String(encoder.recommendations(3, catalogVersion, recommendations), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,110 @@
+package com.recommendation.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneComputation() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(5);
+        try {
+            Future<Integer> leader = callers.submit(() -> flight.get("key", () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return 42;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<Future<Integer>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                followers.add(callers.submit(() -> flight.get("key", () -> {
+                    computations.incrementAndGet();
+                    return -1;
+                })));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (flight.coalescedCount() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(42, (int) leader.get());
+            for (Future<Integer> follower : followers) {
+                assertEquals(42, (int) follower.get());
+            }
+            assertEquals(1, computations.get());
+            assertEquals(4, flight.coalescedCount());
+            assertEquals(0, flight.inFlightCount());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureReachesEveryCaller() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> leader = callers.submit(() -> flight.get("key", () -> {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("boom");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Integer> follower = callers.submit(() -> flight.get("key", () -> 0));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (flight.coalescedCount() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<Integer> call : List.of(leader, follower)) {
+                try {
+                    call.get();
+                    fail("Expected the computation's failure");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+            assertEquals(0, flight.inFlightCount());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCompletedCallsAreNotCached() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        assertEquals(1, (int) flight.get("key", computations::incrementAndGet));
+        assertEquals(2, (int) flight.get("key", computations::incrementAndGet));
+        assertEquals(0, flight.coalescedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.recommendation.serving;
+
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecommendationCacheTest {
+    private static final List<ProductRecommendation> RESULT = Collections.emptyList();
+
+    @Test
+    public void testHitsMissesAndLruEviction() {
+        // 16 entries split over 16 segments: one entry per segment
+        RecommendationCache cache = new RecommendationCache(16, 0);
+        assertNull(cache.get(1L, 5));
+        cache.put(1L, 5, RESULT, cache.generation(1L));
+        assertEquals(RESULT, cache.get(1L, 5));
+        assertNull(cache.get(1L, 10));
+
+        // A second key for the same user lands in the same segment and evicts the first
+        cache.put(1L, 10, RESULT, cache.generation(1L));
+        assertNull(cache.get(1L, 5));
+        assertNotNull(cache.get(1L, 10));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testTtlExpiry() throws InterruptedException {
+        RecommendationCache cache = new RecommendationCache(100, 1);
+        cache.put(1L, 5, RESULT, cache.generation(1L));
+        Thread.sleep(5);
+        assertNull(cache.get(1L, 5));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationDropsUserAndStaleResults() {
+        RecommendationCache cache = new RecommendationCache(100, 0);
+        cache.put(1L, 5, RESULT, cache.generation(1L));
+        cache.put(1L, 10, RESULT, cache.generation(1L));
+        cache.put(2L, 5, RESULT, cache.generation(2L));
+
+        long before = cache.generation(1L);
+        cache.invalidate(1L);
+        assertNull(cache.get(1L, 5));
+        assertNull(cache.get(1L, 10));
+        assertNotNull(cache.get(2L, 5));
+        assertEquals(2, cache.getInvalidationCount());
+
+        // A result computed before the invalidation must not be cached
+        cache.put(1L, 5, RESULT, before);
+        assertNull(cache.get(1L, 5));
+        cache.put(1L, 5, RESULT, cache.generation(1L));
+        assertNotNull(cache.get(1L, 5));
+    }
+
+    @Test
+    public void testInvalidationSparesOtherUsersInFlightResults() {
+        RecommendationCache cache = new RecommendationCache(10_000, 0);
+        long[] generations = new long[1000];
+        for (int u = 2; u < generations.length; u++) {
+            generations[u] = cache.generation(u);
+        }
+        cache.invalidate(1L);
+        int dropped = 0;
+        for (int u = 2; u < generations.length; u++) {
+            cache.put(u, 5, RESULT, generations[u]);
+            if (cache.get(u, 5) == null) {
+                dropped++;
+            }
+        }
+        // Only users sharing user 1's stripe lose their result; a whole segment would be about 60
+        assertTrue("dropped " + dropped, dropped <= 3);
+    }
+
+    @Test
+    public void testInvalidationAfterEvictionsAndReplacements() {
+        // 32 entries: two per segment, so users keep evicting each other
+        RecommendationCache cache = new RecommendationCache(32, 0);
+        for (int round = 0; round < 3; round++) {
+            for (long user = 1; user <= 40; user++) {
+                for (int n = 5; n <= 15; n += 5) {
+                    cache.put(user, n, RESULT, cache.generation(user));
+                }
+            }
+        }
+        int cached = cache.size();
+        long before = cache.getInvalidationCount();
+        for (long user = 1; user <= 40; user++) {
+            cache.invalidate(user);
+            for (int n = 5; n <= 15; n += 5) {
+                assertNull(cache.get(user, n));
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(cached, cache.getInvalidationCount() - before);
+    }
+}
@@ -0,0 +1,118 @@
+package com.recommendation.serving;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.PopularityIndex;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.engine.RecommendationEngine.ProductRecommendation;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RecommendationServiceTest {
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        List<User> users = DataGenerator.generateUsers(20);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine engine = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products));
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try (RecommendationService service = new RecommendationService(engine)) {
+            List<Future<List<ProductRecommendation>>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                long userId = 1 + i % users.size();
+                results.add(clients.submit(() -> service.recommend(userId, 5, 10, TimeUnit.SECONDS)));
+            }
+            for (Future<List<ProductRecommendation>> result : results) {
+                assertTrue(result.get().size() <= 5);
+            }
+            assertEquals(200, service.getServedCount());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExpiredDeadlineReturnsFallback() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine engine = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products));
+
+        try (RecommendationService service = new RecommendationService(engine)) {
+            List<ProductRecommendation> result = service.recommend(1L, 5, 0, TimeUnit.NANOSECONDS);
+            assertEquals(5, result.size());
+            assertEquals(1, service.getTimedOutCount() + service.getServedCount());
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestFreesItsWorker() throws Exception {
+        List<User> users = DataGenerator.generateUsers(2000);
+        List<Product> products = DataGenerator.generateProducts();
+        AtomicBoolean slow = new AtomicBoolean();
+        // Every user row costs a millisecond once slow is set, so an uninterrupted request takes seconds
+        DataModel model = new RatingStoreDataModel(RatingStore.of(DataGenerator.generateRatings(users, products))) {
+            @Override
+            public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+                long until = System.nanoTime() + (slow.get() ? 1_000_000 : 0);
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+                return super.getPreferencesFromUser(userID);
+            }
+        };
+        RecommendationEngine engine = new RecommendationEngine(users, products, model);
+        slow.set(true);
+
+        ServingConfig config = new ServingConfig();
+        config.setThreads(1);
+        config.setQueueCapacity(1);
+        try (RecommendationService service = new RecommendationService(engine, config)) {
+            assertEquals(5, service.recommend(1L, 5, 50, TimeUnit.MILLISECONDS).size());
+            assertEquals(1, service.getTimedOutCount());
+
+            // An unknown user fails fast on the worker, but only once the worker has dropped the first request
+            assertEquals(5, service.recommend(-1L, 5, 1, TimeUnit.SECONDS).size());
+            assertEquals(1, service.getServedCount());
+            assertEquals(1, service.getTimedOutCount());
+        }
+    }
+
+    @Test
+    public void testEngineFallbackIsNotCached() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine engine = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products));
+
+        ServingConfig config = new ServingConfig();
+        config.setCacheCapacity(100);
+        try (RecommendationService service = new RecommendationService(engine, config)) {
+            // No ratings yet, so the engine answers with popular products
+            assertEquals(5, service.recommend(-1L, 5, 10, TimeUnit.SECONDS).size());
+            assertEquals(0, service.getCache().size());
+
+            // Random ratings can leave a rated user without neighbours too, so check against the answer's source
+            List<ProductRecommendation> rated = service.recommend(1L, 5, 10, TimeUnit.SECONDS);
+            boolean fallback = PopularityIndex.LABEL.equals(rated.get(0).getAlgorithm());
+            assertEquals(fallback ? 0 : 1, service.getCache().size());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.recommendation.serving;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotUpdaterTest {
+
+    @Test
+    public void testFlushPublishesNewEngine() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RecommendationEngine original = new RecommendationEngine(
+            users, products, DataGenerator.generateRatings(users, products));
+
+        try (RecommendationService service = new RecommendationService(original);
+             SnapshotUpdater updater = new SnapshotUpdater(service)) {
+            assertFalse(updater.flush());
+
+            long newUser = 1000L;
+            for (Product product : products.subList(0, 5)) {
+                updater.put(newUser, product.getProductId(), 5.0f, System.currentTimeMillis());
+            }
+            updater.remove(1L, products.get(0).getProductId());
+            assertEquals(6, updater.getPendingCount());
+
+            assertTrue(updater.flush());
+            assertEquals(1, updater.getVersion());
+            assertEquals(6, updater.getAppliedCount());
+            assertEquals(0, updater.getPendingCount());
+
+            RecommendationEngine current = service.getEngine();
+            assertNotSame(original, current);
+            assertNotNull(current.getDataModel().getPreferencesFromUser(newUser));
+            assertNull(current.getDataModel().getPreferenceValue(1L, products.get(0).getProductId()));
+            // The previous snapshot is left as it was
+            assertEquals(10, original.getDataModel().getNumUsers());
+            assertEquals(11, current.getDataModel().getNumUsers());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.recommendation.sharding;
+
+import com.recommendation.data.RatingGenerator;
+import com.recommendation.factorization.AlsTrainer;
+import com.recommendation.factorization.FactorModel;
+import com.recommendation.factorization.FactorizationRecommender;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShardCoordinatorTest {
+    private static RatingStore store;
+    private static FactorModel factors;
+    private static FactorizationRecommender recommender;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void train() throws Exception {
+        store = new RatingGenerator(400, 300).toRatingStore();
+        factors = new AlsTrainer(8, 5, 0.1, 1L).train(store);
+        recommender = new FactorizationRecommender(new RatingStoreDataModel(store), factors);
+    }
+
+    @Test
+    public void testShardedTopNMatchesUnshardedModel() throws Exception {
+        ItemShard[] shards = ItemShard.split(store, factors, 3);
+        int items = 0;
+        for (ItemShard shard : shards) {
+            items += shard.numItems();
+        }
+        assertEquals(store.numItems(), items);
+
+        List<ShardWorker> workers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (ItemShard shard : shards) {
+                ShardWorker worker = new ShardWorker(shard, 0);
+                workers.add(worker);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort()));
+            }
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses, 5_000)) {
+                for (int u = 0; u < store.numUsers(); u += 37) {
+                    long userId = store.userId(u);
+                    assertSameItems(recommender.recommend(userId, 10), coordinator.recommend(userId, 10));
+                }
+                assertTrue(coordinator.recommend(-1L, 10).isEmpty());
+                assertEquals(0, coordinator.getTimedOutCount());
+                assertEquals(0, coordinator.getFailedCount());
+            }
+        } finally {
+            for (ShardWorker worker : workers) {
+                worker.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStalledShardIsDroppedAfterTimeout() throws Exception {
+        ItemShard[] shards = ItemShard.split(store, factors, 2);
+        // Accepts connections but never answers
+        try (ServerSocket stalled = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             ShardWorker worker = new ShardWorker(shards[0], 0)) {
+            List<Socket> accepted = new ArrayList<>();
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        accepted.add(stalled.accept());
+                    }
+                } catch (IOException e) {
+                    // Closed at the end of the test
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort()));
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), stalled.getLocalPort()));
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses, 200)) {
+                long userId = store.userId(0);
+                long start = System.nanoTime();
+                List<RecommendedItem> partial = coordinator.recommend(userId, 10);
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+                assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 2_000);
+                assertEquals(1, coordinator.getTimedOutCount());
+                long[] ids = new long[10];
+                float[] scores = new float[10];
+                int count = shards[0].topN(userId, 10, ids, scores);
+                assertEquals(count, partial.size());
+                for (int k = 0; k < count; k++) {
+                    assertEquals(ids[k], partial.get(k).getItemID());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCallsBeyondThePoolAreRejected() throws Exception {
+        try (ServerSocket stalled = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int s = 0; s < 3; s++) {
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), stalled.getLocalPort()));
+            }
+            // One call runs, one waits in the queue and the third is turned away
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses, 200, 1)) {
+                assertTrue(coordinator.recommend(store.userId(0), 10).isEmpty());
+                assertEquals(1, coordinator.getRejectedCount());
+                assertEquals(2, coordinator.getTimedOutCount());
+                assertEquals(0, coordinator.getFailedCount());
+            }
+        }
+    }
+
+    @Test
+    public void testLocalProcessCluster() throws Exception {
+        ItemShard[] shards = ItemShard.split(store, factors, 2);
+        List<Path> directories = new ArrayList<>();
+        for (ItemShard shard : shards) {
+            Path directory = folder.getRoot().toPath().resolve("shard-" + shard.shardIndex());
+            shard.write(directory);
+            directories.add(directory);
+        }
+        ItemShard reopened = ItemShard.open(directories.get(1));
+        assertEquals(shards[1].numItems(), reopened.numItems());
+        assertEquals(shards[1].ratings().numRatings(), reopened.ratings().numRatings());
+
+        try (LocalShardCluster cluster = LocalShardCluster.start(directories, "-Xmx64m");
+             ShardCoordinator coordinator = new ShardCoordinator(cluster.addresses(), 10_000)) {
+            for (int u = 0; u < store.numUsers(); u += 53) {
+                long userId = store.userId(u);
+                assertSameItems(recommender.recommend(userId, 5), coordinator.recommend(userId, 5));
+            }
+        }
+    }
+
+    private static void assertSameItems(List<RecommendedItem> expected, List<RecommendedItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(expected.get(k).getItemID(), actual.get(k).getItemID());
+            assertEquals(expected.get(k).getValue(), actual.get(k).getValue(), 1e-5f);
+        }
+    }
+}
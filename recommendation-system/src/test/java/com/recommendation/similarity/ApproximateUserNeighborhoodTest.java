@@ -0,0 +1,170 @@
+package com.recommendation.similarity;
+
+import com.recommendation.engine.EngineConfig;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks recall of the LSH neighborhood against the exact threshold
+ * neighborhood, and how many users it scores to get there, on synthetic data
+ * with latent user and item tastes. Timings are in
+ * {@code ApproximateNeighborhoodBenchmark}.
+ */
+public class ApproximateUserNeighborhoodTest {
+    private static final int USERS = 3000;
+    private static final int ITEMS = 100;
+    private static final int DIMENSIONS = 4;
+    private static final int RATINGS_PER_USER = 30;
+    private static final int SAMPLED_USERS = 100;
+    private static final double THRESHOLD = 0.5;
+
+    private static RatingStore store;
+    private static DataModel model;
+    private static UserSimilarity similarity;
+    private static long[][] exact;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // Users and items get random taste vectors; ratings follow their agreement
+        Random random = new Random(7);
+        double[][] itemTastes = new double[ITEMS][];
+        for (int i = 0; i < ITEMS; i++) {
+            itemTastes[i] = unitVector(random);
+        }
+        RatingStore.Builder builder = RatingStore.builder();
+        for (int u = 0; u < USERS; u++) {
+            double[] taste = unitVector(random);
+            for (int r = 0; r < RATINGS_PER_USER; r++) {
+                int item = random.nextInt(ITEMS);
+                double agreement = 0;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    agreement += taste[d] * itemTastes[item][d];
+                }
+                double rating = 3.0 + 2.0 * agreement + random.nextGaussian() * 0.3;
+                builder.add(u, item, (float) Math.max(1.0, Math.min(5.0, rating)), 0L);
+            }
+        }
+        store = builder.build();
+        model = new RatingStoreDataModel(store);
+        similarity = new PearsonCorrelationSimilarity(model);
+
+        UserNeighborhood threshold = new ThresholdUserNeighborhood(THRESHOLD, similarity, model);
+        exact = new long[SAMPLED_USERS][];
+        for (int s = 0; s < SAMPLED_USERS; s++) {
+            exact[s] = threshold.getUserNeighborhood(sampledUser(s));
+        }
+    }
+
+    @Test
+    public void testRecallAgainstExactNeighborhood() throws Exception {
+        Result low = measure(8, 10, false, USERS);
+        Result mid = measure(16, 8, true, USERS);
+        Result high = measure(16, 6, true, USERS);
+
+        assertTrue("Multi-probing should raise recall", mid.recall >= low.recall);
+        assertTrue("Smaller signatures should raise recall", high.recall >= mid.recall);
+        assertTrue("High-recall configuration should find most exact neighbors, got " + high.recall,
+            high.recall >= 0.9);
+    }
+
+    @Test
+    public void testDefaultConfigurationScoresAFractionOfUsers() throws Exception {
+        EngineConfig defaults = new EngineConfig();
+        Result result = measure(defaults.getLshTables(), defaults.getLshBits(), defaults.isLshMultiProbe(), USERS);
+
+        // An index that degenerated into a full scan would score every user
+        assertTrue("Default configuration should score under a quarter of the users, scored " 
+            + result.candidates, result.candidates < USERS / 4.0);
+        // ...and one that hashed at random would find neighbors in proportion to the users it scored
+        double lift = result.recall / (result.candidates / USERS);
+        assertTrue("Candidates should be richer in neighbors than random users, lift " + lift, lift >= 1.5);
+    }
+
+    @Test
+    public void testCappedCandidatesKeepMostFrequentCollisions() throws Exception {
+        Result uncapped = measure(16, 8, true, USERS);
+        int cap = USERS / 5;
+        Result capped = measure(16, 8, true, cap);
+
+        assertTrue(capped.candidates <= cap);
+        // A random subset of the uncapped candidates would keep recall in proportion
+        double proportional = uncapped.recall * capped.candidates / uncapped.candidates;
+        assertTrue("Ranking by collisions should beat a random subset: " + capped.recall + " vs " + proportional,
+            capped.recall >= 1.1 * proportional);
+    }
+
+    @Test
+    public void testNeighborsAreSubsetOfExact() throws Exception {
+        SimHashUserIndex index = SimHashUserIndex.build(store, 4, 8, 1L);
+        UserNeighborhood approximate = new ApproximateUserNeighborhood(index, similarity, THRESHOLD, true, 500);
+        for (int s = 0; s < SAMPLED_USERS; s++) {
+            FastIDSet expected = new FastIDSet(exact[s]);
+            long[] neighbors = approximate.getUserNeighborhood(sampledUser(s));
+            assertTrue(neighbors.length <= 500);
+            for (long neighbor : neighbors) {
+                assertTrue(expected.contains(neighbor));
+            }
+        }
+    }
+
+    private static Result measure(int tables, int bits, boolean multiProbe, int maxCandidates) throws Exception {
+        SimHashUserIndex index = SimHashUserIndex.build(store, tables, bits, 1L);
+        UserNeighborhood approximate = new ApproximateUserNeighborhood(
+            index, similarity, THRESHOLD, multiProbe, maxCandidates);
+        SimHashUserIndex.Scratch scratch = index.newScratch();
+        int[] out = new int[maxCandidates];
+        long candidates = 0;
+        long found = 0;
+        long total = 0;
+        for (int s = 0; s < SAMPLED_USERS; s++) {
+            candidates += index.candidates(store.userIndex(sampledUser(s)), multiProbe, out, scratch);
+            FastIDSet expected = new FastIDSet(exact[s]);
+            for (long neighbor : approximate.getUserNeighborhood(sampledUser(s))) {
+                if (expected.contains(neighbor)) {
+                    found++;
+                }
+            }
+            total += exact[s].length;
+        }
+        return new Result(total == 0 ? 1.0 : (double) found / total, (double) candidates / SAMPLED_USERS);
+    }
+
+    private static final class Result {
+        final double recall;
+        final double candidates;
+
+        Result(double recall, double candidates) {
+            this.recall = recall;
+            this.candidates = candidates;
+        }
+    }
+
+    private static double[] unitVector(Random random) {
+        double[] vector = new double[DIMENSIONS];
+        double norm = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = random.nextGaussian();
+            norm += vector[d] * vector[d];
+        }
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] /= Math.sqrt(norm);
+        }
+        return vector;
+    }
+
+    private static long sampledUser(int s) {
+        return (long) s * (USERS / SAMPLED_USERS);
+    }
+}
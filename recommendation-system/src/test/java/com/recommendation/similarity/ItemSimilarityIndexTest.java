@@ -0,0 +1,61 @@
+package com.recommendation.similarity;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import com.recommendation.store.RatingStore;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ItemSimilarityIndexTest {
+
+    @Test
+    public void testMatchesBruteForceAdjustedCosine() {
+        List<User> users = DataGenerator.generateUsers(50);
+        List<Product> products = DataGenerator.generateProducts();
+        RatingStore store = RatingStore.of(DataGenerator.generateRatings(users, products));
+        int k = 5;
+
+        ItemSimilarityIndex index = ItemSimilarityIndex.build(store, k);
+
+        int total = 0;
+        for (int i = 0; i < store.numItems(); i++) {
+            assertTrue(index.neighborCount(i) <= k);
+            total += index.neighborCount(i);
+            float previous = Float.POSITIVE_INFINITY;
+            for (int n = 0; n < index.neighborCount(i); n++) {
+                int j = index.neighbor(i, n);
+                assertNotEquals(i, j);
+                float similarity = index.similarity(i, n);
+                assertTrue("Neighbors should be sorted", similarity <= previous);
+                assertEquals(bruteForce(store, i, j), similarity, 1e-4);
+                previous = similarity;
+            }
+        }
+        assertTrue("Should find some similar items", total > 0);
+    }
+
+    private static double bruteForce(RatingStore store, int i, int j) {
+        double dot = 0;
+        double normI = 0;
+        double normJ = 0;
+        for (int u = 0; u < store.numUsers(); u++) {
+            double mean = store.meanRating(u);
+            float ri = store.rating(u, i);
+            float rj = store.rating(u, j);
+            if (!Float.isNaN(ri)) {
+                normI += (ri - mean) * (ri - mean);
+            }
+            if (!Float.isNaN(rj)) {
+                normJ += (rj - mean) * (rj - mean);
+            }
+            if (!Float.isNaN(ri) && !Float.isNaN(rj)) {
+                dot += (ri - mean) * (rj - mean);
+            }
+        }
+        return dot / (Math.sqrt(normI) * Math.sqrt(normJ));
+    }
+}
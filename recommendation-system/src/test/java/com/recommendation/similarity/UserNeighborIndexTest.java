@@ -0,0 +1,135 @@
+package com.recommendation.similarity;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.UserNeighborRecommender;
+import com.recommendation.model.Product;
+import com.recommendation.model.User;
+import com.recommendation.store.RatingStore;
+import com.recommendation.store.RatingStoreDataModel;
+import com.recommendation.util.BuildProgress;
+import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class UserNeighborIndexTest {
+    private static RatingStoreDataModel model;
+
+    @BeforeClass
+    public static void setUp() {
+        List<User> users = DataGenerator.generateUsers(60);
+        List<Product> products = DataGenerator.generateProducts();
+        model = new RatingStoreDataModel(RatingStore.of(DataGenerator.generateRatings(users, products)));
+    }
+
+    @Test
+    public void testMatchesMahoutPearson() throws Exception {
+        RatingStore store = model.getStore();
+        UserSimilarity pearson = new PearsonCorrelationSimilarity(model);
+        int k = 5;
+
+        UserNeighborIndex index = UserNeighborIndex.build(store, k, 0.1);
+
+        int total = 0;
+        for (int u = 0; u < store.numUsers(); u++) {
+            assertTrue(index.neighborCount(u) <= k);
+            total += index.neighborCount(u);
+            float previous = Float.POSITIVE_INFINITY;
+            for (int n = 0; n < index.neighborCount(u); n++) {
+                int v = index.neighbor(u, n);
+                assertNotEquals(u, v);
+                float similarity = index.similarity(u, n);
+                assertTrue("Neighbors should be sorted", similarity <= previous);
+                assertTrue(similarity >= 0.1f);
+                assertEquals(pearson.userSimilarity(store.userId(u), store.userId(v)), similarity, 1e-5);
+                previous = similarity;
+            }
+        }
+        assertTrue("Should find some similar users", total > 0);
+    }
+
+    @Test
+    public void testRecommendationsMatchThresholdNeighborhood() throws Exception {
+        RatingStore store = model.getStore();
+        UserSimilarity pearson = new PearsonCorrelationSimilarity(model);
+        GenericUserBasedRecommender mahout = new GenericUserBasedRecommender(
+            model, new ThresholdUserNeighborhood(0.1, pearson, model), pearson);
+        // Room for every neighbor, so the index holds exactly the threshold neighborhood
+        UserNeighborRecommender indexed = new UserNeighborRecommender(
+            model, UserNeighborIndex.build(store, store.numUsers(), 0.1));
+
+        for (int u = 0; u < store.numUsers(); u++) {
+            long userId = store.userId(u);
+            List<RecommendedItem> expected = mahout.recommend(userId, 5);
+            List<RecommendedItem> actual = indexed.recommend(userId, 5);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testRecommendersOverDifferentCatalogsShareAThread() throws Exception {
+        RatingStore store = model.getStore();
+        RatingStore.Builder half = RatingStore.builder();
+        for (int u = 0; u < store.numUsers(); u++) {
+            for (int p = store.userStart(u), end = store.userEnd(u); p < end; p++) {
+                if (store.itemAt(p) % 2 == 0) {
+                    half.add(store.userId(u), store.itemId(store.itemAt(p)), store.userRatingAt(p), 0);
+                }
+            }
+        }
+        RatingStoreDataModel halfModel = new RatingStoreDataModel(half.build());
+        UserNeighborRecommender full = new UserNeighborRecommender(model, UserNeighborIndex.build(store, 10, 0.1));
+        UserNeighborRecommender small = new UserNeighborRecommender(
+            halfModel, UserNeighborIndex.build(halfModel.getStore(), 10, 0.1));
+        assertNotEquals(store.numItems(), halfModel.getStore().numItems());
+
+        List<String> fullExpected = new ArrayList<>();
+        List<String> smallExpected = new ArrayList<>();
+        for (int u = 0; u < 10; u++) {
+            fullExpected.add(full.recommend(store.userId(u), 5).toString());
+        }
+        for (int u = 0; u < 10; u++) {
+            smallExpected.add(small.recommend(store.userId(u), 5).toString());
+        }
+        // Alternating replaces the thread's accumulator every time; neither may see the other's leftovers
+        for (int u = 0; u < 10; u++) {
+            assertEquals(smallExpected.get(u), small.recommend(store.userId(u), 5).toString());
+            assertEquals(fullExpected.get(u), full.recommend(store.userId(u), 5).toString());
+        }
+    }
+
+    @Test
+    public void testReportsProgress() {
+        RatingStore store = model.getStore();
+        AtomicLong last = new AtomicLong(-1);
+        BuildProgress progress = new BuildProgress((completed, total) -> last.accumulateAndGet(completed, Math::max));
+
+        UserNeighborIndex.build(store, 5, 0.1, new ForkJoinPool(2), progress);
+
+        assertEquals(store.numUsers(), progress.total());
+        assertEquals(store.numUsers(), progress.completed());
+        assertEquals(store.numUsers(), last.get());
+        assertEquals(1.0, progress.fraction(), 0.0);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancelledBuildThrows() {
+        BuildProgress progress = new BuildProgress();
+        progress.cancel();
+        UserNeighborIndex.build(model.getStore(), 5, 0.1, new ForkJoinPool(2), progress);
+    }
+}
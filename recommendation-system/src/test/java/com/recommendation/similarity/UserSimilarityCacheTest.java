@@ -0,0 +1,93 @@
+package com.recommendation.similarity;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class UserSimilarityCacheTest {
+
+    @Test
+    public void testSymmetricHitsIncludingNaN() throws Exception {
+        UserSimilarityCache cache = new UserSimilarityCache(1024);
+        AtomicInteger loads = new AtomicInteger();
+        UserSimilarityCache.Loader loader = (a, b) -> {
+            loads.incrementAndGet();
+            return a == 3 || b == 3 ? Double.NaN : 1.0 / (a + b);
+        };
+        long version = cache.version();
+
+        assertEquals(1.0 / 3, cache.get(1, 2, version, loader), 0.0);
+        assertEquals(1.0 / 3, cache.get(2, 1, version, loader), 0.0);
+        assertTrue(Double.isNaN(cache.get(3, 4, version, loader)));
+        assertTrue(Double.isNaN(cache.get(4, 3, version, loader)));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHitCount());
+
+        // Ids beyond 32 bits bypass the cache
+        cache.get(1L << 40, 2, version, loader);
+        cache.get(1L << 40, 2, version, loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testInvalidationIsPerUser() throws Exception {
+        UserSimilarityCache cache = new UserSimilarityCache(1024);
+        AtomicInteger loads = new AtomicInteger();
+        UserSimilarityCache.Loader loader = (a, b) -> {
+            loads.incrementAndGet();
+            return 0.5;
+        };
+        long old = cache.version();
+        cache.get(1, 2, old, loader);
+        cache.get(3, 4, old, loader);
+
+        long current = cache.nextVersion(2);
+        cache.get(1, 2, current, loader);
+        cache.get(3, 4, current, loader);
+        assertEquals("Only the pair with user 2 is recomputed", 3, loads.get());
+
+        // An old snapshot may read but no longer fill the cache
+        cache.get(5, 6, old, loader);
+        cache.get(5, 6, current, loader);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testBoundedUnderConcurrentLoad() throws Exception {
+        UserSimilarityCache cache = new UserSimilarityCache(4096);
+        assertEquals(4096, cache.capacity());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 200_000; i++) {
+                    long a = random.nextInt(2000);
+                    long b = random.nextInt(2000);
+                    double value = cache.get(a, b, cache.version(), 
+                        (x, y) -> Math.min(x, y) * 1_000_000.0 + Math.max(x, y));
+                    if (value != Math.min(a, b) * 1_000_000.0 + Math.max(a, b)) {
+                        throw new AssertionError(a + "," + b + " -> " + value);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(cache.getHitCount() > 0);
+    }
+}
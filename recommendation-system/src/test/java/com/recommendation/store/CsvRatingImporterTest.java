@@ -0,0 +1,80 @@
+package com.recommendation.store;
+
+import com.recommendation.data.RatingGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class CsvRatingImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesGeneratedStoreAcrossChunks() throws Exception {
+        // Several megabytes, so the file is split into chunks whose boundaries fall mid-line
+        RatingGenerator generator = new RatingGenerator(30000, 2000);
+        Path csv = folder.getRoot().toPath().resolve("ratings.csv");
+        generator.writeCsv(csv);
+        assertTrue(Files.size(csv) > 3 << 20);
+
+        RatingStore expected = generator.toRatingStore();
+        RatingStore actual = CsvRatingImporter.read(csv, new ForkJoinPool(4));
+
+        assertEquals(expected.numUsers(), actual.numUsers());
+        assertEquals(expected.numItems(), actual.numItems());
+        assertEquals(expected.numRatings(), actual.numRatings());
+        for (int u = 0; u < expected.numUsers(); u++) {
+            assertEquals(expected.userId(u), actual.userId(u));
+            assertEquals(expected.userEnd(u), actual.userEnd(u));
+        }
+        for (int p = 0; p < expected.numRatings(); p++) {
+            assertEquals(expected.itemAt(p), actual.itemAt(p));
+            assertEquals(expected.userRatingAt(p), actual.userRatingAt(p), 0.0f);
+            assertEquals(expected.timestampAt(p), actual.timestampAt(p));
+        }
+    }
+
+    @Test
+    public void testKeepsLatestRatingOfRepeatedPairs() throws Exception {
+        RatingStore store = read("﻿user,item,rating,timestamp\r\n"
+            + "1,10,2.0,200\r\n"
+            + "# a comment\n"
+            + "\n"
+            + "1\t10\t4.5\t100\n"
+            + " 2 , 10 , 3 \n"
+            + "2,10,1.25\n"
+            + "3,11,-1.5e0,5,ignored\n");
+
+        assertEquals(3, store.numUsers());
+        assertEquals(3, store.numRatings());
+        assertEquals(2.0f, store.rating(store.userIndex(1), store.itemIndex(10)), 0.0f);
+        assertEquals(200, store.timestampAt(store.find(store.userIndex(1), store.itemIndex(10))));
+        // Without timestamps the later line wins
+        assertEquals(1.25f, store.rating(store.userIndex(2), store.itemIndex(10)), 0.0f);
+        assertEquals(-1.5f, store.rating(store.userIndex(3), store.itemIndex(11)), 0.0f);
+    }
+
+    @Test
+    public void testRejectsMalformedLine() throws Exception {
+        try {
+            read("1,10,4.0\n1,x,3.0\n");
+            fail("Expected a malformed rating");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(":9: 1,x,3.0"));
+        }
+    }
+
+    private RatingStore read(String text) throws IOException {
+        Path csv = folder.newFile().toPath();
+        Files.write(csv, text.getBytes(StandardCharsets.UTF_8));
+        return CsvRatingImporter.read(csv);
+    }
+}
@@ -0,0 +1,113 @@
+package com.recommendation.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ModelFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndOpenRoundTrip() throws Exception {
+        Random random = new Random(7);
+        // Large enough to span several write chunks
+        int[] ints = random.ints(400_000).toArray();
+        long[] longs = random.longs(150_000).toArray();
+        float[] floats = new float[300_001];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = random.nextFloat();
+        }
+
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        try (ModelFile.Writer out = new ModelFile.Writer(file)) {
+            out.beginSection(1);
+            out.putInt(42).putFloat(1.5f).putInts(ints);
+            out.endSection();
+            out.beginSection(7);
+            out.putDouble(0.25).putLong(-3L).putFloats(floats).putLongs(longs);
+            out.endSection();
+            out.beginSection(2);
+            out.endSection();
+            out.commit();
+        }
+
+        ModelFile in = ModelFile.open(file);
+        assertTrue(in.has(7));
+        assertFalse(in.has(3));
+        ModelFile.Section first = in.section(1);
+        assertEquals(42, first.getInt());
+        assertEquals(1.5f, first.getFloat(), 0.0f);
+        assertArrayEquals(ints, first.getInts(ints.length));
+        ModelFile.Section second = in.section(7);
+        assertEquals(0.25, second.getDouble(), 0.0);
+        assertEquals(-3L, second.getLong());
+        assertArrayEquals(floats, second.getFloats(floats.length), 0.0f);
+        assertArrayEquals(longs, second.getLongs(longs.length));
+        // Each call starts over, and reading past the end is an error rather than garbage
+        assertEquals(42, in.section(1).getInt());
+        try {
+            in.section(2).getInt();
+            fail("Empty section should have nothing to read");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectsDamagedFiles() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        try (ModelFile.Writer out = new ModelFile.Writer(file)) {
+            out.beginSection(1);
+            out.putInts(new int[1000]);
+            out.endSection();
+            out.commit();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "truncated");
+        byte[] flipped = bytes.clone();
+        flipped[100] ^= 1;
+        assertRejected(flipped, "checksum");
+        byte[] newer = bytes.clone();
+        ByteBuffer.wrap(newer).order(ByteOrder.LITTLE_ENDIAN).putInt(4, ModelFile.VERSION + 1);
+        assertRejected(newer, "version");
+        assertRejected(new byte[10], "too short");
+    }
+
+    @Test
+    public void testUncommittedWriterLeavesNothingBehind() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("model.bin");
+        try (ModelFile.Writer out = new ModelFile.Writer(file)) {
+            out.beginSection(1);
+            out.putInt(1);
+            out.endSection();
+        }
+        assertFalse(Files.exists(file));
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private void assertRejected(byte[] bytes, String reason) throws IOException {
+        Path damaged = folder.newFile().toPath();
+        Files.write(damaged, bytes);
+        try {
+            ModelFile.open(damaged);
+            fail("Should reject a file that is " + reason);
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(reason));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.recommendation.store;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.RatingDataModels;
+import com.recommendation.engine.RecommendationEngine;
+import com.recommendation.model.Product;
+import com.recommendation.model.Rating;
+import com.recommendation.model.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RatingSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndOpenRoundTrip() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        List<Rating> ratings = DataGenerator.generateRatings(users, products);
+        RatingStore expected = RatingStore.of(ratings);
+
+        Path file = folder.getRoot().toPath().resolve("ratings.snapshot");
+        RatingSnapshot.write(expected, file);
+        RatingStore actual = RatingSnapshot.open(file);
+
+        assertStoresEqual(expected, actual);
+        assertNotNull(new RecommendationEngine(users, products, file).getRecommendations(1L, 5));
+    }
+
+    @Test
+    public void testConvertCsv() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        List<Rating> ratings = DataGenerator.generateRatings(users, products);
+        File csv = folder.newFile("ratings.csv");
+        RatingDataModels.writeCsv(ratings, csv);
+
+        Path file = folder.getRoot().toPath().resolve("converted.snapshot");
+        RatingStore converted = RatingSnapshot.convertCsv(csv.toPath(), file);
+        RatingStore opened = RatingSnapshot.open(file);
+
+        assertEquals(ratings.size(), opened.numRatings());
+        assertStoresEqual(converted, opened);
+        Rating first = ratings.get(0);
+        float stored = opened.rating(opened.userIndex(first.getUserId()), opened.itemIndex(first.getProductId()));
+        assertEquals(first.getRating(), stored, 0.05f);
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testRejectsForeignFile() throws Exception {
+        File other = folder.newFile("other.bin");
+        java.nio.file.Files.write(other.toPath(), new byte[256]);
+        RatingSnapshot.open(other.toPath());
+    }
+
+    @Test
+    public void testSectionsSplitAcrossMappings() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RatingStore expected = RatingStore.of(DataGenerator.generateRatings(users, products));
+
+        Path file = folder.getRoot().toPath().resolve("chunked.snapshot");
+        RatingSnapshot.write(expected, file);
+        // 64 byte mappings: 8 longs or 16 ints each, so every section spans several
+        RatingStore chunked = RatingSnapshot.open(file, 64);
+
+        assertStoresEqual(expected, chunked);
+        assertTrue(chunked.userTimestamps().chunks() > 1);
+        assertEquals(expected.fingerprint(), chunked.fingerprint());
+
+        // Writing the chunked store back produces the same file
+        Path copy = folder.getRoot().toPath().resolve("copy.snapshot");
+        RatingSnapshot.write(chunked, copy);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+    }
+
+    @Test
+    public void testRejectsTruncatedFile() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        Path file = folder.getRoot().toPath().resolve("truncated.snapshot");
+        RatingSnapshot.write(RatingStore.of(DataGenerator.generateRatings(users, products)), file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 8);
+        }
+        try {
+            RatingSnapshot.open(file);
+            fail("truncated snapshot opened");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("section 9"));
+        }
+    }
+
+    @Test
+    public void testRejectsSectionOffsetOutsideFile() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        Path file = folder.getRoot().toPath().resolve("corrupt.snapshot");
+        RatingSnapshot.write(RatingStore.of(DataGenerator.generateRatings(users, products)), file);
+
+        // Header: 32 bytes of counts and range, then one offset per section; point the timestamps past the end
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            offset.putLong(0, channel.size());
+            channel.write(offset, 32 + 5 * Long.BYTES);
+        }
+        try {
+            RatingSnapshot.open(file);
+            fail("corrupt snapshot opened");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("section 5"));
+        }
+    }
+
+    @Test
+    public void testOpensVersionOneWithoutRatingSums() throws Exception {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        RatingStore expected = RatingStore.of(DataGenerator.generateRatings(users, products));
+        Path file = folder.getRoot().toPath().resolve("v1.snapshot");
+        RatingSnapshot.write(expected, file);
+
+        // A version 1 reader sees the first nine sections; the sums behind them go unread
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer version = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            version.putInt(0, 1);
+            channel.write(version, 4);
+        }
+        assertStoresEqual(expected, RatingSnapshot.open(file));
+    }
+
+    private static void assertStoresEqual(RatingStore expected, RatingStore actual) {
+        assertEquals(expected.numUsers(), actual.numUsers());
+        assertEquals(expected.numItems(), actual.numItems());
+        assertEquals(expected.numRatings(), actual.numRatings());
+        assertEquals(expected.minRating(), actual.minRating(), 0.0f);
+        assertEquals(expected.maxRating(), actual.maxRating(), 0.0f);
+        for (int u = 0; u < expected.numUsers(); u++) {
+            assertEquals(expected.userId(u), actual.userId(u));
+            assertEquals(expected.userStart(u), actual.userStart(u));
+            assertEquals(expected.userEnd(u), actual.userEnd(u));
+        }
+        for (int i = 0; i < expected.numItems(); i++) {
+            assertEquals(expected.itemId(i), actual.itemId(i));
+            assertEquals(expected.itemStart(i), actual.itemStart(i));
+            assertEquals(expected.itemRatingSum(i), actual.itemRatingSum(i), 0.0);
+        }
+        assertEquals(expected.globalMeanRating(), actual.globalMeanRating(), 0.0);
+        for (int p = 0; p < expected.numRatings(); p++) {
+            assertEquals(expected.itemAt(p), actual.itemAt(p));
+            assertEquals(expected.userRatingAt(p), actual.userRatingAt(p), 0.0f);
+            assertEquals(expected.timestampAt(p), actual.timestampAt(p));
+            assertEquals(expected.userAt(p), actual.userAt(p));
+            assertEquals(expected.itemRatingAt(p), actual.itemRatingAt(p), 0.0f);
+        }
+    }
+}
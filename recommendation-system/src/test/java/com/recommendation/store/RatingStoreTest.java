@@ -0,0 +1,235 @@
+package com.recommendation.store;
+
+import com.recommendation.data.DataGenerator;
+import com.recommendation.engine.RatingDataModels;
+import com.recommendation.model.Product;
+import com.recommendation.model.Rating;
+import com.recommendation.model.User;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RatingStoreTest {
+
+    @Test
+    public void testCsrLayoutAndIdRemapping() {
+        RatingStore store = RatingStore.builder()
+            .add(30, 200, 4.0f, 1)
+            .add(10, 300, 2.0f, 1)
+            .add(10, 100, 5.0f, 1)
+            .add(20, 200, 3.0f, 1)
+            .build();
+
+        assertEquals(3, store.numUsers());
+        assertEquals(3, store.numItems());
+        assertEquals(4, store.numRatings());
+        assertEquals(10L, store.userId(0));
+        assertEquals(1, store.itemIndex(200));
+        assertEquals(-1, store.userIndex(99));
+
+        int u = store.userIndex(10);
+        assertEquals(2, store.userRatingCount(u));
+        assertEquals(store.itemIndex(100), store.itemAt(store.userStart(u)));
+        assertEquals(store.itemIndex(300), store.itemAt(store.userStart(u) + 1));
+
+        int item = store.itemIndex(200);
+        assertEquals(2, store.itemRatingCount(item));
+        assertEquals(store.userIndex(20), store.userAt(store.itemStart(item)));
+        assertEquals(3.0f, store.itemRatingAt(store.itemStart(item)), 0.0f);
+        assertTrue(Float.isNaN(store.rating(u, item)));
+    }
+
+    @Test
+    public void testDuplicatesKeepLatestTimestamp() {
+        RatingStore store = RatingStore.builder()
+            .add(1, 1, 2.0f, 200)
+            .add(1, 1, 5.0f, 100)
+            .add(1, 1, 3.0f, 200)
+            .build();
+
+        assertEquals(1, store.numRatings());
+        assertEquals(3.0f, store.rating(0, 0), 0.0f);
+        assertEquals(200L, store.timestampAt(0));
+        assertEquals(3.0f, store.itemRatingAt(0), 0.0f);
+    }
+
+    @Test
+    public void testIdLookupOnSkewedIds() {
+        long[] ids = {Long.MIN_VALUE, -5, 0, 1, 2, 3, 1_000, 1_001, 1L << 40, Long.MAX_VALUE};
+        RatingStore.Builder builder = RatingStore.builder();
+        for (long id : ids) {
+            builder.add(id, 1, 1.0f, 1);
+        }
+        RatingStore store = builder.build();
+        for (int u = 0; u < ids.length; u++) {
+            assertEquals(u, store.userIndex(ids[u]));
+        }
+        for (long missing : new long[] {Long.MIN_VALUE + 1, -4, 4, 999, 1_002, (1L << 40) + 1, Long.MAX_VALUE - 1}) {
+            assertEquals(-1, store.userIndex(missing));
+        }
+        assertEquals(0, store.itemIndex(1));
+        assertEquals(-1, store.itemIndex(2));
+    }
+
+    @Test
+    public void testPreferenceArraysAreReadOnlyRowViews() throws TasteException {
+        RatingStoreDataModel model = new RatingStoreDataModel(RatingStore.builder()
+            .add(1, 30, 2.0f, 1)
+            .add(1, 10, 4.0f, 1)
+            .add(2, 10, 3.0f, 1)
+            .build());
+
+        PreferenceArray user = model.getPreferencesFromUser(1);
+        assertEquals(2, user.length());
+        assertArrayEquals(new long[] {10, 30}, user.getIDs());
+        assertEquals(1L, user.getUserID(1));
+        assertEquals(2.0f, user.getValue(1), 0.0f);
+        assertTrue(user.hasPrefWithItemID(30));
+        assertFalse(user.hasPrefWithItemID(20));
+        assertEquals(30L, user.get(1).getItemID());
+        int count = 0;
+        for (Preference preference : user) {
+            assertEquals(1L, preference.getUserID());
+            count++;
+        }
+        assertEquals(2, count);
+        try {
+            user.setValue(0, 1.0f);
+            fail("Views over the store are read-only");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+
+        PreferenceArray copy = user.clone();
+        copy.setValue(0, 1.0f);
+        assertEquals(1.0f, copy.getValue(0), 0.0f);
+        assertEquals(4.0f, model.getPreferencesFromUser(1).getValue(0), 0.0f);
+
+        PreferenceArray item = model.getPreferencesForItem(10);
+        assertArrayEquals(new long[] {1, 2}, item.getIDs());
+        assertEquals(10L, item.getItemID(1));
+        assertTrue(item.hasPrefWithUserID(2));
+        assertFalse(item.hasPrefWithUserID(3));
+    }
+
+    @Test
+    public void testFingerprintTracksRatingValues() {
+        RatingStore store = RatingStore.builder()
+            .add(1, 1, 2.0f, 100)
+            .add(1, 2, 4.0f, 100)
+            .add(2, 1, 3.0f, 100)
+            .build();
+        RatingStore same = RatingStore.builder()
+            .add(2, 1, 3.0f, 100)
+            .add(1, 2, 4.0f, 100)
+            .add(1, 1, 2.0f, 100)
+            .build();
+        assertEquals(store.fingerprint(), same.fingerprint());
+
+        RatingStore changed = store.withChanges(new RatingDelta().put(1, 2, 5.0f, 100));
+        assertEquals(store.numRatings(), changed.numRatings());
+        assertNotEquals(store.fingerprint(), changed.fingerprint());
+        RatingStore retimed = store.withChanges(new RatingDelta().put(1, 2, 4.0f, 200));
+        assertNotEquals(store.fingerprint(), retimed.fingerprint());
+    }
+
+    @Test
+    public void testDataModelMatchesGenericDataModel() throws TasteException {
+        List<User> users = DataGenerator.generateUsers(10);
+        List<Product> products = DataGenerator.generateProducts();
+        List<Rating> ratings = DataGenerator.generateRatings(users, products);
+
+        DataModel expected = RatingDataModels.fromRatings(ratings);
+        DataModel actual = new RatingStoreDataModel(RatingStore.of(ratings));
+
+        assertEquals(expected.getNumUsers(), actual.getNumUsers());
+        assertEquals(expected.getNumItems(), actual.getNumItems());
+        LongPrimitiveIterator userIds = expected.getUserIDs();
+        while (userIds.hasNext()) {
+            long userId = userIds.nextLong();
+            PreferenceArray expectedPrefs = expected.getPreferencesFromUser(userId);
+            PreferenceArray actualPrefs = actual.getPreferencesFromUser(userId);
+            assertArrayEquals(expectedPrefs.getIDs(), actualPrefs.getIDs());
+            for (int i = 0; i < expectedPrefs.length(); i++) {
+                assertEquals(expectedPrefs.getValue(i), actualPrefs.getValue(i), 0.0f);
+            }
+        }
+        LongPrimitiveIterator itemIds = expected.getItemIDs();
+        while (itemIds.hasNext()) {
+            long itemId = itemIds.nextLong();
+            long[] expectedUsers = expected.getPreferencesForItem(itemId).getIDs();
+            long[] actualUsers = actual.getPreferencesForItem(itemId).getIDs();
+            Arrays.sort(expectedUsers);
+            assertArrayEquals(expectedUsers, actualUsers);
+        }
+    }
+
+    @Test
+    public void testWithChangesMatchesRebuild() {
+        Random random = new Random(7);
+        RatingStore.Builder builder = RatingStore.builder();
+        Map<List<Long>, Float> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long user = random.nextInt(100);
+            long item = random.nextInt(80);
+            float rating = 1 + random.nextInt(5);
+            builder.add(user, item, rating, i);
+            expected.put(Arrays.asList(user, item), rating);
+        }
+        RatingStore base = builder.build();
+        int baseRatings = base.numRatings();
+
+        RatingDelta delta = new RatingDelta();
+        for (int i = 0; i < 500; i++) {
+            // Ids past the base range add new users and items
+            long user = random.nextInt(120);
+            long item = random.nextInt(90);
+            if (random.nextInt(3) == 0) {
+                delta.remove(user, item);
+                expected.remove(Arrays.asList(user, item));
+            } else {
+                float rating = 1 + random.nextInt(5);
+                delta.put(user, item, rating, 10_000 + i);
+                expected.put(Arrays.asList(user, item), rating);
+            }
+        }
+        // Remove every rating of one user so the user disappears
+        for (long item = 0; item < 90; item++) {
+            delta.remove(base.userId(0), item);
+            expected.remove(Arrays.asList(base.userId(0), item));
+        }
+
+        RatingStore merged = base.withChanges(delta);
+        Map<List<Long>, Float> actual = new HashMap<>();
+        merged.forEach((u, i, rating, timestamp) ->
+            assertNull(actual.put(Arrays.asList(merged.userId(u), merged.itemId(i)), rating)));
+        assertEquals(expected, actual);
+        assertEquals(-1, merged.userIndex(base.userId(0)));
+
+        // The by-item side must agree with the by-user side
+        double total = 0;
+        for (int i = 0; i < merged.numItems(); i++) {
+            assertTrue(merged.itemRatingCount(i) > 0);
+            double sum = 0;
+            for (int p = merged.itemStart(i); p < merged.itemEnd(i); p++) {
+                assertEquals(merged.rating(merged.userAt(p), i), merged.itemRatingAt(p), 0.0f);
+                sum += merged.itemRatingAt(p);
+            }
+            assertEquals(sum, merged.itemRatingSum(i), 1e-9);
+            total += sum;
+        }
+        assertEquals(total / merged.numRatings(), merged.globalMeanRating(), 1e-9);
+        assertEquals(baseRatings, base.numRatings());
+    }
+}